@@ -0,0 +1,81 @@
+package com.example.mcpdemo.benchmark;
+
+import com.example.mcpdemo.mapper.handler.CompressedTextCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息内容压缩存储的编解码耗时，除以 size 即每KB耗时；encode 的辅助计数 encodedBytes / originalBytes 即压缩率
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressedTextBenchmark {
+
+    /**
+     * 原文大小（KB）
+     */
+    @Param({"1", "16"})
+    private int size;
+
+    private final CompressedTextCodec codec = new CompressedTextCodec(true, 1024, 1);
+
+    private String text;
+    private int originalBytes;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        String paragraph = "MCP的核心功能包括：1. 统一的消息格式 2. 会话管理 3. 流式响应 4. 多模型支持。"
+                + "The protocol standardizes how applications provide context to large language models, "
+                + "so that switching providers does not require rewriting the client. ";
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.toString().getBytes(StandardCharsets.UTF_8).length < size * 1024) {
+            sb.append(i++).append(". ").append(paragraph);
+        }
+        text = sb.toString();
+        originalBytes = text.getBytes(StandardCharsets.UTF_8).length;
+        encoded = codec.encode(text);
+    }
+
+    @Benchmark
+    public byte[] encode(Sizes sizes) {
+        byte[] result = codec.encode(text);
+        sizes.originalBytes += originalBytes;
+        sizes.encodedBytes += result.length;
+        return result;
+    }
+
+    @Benchmark
+    public String decode() {
+        return codec.decode(encoded);
+    }
+
+    /**
+     * 每轮编码的原文与编码后字节数之和，随结果一起输出
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long originalBytes;
+        public long encodedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            originalBytes = 0;
+            encodedBytes = 0;
+        }
+    }
+}
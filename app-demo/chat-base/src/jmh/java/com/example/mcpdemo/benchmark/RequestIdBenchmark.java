@@ -0,0 +1,93 @@
+package com.example.mcpdemo.benchmark;
+
+import cn.hutool.core.lang.Snowflake;
+import cn.hutool.core.util.IdUtil;
+import com.example.mcpdemo.service.support.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每帧生成的请求ID：UUID.randomUUID()（共享SecureRandom）与线程本地随机数方案、hutool雪花算法（同步方法）
+ * 以及当前按时间递增的 {@link IdGenerator}（CAS）对比，单线程、4线程、16线程并发各测一次以观察争用
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestIdBenchmark {
+
+    private final IdGenerator idGenerator = new IdGenerator(1);
+
+    private final Snowflake snowflake = IdUtil.getSnowflake(1, 1);
+
+    @Benchmark
+    public String randomUuid() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String randomUuidContended() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String randomUuidManyThreads() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public String threadLocalRandomUuid() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String threadLocalRandomUuidContended() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    @Benchmark
+    public String hutoolFastSimpleUuid() {
+        return IdUtil.fastSimpleUUID();
+    }
+
+    @Benchmark
+    public String hutoolSnowflake() {
+        return snowflake.nextIdStr();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String hutoolSnowflakeManyThreads() {
+        return snowflake.nextIdStr();
+    }
+
+    @Benchmark
+    public String timeOrderedId() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String timeOrderedIdContended() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String timeOrderedIdManyThreads() {
+        return idGenerator.nextId();
+    }
+}
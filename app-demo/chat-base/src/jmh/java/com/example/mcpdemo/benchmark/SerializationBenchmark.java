@@ -0,0 +1,92 @@
+package com.example.mcpdemo.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.example.mcpdemo.dto.McpMessageDto;
+import com.example.mcpdemo.dto.McpRequest;
+import com.example.mcpdemo.dto.McpResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 序列化开销：请求日志中的 fastjson JSON.toJSONString(request)，
+ * 以及每个SSE帧的 Jackson McpResponse 序列化，两种库交叉对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private McpRequest request;
+    private McpResponse response;
+
+    @Setup
+    public void setup() {
+        List<McpMessageDto> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(McpMessageDto.builder()
+                    .role(i % 2 == 0 ? "user" : "assistant")
+                    .content("MCP (Model Context Protocol) 是一种开放的通信协议，旨在标准化大模型应用开发。" + i)
+                    .build());
+        }
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("streamMode", "delta");
+        request = McpRequest.builder()
+                .sessionId("0f8fad5b-d9cb-469f-a165-70867728950e")
+                .model("gpt-3.5-turbo")
+                .messages(messages)
+                .systemPrompt("你是一个乐于助人的助手。")
+                .temperature(0.7f)
+                .maxTokens(1024)
+                .stream(true)
+                .parameters(parameters)
+                .build();
+        response = McpResponse.builder()
+                .sessionId(request.getSessionId())
+                .message(McpMessageDto.builder()
+                        .id("42")
+                        .role("assistant")
+                        .content("感谢您使用MCP流式响应功能。Model Context Protocol (MCP) 是一种标准化的大模型应用开发协议。")
+                        .timestamp(System.currentTimeMillis())
+                        .sequence(7)
+                        .build())
+                .model("gpt-3.5-turbo")
+                .done(false)
+                .requestId("6fa459ea-ee8a-3ca4-894e-db77e160355e")
+                .build();
+    }
+
+    @Benchmark
+    public String fastjsonRequest() {
+        return JSON.toJSONString(request);
+    }
+
+    @Benchmark
+    public String jacksonRequest() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(request);
+    }
+
+    @Benchmark
+    public String fastjsonResponse() {
+        return JSON.toJSONString(response);
+    }
+
+    @Benchmark
+    public String jacksonResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(response);
+    }
+}
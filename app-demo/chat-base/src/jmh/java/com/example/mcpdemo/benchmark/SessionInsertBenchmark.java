@@ -0,0 +1,120 @@
+package com.example.mcpdemo.benchmark;
+
+import com.example.mcpdemo.service.support.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 会话主键插入吞吐：随机UUID与按时间递增ID分别作为 varchar 主键，每次批量插入 BATCH 行，结果为每秒行数。
+ * 表中先预置 preload 行，使B+树足够大。默认用内存H2，可用 -p jdbcUrl=jdbc:mysql://host/db?user=... 对真实的InnoDB测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SessionInsertBenchmark {
+
+    private static final int BATCH = 500;
+
+    @Param({"uuid", "timeOrdered"})
+    private String idType;
+
+    @Param({"200000"})
+    private int preload;
+
+    @Param({"jdbc:h2:mem:insert;DB_CLOSE_DELAY=-1"})
+    private String jdbcUrl;
+
+    private Supplier<String> ids;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        IdGenerator idGenerator = new IdGenerator(1);
+        ids = "uuid".equals(idType) ? () -> UUID.randomUUID().toString() : idGenerator::nextId;
+        try (Connection connection = DriverManager.getConnection(jdbcUrl);
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_session");
+            statement.execute("CREATE TABLE bench_session (id varchar(255) NOT NULL, user_id varchar(255) NOT NULL, "
+                    + "create_time timestamp NOT NULL, title varchar(255), PRIMARY KEY (id))");
+            connection.setAutoCommit(false);
+            for (int i = 0; i < preload; i += BATCH) {
+                insert(connection);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl);
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_session");
+        }
+    }
+
+    /**
+     * 每个线程一个连接
+     */
+    @State(Scope.Thread)
+    public static class ThreadConnection {
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void open(SessionInsertBenchmark benchmark) throws SQLException {
+            connection = DriverManager.getConnection(benchmark.jdbcUrl);
+            connection.setAutoCommit(false);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            connection.close();
+        }
+    }
+
+    private void insert(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO bench_session (id, user_id, create_time, title) VALUES (?, ?, ?, ?)")) {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            for (int i = 0; i < BATCH; i++) {
+                ps.setString(1, ids.get());
+                ps.setString(2, "anonymous");
+                ps.setTimestamp(3, now);
+                ps.setString(4, "新对话");
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        connection.commit();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insertBatch(ThreadConnection thread) throws SQLException {
+        insert(thread.connection);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH)
+    public void insertBatchConcurrent(ThreadConnection thread) throws SQLException {
+        insert(thread.connection);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.mcpdemo.benchmark;
+
+import com.example.mcpdemo.dto.McpMessageDto;
+import com.example.mcpdemo.dto.McpResponse;
+import com.example.mcpdemo.dto.McpStreamDelta;
+import com.example.mcpdemo.service.support.IdGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * chatStream 一轮回复的帧构建与序列化：原累计模式每片发送到目前为止的全文（McpResponse + 请求ID），
+ * 增量模式只发送新增文本（McpStreamDelta），两种模式最后都发送一帧完整回复。
+ * 按 SseEmitter 的帧格式（id/event/data）用 Jackson 写出，耗时即每轮序列化CPU，
+ * 每轮写出的字节数 = 辅助计数 wireBytes / turns
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StreamModeBenchmark {
+
+    private static final String SESSION_ID = "0f8fad5b-d9cb-469f-a165-70867728950e";
+    private static final String MODEL = "gpt-3.5-turbo";
+
+    /**
+     * 回复长度（字符），每片8个字符
+     */
+    @Param({"1000", "16000"})
+    private int length;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final IdGenerator idGenerator = new IdGenerator(1);
+
+    private List<String> chunks;
+
+    @Setup
+    public void setup() {
+        String sentence = "感谢您使用MCP流式响应功能。Model Context Protocol (MCP) is a standard protocol for building LLM apps. ";
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.append(sentence);
+        }
+        String text = sb.substring(0, length);
+        chunks = new ArrayList<>();
+        for (int start = 0; start < text.length(); start += 8) {
+            chunks.add(text.substring(start, Math.min(start + 8, text.length())));
+        }
+    }
+
+    @Benchmark
+    public long cumulative(Wire wire) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        StringBuilder fullResponse = new StringBuilder();
+        long id = 0;
+        for (String chunk : chunks) {
+            fullResponse.append(chunk);
+            writeFrame(out, id++, null, McpResponse.builder()
+                    .sessionId(SESSION_ID)
+                    .message(McpMessageDto.builder()
+                            .role("assistant")
+                            .content(fullResponse.toString())
+                            .timestamp(System.currentTimeMillis())
+                            .build())
+                    .model(MODEL)
+                    .done(false)
+                    .requestId(idGenerator.nextId())
+                    .build());
+        }
+        writeFrame(out, id, null, finalResponse(fullResponse));
+        wire.record(out.count);
+        return out.count;
+    }
+
+    @Benchmark
+    public long delta(Wire wire) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        StringBuilder fullResponse = new StringBuilder();
+        int index = 0;
+        for (String chunk : chunks) {
+            fullResponse.append(chunk);
+            writeFrame(out, index, "delta", new McpStreamDelta(index, chunk));
+            index++;
+        }
+        writeFrame(out, index, "done", finalResponse(fullResponse));
+        wire.record(out.count);
+        return out.count;
+    }
+
+    // 辅助方法 - 结束帧：完整回复
+    private McpResponse finalResponse(StringBuilder fullResponse) {
+        return McpResponse.builder()
+                .sessionId(SESSION_ID)
+                .message(McpMessageDto.builder()
+                        .id("42")
+                        .role("assistant")
+                        .content(fullResponse.toString())
+                        .timestamp(System.currentTimeMillis())
+                        .sequence(2)
+                        .build())
+                .model(MODEL)
+                .done(true)
+                .requestId(idGenerator.nextId())
+                .usageTokens(fullResponse.length() / 4)
+                .build();
+    }
+
+    // 辅助方法 - 与 SseEmitter 相同的帧格式
+    private void writeFrame(CountingOutputStream out, long id, String name, Object data) throws IOException {
+        StringBuilder header = new StringBuilder("id:").append(id).append('\n');
+        if (name != null) {
+            header.append("event:").append(name).append('\n');
+        }
+        header.append("data:");
+        out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        objectMapper.writeValue(out, data);
+        out.write('\n');
+        out.write('\n');
+    }
+
+    /**
+     * 写出的字节数与轮数之和，随结果一起输出
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Wire {
+        public long wireBytes;
+        public long turns;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+            turns = 0;
+        }
+
+        void record(long bytes) {
+            wireBytes += bytes;
+            turns++;
+        }
+    }
+
+    /**
+     * 只计数不保存的输出流，代替连接
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.mcpdemo.dto;
+
+import com.example.mcpdemo.entity.McpMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 消息实体转DTO（{@link McpMessageDto#from}）：单条转换及一页历史（50条）的批量转换
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConvertToDtoBenchmark {
+
+    private McpMessage message;
+    private List<McpMessage> page;
+
+    @Setup
+    public void setup() {
+        page = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            page.add(McpMessage.builder()
+                    .id((long) i)
+                    .sessionId("0f8fad5b-d9cb-469f-a165-70867728950e")
+                    .role(i % 2 == 0 ? "user" : "assistant")
+                    .content("MCP协议的主要特点和优势包括：统一接口、上下文管理、多模型兼容。" + i)
+                    .createTime(new Date())
+                    .model("gpt-3.5-turbo")
+                    .sequence(i + 1)
+                    .tokenCount(32)
+                    .build());
+        }
+        message = page.get(0);
+    }
+
+    @Benchmark
+    public McpMessageDto single() {
+        return McpMessageDto.from(message);
+    }
+
+    @Benchmark
+    public List<McpMessageDto> page() {
+        return page.stream().map(McpMessageDto::from).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.mcpdemo.provider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 流式分片：原 sendStreamResponse 中每次请求执行的后行断言正则切分 + 随机合并，
+ * 与当前模拟提供方的定长切分对比；另测预编译正则，区分编译与匹配的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChunkingBenchmark {
+
+    private static final Pattern WHITESPACE_LOOKBEHIND = Pattern.compile("(?<=\\s)");
+
+    /**
+     * 回复长度（字符）
+     */
+    @Param({"160", "4000"})
+    private int length;
+
+    private String text;
+
+    @Setup
+    public void setup() {
+        String sentence = "感谢您使用MCP流式响应功能。Model Context Protocol (MCP) is a standard protocol for building LLM apps. ";
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.append(sentence);
+        }
+        text = sb.substring(0, length);
+    }
+
+    @Benchmark
+    public List<String> regexSplit() {
+        return merge(text.split("(?<=\\s)"));
+    }
+
+    @Benchmark
+    public List<String> precompiledRegexSplit() {
+        return merge(WHITESPACE_LOOKBEHIND.split(text));
+    }
+
+    @Benchmark
+    public List<String> fixedSizeSplit() {
+        return TextChunker.split(text, 8);
+    }
+
+    // 原实现：累计到至少5个字符后以30%概率切出一片
+    private List<String> merge(String[] words) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (String word : words) {
+            sb.append(word);
+            if (sb.length() >= 5 && random.nextDouble() > 0.7) {
+                chunks.add(sb.toString());
+                sb = new StringBuilder();
+            }
+        }
+        if (sb.length() > 0) {
+            chunks.add(sb.toString());
+        }
+        return chunks;
+    }
+}
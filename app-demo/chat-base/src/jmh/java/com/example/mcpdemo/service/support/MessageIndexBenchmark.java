@@ -0,0 +1,115 @@
+package com.example.mcpdemo.service.support;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全文索引：单条消息分词耗时，以及在合并后的大段上按用户查询（常见词、罕见词、中文短语）的耗时。
+ * docs 条消息平均分给 users 个用户，users=1 即单个用户拥有全部消息的最坏情况
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageIndexBenchmark {
+
+    private static final String[] PHRASES = {
+            "数据库索引", "连接池", "消息队列", "分布式事务", "缓存穿透", "限流", "垃圾回收", "线程池",
+            "会话管理", "流式响应", "上下文窗口", "模型提供方", "序列化", "压缩存储", "冷数据归档"
+    };
+
+    private static final String[] WORDS = {
+            "kafka", "redis", "mysql", "spring", "netty", "partition", "replica", "latency",
+            "throughput", "index", "query", "cache", "stream", "token", "model", "session"
+    };
+
+    @Param({"100000", "1000000"})
+    private int docs;
+
+    @Param({"1", "100"})
+    private int users;
+
+    private final SearchTokenizer tokenizer = new SearchTokenizer();
+
+    private IndexSegment segment;
+    private String message;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        IndexSegment.Builder builder = new IndexSegment.Builder();
+        for (int doc = 0; doc < docs; doc++) {
+            String text = randomMessage(random);
+            String userId = "user-" + (doc % users);
+            List<String> keys = new ArrayList<>();
+            for (String term : tokenizer.indexTerms(text)) {
+                keys.add(userId + '\u0000' + term);
+            }
+            builder.add("session-" + (doc / 20), doc % 20, doc, keys);
+        }
+        segment = builder.freeze(0);
+        message = randomMessage(random);
+    }
+
+    private static String randomMessage(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            sb.append(random.nextBoolean() ? PHRASES[random.nextInt(PHRASES.length)] : WORDS[random.nextInt(WORDS.length)])
+                    .append(random.nextInt(4) == 0 ? "，" : " ");
+        }
+        // 罕见词：约千分之一的消息包含
+        if (random.nextInt(1000) == 0) {
+            sb.append("zookeeper");
+        }
+        return sb.toString();
+    }
+
+    private List<Integer> search(String query, int limit) {
+        List<String> keys = new ArrayList<>();
+        for (String term : tokenizer.queryTerms(query)) {
+            keys.add("user-0" + '\u0000' + term);
+        }
+        List<Integer> hits = new ArrayList<>();
+        segment.search(keys, (s, doc) -> {
+            hits.add(doc);
+            return hits.size() < limit;
+        });
+        return hits;
+    }
+
+    @Benchmark
+    public Set<String> tokenize() {
+        return tokenizer.indexTerms(message);
+    }
+
+    @Benchmark
+    public List<Integer> commonTerms() {
+        return search("kafka latency", 20);
+    }
+
+    @Benchmark
+    public List<Integer> rareTerm() {
+        return search("zookeeper", 20);
+    }
+
+    @Benchmark
+    public List<Integer> cjkPhrase() {
+        return search("分布式事务 线程池", 20);
+    }
+
+    @Benchmark
+    public List<Integer> noMatch() {
+        return search("kafka 不存在的词", 20);
+    }
+}
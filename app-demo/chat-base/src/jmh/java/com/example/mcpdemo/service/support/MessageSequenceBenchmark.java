@@ -0,0 +1,164 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息序号分配后插入一条消息的吞吐：原做法每次插入前对会话做 COUNT(*)，当前做法由 {@link MessageSequenceAllocator}
+ * 在内存中分配（只在首次使用时查一次 MAX(sequence)）。每个会话预置 messages 条消息，插入在 SESSIONS 个会话间轮转，
+ * 每轮测量前删掉上一轮插入的消息并清空计数器。表结构与 mcp_message 的 (session_id, sequence) 唯一索引一致。
+ * 默认用内存H2，可用 -p jdbcUrl=jdbc:mysql://host/db?user=... 对真实的InnoDB测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MessageSequenceBenchmark {
+
+    private static final int SESSIONS = 20;
+    private static final int BATCH = 500;
+
+    @Param({"100", "1000", "10000"})
+    private int messages;
+
+    @Param({"jdbc:h2:mem:sequence;DB_CLOSE_DELAY=-1"})
+    private String jdbcUrl;
+
+    private Connection connection;
+    private PreparedStatement count;
+    private PreparedStatement insert;
+    private MessageSequenceAllocator allocator;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        connection = DriverManager.getConnection(jdbcUrl);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_message");
+            statement.execute("CREATE TABLE bench_message (id bigint NOT NULL AUTO_INCREMENT, session_id varchar(64) NOT NULL, "
+                    + "sequence int NOT NULL, role varchar(20) NOT NULL, content text NOT NULL, PRIMARY KEY (id))");
+            statement.execute("CREATE UNIQUE INDEX uk_bench_session_sequence ON bench_message (session_id, sequence)");
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement preload = connection.prepareStatement(
+                "INSERT INTO bench_message (session_id, sequence, role, content) VALUES (?, ?, 'user', 'preloaded message')")) {
+            for (int session = 0; session < SESSIONS; session++) {
+                for (int sequence = 0; sequence < messages; sequence++) {
+                    preload.setString(1, sessionId(session));
+                    preload.setInt(2, sequence);
+                    preload.addBatch();
+                    if ((sequence + 1) % BATCH == 0) {
+                        preload.executeBatch();
+                    }
+                }
+                preload.executeBatch();
+                connection.commit();
+            }
+        }
+        count = connection.prepareStatement("SELECT COUNT(*) FROM bench_message WHERE session_id = ?");
+        insert = connection.prepareStatement(
+                "INSERT INTO bench_message (session_id, sequence, role, content) VALUES (?, ?, 'user', 'benchmark message')");
+
+        allocator = new MessageSequenceAllocator();
+        Field mapper = MessageSequenceAllocator.class.getDeclaredField("messageMapper");
+        mapper.setAccessible(true);
+        mapper.set(allocator, maxSequenceMapper());
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM bench_message WHERE sequence >= ?")) {
+            delete.setInt(1, messages);
+            delete.executeUpdate();
+        }
+        connection.commit();
+        for (int session = 0; session < SESSIONS; session++) {
+            allocator.evict(sessionId(session));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_message");
+        }
+        connection.close();
+    }
+
+    /**
+     * 原做法：COUNT(*) 作为新消息的序号
+     */
+    @Benchmark
+    public void countThenInsert() throws SQLException {
+        String sessionId = nextSession();
+        count.setString(1, sessionId);
+        int sequence;
+        try (ResultSet rs = count.executeQuery()) {
+            rs.next();
+            sequence = rs.getInt(1);
+        }
+        insert(sessionId, sequence);
+    }
+
+    /**
+     * 当前做法：内存计数器分配序号
+     */
+    @Benchmark
+    public void allocateThenInsert() throws SQLException {
+        String sessionId = nextSession();
+        insert(sessionId, allocator.next(sessionId));
+    }
+
+    private void insert(String sessionId, int sequence) throws SQLException {
+        insert.setString(1, sessionId);
+        insert.setInt(2, sequence);
+        insert.executeUpdate();
+        connection.commit();
+    }
+
+    private String nextSession() {
+        next = (next + 1) % SESSIONS;
+        return sessionId(next);
+    }
+
+    private static String sessionId(int session) {
+        return "session-" + session;
+    }
+
+    // 辅助方法 - 只实现 findMaxSequence 的映射器，供分配器首次使用时加载初始值
+    private McpMessageMapper maxSequenceMapper() {
+        return (McpMessageMapper) Proxy.newProxyInstance(McpMessageMapper.class.getClassLoader(),
+                new Class<?>[]{McpMessageMapper.class}, (proxy, method, args) -> {
+                    if (!"findMaxSequence".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    try (PreparedStatement max = connection.prepareStatement(
+                            "SELECT MAX(sequence) FROM bench_message WHERE session_id = ?")) {
+                        max.setString(1, (String) args[0]);
+                        try (ResultSet rs = max.executeQuery()) {
+                            rs.next();
+                            int value = rs.getInt(1);
+                            return rs.wasNull() ? null : value;
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.mcpdemo.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个操作的耗时与结果统计
+ * <p>
+ * 保存全部样本（纳秒）用于精确计算分位数；压测时长内的样本量很小，无需直方图近似。
+ */
+public class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int size;
+
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 记录一次成功操作
+     *
+     * @param nanos 耗时（纳秒）
+     */
+    public synchronized void record(long nanos) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    /**
+     * 记录一次失败（网络错误、非2xx响应或响应中带error字段）
+     */
+    public void error() {
+        errors.increment();
+    }
+
+    /**
+     * 记录一次被准入控制拒绝（429）
+     */
+    public void rejected() {
+        rejected.increment();
+    }
+
+    /**
+     * 汇总统计
+     *
+     * @param elapsedMillis 统计窗口时长（毫秒），用于计算吞吐
+     * @return 统计信息，耗时单位为毫秒
+     */
+    public Map<String, Object> summary(long elapsedMillis) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, size);
+        }
+        Arrays.sort(sorted);
+
+        long ok = sorted.length;
+        long failed = errors.sum();
+        long refused = rejected.sum();
+        long total = ok + failed + refused;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", total);
+        summary.put("success", ok);
+        summary.put("errors", failed);
+        summary.put("rejected", refused);
+        summary.put("errorRate", total == 0 ? 0.0 : (double) (failed + refused) / total);
+        summary.put("throughput", elapsedMillis == 0 ? 0.0 : ok * 1000.0 / elapsedMillis);
+        summary.put("mean", ok == 0 ? 0.0 : millis(Arrays.stream(sorted).sum() / ok));
+        summary.put("p50", percentile(sorted, 0.50));
+        summary.put("p95", percentile(sorted, 0.95));
+        summary.put("p99", percentile(sorted, 0.99));
+        summary.put("max", ok == 0 ? 0.0 : millis(sorted[sorted.length - 1]));
+        return summary;
+    }
+
+    // 辅助方法 - 最近秩法计算分位数
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return millis(sorted[Math.max(0, rank - 1)]);
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+}
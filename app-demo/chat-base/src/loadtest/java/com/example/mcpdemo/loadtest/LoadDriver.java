@@ -0,0 +1,368 @@
+package com.example.mcpdemo.loadtest;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.example.mcpdemo.McpDemoApplication;
+import com.example.mcpdemo.service.support.ReadRouter;
+import com.example.mcpdemo.service.support.ShardRebalancer;
+import com.example.mcpdemo.service.support.ShardRouter;
+import com.example.mcpdemo.service.support.StreamHub;
+import lombok.Data;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * 压测驱动
+ * <p>
+ * 以 loadtest profile（嵌入式H2，MySQL兼容模式）在随机端口启动应用，由N个并发模拟用户
+ * 循环执行创建会话、chat 与 chatStream（可选穿插查看历史），预热结束后开始计数，结束时输出吞吐、p50/p95/p99、
+ * 流式首字节时间、错误率、计数期间主库连接池占用（每10ms采样活跃连接数）、堆内存与同时打开的流数，
+ * 以及读写分离、分表统计的JSON报告。
+ * <p>
+ * 堆内存在压测开始前和计数期间的1/4、1/2、3/4处各触发一次GC后采样，与此时服务端的流订阅者数一起估算每个流占用的堆
+ * （应用与驱动在同一进程，增量里也包含会话缓存等随负载增长的部分，按上限理解）以及每GB堆可承载的流数。
+ * <p>
+ * 参数形如 --users=50，未识别的参数原样传给应用（如 --mcp.server.journal.enabled=true）：
+ * <ul>
+ *     <li>users：并发用户数</li>
+ *     <li>warmup / duration：预热与计数时长（秒）</li>
+ *     <li>stream-ratio：chatStream 占对话请求的比例</li>
+ *     <li>turns-per-session：每个会话的对话轮数，之后新建会话</li>
+ *     <li>history-ratio：每轮对话后查看一次历史消息的概率（随机选本用户已结束的会话）</li>
+ *     <li>rebalance-to：大于0时在计数中途触发在线重新分片到该表数（需启用 mcp.server.sharding）</li>
+ *     <li>reactive：true 时同时启用 reactive profile（WebFlux）</li>
+ *     <li>report：报告输出路径</li>
+ * </ul>
+ */
+public class LoadDriver {
+
+    private static final int MEMORY_SAMPLES = 3;
+    private static final long BYTES_PER_GB = 1024L * 1024 * 1024;
+
+    private final Options options;
+    private final DataSource dataSource;
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+
+    // 计数期间连接池活跃连接数采样
+    private final AtomicInteger poolPeak = new AtomicInteger();
+    private final AtomicLong poolSum = new AtomicLong();
+    private final AtomicLong poolSamples = new AtomicLong();
+
+    // 服务端当前的流订阅者数（SseEmitter或Flux），按响应头到达计数的客户端在响应式模式下会偏少
+    private final IntSupplier openStreams;
+    private final List<Map<String, Object>> memorySamples = new ArrayList<>();
+    private long baselineHeap;
+
+    private volatile boolean running = true;
+    private volatile boolean recording;
+
+    public LoadDriver(Options options, DataSource dataSource, IntSupplier openStreams) {
+        this.options = options;
+        this.dataSource = dataSource;
+        this.openStreams = openStreams;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (!options.apply(arg)) {
+                appArgs.add(arg);
+            }
+        }
+        appArgs.add("--spring.profiles.active=" + (options.isReactive() ? "loadtest,reactive" : "loadtest"));
+
+        ConfigurableApplicationContext context = SpringApplication.run(McpDemoApplication.class, appArgs.toArray(new String[0]));
+        int exitCode = 0;
+        try {
+            String port = context.getEnvironment().getProperty("local.server.port");
+            // 启用只读副本时 DataSource 为路由数据源，采样主库连接池
+            DataSource primary = context.getBeansOfType(DruidDataSource.class).values().stream()
+                    .findFirst()
+                    .map(DataSource.class::cast)
+                    .orElseGet(() -> context.getBean(DataSource.class));
+            StreamHub streamHub = context.getBean(StreamHub.class);
+            Map<String, Object> report = new LoadDriver(options, primary, () -> (int) streamHub.stats().get("subscribers"))
+                    .run("http://localhost:" + port);
+            report.put("readRouting", context.getBean(ReadRouter.class).stats());
+            report.put("sharding", shardingReport(context));
+            String json = JSON.toJSONString(report, SerializerFeature.PrettyFormat);
+            Path path = Paths.get(options.getReport());
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+            System.out.println(json);
+            System.out.println("Report written to " + path.toAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * 执行压测
+     *
+     * @param baseUrl 应用地址
+     * @return 报告
+     */
+    public Map<String, Object> run(String baseUrl) throws InterruptedException {
+        baselineHeap = liveHeap();
+        ExecutorService users = Executors.newFixedThreadPool(options.getUsers());
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (int i = 0; i < options.getUsers(); i++) {
+            users.submit(new SimulatedUser(this, client, baseUrl, "load-user-" + i));
+        }
+
+        System.out.printf("Warming up %d users for %ds%n", options.getUsers(), options.getWarmup());
+        TimeUnit.SECONDS.sleep(options.getWarmup());
+        recorders.clear();
+        recording = true;
+        long start = System.currentTimeMillis();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(this::samplePool, 0, 10, TimeUnit.MILLISECONDS);
+
+        System.out.printf("Measuring for %ds%n", options.getDuration());
+        // 计数时长分为4段，段间采样堆内存，中点触发重新分片
+        long segment = options.getDuration() * 1000L / (MEMORY_SAMPLES + 1);
+        for (int i = 1; i <= MEMORY_SAMPLES; i++) {
+            TimeUnit.MILLISECONDS.sleep(segment);
+            sampleMemory();
+            if (i == (MEMORY_SAMPLES + 1) / 2 && options.getRebalanceTo() > 0) {
+                rebalance(client, baseUrl);
+            }
+        }
+        TimeUnit.MILLISECONDS.sleep(options.getDuration() * 1000L - segment * MEMORY_SAMPLES);
+        recording = false;
+        sampler.shutdownNow();
+        long elapsed = System.currentTimeMillis() - start;
+
+        running = false;
+        users.shutdown();
+        if (!users.awaitTermination(options.getRequestTimeout(), TimeUnit.SECONDS)) {
+            users.shutdownNow();
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options);
+        report.put("elapsedMillis", elapsed);
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (String name : new String[]{"createSession", "chat", "chatStream", "streamTtfb", "history"}) {
+            operations.put(name, recorder(name).summary(elapsed));
+        }
+        report.put("operations", operations);
+        report.put("dbPool", poolSummary());
+        report.put("memory", memorySummary());
+        return report;
+    }
+
+    public Options getOptions() {
+        return options;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public LatencyRecorder recorder(String name) {
+        return recorders.computeIfAbsent(name, k -> new LatencyRecorder());
+    }
+
+    // 辅助方法 - 在压测进行中触发重新分片
+    private void rebalance(HttpClient client, String baseUrl) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/mcp/shards/rebalance?tables=" + options.getRebalanceTo()))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        try {
+            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            System.out.printf("Rebalance to %d tables requested: HTTP %d%n", options.getRebalanceTo(), status);
+        } catch (IOException e) {
+            System.out.println("Rebalance request failed: " + e.getMessage());
+        }
+    }
+
+    // 辅助方法 - 等待进行中的重新分片结束后汇总分表统计
+    private static Map<String, Object> shardingReport(ConfigurableApplicationContext context) throws InterruptedException {
+        Map<String, Object> sharding = context.getBean(ShardRouter.class).stats();
+        if (Boolean.TRUE.equals(sharding.get("enabled"))) {
+            ShardRebalancer rebalancer = context.getBean(ShardRebalancer.class);
+            for (int i = 0; i < 600 && Boolean.TRUE.equals(rebalancer.stats().get("running")); i++) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            sharding = context.getBean(ShardRouter.class).stats();
+            sharding.put("rebalance", rebalancer.stats());
+        }
+        return sharding;
+    }
+
+    // 辅助方法 - 采样连接池当前借出的连接数
+    private void samplePool() {
+        if (!(dataSource instanceof DruidDataSource)) {
+            return;
+        }
+        int active = ((DruidDataSource) dataSource).getActiveCount();
+        poolPeak.accumulateAndGet(active, Math::max);
+        poolSum.addAndGet(active);
+        poolSamples.incrementAndGet();
+    }
+
+    private Map<String, Object> poolSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        if (dataSource instanceof DruidDataSource) {
+            summary.put("maxActive", ((DruidDataSource) dataSource).getMaxActive());
+        }
+        long samples = poolSamples.get();
+        summary.put("samples", samples);
+        summary.put("peakActive", poolPeak.get());
+        summary.put("meanActive", samples == 0 ? 0 : Math.round(poolSum.get() * 100.0 / samples) / 100.0);
+        return summary;
+    }
+
+    // 辅助方法 - GC后的堆占用，近似存活对象大小
+    private static long liveHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private void sampleMemory() {
+        int streams = openStreams.getAsInt();
+        long heap = liveHeap();
+        Map<String, Object> sample = new LinkedHashMap<>();
+        sample.put("openStreams", streams);
+        sample.put("heapMb", heap / (1024 * 1024));
+        sample.put("threads", ManagementFactory.getThreadMXBean().getThreadCount());
+        long perStream = streams == 0 ? 0 : Math.max(0, heap - baselineHeap) / streams;
+        sample.put("heapPerStreamKb", perStream / 1024);
+        sample.put("streamsPerGb", perStream == 0 ? 0 : BYTES_PER_GB / perStream);
+        memorySamples.add(sample);
+    }
+
+    // 辅助方法 - 每GB堆可承载的流数取有流的各次采样的中位数
+    private Map<String, Object> memorySummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("baselineHeapMb", baselineHeap / (1024 * 1024));
+        summary.put("maxHeapMb", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax() / (1024 * 1024));
+        summary.put("samples", memorySamples);
+        long[] perGb = memorySamples.stream()
+                .mapToLong(sample -> (long) sample.get("streamsPerGb"))
+                .filter(value -> value > 0)
+                .sorted()
+                .toArray();
+        summary.put("streamsPerGb", perGb.length == 0 ? 0 : perGb[perGb.length / 2]);
+        return summary;
+    }
+
+    // 预热阶段的结果不计入报告
+    void record(LatencyRecorder recorder, long nanos) {
+        if (recording) {
+            recorder.record(nanos);
+        }
+    }
+
+    void error(LatencyRecorder recorder) {
+        if (recording) {
+            recorder.error();
+        }
+    }
+
+    void rejected(LatencyRecorder recorder) {
+        if (recording) {
+            recorder.rejected();
+        }
+    }
+
+    /**
+     * 压测参数
+     */
+    @Data
+    public static class Options {
+        private int users = 50;
+        private int warmup = 5;
+        private int duration = 30;
+        private double streamRatio = 0.5;
+        private int turnsPerSession = 10;
+        private double historyRatio = 0;
+        private int rebalanceTo = 0;
+        private int requestTimeout = 60;
+        private boolean reactive = false;
+        private String report = "target/loadtest-report.json";
+
+        // 辅助方法 - 解析 --key=value，返回是否为压测参数
+        private boolean apply(String arg) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                return false;
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (key) {
+                case "users":
+                    users = Integer.parseInt(value);
+                    return true;
+                case "warmup":
+                    warmup = Integer.parseInt(value);
+                    return true;
+                case "duration":
+                    duration = Integer.parseInt(value);
+                    return true;
+                case "stream-ratio":
+                    streamRatio = Double.parseDouble(value);
+                    return true;
+                case "turns-per-session":
+                    turnsPerSession = Integer.parseInt(value);
+                    return true;
+                case "history-ratio":
+                    historyRatio = Double.parseDouble(value);
+                    return true;
+                case "rebalance-to":
+                    rebalanceTo = Integer.parseInt(value);
+                    return true;
+                case "request-timeout":
+                    requestTimeout = Integer.parseInt(value);
+                    return true;
+                case "reactive":
+                    reactive = Boolean.parseBoolean(value);
+                    return true;
+                case "report":
+                    report = value;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+}
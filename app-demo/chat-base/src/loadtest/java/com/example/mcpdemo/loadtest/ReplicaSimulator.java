@@ -0,0 +1,178 @@
+package com.example.mcpdemo.loadtest;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.example.mcpdemo.config.McpConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测用的模拟复制：每隔 loadtest.replica-sync-interval 毫秒把主库的心跳、会话与新增消息合并到各只读副本库，
+ * 间隔即复制延迟。副本库启动时按压测表结构建表，用于在两个内存H2上验证读写分离与延迟回退。
+ * <p>
+ * 消息按自增ID增量复制，主库上被删除的消息（如生成失败的补偿）不会同步到副本。
+ */
+@Component
+@ConditionalOnProperty(name = "loadtest.replica-sync-interval")
+@Slf4j
+public class ReplicaSimulator {
+
+    @Autowired
+    private DruidDataSource primaryDataSource;
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Value("${loadtest.replica-sync-interval}")
+    private long interval;
+
+    @Value("${spring.datasource.username:}")
+    private String defaultUsername;
+
+    @Value("${spring.datasource.password:}")
+    private String defaultPassword;
+
+    private final List<Connection> replicas = new ArrayList<>();
+    // 独立线程复制，不占用应用的定时任务线程
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "replica-simulator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 已复制到的最大消息ID
+    private long lastMessageId;
+
+    @PostConstruct
+    public void init() throws SQLException {
+        for (McpConfig.Replica replica : mcpConfig.getReadReplica().getReplicas()) {
+            boolean own = replica.getUsername() != null && !replica.getUsername().isEmpty();
+            Connection connection = DriverManager.getConnection(replica.getUrl(),
+                    own ? replica.getUsername() : defaultUsername, own ? replica.getPassword() : defaultPassword);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("RUNSCRIPT FROM 'classpath:db/schema-h2.sql'");
+            }
+            connection.setAutoCommit(false);
+            replicas.add(connection);
+        }
+    }
+
+    // 主库表结构在数据源初始化之后才创建，应用就绪后再开始复制
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::sync, 0, interval, TimeUnit.MILLISECONDS);
+        log.warn("Simulating replication to {} replicas every {}ms", replicas.size(), interval);
+    }
+
+    private void sync() {
+        // 与真实复制一样不经过应用连接池
+        try (Connection source = DriverManager.getConnection(primaryDataSource.getUrl(), defaultUsername, defaultPassword)) {
+            // 心跳最先读取，测得的延迟不小于数据实际落后的时间
+            Snapshot heartbeat = read(source, "SELECT * FROM mcp_heartbeat");
+            Snapshot sessions = read(source, "SELECT * FROM mcp_session");
+            Snapshot messages = read(source, "SELECT * FROM mcp_message WHERE id > " + lastMessageId + " ORDER BY id");
+            for (Connection replica : replicas) {
+                try {
+                    merge(replica, "mcp_heartbeat", heartbeat);
+                    merge(replica, "mcp_session", sessions);
+                    merge(replica, "mcp_message", messages);
+                    replica.commit();
+                } catch (SQLException e) {
+                    replica.rollback();
+                    throw e;
+                }
+            }
+            if (!messages.rows.isEmpty()) {
+                Object[] last = messages.rows.get(messages.rows.size() - 1);
+                lastMessageId = ((Number) last[messages.indexOf("id")]).longValue();
+            }
+        } catch (Exception e) {
+            log.warn("Replica sync failed: {}", e.getMessage());
+        }
+    }
+
+    private Snapshot read(Connection source, String sql) throws SQLException {
+        Snapshot snapshot = new Snapshot();
+        try (Statement statement = source.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            ResultSetMetaData meta = rs.getMetaData();
+            snapshot.columns = new String[meta.getColumnCount()];
+            for (int i = 0; i < snapshot.columns.length; i++) {
+                snapshot.columns[i] = meta.getColumnName(i + 1).toLowerCase();
+            }
+            while (rs.next()) {
+                Object[] row = new Object[snapshot.columns.length];
+                for (int i = 0; i < row.length; i++) {
+                    Object value = rs.getObject(i + 1);
+                    row[i] = value instanceof Blob ? ((Blob) value).getBytes(1, (int) ((Blob) value).length()) : value;
+                }
+                snapshot.rows.add(row);
+            }
+        }
+        return snapshot;
+    }
+
+    // 辅助方法 - 按主键合并写入副本
+    private void merge(Connection replica, String table, Snapshot snapshot) throws SQLException {
+        if (snapshot.rows.isEmpty()) {
+            return;
+        }
+        String sql = "MERGE INTO " + table + " (" + String.join(", ", snapshot.columns) + ") KEY (id) VALUES ("
+                + String.join(", ", Collections.nCopies(snapshot.columns.length, "?")) + ")";
+        try (PreparedStatement statement = replica.prepareStatement(sql)) {
+            for (Object[] row : snapshot.rows) {
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+        for (Connection replica : replicas) {
+            try {
+                replica.close();
+            } catch (SQLException e) {
+                log.debug("Failed to close replica connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static class Snapshot {
+        private String[] columns;
+        private final List<Object[]> rows = new ArrayList<>();
+
+        private int indexOf(String column) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(column)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException(column);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.mcpdemo.loadtest;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 模拟用户：循环执行 创建会话 -> 若干轮 chat / chatStream，直到压测结束；
+ * 按 history-ratio 在对话后查看本用户某个已结束会话的最近一页消息
+ */
+public class SimulatedUser implements Runnable {
+
+    private static final String[] PROMPTS = {
+            "你好", "什么是MCP？", "介绍一下流式响应", "hello", "请解释一下模型上下文协议的用途"
+    };
+
+    private final LoadDriver driver;
+    private final HttpClient client;
+    private final String baseUrl;
+    private final String userId;
+
+    private String sessionId;
+    private int turns;
+    // 已结束对话的会话
+    private final List<String> pastSessions = new ArrayList<>();
+
+    public SimulatedUser(LoadDriver driver, HttpClient client, String baseUrl, String userId) {
+        this.driver = driver;
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.userId = userId;
+    }
+
+    @Override
+    public void run() {
+        LoadDriver.Options options = driver.getOptions();
+        while (driver.isRunning()) {
+            try {
+                if (sessionId == null || turns >= options.getTurnsPerSession()) {
+                    if (sessionId != null) {
+                        pastSessions.add(sessionId);
+                    }
+                    createSession();
+                    turns = 0;
+                    continue;
+                }
+                if (ThreadLocalRandom.current().nextDouble() < options.getStreamRatio()) {
+                    chatStream();
+                } else {
+                    chat();
+                }
+                turns++;
+                if (ThreadLocalRandom.current().nextDouble() < options.getHistoryRatio()) {
+                    history();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void createSession() throws InterruptedException {
+        Map<String, String> body = new HashMap<>();
+        body.put("userId", userId);
+        LatencyRecorder recorder = driver.recorder("createSession");
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(post("/api/mcp/sessions", JSON.toJSONString(body)),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                sessionId = JSON.parseObject(response.body()).getString("id");
+                driver.record(recorder, System.nanoTime() - start);
+            } else {
+                fail(recorder, response.statusCode());
+            }
+        } catch (IOException e) {
+            driver.error(recorder);
+        }
+    }
+
+    private void chat() throws InterruptedException {
+        LatencyRecorder recorder = driver.recorder("chat");
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(post("/api/mcp/chat", chatBody()),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                fail(recorder, response.statusCode());
+            } else if (JSON.parseObject(response.body()).getString("error") != null) {
+                driver.error(recorder);
+            } else {
+                driver.record(recorder, System.nanoTime() - start);
+            }
+        } catch (IOException e) {
+            driver.error(recorder);
+        }
+    }
+
+    private void chatStream() throws InterruptedException {
+        LatencyRecorder recorder = driver.recorder("chatStream");
+        long start = System.nanoTime();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/mcp/chat/stream"))
+                    .timeout(Duration.ofSeconds(driver.getOptions().getRequestTimeout()))
+                    .header("Content-Type", "application/json")
+                    .header("Accept", "text/event-stream")
+                    .POST(HttpRequest.BodyPublishers.ofString(chatBody()))
+                    .build();
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                fail(recorder, response.statusCode());
+                return;
+            }
+
+            boolean first = true;
+            boolean failed = false;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith("data:")) {
+                        continue;
+                    }
+                    if (first) {
+                        driver.record(driver.recorder("streamTtfb"), System.nanoTime() - start);
+                        first = false;
+                    }
+                    String data = line.substring(5).trim();
+                    if (data.startsWith("{")) {
+                        JSONObject frame = JSON.parseObject(data);
+                        failed |= frame.getString("error") != null;
+                    }
+                }
+            }
+            if (first || failed) {
+                driver.error(recorder);
+            } else {
+                driver.record(recorder, System.nanoTime() - start);
+            }
+        } catch (IOException e) {
+            driver.error(recorder);
+        }
+    }
+
+    private void history() throws InterruptedException {
+        String target = pastSessions.isEmpty() ? sessionId
+                : pastSessions.get(ThreadLocalRandom.current().nextInt(pastSessions.size()));
+        LatencyRecorder recorder = driver.recorder("history");
+        long start = System.nanoTime();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/mcp/sessions/" + target + "/messages/page"))
+                    .timeout(Duration.ofSeconds(driver.getOptions().getRequestTimeout()))
+                    .GET()
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                driver.record(recorder, System.nanoTime() - start);
+            } else {
+                fail(recorder, response.statusCode());
+            }
+        } catch (IOException e) {
+            driver.error(recorder);
+        }
+    }
+
+    // 辅助方法 - 429计为拒绝，其他非2xx计为错误
+    private void fail(LatencyRecorder recorder, int status) {
+        if (status == 429) {
+            driver.rejected(recorder);
+        } else {
+            driver.error(recorder);
+        }
+    }
+
+    private String chatBody() {
+        Map<String, Object> message = new HashMap<>();
+        message.put("role", "user");
+        message.put("content", PROMPTS[ThreadLocalRandom.current().nextInt(PROMPTS.length)]);
+        Map<String, Object> body = new HashMap<>();
+        body.put("sessionId", sessionId);
+        body.put("messages", new Object[]{message});
+        return JSON.toJSONString(body);
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(driver.getOptions().getRequestTimeout()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
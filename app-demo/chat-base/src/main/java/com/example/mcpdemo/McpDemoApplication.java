@@ -3,12 +3,14 @@ package com.example.mcpdemo;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.mybatis.spring.annotation.MapperScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * MCP演示应用主启动类
  */
 @SpringBootApplication
 @MapperScan("com.example.mcpdemo.mapper")
+@EnableScheduling
 public class McpDemoApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,42 @@
+package com.example.mcpdemo.config;
+
+import com.example.mcpdemo.mapper.handler.CompressedTextCodec;
+import com.example.mcpdemo.mapper.handler.CompressedTextTypeHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 文本压缩存储配置
+ * <p>
+ * 按 mcp.server.compression 创建 {@link CompressedTextCodec}，并把持有它的类型处理器注册为Bean：
+ * MyBatis-Plus 自动配置会把类型处理器Bean登记到MyBatis配置中，实体字段上声明的处理器类解析到这一实例，
+ * 不再由MyBatis反射创建。
+ */
+@Configuration
+@Slf4j
+public class CompressionConfig {
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    /**
+     * 文本编解码器，消息内容、系统提示与归档共用
+     */
+    @Bean
+    public CompressedTextCodec compressedTextCodec() {
+        McpConfig.Compression config = mcpConfig.getCompression();
+        log.info("Text compression {}, threshold: {} bytes, level: {}",
+                config.isEnabled() ? "enabled" : "disabled", config.getThreshold(), config.getLevel());
+        return new CompressedTextCodec(config.isEnabled(), config.getThreshold(), config.getLevel());
+    }
+
+    /**
+     * 压缩文本类型处理器
+     */
+    @Bean
+    public CompressedTextTypeHandler compressedTextTypeHandler(CompressedTextCodec compressedTextCodec) {
+        return new CompressedTextTypeHandler(compressedTextCodec);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.mcpdemo.config;
+
+import com.example.mcpdemo.service.support.DbTimeTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapper语句耗时统计插件
+ * <p>
+ * 按Mapper和方法记录 mcp.db.query 计时，并累加到当前线程的 {@link DbTimeTracker}。
+ */
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class MapperMetricsInterceptor implements Interceptor {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 语句ID -> 计时器
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            DbTimeTracker.add(elapsed);
+            timerOf(statement).record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // 辅助方法 - 语句ID形如 com.example.mcpdemo.mapper.McpMessageMapper.findTail
+    private Timer timerOf(MappedStatement statement) {
+        return timers.computeIfAbsent(statement.getId(), id -> {
+            int dot = id.lastIndexOf('.');
+            String mapperClass = id.substring(0, dot);
+            return Timer.builder("mcp.db.query")
+                    .description("Mapper statement latency")
+                    .tag("mapper", mapperClass.substring(mapperClass.lastIndexOf('.') + 1))
+                    .tag("method", id.substring(dot + 1))
+                    .tag("type", statement.getSqlCommandType().name().toLowerCase())
+                    .register(meterRegistry);
+        });
+    }
+}
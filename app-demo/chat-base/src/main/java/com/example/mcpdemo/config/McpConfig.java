@@ -6,7 +6,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * MCP配置类
@@ -31,18 +33,640 @@ public class McpConfig {
      */
     private List<String> models = new ArrayList<>();
     
+    /**
+     * 模型 -> 模型提供方名称，未配置的模型使用 defaultProvider
+     */
+    private Map<String, String> modelProviders = new HashMap<>();
+
+    /**
+     * 默认模型提供方
+     */
+    private String defaultProvider = "stub";
+    
     /**
      * 会话超时时间（毫秒）
      */
     private long sessionTimeout = 1800000;
     
     /**
-     * 最大上下文长度
+     * 节点ID（0-65535），写入生成的会话ID与请求ID；-1时按主机名与进程号生成，多实例部署时建议显式配置
+     */
+    private int nodeId = -1;
+    
+    /**
+     * 最大上下文长度（令牌数），组装模型上下文时的预算
      */
     private int maxContextSize = 1000;
+
+    /**
+     * 每个会话在内存环形缓冲中保留的最近消息条数
+     */
+    private int contextWindowCapacity = 64;
+
+    /**
+     * 保留上下文环形缓冲的最大会话数
+     */
+    private int contextWindowSessions = 10000;
     
     /**
-     * 最大会话数
+     * 最大会话数（全局活跃会话上限）
      */
     private int maxSessions = 100;
-} 
\ No newline at end of file
+
+    /**
+     * 消息历史分页默认条数
+     */
+    private int historyPageSize = 50;
+
+    /**
+     * 消息历史分页最大条数
+     */
+    private int historyMaxPageSize = 200;
+
+    /**
+     * 会话列表分页默认条数
+     */
+    private int sessionPageSize = 20;
+
+    /**
+     * 会话列表分页最大条数
+     */
+    private int sessionMaxPageSize = 100;
+
+    /**
+     * 消息写后日志（write-behind）配置
+     */
+    private Journal journal = new Journal();
+
+    /**
+     * 会话缓存配置
+     */
+    private SessionCache sessionCache = new SessionCache();
+
+    /**
+     * 流式响应执行配置
+     */
+    private Stream stream = new Stream();
+
+    /**
+     * 过期会话清理配置
+     */
+    private Purge purge = new Purge();
+
+    /**
+     * 准入控制配置
+     */
+    private Admission admission = new Admission();
+
+    /**
+     * 响应式模式配置
+     */
+    private Reactive reactive = new Reactive();
+
+    /**
+     * 普通对话完成后保存回复的线程池配置
+     */
+    private Persistence persistence = new Persistence();
+
+    /**
+     * 模型回复缓存配置
+     */
+    private ResponseCache responseCache = new ResponseCache();
+
+    /**
+     * 本地模拟模型提供方配置
+     */
+    private StubProvider stubProvider = new StubProvider();
+
+    /**
+     * OpenAI兼容HTTP模型提供方配置
+     */
+    private OpenAiProvider openaiProvider = new OpenAiProvider();
+
+    /**
+     * 消息内容与系统提示词压缩存储配置
+     */
+    private Compression compression = new Compression();
+
+    /**
+     * 冷数据归档配置
+     */
+    private Archive archive = new Archive();
+
+    /**
+     * 消息全文检索配置
+     */
+    private Search search = new Search();
+
+    /**
+     * 只读副本路由配置
+     */
+    private ReadReplica readReplica = new ReadReplica();
+
+    /**
+     * 会话与消息分表配置
+     */
+    private Sharding sharding = new Sharding();
+
+    /**
+     * 消息写后日志配置
+     */
+    @Data
+    public static class Journal {
+        /**
+         * 是否启用异步批量写入，关闭时消息与会话更新同步落库
+         */
+        private boolean enabled = false;
+
+        /**
+         * 缓冲条数达到该值时触发刷盘
+         */
+        private int batchSize = 200;
+
+        /**
+         * 定时刷盘间隔（毫秒）
+         */
+        private long flushInterval = 200;
+
+        /**
+         * 刷盘遇到暂时性错误（如数据库不可用）时保留缓冲并退避重试，退避从 flushInterval 起逐次翻倍，不超过该值（毫秒）
+         */
+        private long maxRetryBackoff = 30000;
+
+        /**
+         * 死信文件：非暂时性错误（如数据超长）的记录与关闭时仍未落库的记录以JSON行追加到该文件，供人工恢复
+         */
+        private String deadLetterFile = "data/journal-dead-letter.jsonl";
+
+        /**
+         * 缓冲记录数上限：达到时拒绝新一轮对话（429），已开始的轮次照常追加；超过两倍时新记录直接写入死信文件
+         */
+        private int maxPending = 10000;
+    }
+
+    /**
+     * 会话缓存配置，过期时间与 sessionTimeout 一致
+     */
+    @Data
+    public static class SessionCache {
+        /**
+         * 是否启用会话缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最大缓存会话数
+         */
+        private int maxSize = 10000;
+    }
+
+    /**
+     * 流式响应执行配置
+     */
+    @Data
+    public static class Stream {
+        /**
+         * 执行模式：POOL（有界平台线程池）、VIRTUAL（虚拟线程，需JDK 21+，否则退回POOL）、
+         * SCHEDULED（定时器驱动，分片之间不占用线程）
+         */
+        private String mode = "POOL";
+
+        /**
+         * POOL模式线程数，SCHEDULED模式定时器线程数
+         */
+        private int poolSize = 32;
+
+        /**
+         * POOL模式等待队列长度
+         */
+        private int queueCapacity = 256;
+
+        /**
+         * VIRTUAL和SCHEDULED模式同时进行中的最大流数量
+         */
+        private int maxInFlight = 5000;
+
+        /**
+         * 关闭时等待进行中流结束的时间（毫秒）
+         */
+        private long shutdownTimeout = 10000;
+
+        /**
+         * 每个会话保留用于断线续传的最近帧数
+         */
+        private int replayBufferSize = 256;
+
+        /**
+         * 生成结束后流缓冲的保留时间（毫秒），期间重连仍可重放
+         */
+        private long replayRetention = 60000;
+
+        /**
+         * 订阅者全部断开后继续生成的宽限期（毫秒），超过后停止生成
+         */
+        private long abandonGrace = 30000;
+
+        /**
+         * 每个订阅者出站队列的最大积压帧数
+         */
+        private int outboundCapacity = 64;
+
+        /**
+         * 出站队列满时的策略：COALESCE（合并积压帧）、DROP_TO_LATEST（丢弃中间帧只保留最新）、DISCONNECT（断开）
+         */
+        private String outboundPolicy = "COALESCE";
+
+        /**
+         * 最旧积压帧的最长等待时间（毫秒），超过后断开该订阅者，客户端可按 Last-Event-ID 续传
+         */
+        private long outboundMaxLag = 15000;
+
+        /**
+         * 滞后巡检间隔（毫秒），生成停止发帧后仍能断开卡住的订阅者
+         */
+        private long lagCheckInterval = 1000;
+
+        /**
+         * 写出线程上限（空闲60秒后回收）。订阅者轮流写出一批帧，线程都在忙时排队；阻塞在慢连接上的写出占住一个线程，
+         * 直到写出超时断开后容器释放连接，按可能同时卡住的慢连接数加上余量设置
+         */
+        private int writerThreads = 32;
+
+        /**
+         * 单帧写出的最长时间（毫秒），超过后断开该订阅者；阻塞的写出线程在容器的写超时（server.tomcat.connection-timeout）后释放
+         */
+        private long writeTimeout = 10000;
+    }
+
+    /**
+     * 过期会话清理配置
+     */
+    @Data
+    public static class Purge {
+        /**
+         * 清理任务执行间隔（毫秒）
+         */
+        private long interval = 3600000;
+
+        /**
+         * 每批删除的会话数
+         */
+        private int chunkSize = 200;
+
+        /**
+         * 批与批之间的暂停时间（毫秒），用于限制删除速率
+         */
+        private long pauseMillis = 100;
+
+        /**
+         * 单次执行最多处理的批数，避免积压时一次运行过久
+         */
+        private int maxChunks = 1000;
+    }
+
+    /**
+     * 准入控制配置，全局会话上限见 maxSessions
+     */
+    @Data
+    public static class Admission {
+        /**
+         * 单个用户的最大活跃会话数
+         */
+        private int maxSessionsPerUser = 20;
+
+        /**
+         * 全局同时进行中的流式响应上限
+         */
+        private int maxConcurrentStreams = 1000;
+
+        /**
+         * 全局活跃会话数从数据库重新统计的间隔（毫秒），期间按本地增减估算
+         */
+        private long sessionCountRefreshInterval = 10000;
+
+        /**
+         * 拒绝时建议客户端重试的等待时间（秒），通过 Retry-After 返回
+         */
+        private int retryAfterSeconds = 2;
+    }
+
+    /**
+     * 普通对话保存回复的线程池配置
+     */
+    @Data
+    public static class Persistence {
+        /**
+         * 保存助手消息的线程数，不占用模型提供方的回调线程
+         */
+        private int threads = 16;
+
+        /**
+         * 待保存任务的最大排队数，超出时本轮按生成失败处理
+         */
+        private int queueCapacity = 10000;
+    }
+
+    /**
+     * 响应式模式配置
+     */
+    @Data
+    public static class Reactive {
+        /**
+         * 执行阻塞式数据库访问的线程数，应不小于连接池大小
+         */
+        private int jdbcThreads = 32;
+
+        /**
+         * 数据库访问任务的最大排队数
+         */
+        private int jdbcQueueCapacity = 10000;
+
+        /**
+         * 每个流式连接的出站缓冲帧数，客户端消费过慢超出时断开，由客户端按 Last-Event-ID 续传
+         */
+        private int outboundBuffer = 256;
+    }
+
+    /**
+     * 模型回复缓存配置
+     */
+    @Data
+    public static class ResponseCache {
+        /**
+         * 是否启用回复缓存
+         */
+        private boolean enabled = false;
+
+        /**
+         * 是否只缓存 temperature 为 0 的请求
+         */
+        private boolean deterministicOnly = true;
+
+        /**
+         * 参与缓存键计算的最近消息条数（不含系统提示词）
+         */
+        private int keyMessages = 4;
+
+        /**
+         * 条目有效期（毫秒）
+         */
+        private long ttl = 600000;
+
+        /**
+         * 缓存总大小上限（字节）
+         */
+        private long maxBytes = 64L * 1024 * 1024;
+
+        /**
+         * 单条回复大小上限（字节），超过的回复不缓存
+         */
+        private long maxEntryBytes = 256L * 1024;
+    }
+
+    /**
+     * 文本压缩存储配置
+     */
+    @Data
+    public static class Compression {
+        /**
+         * 是否压缩新写入的文本，关闭后仍可读取已压缩的数据
+         */
+        private boolean enabled = true;
+
+        /**
+         * 压缩阈值（UTF-8字节数），小于该值的文本原样存储
+         */
+        private int threshold = 1024;
+
+        /**
+         * Deflate压缩级别，1为最快
+         */
+        private int level = 1;
+    }
+
+    /**
+     * 冷数据归档配置
+     */
+    @Data
+    public static class Archive {
+        /**
+         * 是否启用归档
+         */
+        private boolean enabled = false;
+
+        /**
+         * 段文件目录
+         */
+        private String directory = "data/archive";
+
+        /**
+         * 会话空闲超过该时间（毫秒）后归档，需小于 session-timeout，否则会话会先被过期清理删除
+         */
+        private long idleTime = 7L * 24 * 60 * 60 * 1000;
+
+        /**
+         * 执行间隔（毫秒）
+         */
+        private long interval = 3600000;
+
+        /**
+         * 每批归档的会话数
+         */
+        private int chunkSize = 100;
+
+        /**
+         * 单次执行最多处理的批数
+         */
+        private int maxChunks = 100;
+
+        /**
+         * 单个段文件大小上限（字节），超过后滚动到新段
+         */
+        private long segmentMaxBytes = 64L * 1024 * 1024;
+
+        /**
+         * 稀疏索引间隔：每隔多少条记录写一条索引
+         */
+        private int indexInterval = 16;
+
+        /**
+         * 只读访问（查看历史）时是否也把归档会话恢复到数据库；继续对话时总是恢复
+         */
+        private boolean rehydrateOnRead = false;
+    }
+
+    /**
+     * 只读副本路由配置：只读接口（会话列表、历史消息、检索回表）读副本，写入及对话链路始终走主库
+     */
+    @Data
+    public static class ReadReplica {
+        /**
+         * 是否启用；启用后由 ReadReplicaConfig 构建主库与副本连接池，主库仍使用 spring.datasource 配置
+         */
+        private boolean enabled = false;
+
+        /**
+         * 副本列表，账号密码为空时沿用主库配置
+         */
+        private List<Replica> replicas = new ArrayList<>();
+
+        /**
+         * 可接受的最大复制延迟（毫秒），超过或无法测量时不读该副本
+         */
+        private long maxLag = 2000;
+
+        /**
+         * 心跳间隔（毫秒）：主库写入心跳时间，读取各副本上的心跳计算延迟
+         */
+        private long heartbeatInterval = 500;
+
+        /**
+         * 写后粘滞时间（毫秒）：会话或用户写入后这段时间内的读取走主库，应覆盖写后日志刷盘间隔与最大延迟
+         */
+        private long stickyWindow = 5000;
+    }
+
+    /**
+     * 会话与消息分表配置：按会话ID散列到槽位，槽位映射到物理表 mcp_session_N / mcp_message_N，同一会话的会话行与消息在同一张表序号下
+     */
+    @Data
+    public static class Sharding {
+        /**
+         * 是否启用分表；启用前已有数据时，首次启动所有槽位仍指向原表，需通过重新分片迁移
+         */
+        private boolean enabled = false;
+
+        /**
+         * 首次启用且原表为空时的物理表数；之后以 mcp_shard_slot 中的槽位映射为准，调整需重新分片
+         */
+        private int tables = 4;
+
+        /**
+         * 槽位数，决定重新分片的粒度，启用后不可修改
+         */
+        private int slots = 256;
+
+        /**
+         * 重新分片时每条迁移语句包含的会话数
+         */
+        private int moveBatchSize = 200;
+    }
+
+    /**
+     * 单个只读副本
+     */
+    @Data
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+    }
+
+    /**
+     * 消息全文检索配置
+     */
+    @Data
+    public static class Search {
+        /**
+         * 是否启用全文检索
+         */
+        private boolean enabled = true;
+
+        /**
+         * 索引段文件目录
+         */
+        private String directory = "data/search";
+
+        /**
+         * 写缓冲达到该文档数时冻结成段并落盘
+         */
+        private int flushDocs = 10000;
+
+        /**
+         * 定时落盘与合并间隔（毫秒）
+         */
+        private long flushInterval = 5000;
+
+        /**
+         * 同一层级的相邻段达到该数量时合并为一个
+         */
+        private int mergeFactor = 10;
+
+        /**
+         * 启动时从数据库补建索引的每批条数
+         */
+        private int catchUpBatchSize = 1000;
+
+        /**
+         * 默认返回条数
+         */
+        private int pageSize = 20;
+
+        /**
+         * 最大返回条数
+         */
+        private int maxPageSize = 100;
+
+        /**
+         * 摘要长度（字符）
+         */
+        private int snippetLength = 80;
+    }
+
+    /**
+     * 本地模拟模型提供方配置
+     */
+    @Data
+    public static class StubProvider {
+        /**
+         * 流式输出时每片的字符数
+         */
+        private int chunkSize = 8;
+
+        /**
+         * 流式输出分片间隔（毫秒）
+         */
+        private long chunkDelay = 100;
+
+        /**
+         * 非流式生成耗时（毫秒），在调用方线程上阻塞，模拟同步SDK；0表示立即返回
+         */
+        private long completeDelay = 0;
+
+        /**
+         * 模拟生成失败的比例（0~1），用于验证失败补偿
+         */
+        private double failureRate = 0;
+    }
+
+    /**
+     * OpenAI兼容HTTP模型提供方配置
+     */
+    @Data
+    public static class OpenAiProvider {
+        /**
+         * 接口地址，请求发往 {baseUrl}/chat/completions
+         */
+        private String baseUrl = "https://api.openai.com/v1";
+
+        /**
+         * API密钥
+         */
+        private String apiKey;
+
+        /**
+         * 连接超时（毫秒）
+         */
+        private long connectTimeout = 5000;
+
+        /**
+         * 单次请求超时（毫秒），流式请求为整个流的时长上限
+         */
+        private long requestTimeout = 120000;
+
+        /**
+         * 处理响应回调的线程数
+         */
+        private int callbackThreads = 4;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.mcpdemo.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 回复保存线程池配置
+ * <p>
+ * 模型提供方在自己的回调线程（HTTP客户端线程、公共线程池等）上完成生成，
+ * 保存助手消息的数据库操作切到独立的有界线程池上执行，不占用也不阻塞这些线程。
+ */
+@Configuration
+public class PersistenceConfig {
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    /**
+     * 回复保存线程池
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService persistenceExecutor() {
+        McpConfig.Persistence config = mcpConfig.getPersistence();
+        int threads = Math.max(1, config.getThreads());
+        AtomicInteger threadCounter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(config.getQueueCapacity()), r -> {
+            Thread thread = new Thread(r, "mcp-persist-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
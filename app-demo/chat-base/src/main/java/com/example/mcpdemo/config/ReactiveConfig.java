@@ -0,0 +1,40 @@
+package com.example.mcpdemo.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 响应式模式配置
+ * <p>
+ * MyBatis/JDBC是阻塞式的，响应式端点把所有数据库访问切到独立的有界调度器上执行，
+ * 事件循环线程只负责网络读写，不会被数据库调用阻塞。
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfig {
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    /**
+     * 使用Netty作为响应式服务器（类路径上同时有Tomcat时默认会选Tomcat）
+     */
+    @Bean
+    public NettyReactiveWebServerFactory reactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * 数据库访问调度器
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler persistenceScheduler() {
+        McpConfig.Reactive config = mcpConfig.getReactive();
+        return Schedulers.newBoundedElastic(config.getJdbcThreads(), config.getJdbcQueueCapacity(), "mcp-jdbc");
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.mcpdemo.config;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.example.mcpdemo.service.support.ReadRouter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只读副本数据源配置
+ * <p>
+ * 启用后主库连接池按 spring.datasource 与 spring.datasource.druid 构建（替代Druid自动配置），
+ * 每个副本复制主库连接池参数、替换地址与账号；应用使用的 DataSource 为按 {@link ReadRouter} 选择连接池的路由数据源。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "mcp.server.read-replica", name = "enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean(initMethod = "init", destroyMethod = "close")
+    @ConfigurationProperties("spring.datasource.druid")
+    public DruidDataSource primaryDataSource(DataSourceProperties properties) {
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setName(ReadRouter.PRIMARY);
+        dataSource.setUrl(properties.determineUrl());
+        dataSource.setUsername(properties.determineUsername());
+        dataSource.setPassword(properties.determinePassword());
+        dataSource.setDriverClassName(properties.determineDriverClassName());
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DruidDataSource primaryDataSource, McpConfig mcpConfig, ReadRouter readRouter) throws SQLException {
+        List<McpConfig.Replica> configs = mcpConfig.getReadReplica().getReplicas();
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < configs.size(); i++) {
+            McpConfig.Replica config = configs.get(i);
+            if (!StringUtils.hasText(config.getUrl())) {
+                throw new IllegalStateException("mcp.server.read-replica.replicas[" + i + "].url is required");
+            }
+            DruidDataSource replica = primaryDataSource.cloneDruidDataSource();
+            String name = "replica-" + i;
+            replica.setName(name);
+            replica.setUrl(config.getUrl());
+            if (StringUtils.hasText(config.getUsername())) {
+                replica.setUsername(config.getUsername());
+                replica.setPassword(config.getPassword());
+            }
+            replica.init();
+            replicas.put(name, replica);
+        }
+        RoutingDataSource routing = new RoutingDataSource(primaryDataSource, replicas);
+        readRouter.configure(primaryDataSource, replicas);
+        return routing;
+    }
+
+    /**
+     * 路由数据源：获取连接时按当前线程的读取范围选择主库或副本连接池，关闭时释放副本连接池
+     */
+    static class RoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+        private final Map<String, DataSource> replicas;
+
+        RoutingDataSource(DataSource primary, Map<String, DataSource> replicas) {
+            this.replicas = replicas;
+            Map<Object, Object> targets = new HashMap<>(replicas);
+            targets.put(ReadRouter.PRIMARY, primary);
+            setTargetDataSources(targets);
+            setDefaultTargetDataSource(primary);
+        }
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            String target = ReadRouter.currentTarget();
+            return target != null ? target : ReadRouter.PRIMARY;
+        }
+
+        @Override
+        public void destroy() {
+            replicas.values().forEach(dataSource -> ((DruidDataSource) dataSource).close());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.mcpdemo.config;
+
+import com.example.mcpdemo.service.support.ReadRouter;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.stereotype.Component;
+
+/**
+ * 读写分离标记插件
+ * <p>
+ * 在查询语句执行期间标记当前线程，路由数据源据此只把 {@link ReadRouter#onReplica} 范围内的SELECT发往副本。
+ * 事务外每条语句单独获取连接，因此标记在获取连接时生效；事务内的连接在事务开始时已绑定主库。
+ */
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class ReadRoutingInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        ReadRouter.beginQuery();
+        try {
+            return invocation.proceed();
+        } finally {
+            ReadRouter.endQuery();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.mcpdemo.config;
+
+import com.example.mcpdemo.service.support.ShardRouter;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分表路由插件
+ * <p>
+ * 启用分表时，引用 mcp_session / mcp_message 的语句按会话ID（消息表的 session_id 条件、会话表的 id 条件或INSERT的对应列）
+ * 找到槽位，持有槽位读锁后把语句替换为改写了物理表名的副本；没有会话ID条件时使用 {@link ShardRouter#onShard} 指定的物理表，
+ * 两者都没有则拒绝执行，避免静默读写原表。在执行器层替换语句，BATCH执行器按改写后的SQL分组。
+ * <p>
+ * 不在Spring事务中时，槽位读锁在执行器提交、回滚或关闭时释放（单条语句执行完，或BATCH会话提交）。
+ */
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "commit", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "rollback", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "close", args = {boolean.class})
+})
+public class ShardingInterceptor implements Interceptor {
+
+    private static final String MESSAGE_TABLE = "mcp_message";
+    private static final int MAX_LOCATORS = 1024;
+    private static final Pattern INSERT_COLUMNS = Pattern.compile("^\\s*INSERT\\s+INTO\\s+\\w+\\s*\\(([^)]*)\\)", Pattern.CASE_INSENSITIVE);
+
+    @Autowired
+    @Lazy
+    private ShardRouter shardRouter;
+
+    // SQL -> 会话ID参数位置
+    private final Map<String, Locator> locators = new ConcurrentHashMap<>();
+    // 语句ID#物理表序号 -> 改写表名的语句
+    private final Map<String, MappedStatement> statements = new ConcurrentHashMap<>();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        String method = invocation.getMethod().getName();
+        if (!"update".equals(method) && !"query".equals(method)) {
+            try {
+                return invocation.proceed();
+            } finally {
+                if (shardRouter.isEnabled()) {
+                    shardRouter.releaseIfOutsideTransaction();
+                }
+            }
+        }
+        if (!shardRouter.isEnabled()) {
+            return invocation.proceed();
+        }
+
+        Object[] args = invocation.getArgs();
+        MappedStatement statement = (MappedStatement) args[0];
+        Object parameter = args[1];
+        BoundSql boundSql = args.length == 6 ? (BoundSql) args[5] : statement.getBoundSql(parameter);
+        Locator locator = locatorOf(boundSql.getSql());
+        if (locator.index == Locator.NOT_SHARDED) {
+            return invocation.proceed();
+        }
+
+        int shard;
+        Object key = locator.index >= 0 ? valueOf(statement.getConfiguration(), boundSql, parameter, locator.index) : null;
+        if (key != null) {
+            int slot = shardRouter.slotOf(key.toString());
+            shardRouter.acquire(slot);
+            shard = shardRouter.shardOfSlot(slot);
+        } else if (ShardRouter.hint() != null) {
+            shard = ShardRouter.hint();
+        } else {
+            throw new IllegalStateException("Statement " + statement.getId() + " has no session key for shard routing");
+        }
+
+        MappedStatement routed = routed(statement, shard);
+        args[0] = routed;
+        if (args.length == 6) {
+            BoundSql routedSql = routed.getBoundSql(parameter);
+            args[5] = routedSql;
+            args[4] = ((Executor) invocation.getTarget()).createCacheKey(routed, parameter, (RowBounds) args[2], routedSql);
+        }
+        return invocation.proceed();
+    }
+
+    // 辅助方法 - 会话ID参数：消息表看 session_id，会话表看 id，形如 [别名.]列 = ?，INSERT看列清单
+    private Locator locatorOf(String sql) {
+        Locator locator = locators.get(sql);
+        if (locator != null) {
+            return locator;
+        }
+        Set<String> tables = ShardRouter.logicalTables(sql);
+        if (tables.isEmpty()) {
+            locator = new Locator(Locator.NOT_SHARDED);
+        } else {
+            String column = tables.contains(MESSAGE_TABLE) ? "session_id" : "id";
+            locator = new Locator(locate(sql, column));
+        }
+        if (locators.size() >= MAX_LOCATORS) {
+            locators.clear();
+        }
+        locators.put(sql, locator);
+        return locator;
+    }
+
+    private static int locate(String sql, String column) {
+        Matcher condition = Pattern.compile("(?<![\\w.`])(?:\\w+\\.)?`?" + column + "`?\\s*=\\s*\\?", Pattern.CASE_INSENSITIVE)
+                .matcher(sql);
+        if (condition.find()) {
+            return countPlaceholders(sql, condition.end() - 1);
+        }
+        Matcher insert = INSERT_COLUMNS.matcher(sql);
+        if (insert.find()) {
+            List<String> columns = Arrays.asList(insert.group(1).replace("`", "").toLowerCase(Locale.ROOT).split("\\s*,\\s*"));
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).trim().equals(column)) {
+                    return i;
+                }
+            }
+        }
+        return Locator.NO_KEY;
+    }
+
+    private static int countPlaceholders(String sql, int end) {
+        int count = 0;
+        for (int i = 0; i < end; i++) {
+            if (sql.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // 辅助方法 - 按 DefaultParameterHandler 的规则取参数值
+    private static Object valueOf(Configuration configuration, BoundSql boundSql, Object parameter, int index) {
+        List<ParameterMapping> mappings = boundSql.getParameterMappings();
+        if (index >= mappings.size()) {
+            return null;
+        }
+        String property = mappings.get(index).getProperty();
+        if (boundSql.hasAdditionalParameter(property)) {
+            return boundSql.getAdditionalParameter(property);
+        }
+        if (parameter == null) {
+            return null;
+        }
+        if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameter.getClass())) {
+            return parameter;
+        }
+        return configuration.newMetaObject(parameter).getValue(property);
+    }
+
+    private MappedStatement routed(MappedStatement statement, int shard) {
+        if (shard == ShardRouter.LEGACY) {
+            return statement;
+        }
+        return statements.computeIfAbsent(statement.getId() + "#" + shard, k -> copy(statement, shard));
+    }
+
+    private static MappedStatement copy(MappedStatement statement, int shard) {
+        SqlSource source = new ShardSqlSource(statement.getConfiguration(), statement.getSqlSource(), shard);
+        MappedStatement.Builder builder = new MappedStatement.Builder(statement.getConfiguration(), statement.getId(),
+                source, statement.getSqlCommandType())
+                .resource(statement.getResource())
+                .fetchSize(statement.getFetchSize())
+                .timeout(statement.getTimeout())
+                .statementType(statement.getStatementType())
+                .resultSetType(statement.getResultSetType())
+                .parameterMap(statement.getParameterMap())
+                .resultMaps(statement.getResultMaps())
+                .cache(statement.getCache())
+                .flushCacheRequired(statement.isFlushCacheRequired())
+                .useCache(statement.isUseCache())
+                .resultOrdered(statement.isResultOrdered())
+                .keyGenerator(statement.getKeyGenerator())
+                .databaseId(statement.getDatabaseId())
+                .lang(statement.getLang());
+        if (statement.getKeyProperties() != null) {
+            builder.keyProperty(String.join(",", statement.getKeyProperties()));
+        }
+        if (statement.getKeyColumns() != null) {
+            builder.keyColumn(String.join(",", statement.getKeyColumns()));
+        }
+        if (statement.getResultSets() != null) {
+            builder.resultSets(String.join(",", statement.getResultSets()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 会话ID参数位置
+     */
+    private static class Locator {
+        private static final int NOT_SHARDED = -2;
+        private static final int NO_KEY = -1;
+
+        private final int index;
+
+        private Locator(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * 改写物理表名的SqlSource
+     */
+    private static class ShardSqlSource implements SqlSource {
+        private final Configuration configuration;
+        private final SqlSource delegate;
+        private final int shard;
+
+        private ShardSqlSource(Configuration configuration, SqlSource delegate, int shard) {
+            this.configuration = configuration;
+            this.delegate = delegate;
+            this.shard = shard;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public BoundSql getBoundSql(Object parameterObject) {
+            BoundSql original = delegate.getBoundSql(parameterObject);
+            BoundSql routed = new BoundSql(configuration, ShardRouter.rewrite(original.getSql(), shard),
+                    original.getParameterMappings(), parameterObject);
+            ((Map<String, Object>) SystemMetaObject.forObject(routed).getValue("additionalParameters"))
+                    .putAll((Map<String, Object>) SystemMetaObject.forObject(original).getValue("additionalParameters"));
+            return routed;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.mcpdemo.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 控制器中阻塞调用（MyBatis/JDBC）的执行方式
+ * <p>
+ * 会话、历史与页面控制器在两种Web模式下共用，返回 {@link Mono}：Servlet模式在请求线程上订阅时直接执行；
+ * 响应式模式切到 persistenceScheduler 上执行，事件循环线程不做数据库调用。
+ */
+@Component
+public class BlockingDispatcher {
+
+    // 只在响应式模式下存在（见 ReactiveConfig）
+    @Autowired(required = false)
+    @Qualifier("persistenceScheduler")
+    private Scheduler persistenceScheduler;
+
+    /**
+     * 包装阻塞调用，订阅时执行
+     *
+     * @param call 阻塞调用
+     * @return 调用结果
+     */
+    public <T> Mono<T> call(Callable<T> call) {
+        Mono<T> mono = Mono.fromCallable(call);
+        return persistenceScheduler == null ? mono : mono.subscribeOn(persistenceScheduler);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.mcpdemo.controller;
+
+import com.example.mcpdemo.dto.McpRequest;
+import com.example.mcpdemo.dto.McpResponse;
+import com.example.mcpdemo.service.McpService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MCP聊天控制器（Servlet模式）
+ */
+@RestController
+@RequestMapping("/api/mcp")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Slf4j
+public class McpChatController {
+
+    /**
+     * 流式响应中返回会话ID的响应头
+     */
+    public static final String SESSION_ID_HEADER = "X-Session-Id";
+
+    @Autowired
+    private McpService mcpService;
+    
+    /**
+     * 处理聊天请求
+     */
+    @PostMapping("/chat")
+    public CompletableFuture<ResponseEntity<McpResponse>> chat(@RequestBody McpRequest request) {
+        log.debug("Processing chat request");
+        
+        // 异步返回，生成期间释放Servlet线程
+        return mcpService.chat(request).thenApply(ResponseEntity::ok);
+    }
+    
+    /**
+     * 处理流式聊天请求
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody McpRequest request, HttpServletResponse response) {
+        log.debug("Processing stream chat request");
+        
+        // 设置流式响应标志
+        request.setStream(true);
+        
+        SseEmitter emitter = mcpService.chatStream(request);
+        
+        // 新建会话时客户端需要会话ID才能订阅或续传
+        if (request.getSessionId() != null) {
+            response.setHeader(SESSION_ID_HEADER, request.getSessionId());
+        }
+        return emitter;
+    }
+    
+    /**
+     * 订阅会话流，断线重连时通过 Last-Event-ID 续传（EventSource会自动携带）
+     */
+    @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeStream(@RequestParam String sessionId,
+                                      @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        log.debug("Subscribing to stream of session: {}", sessionId);
+        
+        return mcpService.subscribeStream(sessionId, lastEventId);
+    }
+}
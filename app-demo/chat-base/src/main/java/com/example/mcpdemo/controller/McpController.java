@@ -2,16 +2,20 @@ package com.example.mcpdemo.controller;
 
 import com.example.mcpdemo.config.McpConfig;
 import com.example.mcpdemo.dto.McpMessageDto;
-import com.example.mcpdemo.dto.McpRequest;
-import com.example.mcpdemo.dto.McpResponse;
+import com.example.mcpdemo.dto.McpMessagePage;
+import com.example.mcpdemo.dto.McpSearchHit;
+import com.example.mcpdemo.dto.McpSessionPage;
 import com.example.mcpdemo.entity.McpSession;
 import com.example.mcpdemo.service.McpService;
+import com.example.mcpdemo.service.support.ServiceStats;
+import com.example.mcpdemo.service.support.ShardRebalancer;
+import com.example.mcpdemo.service.support.ShardRouter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.MediaType;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Mono;
 
 import java.util.HashMap;
 import java.util.List;
@@ -19,6 +23,9 @@ import java.util.Map;
 
 /**
  * MCP API控制器
+ * <p>
+ * 会话、消息历史与统计接口，Servlet与响应式模式共用：MyBatis调用是阻塞的，经 {@link BlockingDispatcher} 执行，
+ * 响应式模式下不占用事件循环线程。聊天接口按Web模式分别见 {@link McpChatController} 和 {@link ReactiveMcpChatController}。
  */
 @RestController
 @RequestMapping("/api/mcp")
@@ -31,11 +38,23 @@ public class McpController {
     @Autowired
     private McpConfig mcpConfig;
     
+    @Autowired
+    private ServiceStats serviceStats;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+    
+    @Autowired
+    private BlockingDispatcher blockingDispatcher;
+    
     /**
      * 获取MCP服务信息
      */
     @GetMapping("/info")
-    public ResponseEntity<Map<String, Object>> getInfo() {
+    public Mono<ResponseEntity<Map<String, Object>>> getInfo() {
         log.debug("Getting MCP service info");
         
         Map<String, Object> info = new HashMap<>();
@@ -44,111 +63,150 @@ public class McpController {
         info.put("models", mcpConfig.getModels());
         info.put("maxContextSize", mcpConfig.getMaxContextSize());
         
-        return ResponseEntity.ok(info);
+        return Mono.just(ResponseEntity.ok(info));
+    }
+    
+    /**
+     * 获取运行统计信息
+     */
+    @GetMapping("/stats")
+    public Mono<ResponseEntity<Map<String, Object>>> getStats() {
+        log.debug("Getting MCP service stats");
+        
+        return blockingDispatcher.call(() -> ResponseEntity.ok(serviceStats.collect()));
+    }
+    
+    /**
+     * 在线重新分片到指定的物理表数，异步执行，进度见 /stats 的 sharding.rebalance
+     */
+    @PostMapping("/shards/rebalance")
+    public Mono<ResponseEntity<Map<String, Object>>> rebalance(@RequestParam int tables) {
+        log.debug("Rebalancing shards to {} tables", tables);
+        
+        if (!shardRouter.isEnabled() || tables < 1) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return blockingDispatcher.call(() -> {
+            if (!shardRebalancer.start(tables)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(shardRebalancer.stats());
+            }
+            return ResponseEntity.accepted().body(shardRebalancer.stats());
+        });
     }
     
     /**
      * 创建新会话
      */
     @PostMapping("/sessions")
-    public ResponseEntity<McpSession> createSession(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<McpSession>> createSession(@RequestBody Map<String, String> request) {
         log.debug("Creating new session");
         
         String userId = request.getOrDefault("userId", "anonymous");
         String model = request.getOrDefault("model", mcpConfig.getDefaultModel());
         String systemPrompt = request.get("systemPrompt");
         
-        McpSession session = mcpService.createSession(userId, model, systemPrompt);
-        
-        return ResponseEntity.ok(session);
+        return blockingDispatcher.call(() -> ResponseEntity.ok(mcpService.createSession(userId, model, systemPrompt)));
     }
     
     /**
      * 获取会话信息
      */
     @GetMapping("/sessions/{sessionId}")
-    public ResponseEntity<McpSession> getSession(@PathVariable String sessionId) {
+    public Mono<ResponseEntity<McpSession>> getSession(@PathVariable String sessionId) {
         log.debug("Getting session: {}", sessionId);
         
-        McpSession session = mcpService.getSession(sessionId);
-        
-        if (session == null) {
-            return ResponseEntity.notFound().build();
-        }
-        
-        return ResponseEntity.ok(session);
+        return blockingDispatcher.call(() -> {
+            McpSession session = mcpService.getSession(sessionId);
+            return session == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(session);
+        });
     }
     
     /**
      * 获取会话列表
      */
     @GetMapping("/sessions")
-    public ResponseEntity<List<McpSession>> listSessions(@RequestParam(defaultValue = "anonymous") String userId) {
+    public Mono<ResponseEntity<List<McpSession>>> listSessions(@RequestParam(defaultValue = "anonymous") String userId) {
         log.debug("Listing sessions for user: {}", userId);
         
-        List<McpSession> sessions = mcpService.listSessions(userId);
-        
-        return ResponseEntity.ok(sessions);
+        return blockingDispatcher.call(() -> ResponseEntity.ok(mcpService.listSessions(userId)));
+    }
+    
+    /**
+     * 键集分页获取会话摘要列表，不带游标时返回第一页
+     */
+    @GetMapping("/sessions/page")
+    public Mono<ResponseEntity<McpSessionPage>> listSessionPage(@RequestParam(defaultValue = "anonymous") String userId,
+                                                                @RequestParam(defaultValue = "ACTIVE") String status,
+                                                                @RequestParam(required = false) Long before,
+                                                                @RequestParam(required = false) String beforeId,
+                                                                @RequestParam(required = false) Integer limit) {
+        log.debug("Listing session page for user: {}", userId);
+        
+        return blockingDispatcher.call(() -> ResponseEntity.ok(mcpService.listSessionSummaries(userId, status, before, beforeId, limit)));
     }
     
     /**
      * 删除会话
      */
     @DeleteMapping("/sessions/{sessionId}")
-    public ResponseEntity<Void> deleteSession(@PathVariable String sessionId) {
+    public Mono<ResponseEntity<Void>> deleteSession(@PathVariable String sessionId) {
         log.debug("Deleting session: {}", sessionId);
         
-        McpSession session = mcpService.getSession(sessionId);
-        
-        if (session == null) {
-            return ResponseEntity.notFound().build();
-        }
-        
-        mcpService.deleteSession(sessionId);
-        
-        return ResponseEntity.ok().build();
+        return blockingDispatcher.call(() -> {
+            if (mcpService.getSession(sessionId) == null) {
+                return ResponseEntity.notFound().build();
+            }
+            mcpService.deleteSession(sessionId);
+            return ResponseEntity.ok().build();
+        });
     }
     
     /**
      * 获取会话的消息历史
      */
     @GetMapping("/sessions/{sessionId}/messages")
-    public ResponseEntity<List<McpMessageDto>> getMessages(@PathVariable String sessionId) {
+    public Mono<ResponseEntity<List<McpMessageDto>>> getMessages(@PathVariable String sessionId) {
         log.debug("Getting messages for session: {}", sessionId);
         
-        McpSession session = mcpService.getSession(sessionId);
-        
-        if (session == null) {
-            return ResponseEntity.notFound().build();
-        }
-        
-        List<McpMessageDto> messages = mcpService.getMessages(sessionId);
-        
-        return ResponseEntity.ok(messages);
+        return blockingDispatcher.call(() -> {
+            if (mcpService.getSession(sessionId) == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(mcpService.getMessages(sessionId));
+        });
     }
     
     /**
-     * 处理聊天请求
+     * 键集分页获取会话的消息历史，不带游标时返回最近一页
      */
-    @PostMapping("/chat")
-    public ResponseEntity<McpResponse> chat(@RequestBody McpRequest request) {
-        log.debug("Processing chat request");
-        
-        McpResponse response = mcpService.chat(request);
-        
-        return ResponseEntity.ok(response);
+    @GetMapping("/sessions/{sessionId}/messages/page")
+    public Mono<ResponseEntity<McpMessagePage>> getMessagePage(@PathVariable String sessionId,
+                                                               @RequestParam(required = false) Integer before,
+                                                               @RequestParam(required = false) Integer after,
+                                                               @RequestParam(required = false) Integer limit) {
+        log.debug("Getting message page for session: {}", sessionId);
+        
+        return blockingDispatcher.call(() -> {
+            if (mcpService.getSession(sessionId) == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(mcpService.getMessagePage(sessionId, before, after, limit));
+        });
     }
     
     /**
-     * 处理流式聊天请求
+     * 在用户的会话中全文检索消息
      */
-    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter chatStream(@RequestBody McpRequest request) {
-        log.debug("Processing stream chat request");
-        
-        // 设置流式响应标志
-        request.setStream(true);
+    @GetMapping("/search")
+    public Mono<ResponseEntity<List<McpSearchHit>>> search(@RequestParam(defaultValue = "anonymous") String userId,
+                                                           @RequestParam String q,
+                                                           @RequestParam(required = false) Integer limit) {
+        log.debug("Searching messages for user: {}", userId);
+        
+        if (q.trim().isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
         
-        return mcpService.chatStream(request);
+        return blockingDispatcher.call(() -> ResponseEntity.ok(mcpService.search(userId, q, limit)));
     }
-} 
\ No newline at end of file
+}
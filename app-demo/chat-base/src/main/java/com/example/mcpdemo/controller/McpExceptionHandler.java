@@ -0,0 +1,35 @@
+package com.example.mcpdemo.controller;
+
+import com.example.mcpdemo.dto.McpResponse;
+import com.example.mcpdemo.exception.AdmissionRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * API异常处理，Servlet与响应式模式共用
+ */
+@RestControllerAdvice
+@Slf4j
+public class McpExceptionHandler {
+
+    /**
+     * 准入控制拒绝时快速返回 429，并通过 Retry-After 告知客户端等待时间
+     */
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<McpResponse> handleAdmissionRejected(AdmissionRejectedException e) {
+        log.warn("Request rejected by admission control: {}", e.getMessage());
+        
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(McpResponse.builder()
+                        .error(e.getMessage())
+                        .done(true)
+                        .build());
+    }
+}
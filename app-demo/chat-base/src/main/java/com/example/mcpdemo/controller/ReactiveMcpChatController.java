@@ -0,0 +1,131 @@
+package com.example.mcpdemo.controller;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.dto.McpRequest;
+import com.example.mcpdemo.dto.McpResponse;
+import com.example.mcpdemo.service.McpService;
+import com.example.mcpdemo.service.support.StreamSubscriber;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * MCP聊天控制器（响应式模式）
+ * <p>
+ * 与 {@link McpChatController} 提供相同的接口。阻塞的数据库访问在 persistenceScheduler 上执行，
+ * 流式帧通过会话流推送到 Flux，出站缓冲有界：客户端消费过慢导致缓冲溢出时断开连接，
+ * 客户端按 Last-Event-ID 重连后从会话流缓冲续传。
+ */
+@RestController
+@RequestMapping("/api/mcp")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveMcpChatController {
+
+    @Autowired
+    private McpService mcpService;
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    @Qualifier("persistenceScheduler")
+    private Scheduler persistenceScheduler;
+
+    /**
+     * 处理聊天请求
+     */
+    @PostMapping("/chat")
+    public Mono<McpResponse> chat(@RequestBody McpRequest request) {
+        log.debug("Processing reactive chat request");
+        
+        return Mono.fromCallable(() -> mcpService.chat(request))
+                .subscribeOn(persistenceScheduler)
+                .flatMap(Mono::fromFuture);
+    }
+
+    /**
+     * 处理流式聊天请求
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> chatStream(@RequestBody McpRequest request, ServerHttpResponse response) {
+        log.debug("Processing reactive stream chat request");
+        
+        // 设置流式响应标志
+        request.setStream(true);
+        
+        return Mono.fromCallable(() -> mcpService.startStream(request))
+                .subscribeOn(persistenceScheduler)
+                // startStream 完成后仍在数据库调度器线程上订阅会话流
+                .flatMapMany(sessionId -> {
+                    // 新建会话时客户端需要会话ID才能订阅或续传
+                    response.getHeaders().set(McpChatController.SESSION_ID_HEADER, sessionId);
+                    return subscribe(sessionId, null);
+                });
+    }
+
+    /**
+     * 订阅会话流，断线重连时通过 Last-Event-ID 续传（EventSource会自动携带）
+     */
+    @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> subscribeStream(@RequestParam String sessionId,
+                                                        @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        log.debug("Subscribing to reactive stream of session: {}", sessionId);
+        
+        // 订阅时会查询会话，在数据库调度器上执行
+        return subscribe(sessionId, lastEventId).subscribeOn(persistenceScheduler);
+    }
+
+    // 辅助方法 - 把会话流桥接为有界缓冲的Flux
+    private Flux<ServerSentEvent<Object>> subscribe(String sessionId, Long lastEventId) {
+        Flux<ServerSentEvent<Object>> frames = Flux.create(sink -> {
+            SinkSubscriber subscriber = new SinkSubscriber(sink);
+            sink.onDispose(() -> mcpService.unsubscribeStream(sessionId, subscriber));
+            if (!mcpService.subscribeStream(sessionId, subscriber, lastEventId)) {
+                sink.complete();
+            }
+        }, FluxSink.OverflowStrategy.BUFFER);
+        
+        return frames.onBackpressureBuffer(mcpConfig.getReactive().getOutboundBuffer(),
+                dropped -> log.warn("Outbound buffer overflow for session: {}, disconnecting", sessionId),
+                BufferOverflowStrategy.ERROR);
+    }
+
+    /**
+     * 把会话流的帧转成ServerSentEvent推入Flux
+     */
+    private static class SinkSubscriber implements StreamSubscriber {
+        private final FluxSink<ServerSentEvent<Object>> sink;
+
+        private SinkSubscriber(FluxSink<ServerSentEvent<Object>> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void send(Long id, String name, Object data) {
+            ServerSentEvent.Builder<Object> event = ServerSentEvent.builder(data);
+            if (id != null) {
+                event.id(String.valueOf(id));
+            }
+            if (name != null) {
+                event.event(name);
+            }
+            sink.next(event.build());
+        }
+
+        @Override
+        public void complete() {
+            sink.complete();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.mcpdemo.controller;
 
 import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.dto.McpMessagePage;
+import com.example.mcpdemo.dto.McpSessionSummary;
 import com.example.mcpdemo.entity.McpSession;
 import com.example.mcpdemo.service.McpService;
 import lombok.extern.slf4j.Slf4j;
@@ -9,11 +11,12 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
 /**
- * Web页面控制器
+ * Web页面控制器，Servlet与响应式模式共用，读取会话与消息的阻塞调用经 {@link BlockingDispatcher} 执行
  */
 @Controller
 @Slf4j
@@ -24,20 +27,25 @@ public class WebController {
     
     @Autowired
     private McpConfig mcpConfig;
+    
+    @Autowired
+    private BlockingDispatcher blockingDispatcher;
 
     /**
      * 首页
      */
     @GetMapping("/")
-    public String index(Model model) {
+    public Mono<String> index(Model model) {
         log.debug("Accessing index page");
         
-        List<McpSession> sessions = mcpService.listSessions("anonymous");
-        model.addAttribute("sessions", sessions);
-        model.addAttribute("models", mcpConfig.getModels());
-        model.addAttribute("defaultModel", mcpConfig.getDefaultModel());
-        
-        return "index";
+        return blockingDispatcher.call(() -> {
+            // 只取第一页摘要，不读取系统提示词和消息表
+            List<McpSessionSummary> sessions = mcpService.listSessionSummaries("anonymous", null, null, null, null).getSessions();
+            model.addAttribute("sessions", sessions);
+            model.addAttribute("models", mcpConfig.getModels());
+            model.addAttribute("defaultModel", mcpConfig.getDefaultModel());
+            return "index";
+        });
     }
     
     /**
@@ -57,19 +65,24 @@ public class WebController {
      * 已有会话聊天页面
      */
     @GetMapping("/chat/{sessionId}")
-    public String existingChat(@PathVariable String sessionId, Model model) {
+    public Mono<String> existingChat(@PathVariable String sessionId, Model model) {
         log.debug("Accessing existing chat page for session: {}", sessionId);
         
-        McpSession mcpSession = mcpService.getSession(sessionId);
-        if (mcpSession == null) {
-            return "redirect:/";
-        }
-        
-        model.addAttribute("mcpSession", mcpSession);
-        model.addAttribute("models", mcpConfig.getModels());
-        model.addAttribute("messages", mcpService.getMessages(sessionId));
-        
-        return "chat";
+        return blockingDispatcher.call(() -> {
+            McpSession mcpSession = mcpService.getSession(sessionId);
+            if (mcpSession == null) {
+                return "redirect:/";
+            }
+            
+            model.addAttribute("mcpSession", mcpSession);
+            model.addAttribute("models", mcpConfig.getModels());
+            // 只渲染最近一页，更早的历史由页面滚动到顶部时按需加载
+            McpMessagePage page = mcpService.getMessagePage(sessionId, null, null, null);
+            model.addAttribute("messages", page.getMessages());
+            model.addAttribute("oldestSequence", page.getOldestSequence());
+            model.addAttribute("hasMoreHistory", page.getHasMore());
+            return "chat";
+        });
     }
     
     /**
@@ -1,5 +1,6 @@
 package com.example.mcpdemo.dto;
 
+import com.example.mcpdemo.entity.McpMessage;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -33,4 +34,26 @@ public class McpMessageDto {
      * 创建时间戳
      */
     private Long timestamp;
+    
+    /**
+     * 会话内序号，用作分页游标
+     */
+    private Integer sequence;
+
+    /**
+     * 由消息实体转换（历史、分页与回复共用）
+     *
+     * @param message 消息实体
+     * @return 消息DTO
+     */
+    public static McpMessageDto from(McpMessage message) {
+        return McpMessageDto.builder()
+                .role(message.getRole())
+                .content(message.getContent())
+                // 写后日志模式下消息可能尚未落库，此时ID为空
+                .id(message.getId() != null ? message.getId().toString() : null)
+                .timestamp(message.getCreateTime().getTime())
+                .sequence(message.getSequence())
+                .build();
+    }
 } 
\ No newline at end of file
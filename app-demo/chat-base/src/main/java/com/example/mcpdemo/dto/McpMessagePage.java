@@ -0,0 +1,38 @@
+package com.example.mcpdemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 消息历史分页结果，按 (session_id, sequence) 键集分页
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class McpMessagePage {
+
+    /**
+     * 本页消息，按序号升序
+     */
+    private List<McpMessageDto> messages;
+
+    /**
+     * 本页最小序号，加载更早历史时作为 before 游标
+     */
+    private Integer oldestSequence;
+
+    /**
+     * 本页最大序号，加载更新消息时作为 after 游标
+     */
+    private Integer newestSequence;
+
+    /**
+     * 翻页方向上是否还有更多消息
+     */
+    private Boolean hasMore;
+}
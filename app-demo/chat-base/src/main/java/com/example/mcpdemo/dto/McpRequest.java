@@ -58,7 +58,7 @@ public class McpRequest {
     private List<String> tools;
     
     /**
-     * 自定义参数
+     * 自定义参数，如 streamMode: cumulative（默认，每片携带累计全文）/ delta（每片只携带新增文本，最后发送汇总帧）
      */
     private Map<String, Object> parameters;
 } 
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.example.mcpdemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 全文检索命中的消息
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class McpSearchHit {
+
+    /**
+     * 会话ID
+     */
+    private String sessionId;
+
+    /**
+     * 会话标题
+     */
+    private String sessionTitle;
+
+    /**
+     * 消息在会话内的序号，可用作消息分页游标定位上下文
+     */
+    private Integer sequence;
+
+    /**
+     * 角色：system, user, assistant
+     */
+    private String role;
+
+    /**
+     * 命中位置附近的内容摘要
+     */
+    private String snippet;
+
+    /**
+     * 创建时间戳
+     */
+    private Long timestamp;
+}
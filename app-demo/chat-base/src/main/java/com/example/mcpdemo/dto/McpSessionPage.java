@@ -0,0 +1,38 @@
+package com.example.mcpdemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 会话列表分页结果，按 (update_time, id) 倒序键集分页
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class McpSessionPage {
+
+    /**
+     * 本页会话，最近更新的在前
+     */
+    private List<McpSessionSummary> sessions;
+
+    /**
+     * 本页最后一条的更新时间（毫秒），加载下一页时作为 before 游标
+     */
+    private Long nextBefore;
+
+    /**
+     * 本页最后一条的会话ID，与 nextBefore 一起作为游标，区分更新时间相同的会话
+     */
+    private String nextBeforeId;
+
+    /**
+     * 是否还有下一页
+     */
+    private Boolean hasMore;
+}
@@ -0,0 +1,48 @@
+package com.example.mcpdemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 会话列表摘要，只包含列表页需要的字段（不含系统提示词）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class McpSessionSummary {
+
+    /**
+     * 会话ID
+     */
+    private String id;
+
+    /**
+     * 会话标题
+     */
+    private String title;
+
+    /**
+     * 使用的模型
+     */
+    private String model;
+
+    /**
+     * 最后更新时间
+     */
+    private Date updateTime;
+
+    /**
+     * 消息数
+     */
+    private Integer messageCount;
+
+    /**
+     * 最后一条消息预览
+     */
+    private String lastMessagePreview;
+}
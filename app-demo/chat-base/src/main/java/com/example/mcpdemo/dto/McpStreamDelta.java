@@ -0,0 +1,26 @@
+package com.example.mcpdemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 增量模式下的流式分片，只携带本次新增的文本
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class McpStreamDelta {
+
+    /**
+     * 分片序号，从0开始
+     */
+    private Integer index;
+
+    /**
+     * 本次新增的文本
+     */
+    private String delta;
+}
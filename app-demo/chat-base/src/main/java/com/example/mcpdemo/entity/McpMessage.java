@@ -1,9 +1,13 @@
 package com.example.mcpdemo.entity;
 
+import com.alibaba.fastjson.annotation.JSONField;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.example.mcpdemo.mapper.handler.CompressedText;
+import com.example.mcpdemo.mapper.handler.CompressedTextTypeHandler;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,7 +18,7 @@ import java.util.Date;
 /**
  * MCP消息实体
  */
-@TableName("mcp_message")
+@TableName(value = "mcp_message", autoResultMap = true)
 @Data
 @Builder
 @NoArgsConstructor
@@ -22,9 +26,9 @@ import java.util.Date;
 public class McpMessage {
     
     /**
-     * 消息ID
+     * 消息ID，插入时由 IdGenerator 分配，在所有分表间唯一
      */
-    @TableId(type = IdType.AUTO)
+    @TableId(type = IdType.ASSIGN_ID)
     private Long id;
     
     /**
@@ -40,10 +44,12 @@ public class McpMessage {
     private String role;
     
     /**
-     * 消息内容
+     * 消息内容，超过阈值时压缩存储，读取时按需解压；通过 {@link #getContent()} / {@link #setContent(String)} 访问
      */
-    @TableField
-    private String content;
+    @TableField(value = "content", typeHandler = CompressedTextTypeHandler.class)
+    @JsonIgnore
+    @JSONField(serialize = false, deserialize = false)
+    private CompressedText storedContent;
     
     /**
      * 创建时间
@@ -62,4 +68,31 @@ public class McpMessage {
      */
     @TableField
     private String model;
-} 
\ No newline at end of file
+    
+    /**
+     * 令牌数（写入时计算一次）
+     */
+    @TableField(value = "token_count")
+    private Integer tokenCount;
+    
+    /**
+     * 获取消息内容，首次访问时解压
+     */
+    public String getContent() {
+        return storedContent == null ? null : storedContent.text();
+    }
+    
+    /**
+     * 设置消息内容
+     */
+    public void setContent(String content) {
+        this.storedContent = CompressedText.of(content);
+    }
+    
+    public static class McpMessageBuilder {
+        public McpMessageBuilder content(String content) {
+            this.storedContent = CompressedText.of(content);
+            return this;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.example.mcpdemo.entity;
 
+import com.alibaba.fastjson.annotation.JSONField;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.example.mcpdemo.mapper.handler.CompressedText;
+import com.example.mcpdemo.mapper.handler.CompressedTextTypeHandler;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,9 +17,9 @@ import java.util.Date;
 /**
  * MCP会话实体
  */
-@TableName("mcp_session")
+@TableName(value = "mcp_session", autoResultMap = true)
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class McpSession {
@@ -63,8 +67,49 @@ public class McpSession {
     private String status;
     
     /**
-     * 系统提示词
+     * 系统提示词，超过阈值时压缩存储，读取时按需解压；通过 {@link #getSystemPrompt()} / {@link #setSystemPrompt(String)} 访问
      */
-    @TableField(value = "system_prompt")
-    private String systemPrompt;
-} 
\ No newline at end of file
+    @TableField(value = "system_prompt", typeHandler = CompressedTextTypeHandler.class)
+    @JsonIgnore
+    @JSONField(serialize = false, deserialize = false)
+    private CompressedText storedSystemPrompt;
+    
+    /**
+     * 消息数（冗余字段，随会话更新写入，列表页无需统计消息表）
+     */
+    @TableField(value = "message_count")
+    private Integer messageCount;
+    
+    /**
+     * 最后一条消息预览（冗余字段，随会话更新写入）
+     */
+    @TableField(value = "last_message_preview")
+    private String lastMessagePreview;
+    
+    /**
+     * 归档记录号，状态为 ARCHIVED 时消息保存在归档段文件中
+     */
+    @TableField(value = "archive_offset")
+    private Long archiveOffset;
+    
+    /**
+     * 获取系统提示词，首次访问时解压
+     */
+    public String getSystemPrompt() {
+        return storedSystemPrompt == null ? null : storedSystemPrompt.text();
+    }
+    
+    /**
+     * 设置系统提示词
+     */
+    public void setSystemPrompt(String systemPrompt) {
+        this.storedSystemPrompt = CompressedText.of(systemPrompt);
+    }
+    
+    public static class McpSessionBuilder {
+        public McpSessionBuilder systemPrompt(String systemPrompt) {
+            this.storedSystemPrompt = CompressedText.of(systemPrompt);
+            return this;
+        }
+    }
+}
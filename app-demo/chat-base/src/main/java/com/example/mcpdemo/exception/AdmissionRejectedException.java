@@ -0,0 +1,20 @@
+package com.example.mcpdemo.exception;
+
+import lombok.Getter;
+
+/**
+ * 准入控制拒绝异常，由控制器转换为 429 Too Many Requests
+ */
+@Getter
+public class AdmissionRejectedException extends RuntimeException {
+
+    /**
+     * 建议客户端重试的等待时间（秒）
+     */
+    private final int retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.mcpdemo.exception;
+
+import lombok.Getter;
+
+/**
+ * 模型提供方调用失败
+ */
+@Getter
+public class ModelProviderException extends RuntimeException {
+
+    /**
+     * 提供方名称
+     */
+    private final String provider;
+
+    public ModelProviderException(String provider, String message) {
+        super(provider + ": " + message);
+        this.provider = provider;
+    }
+}
@@ -5,12 +5,16 @@ import com.example.mcpdemo.entity.McpMessage;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultMap;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Date;
 import java.util.List;
 
 /**
  * McpMessage的MyBatis Plus Mapper接口
+ * <p>
+ * 返回实体的查询使用 autoResultMap 生成的结果映射，content 列由压缩文本类型处理器读取
  */
 @Mapper
 public interface McpMessageMapper extends BaseMapper<McpMessage> {
@@ -21,6 +25,7 @@ public interface McpMessageMapper extends BaseMapper<McpMessage> {
      * @return 消息列表
      */
     @Select("SELECT * FROM mcp_message WHERE session_id = #{sessionId} ORDER BY sequence ASC")
+    @ResultMap("mybatis-plus_McpMessage")
     List<McpMessage> findBySessionIdOrderBySequenceAsc(@Param("sessionId") String sessionId);
     
     /**
@@ -29,6 +34,7 @@ public interface McpMessageMapper extends BaseMapper<McpMessage> {
      * @return 消息列表
      */
     @Select("SELECT * FROM mcp_message WHERE session_id = #{sessionId} ORDER BY sequence DESC")
+    @ResultMap("mybatis-plus_McpMessage")
     List<McpMessage> findBySessionIdOrderBySequenceDesc(@Param("sessionId") String sessionId);
     
     /**
@@ -38,6 +44,14 @@ public interface McpMessageMapper extends BaseMapper<McpMessage> {
      */
     @Select("SELECT COUNT(*) FROM mcp_message WHERE session_id = #{sessionId}")
     long countBySessionId(@Param("sessionId") String sessionId);
+
+    /**
+     * 查询会话当前最大序号，走 (session_id, sequence) 唯一索引
+     * @param sessionId 会话ID
+     * @return 最大序号，没有消息时为null
+     */
+    @Select("SELECT MAX(sequence) FROM mcp_message WHERE session_id = #{sessionId}")
+    Integer findMaxSequence(@Param("sessionId") String sessionId);
     
     /**
      * 获取会话最后一条消息
@@ -45,8 +59,41 @@ public interface McpMessageMapper extends BaseMapper<McpMessage> {
      * @return 最后一条消息
      */
     @Select("SELECT * FROM mcp_message WHERE session_id = #{sessionId} ORDER BY sequence DESC LIMIT 1")
+    @ResultMap("mybatis-plus_McpMessage")
     McpMessage findFirstBySessionIdOrderBySequenceDesc(@Param("sessionId") String sessionId);
     
+    /**
+     * 键集分页：查询指定序号之前的消息，按序号降序
+     * @param sessionId 会话ID
+     * @param before 序号上界（不含）
+     * @param limit 条数
+     * @return 消息列表
+     */
+    @Select("SELECT * FROM mcp_message WHERE session_id = #{sessionId} AND sequence < #{before} ORDER BY sequence DESC LIMIT #{limit}")
+    @ResultMap("mybatis-plus_McpMessage")
+    List<McpMessage> findBeforeSequence(@Param("sessionId") String sessionId, @Param("before") int before, @Param("limit") int limit);
+    
+    /**
+     * 键集分页：查询指定序号之后的消息，按序号升序
+     * @param sessionId 会话ID
+     * @param after 序号下界（不含）
+     * @param limit 条数
+     * @return 消息列表
+     */
+    @Select("SELECT * FROM mcp_message WHERE session_id = #{sessionId} AND sequence > #{after} ORDER BY sequence ASC LIMIT #{limit}")
+    @ResultMap("mybatis-plus_McpMessage")
+    List<McpMessage> findAfterSequence(@Param("sessionId") String sessionId, @Param("after") int after, @Param("limit") int limit);
+    
+    /**
+     * 查询会话最近的N条消息，按序号降序
+     * @param sessionId 会话ID
+     * @param limit 条数
+     * @return 消息列表
+     */
+    @Select("SELECT * FROM mcp_message WHERE session_id = #{sessionId} ORDER BY sequence DESC LIMIT #{limit}")
+    @ResultMap("mybatis-plus_McpMessage")
+    List<McpMessage> findTail(@Param("sessionId") String sessionId, @Param("limit") int limit);
+    
     /**
      * 根据会话ID和角色查询消息
      * @param sessionId 会话ID
@@ -54,12 +101,44 @@ public interface McpMessageMapper extends BaseMapper<McpMessage> {
      * @return 消息列表
      */
     @Select("SELECT * FROM mcp_message WHERE session_id = #{sessionId} AND role = #{role} ORDER BY sequence ASC")
+    @ResultMap("mybatis-plus_McpMessage")
     List<McpMessage> findBySessionIdAndRoleOrderBySequenceAsc(@Param("sessionId") String sessionId, @Param("role") String role);
     
+    /**
+     * 按主键顺序分批查询指定时间之后创建的消息（启动时补建全文索引用）
+     * @param since 创建时间下界（含）
+     * @param afterId 主键游标（不含）
+     * @param limit 条数
+     * @return 消息列表
+     */
+    @Select("SELECT * FROM mcp_message WHERE id > #{afterId} AND create_time >= #{since} ORDER BY id ASC LIMIT #{limit}")
+    @ResultMap("mybatis-plus_McpMessage")
+    List<McpMessage> findCreatedSince(@Param("since") Date since, @Param("afterId") long afterId, @Param("limit") int limit);
+    
     /**
      * 删除会话的所有消息
      * @param sessionId 会话ID
      */
     @Delete("DELETE FROM mcp_message WHERE session_id = #{sessionId}")
     void deleteBySessionId(@Param("sessionId") String sessionId);
+
+    /**
+     * 删除一批会话的所有消息
+     * @param sessionIds 会话ID列表
+     * @return 删除行数
+     */
+    @Delete({"<script>",
+            "DELETE FROM mcp_message WHERE session_id IN",
+            "<foreach collection='sessionIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int deleteBySessionIds(@Param("sessionIds") List<String> sessionIds);
+    
+    /**
+     * 删除会话中指定序号的消息（生成失败时撤销用户消息）
+     * @param sessionId 会话ID
+     * @param sequence 消息序号
+     * @return 删除行数
+     */
+    @Delete("DELETE FROM mcp_message WHERE session_id = #{sessionId} AND sequence = #{sequence}")
+    int deleteBySequence(@Param("sessionId") String sessionId, @Param("sequence") int sequence);
 } 
\ No newline at end of file
@@ -1,16 +1,22 @@
 package com.example.mcpdemo.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.example.mcpdemo.dto.McpSessionSummary;
 import com.example.mcpdemo.entity.McpSession;
+import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultMap;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.util.Date;
 import java.util.List;
 
 /**
  * McpSession的MyBatis Plus Mapper接口
+ * <p>
+ * 返回实体的查询使用 autoResultMap 生成的结果映射，system_prompt 列由压缩文本类型处理器读取
  */
 @Mapper
 public interface McpSessionMapper extends BaseMapper<McpSession> {
@@ -21,6 +27,7 @@ public interface McpSessionMapper extends BaseMapper<McpSession> {
      * @return 会话列表
      */
     @Select("SELECT * FROM mcp_session WHERE user_id = #{userId} ORDER BY update_time DESC")
+    @ResultMap("mybatis-plus_McpSession")
     List<McpSession> findByUserIdOrderByUpdateTimeDesc(@Param("userId") String userId);
 
     /**
@@ -29,6 +36,7 @@ public interface McpSessionMapper extends BaseMapper<McpSession> {
      * @return 会话列表
      */
     @Select("SELECT * FROM mcp_session WHERE status = #{status}")
+    @ResultMap("mybatis-plus_McpSession")
     List<McpSession> findByStatus(@Param("status") String status);
 
     /**
@@ -37,8 +45,59 @@ public interface McpSessionMapper extends BaseMapper<McpSession> {
      * @return 过期会话列表
      */
     @Select("SELECT * FROM mcp_session WHERE update_time < #{expiryTime}")
+    @ResultMap("mybatis-plus_McpSession")
     List<McpSession> findExpiredSessions(@Param("expiryTime") Date expiryTime);
 
+    /**
+     * 分批查询过期的活跃会话ID（已归档的会话不过期），走 idx_update_time 索引
+     * @param expiryTime 过期时间
+     * @param limit 批大小
+     * @return 过期会话ID列表
+     */
+    @Select("SELECT id FROM mcp_session WHERE update_time < #{expiryTime} AND status = 'ACTIVE' ORDER BY update_time ASC LIMIT #{limit}")
+    List<String> findExpiredSessionIds(@Param("expiryTime") Date expiryTime, @Param("limit") int limit);
+
+    /**
+     * 在事务中重新校验一批过期会话并加行锁，删除期间被重新使用的会话不会出现在结果中，之后的更新会等待事务结束
+     * @param ids 会话ID列表
+     * @param expiryTime 过期时间
+     * @return 仍然过期的会话ID列表
+     */
+    @Select({"<script>",
+            "SELECT id FROM mcp_session WHERE update_time &lt; #{expiryTime} AND status = 'ACTIVE' AND id IN",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "FOR UPDATE",
+            "</script>"})
+    List<String> lockExpiredSessionIds(@Param("ids") List<String> ids, @Param("expiryTime") Date expiryTime);
+
+    /**
+     * 按ID批量删除会话
+     * @param ids 会话ID列表
+     * @return 删除行数
+     */
+    @Delete({"<script>",
+            "DELETE FROM mcp_session WHERE id IN",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int deleteByIds(@Param("ids") List<String> ids);
+
+    /**
+     * 统计指定状态的会话数
+     * @param status 状态
+     * @return 会话数
+     */
+    @Select("SELECT COUNT(*) FROM mcp_session WHERE status = #{status}")
+    long countByStatus(@Param("status") String status);
+
+    /**
+     * 统计用户指定状态的会话数，走 idx_user_status_update 索引的前缀
+     * @param userId 用户ID
+     * @param status 状态
+     * @return 会话数
+     */
+    @Select("SELECT COUNT(*) FROM mcp_session WHERE user_id = #{userId} AND status = #{status}")
+    long countByUserIdAndStatus(@Param("userId") String userId, @Param("status") String status);
+
     /**
      * 根据用户ID和状态查询会话，按更新时间倒序排序
      * @param userId 用户ID
@@ -46,5 +105,53 @@ public interface McpSessionMapper extends BaseMapper<McpSession> {
      * @return 会话列表
      */
     @Select("SELECT * FROM mcp_session WHERE user_id = #{userId} AND status = #{status} ORDER BY update_time DESC")
+    @ResultMap("mybatis-plus_McpSession")
     List<McpSession> findByUserIdAndStatusOrderByUpdateTimeDesc(@Param("userId") String userId, @Param("status") String status);
-} 
\ No newline at end of file
+
+    /**
+     * 键集分页查询用户会话摘要，按 (update_time, id) 倒序；
+     * 只读取 idx_user_status_update 覆盖索引中的列，不回表读取系统提示词，也不访问消息表
+     * @param userId 用户ID
+     * @param status 状态
+     * @param before 更新时间上界游标，为null时从最新开始
+     * @param beforeId 会话ID游标，更新时间等于 before 时只取ID更小的会话
+     * @param limit 条数
+     * @return 会话摘要列表
+     */
+    @Select({"<script>",
+            "SELECT id, title, model, update_time, message_count, last_message_preview FROM mcp_session",
+            "WHERE user_id = #{userId} AND status = #{status}",
+            "<if test='before != null'>AND (update_time &lt; #{before} OR (update_time = #{before} AND id &lt; #{beforeId}))</if>",
+            "ORDER BY update_time DESC, id DESC LIMIT #{limit}",
+            "</script>"})
+    List<McpSessionSummary> findSummaries(@Param("userId") String userId, @Param("status") String status,
+                                          @Param("before") Date before, @Param("beforeId") String beforeId,
+                                          @Param("limit") int limit);
+
+    /**
+     * 分批查询待归档的空闲会话ID，走 idx_update_time 索引
+     * @param idleBefore 更新时间早于该时间的活跃会话
+     * @param limit 批大小
+     * @return 会话ID列表
+     */
+    @Select("SELECT id FROM mcp_session WHERE update_time < #{idleBefore} AND status = 'ACTIVE' ORDER BY update_time ASC LIMIT #{limit}")
+    List<String> findArchivableSessionIds(@Param("idleBefore") Date idleBefore, @Param("limit") int limit);
+
+    /**
+     * 标记会话已归档，更新时间已变化（归档期间被使用）时不更新
+     * @param id 会话ID
+     * @param updateTime 读取时的更新时间
+     * @param archiveOffset 归档记录号
+     * @return 更新行数
+     */
+    @Update("UPDATE mcp_session SET status = 'ARCHIVED', archive_offset = #{archiveOffset} WHERE id = #{id} AND status = 'ACTIVE' AND update_time = #{updateTime}")
+    int markArchived(@Param("id") String id, @Param("updateTime") Date updateTime, @Param("archiveOffset") long archiveOffset);
+
+    /**
+     * 标记归档会话已恢复到数据库
+     * @param id 会话ID
+     * @return 更新行数，已被其他线程恢复时为0
+     */
+    @Update("UPDATE mcp_session SET status = 'ACTIVE', archive_offset = NULL WHERE id = #{id} AND status = 'ARCHIVED'")
+    int markRehydrated(@Param("id") String id);
+}
@@ -0,0 +1,93 @@
+package com.example.mcpdemo.mapper.handler;
+
+import java.util.Objects;
+
+/**
+ * 压缩存储的文本
+ * <p>
+ * 从数据库读出时只保存编码后的字节和读出它的编解码器，首次访问 {@link #text()} 时才解码；新建时只保存文本，
+ * 首次写库时才由类型处理器的编解码器编码。两种形式算出后都会缓存，同一实例反复读写不会重复编解码。
+ */
+public final class CompressedText {
+
+    private volatile String text;
+    private volatile byte[] encoded;
+    private final CompressedTextCodec codec;
+
+    private CompressedText(String text, byte[] encoded, CompressedTextCodec codec) {
+        this.text = text;
+        this.encoded = encoded;
+        this.codec = codec;
+    }
+
+    /**
+     * 由文本创建
+     *
+     * @param text 文本
+     * @return 实例，text为null时返回null
+     */
+    public static CompressedText of(String text) {
+        return text == null ? null : new CompressedText(text, null, null);
+    }
+
+    /**
+     * 由数据库中的编码字节创建，不立即解码
+     *
+     * @param encoded 编码字节
+     * @param codec 首次访问文本时用于解码
+     * @return 实例，encoded为null时返回null
+     */
+    public static CompressedText ofEncoded(byte[] encoded, CompressedTextCodec codec) {
+        return encoded == null ? null : new CompressedText(null, encoded, codec);
+    }
+
+    /**
+     * 获取文本，首次调用时解码
+     *
+     * @return 文本
+     */
+    public String text() {
+        String value = text;
+        if (value == null) {
+            value = codec.decode(encoded);
+            text = value;
+        }
+        return value;
+    }
+
+    /**
+     * 获取编码字节，首次调用时编码
+     *
+     * @param codec 编解码器
+     * @return 编码字节
+     */
+    public byte[] encoded(CompressedTextCodec codec) {
+        byte[] value = encoded;
+        if (value == null) {
+            value = codec.encode(text);
+            encoded = value;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompressedText)) {
+            return false;
+        }
+        return Objects.equals(text(), ((CompressedText) o).text());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(text());
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.mcpdemo.mapper.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 文本存储编解码
+ * <p>
+ * 存储格式由首字节区分：
+ * <ul>
+ *     <li>0x02：版本2，后跟原文UTF-8字节数（变长整数）和 raw Deflate 数据</li>
+ *     <li>0x01：版本1，后跟原文UTF-8字节，仅用于原文本身以 0x01/0x02 开头的情况</li>
+ *     <li>其他：未加版本字节的原文UTF-8字节，包括启用压缩前写入的旧数据和低于阈值的短文本</li>
+ * </ul>
+ * 压缩后不比原文小时原样存储。参数来自 mcp.server.compression，由 {@code CompressionConfig} 创建单例并注入
+ * {@link CompressedTextTypeHandler} 与归档；关闭压缩只影响新写入的数据，已压缩的数据仍可读取。
+ */
+public final class CompressedTextCodec {
+
+    static final byte VERSION_RAW = 0x01;
+    static final byte VERSION_DEFLATE = 0x02;
+
+    private final boolean enabled;
+    private final int threshold;
+    private final int level;
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<>();
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    // 编码统计：所有写入文本的原始字节数与存储字节数，及压缩部分的原始字节数与耗时
+    private final LongAdder encodeCount = new LongAdder();
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder compressedRawBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+
+    // 解码统计：只统计需要解压的数据
+    private final LongAdder decompressCount = new LongAdder();
+    private final LongAdder decompressedBytes = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    /**
+     * @param enabled 是否压缩新写入的文本
+     * @param threshold 压缩阈值（UTF-8字节数）
+     * @param level Deflate压缩级别
+     */
+    public CompressedTextCodec(boolean enabled, int threshold, int level) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * 编码文本
+     *
+     * @param text 文本
+     * @return 存储字节
+     */
+    public byte[] encode(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        byte[] stored = null;
+        if (enabled && raw.length >= threshold) {
+            long start = System.nanoTime();
+            stored = deflate(raw);
+            compressNanos.add(System.nanoTime() - start);
+            compressedRawBytes.add(raw.length);
+            if (stored.length < raw.length) {
+                compressedCount.increment();
+            } else {
+                stored = null;
+            }
+        }
+        if (stored == null) {
+            stored = raw;
+            if (raw.length > 0 && (raw[0] == VERSION_RAW || raw[0] == VERSION_DEFLATE)) {
+                stored = new byte[raw.length + 1];
+                stored[0] = VERSION_RAW;
+                System.arraycopy(raw, 0, stored, 1, raw.length);
+            }
+        }
+        encodeCount.increment();
+        rawBytes.add(raw.length);
+        storedBytes.add(stored.length);
+        return stored;
+    }
+
+    /**
+     * 解码存储字节
+     *
+     * @param stored 存储字节
+     * @return 文本
+     */
+    public String decode(byte[] stored) {
+        if (stored.length == 0) {
+            return "";
+        }
+        if (stored[0] == VERSION_RAW) {
+            return new String(stored, 1, stored.length - 1, StandardCharsets.UTF_8);
+        }
+        if (stored[0] != VERSION_DEFLATE) {
+            return new String(stored, StandardCharsets.UTF_8);
+        }
+        long start = System.nanoTime();
+        byte[] raw = inflate(stored);
+        decompressNanos.add(System.nanoTime() - start);
+        decompressCount.increment();
+        decompressedBytes.add(raw.length);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 获取压缩统计：节省的空间与每KB原文的压缩、解压耗时
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        long raw = rawBytes.sum();
+        long stored = storedBytes.sum();
+        long compressedRaw = compressedRawBytes.sum();
+        long decompressed = decompressedBytes.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("threshold", threshold);
+        stats.put("level", level);
+        stats.put("encoded", encodeCount.sum());
+        stats.put("compressed", compressedCount.sum());
+        stats.put("rawBytes", raw);
+        stats.put("storedBytes", stored);
+        stats.put("savedBytes", raw - stored);
+        stats.put("ratio", raw == 0 ? 1.0 : (double) stored / raw);
+        stats.put("compressNanosPerKb", compressedRaw == 0 ? 0 : compressNanos.sum() * 1024 / compressedRaw);
+        stats.put("decompressed", decompressCount.sum());
+        stats.put("decompressNanosPerKb", decompressed == 0 ? 0 : decompressNanos.sum() * 1024 / decompressed);
+        return stats;
+    }
+
+    // 辅助方法 - 版本字节 + 原文长度 + raw Deflate
+    private byte[] deflate(byte[] raw) {
+        Deflater deflater = DEFLATER.get();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            DEFLATER.set(deflater);
+        } else {
+            deflater.reset();
+        }
+        deflater.setLevel(level);
+        deflater.setInput(raw);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+        out.write(VERSION_DEFLATE);
+        writeVarInt(out, raw.length);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] stored) {
+        // 读取原文长度
+        int length = 0;
+        int shift = 0;
+        int offset = 1;
+        byte b;
+        do {
+            b = stored[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(stored, offset, stored.length - offset);
+        byte[] raw = new byte[length];
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, length - n);
+                if (read == 0 && inflater.needsInput()) {
+                    break;
+                }
+                n += read;
+            }
+            return n == length ? raw : Arrays.copyOf(raw, n);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted compressed text", e);
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.mcpdemo.mapper.handler;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedTypes;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 压缩文本类型处理器，对应BLOB列
+ * <p>
+ * 写入时编码为 {@link CompressedTextCodec} 的存储格式；读取时只取出字节，解码推迟到首次访问文本。
+ * 实例由 {@code CompressionConfig} 注册为Bean、经MyBatis配置登记，实体字段上的 typeHandler 引用的都是这一实例。
+ */
+@MappedTypes(CompressedText.class)
+public class CompressedTextTypeHandler extends BaseTypeHandler<CompressedText> {
+
+    private final CompressedTextCodec codec;
+
+    public CompressedTextTypeHandler(CompressedTextCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, CompressedText parameter, JdbcType jdbcType) throws SQLException {
+        ps.setBytes(i, parameter.encoded(codec));
+    }
+
+    @Override
+    public CompressedText getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return CompressedText.ofEncoded(rs.getBytes(columnName), codec);
+    }
+
+    @Override
+    public CompressedText getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return CompressedText.ofEncoded(rs.getBytes(columnIndex), codec);
+    }
+
+    @Override
+    public CompressedText getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return CompressedText.ofEncoded(cs.getBytes(columnIndex), codec);
+    }
+}
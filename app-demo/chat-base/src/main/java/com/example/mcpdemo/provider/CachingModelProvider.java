@@ -0,0 +1,83 @@
+package com.example.mcpdemo.provider;
+
+import com.example.mcpdemo.service.support.ResponseCache;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 带回复缓存的模型提供方装饰器
+ * <p>
+ * 命中时不调用被装饰的提供方：普通请求直接返回完成的Future，流式请求把缓存的回复作为一片回调后立即完成，
+ * 因此缓存的回复同样走流式发送路径。未命中时正常生成，完整成功的回复写入缓存，取消或失败的不写入。
+ */
+public class CachingModelProvider implements ModelProvider {
+
+    private final ModelProvider delegate;
+    private final ResponseCache responseCache;
+
+    public CachingModelProvider(ModelProvider delegate, ResponseCache responseCache) {
+        this.delegate = delegate;
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public CompletableFuture<String> complete(ModelRequest request) {
+        if (!responseCache.isCacheable(request)) {
+            return delegate.complete(request);
+        }
+        String key = responseCache.keyOf(request);
+        String cached = responseCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return delegate.complete(request).thenApply(content -> {
+            responseCache.put(key, content);
+            return content;
+        });
+    }
+
+    @Override
+    public void stream(ModelRequest request, ModelStreamListener listener) {
+        if (!responseCache.isCacheable(request)) {
+            delegate.stream(request, listener);
+            return;
+        }
+        String key = responseCache.keyOf(request);
+        String cached = responseCache.get(key);
+        if (cached != null) {
+            listener.onToken(cached);
+            listener.onComplete();
+            return;
+        }
+        delegate.stream(request, new ModelStreamListener() {
+            private final StringBuilder content = new StringBuilder();
+
+            @Override
+            public void onToken(String text) {
+                content.append(text);
+                listener.onToken(text);
+            }
+
+            @Override
+            public void onComplete() {
+                responseCache.put(key, content.toString());
+                listener.onComplete();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                listener.onError(error);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return listener.isCancelled();
+            }
+        });
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.mcpdemo.provider;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 模型提供方SPI
+ * <p>
+ * 实现类注册为Spring Bean，按 {@link #name()} 通过 mcp.server.model-providers 与模型名称绑定。
+ * 两个方法都必须是非阻塞的：调用立即返回，结果通过Future或回调在提供方自己的线程上交付，
+ * 不能占用调用方（Servlet）线程等待生成。
+ */
+public interface ModelProvider {
+
+    /**
+     * 提供方名称
+     *
+     * @return 名称
+     */
+    String name();
+
+    /**
+     * 一次性生成完整回复
+     *
+     * @param request 生成请求
+     * @return 回复内容
+     */
+    CompletableFuture<String> complete(ModelRequest request);
+
+    /**
+     * 流式生成
+     *
+     * @param request 生成请求
+     * @param listener 回调
+     */
+    void stream(ModelRequest request, ModelStreamListener listener);
+}
@@ -0,0 +1,62 @@
+package com.example.mcpdemo.provider;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.service.support.ResponseCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模型提供方注册表，按会话模型选择提供方
+ * <p>
+ * 模型与提供方的对应关系见 mcp.server.model-providers，未配置的模型使用 mcp.server.default-provider。
+ * 返回的提供方都带回复缓存装饰，缓存关闭或请求不可缓存时直接透传。
+ */
+@Component
+@Slf4j
+public class ModelProviderRegistry {
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private List<ModelProvider> providerBeans;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    private final Map<String, ModelProvider> providers = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        providerBeans.forEach(provider -> providers.put(provider.name(), new CachingModelProvider(provider, responseCache)));
+        if (!providers.containsKey(mcpConfig.getDefaultProvider())) {
+            throw new IllegalStateException("Unknown default model provider: " + mcpConfig.getDefaultProvider());
+        }
+        mcpConfig.getModelProviders().forEach((model, name) -> {
+            if (!providers.containsKey(name)) {
+                throw new IllegalStateException("Unknown model provider " + name + " for model " + model);
+            }
+            if (!mcpConfig.getModels().contains(model)) {
+                log.warn("Model {} is mapped to provider {} but not listed in mcp.server.models", model, name);
+            }
+        });
+        log.info("Model providers registered: {}, default: {}", providers.keySet(), mcpConfig.getDefaultProvider());
+    }
+
+    /**
+     * 获取模型对应的提供方
+     *
+     * @param model 模型名称
+     * @return 提供方
+     */
+    public ModelProvider resolve(String model) {
+        String name = mcpConfig.getModelProviders().getOrDefault(model, mcpConfig.getDefaultProvider());
+        return providers.get(name);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.mcpdemo.provider;
+
+import com.example.mcpdemo.dto.McpMessageDto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 模型生成请求
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModelRequest {
+
+    /**
+     * 模型名称
+     */
+    private String model;
+
+    /**
+     * 上下文消息，按时间顺序，系统提示词在最前
+     */
+    private List<McpMessageDto> messages;
+
+    /**
+     * 温度参数
+     */
+    private Float temperature;
+
+    /**
+     * 最大回复令牌数
+     */
+    private Integer maxTokens;
+
+    /**
+     * 最后一条用户消息内容
+     *
+     * @return 用户消息，没有时为空字符串
+     */
+    public String lastUserMessage() {
+        if (messages != null) {
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                if ("user".equals(messages.get(i).getRole())) {
+                    return messages.get(i).getContent();
+                }
+            }
+        }
+        return "";
+    }
+}
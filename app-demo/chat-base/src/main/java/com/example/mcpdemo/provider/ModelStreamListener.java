@@ -0,0 +1,38 @@
+package com.example.mcpdemo.provider;
+
+/**
+ * 流式生成回调
+ * <p>
+ * 同一次生成的回调按顺序调用，且 {@link #onComplete()} 与 {@link #onError(Throwable)} 有且只有一个会被调用一次，
+ * 包括调用方取消的情况（以 CancellationException 回调 onError）。
+ */
+public interface ModelStreamListener {
+
+    /**
+     * 收到新生成的文本
+     *
+     * @param text 新增文本
+     */
+    void onToken(String text);
+
+    /**
+     * 生成完成
+     */
+    void onComplete();
+
+    /**
+     * 生成失败或被取消
+     *
+     * @param error 异常
+     */
+    void onError(Throwable error);
+
+    /**
+     * 调用方是否已取消（如客户端断开），提供方应尽快停止生成
+     *
+     * @return 是否已取消
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.mcpdemo.provider;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.dto.McpMessageDto;
+import com.example.mcpdemo.exception.ModelProviderException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OpenAI兼容HTTP模型提供方
+ * <p>
+ * 调用 {baseUrl}/chat/completions，所有实例共享一个JDK HttpClient（内部连接池，HTTP/2多路复用）。
+ * 请求以异步方式发送，流式响应按行订阅SSE数据（data: {...}），每收到一段增量文本回调一次，
+ * 整个过程不占用调用方线程。
+ */
+@Component
+@Slf4j
+public class OpenAiCompatibleModelProvider implements ModelProvider {
+
+    public static final String NAME = "openai";
+
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE_MARKER = "[DONE]";
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    private ExecutorService callbackExecutor;
+
+    private HttpClient httpClient;
+
+    @PostConstruct
+    public void init() {
+        McpConfig.OpenAiProvider config = mcpConfig.getOpenaiProvider();
+        AtomicInteger counter = new AtomicInteger();
+        callbackExecutor = Executors.newFixedThreadPool(config.getCallbackThreads(), r -> {
+            Thread thread = new Thread(r, "mcp-model-http-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeout()))
+                .executor(callbackExecutor)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        callbackExecutor.shutdown();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public CompletableFuture<String> complete(ModelRequest request) {
+        return httpClient.sendAsync(buildHttpRequest(request, false), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new ModelProviderException(NAME, "HTTP " + response.statusCode() + ": " + response.body());
+                    }
+                    JSONObject body = JSON.parseObject(response.body());
+                    JSONArray choices = body.getJSONArray("choices");
+                    if (choices == null || choices.isEmpty()) {
+                        throw new ModelProviderException(NAME, "Empty choices in response");
+                    }
+                    return choices.getJSONObject(0).getJSONObject("message").getString("content");
+                });
+    }
+
+    @Override
+    public void stream(ModelRequest request, ModelStreamListener listener) {
+        SseLineSubscriber subscriber = new SseLineSubscriber(listener);
+        httpClient.sendAsync(buildHttpRequest(request, true), responseInfo -> {
+                    if (responseInfo.statusCode() != 200) {
+                        subscriber.fail(new ModelProviderException(NAME, "HTTP " + responseInfo.statusCode()));
+                        return HttpResponse.BodySubscribers.discarding();
+                    }
+                    return HttpResponse.BodySubscribers.fromLineSubscriber(subscriber);
+                })
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        subscriber.fail(error);
+                    }
+                });
+    }
+
+    // 辅助方法 - 构建 chat/completions 请求
+    private HttpRequest buildHttpRequest(ModelRequest request, boolean stream) {
+        McpConfig.OpenAiProvider config = mcpConfig.getOpenaiProvider();
+        
+        JSONArray messages = new JSONArray();
+        for (McpMessageDto message : request.getMessages()) {
+            JSONObject item = new JSONObject();
+            item.put("role", message.getRole());
+            item.put("content", message.getContent());
+            messages.add(item);
+        }
+        JSONObject body = new JSONObject();
+        body.put("model", request.getModel());
+        body.put("messages", messages);
+        body.put("stream", stream);
+        if (request.getTemperature() != null) {
+            body.put("temperature", request.getTemperature());
+        }
+        if (request.getMaxTokens() != null) {
+            body.put("max_tokens", request.getMaxTokens());
+        }
+        
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(config.getBaseUrl() + "/chat/completions"))
+                .timeout(Duration.ofMillis(config.getRequestTimeout()))
+                .header("Content-Type", "application/json")
+                .header("Accept", stream ? "text/event-stream" : "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toJSONString(), StandardCharsets.UTF_8));
+        if (config.getApiKey() != null && !config.getApiKey().isEmpty()) {
+            builder.header("Authorization", "Bearer " + config.getApiKey());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 按行解析SSE响应体，每行按需请求，客户端取消时停止订阅
+     */
+    private static class SseLineSubscriber implements Flow.Subscriber<String> {
+
+        private final ModelStreamListener listener;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private Flow.Subscription subscription;
+
+        private SseLineSubscriber(ModelStreamListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (finished.get()) {
+                return;
+            }
+            if (listener.isCancelled()) {
+                subscription.cancel();
+                fail(new CancellationException("Stream cancelled by caller"));
+                return;
+            }
+            try {
+                if (line.startsWith(DATA_PREFIX)) {
+                    String data = line.substring(DATA_PREFIX.length()).trim();
+                    if (DONE_MARKER.equals(data)) {
+                        subscription.cancel();
+                        complete();
+                        return;
+                    }
+                    String text = deltaContent(data);
+                    if (text != null && !text.isEmpty()) {
+                        listener.onToken(text);
+                    }
+                }
+            } catch (Exception e) {
+                subscription.cancel();
+                fail(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            fail(error);
+        }
+
+        @Override
+        public void onComplete() {
+            // 部分兼容实现不发送 [DONE]，以连接正常结束为准
+            complete();
+        }
+
+        private void complete() {
+            if (finished.compareAndSet(false, true)) {
+                listener.onComplete();
+            }
+        }
+
+        private void fail(Throwable error) {
+            if (finished.compareAndSet(false, true)) {
+                listener.onError(error);
+            }
+        }
+
+        // 取出 choices[0].delta.content
+        private String deltaContent(String data) throws IOException {
+            JSONObject chunk = JSON.parseObject(data);
+            if (chunk.containsKey("error")) {
+                throw new IOException("Provider error: " + chunk.getString("error"));
+            }
+            JSONArray choices = chunk.getJSONArray("choices");
+            if (choices == null || choices.isEmpty()) {
+                return null;
+            }
+            JSONObject delta = choices.getJSONObject(0).getJSONObject("delta");
+            return delta != null ? delta.getString("content") : null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.mcpdemo.provider;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.exception.ModelProviderException;
+import com.example.mcpdemo.service.support.StreamExecutor;
+import com.example.mcpdemo.service.support.StreamTask;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地模拟模型提供方
+ * <p>
+ * 按用户消息中的关键词返回固定回复，相同输入总是得到相同输出，分片大小和间隔也固定，便于测试与压测。
+ * 流式输出由 {@link StreamExecutor} 按配置的间隔逐片驱动；非流式生成可配置耗时（延迟完成，不阻塞调用线程），也可按比例模拟失败。
+ */
+@Component
+@Slf4j
+public class StubModelProvider implements ModelProvider {
+
+    public static final String NAME = "stub";
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private StreamExecutor streamExecutor;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public CompletableFuture<String> complete(ModelRequest request) {
+        long delay = mcpConfig.getStubProvider().getCompleteDelay();
+        if (simulateFailure()) {
+            ModelProviderException failure = new ModelProviderException(NAME, "Simulated failure");
+            if (delay <= 0) {
+                return CompletableFuture.failedFuture(failure);
+            }
+            CompletableFuture<String> result = new CompletableFuture<>();
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> result.completeExceptionally(failure));
+            return result;
+        }
+        String userMessage = request.lastUserMessage();
+        if (delay <= 0) {
+            return CompletableFuture.completedFuture(generate(userMessage));
+        }
+        // 延迟到期后在公共线程池上生成，调用线程（请求线程或事件循环）不被占用
+        return CompletableFuture.supplyAsync(() -> generate(userMessage),
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public void stream(ModelRequest request, ModelStreamListener listener) {
+        McpConfig.StubProvider config = mcpConfig.getStubProvider();
+        if (simulateFailure()) {
+            listener.onError(new ModelProviderException(NAME, "Simulated failure"));
+            return;
+        }
+        List<String> chunks = TextChunker.split(generate(request.lastUserMessage()), config.getChunkSize());
+        try {
+            streamExecutor.submit(new StubStreamTask(chunks, config.getChunkDelay(), listener));
+        } catch (RejectedExecutionException e) {
+            listener.onError(e);
+        }
+    }
+
+    // 辅助方法 - 按配置比例模拟生成失败
+    private boolean simulateFailure() {
+        double rate = mcpConfig.getStubProvider().getFailureRate();
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    // 辅助方法 - 按关键词生成回复
+    private String generate(String userMessage) {
+        log.debug("Generating mock response");
+        
+        if (userMessage.contains("你好") || userMessage.contains("Hello") || userMessage.contains("hello")) {
+            return "你好！我是 MCP (Model Context Protocol) 服务，很高兴为您服务。有什么可以帮助您的吗？";
+        } else if (userMessage.contains("什么是MCP") || userMessage.contains("介绍MCP")) {
+            return "MCP (Model Context Protocol) 是一种开放的通信协议，旨在标准化大模型应用开发。它提供了一套统一的接口，使应用开发者可以更轻松地接入不同的大语言模型服务。MCP的核心功能包括上下文管理、会话控制、多模态输入输出支持等。";
+        } else if (userMessage.contains("特点") || userMessage.contains("优势")) {
+            return "MCP协议的主要特点和优势包括：\n\n1. 统一接口：提供标准化的API接口，降低对接不同模型的成本\n2. 上下文管理：自动处理对话上下文，支持长对话\n3. 多模型兼容：支持同时接入多种大语言模型\n4. 扩展性强：可以通过插件机制扩展功能\n5. 安全可控：提供身份验证和访问控制机制\n6. 开放生态：开源协议，鼓励社区共建";
+        } else if (userMessage.contains("使用场景") || userMessage.contains("应用")) {
+            return "MCP协议的应用场景非常广泛，包括但不限于：\n\n1. 聊天机器人和智能客服系统\n2. 知识库问答系统\n3. 内容生成和创作辅助工具\n4. 代码辅助和智能编程工具\n5. 多模态应用，如图像理解和生成\n6. 专业领域的决策支持系统\n7. 教育和培训系统";
+        } else {
+            return "感谢您的提问。作为MCP示例服务，我可以帮助您了解MCP协议的各种功能和应用。您可以询问关于MCP的定义、特点、使用场景、技术实现等方面的问题。如果您想体验更丰富的功能，可以尝试流式响应、多模态输入、工具调用等高级特性。";
+        }
+    }
+
+    /**
+     * 模拟流式生成任务，每次由执行引擎驱动时回调一片
+     */
+    private static class StubStreamTask implements StreamTask {
+
+        private final List<String> chunks;
+        private final long delay;
+        private final ModelStreamListener listener;
+        private int index;
+
+        private StubStreamTask(List<String> chunks, long delay, ModelStreamListener listener) {
+            this.chunks = chunks;
+            this.delay = delay;
+            this.listener = listener;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public boolean emitNext() {
+            if (listener.isCancelled()) {
+                throw new CancellationException("Stream cancelled by caller");
+            }
+            if (index >= chunks.size()) {
+                return false;
+            }
+            listener.onToken(chunks.get(index++));
+            return index < chunks.size();
+        }
+
+        @Override
+        public long nextDelayMillis() {
+            return delay;
+        }
+
+        @Override
+        public void onComplete() {
+            listener.onComplete();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            listener.onError(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.mcpdemo.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式分片：按固定字符数切分回复文本，不拆开代理对，拼接各片即得原文
+ */
+final class TextChunker {
+
+    private TextChunker() {
+    }
+
+    /**
+     * 按固定字符数切片
+     *
+     * @param text      回复文本
+     * @param chunkSize 每片字符数，小于1时按1处理
+     * @return 分片列表，文本为空时为空列表
+     */
+    static List<String> split(String text, int chunkSize) {
+        List<String> chunks = new ArrayList<>();
+        int size = Math.max(1, chunkSize);
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(start + size, text.length());
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(text.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+}
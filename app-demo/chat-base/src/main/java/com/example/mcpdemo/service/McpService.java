@@ -1,12 +1,17 @@
 package com.example.mcpdemo.service;
 
 import com.example.mcpdemo.dto.McpMessageDto;
+import com.example.mcpdemo.dto.McpMessagePage;
 import com.example.mcpdemo.dto.McpRequest;
 import com.example.mcpdemo.dto.McpResponse;
+import com.example.mcpdemo.dto.McpSearchHit;
+import com.example.mcpdemo.dto.McpSessionPage;
 import com.example.mcpdemo.entity.McpSession;
+import com.example.mcpdemo.service.support.StreamSubscriber;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * MCP服务接口
@@ -39,6 +44,18 @@ public interface McpService {
      */
     List<McpSession> listSessions(String userId);
 
+    /**
+     * 键集分页获取用户的会话摘要，最近更新的在前；不带游标时返回第一页
+     *
+     * @param userId 用户ID
+     * @param status 会话状态（ACTIVE / ARCHIVED），为null时取ACTIVE
+     * @param before 更新时间游标（毫秒，取上一页的 nextBefore），可为null
+     * @param beforeId 会话ID游标（取上一页的 nextBeforeId），可为null
+     * @param limit 每页条数，为null时使用默认值
+     * @return 分页结果
+     */
+    McpSessionPage listSessionSummaries(String userId, String status, Long before, String beforeId, Integer limit);
+
     /**
      * 删除会话
      *
@@ -55,23 +72,87 @@ public interface McpService {
     List<McpMessageDto> getMessages(String sessionId);
 
     /**
-     * 处理普通请求
+     * 键集分页获取会话消息历史
+     * <p>
+     * 指定 before 时返回该序号之前的一页（加载更早历史），指定 after 时返回该序号之后的一页，
+     * 都不指定时返回最近的 limit 条消息。
+     *
+     * @param sessionId 会话ID
+     * @param before 序号上界（不含），可为null
+     * @param after 序号下界（不含），可为null
+     * @param limit 每页条数，为null时使用默认值
+     * @return 分页结果，消息按序号升序
+     */
+    McpMessagePage getMessagePage(String sessionId, Integer before, Integer after, Integer limit);
+
+    /**
+     * 在用户的全部会话中全文检索消息，同时包含全部查询词的消息大致按时间倒序返回
+     *
+     * @param userId 用户ID
+     * @param query 查询串（中日韩文字按二元组匹配）
+     * @param limit 返回条数，为null时使用默认值
+     * @return 命中列表
+     */
+    List<McpSearchHit> search(String userId, String query, Integer limit);
+
+    /**
+     * 处理普通请求，模型生成异步进行，不阻塞调用线程
      *
      * @param request MCP请求
      * @return MCP响应
      */
-    McpResponse chat(McpRequest request);
+    CompletableFuture<McpResponse> chat(McpRequest request);
 
     /**
-     * 处理流式请求
+     * 处理流式请求，返回订阅了本轮会话流的SSE发送器
      *
-     * @param request MCP请求
-     * @return SSE事件发送器
+     * @param request MCP请求，新建会话时会回写会话ID
+     * @return SSE事件发送器，会话不存在时为null
      */
     SseEmitter chatStream(McpRequest request);
 
+    /**
+     * 开始流式生成，帧发布到会话流，由调用方自行订阅
+     *
+     * @param request MCP请求
+     * @return 会话ID，会话不存在时为null
+     */
+    String startStream(McpRequest request);
+
+    /**
+     * 订阅会话流，用于断线续传和多标签页同时接收
+     *
+     * @param sessionId 会话ID
+     * @param lastEventId 客户端已收到的最后事件ID，为null时从本轮开头重放
+     * @return SSE事件发送器，会话不存在时为null
+     */
+    SseEmitter subscribeStream(String sessionId, Long lastEventId);
+
+    /**
+     * 以自定义订阅者订阅会话流（如响应式端点）
+     *
+     * @param sessionId 会话ID
+     * @param subscriber 订阅者
+     * @param lastEventId 客户端已收到的最后事件ID，为null时从本轮开头重放
+     * @return 会话不存在时为false
+     */
+    boolean subscribeStream(String sessionId, StreamSubscriber subscriber, Long lastEventId);
+
+    /**
+     * 退订会话流
+     *
+     * @param sessionId 会话ID
+     * @param subscriber 订阅者
+     */
+    void unsubscribeStream(String sessionId, StreamSubscriber subscriber);
+
     /**
      * 清理过期会话
      */
     void cleanupExpiredSessions();
+
+    /**
+     * 归档空闲会话
+     */
+    void archiveIdleSessions();
 } 
\ No newline at end of file
@@ -5,23 +5,53 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.example.mcpdemo.config.McpConfig;
 import com.example.mcpdemo.dto.McpMessageDto;
+import com.example.mcpdemo.dto.McpMessagePage;
 import com.example.mcpdemo.dto.McpRequest;
 import com.example.mcpdemo.dto.McpResponse;
+import com.example.mcpdemo.dto.McpSearchHit;
+import com.example.mcpdemo.dto.McpSessionPage;
+import com.example.mcpdemo.dto.McpSessionSummary;
+import com.example.mcpdemo.dto.McpStreamDelta;
 import com.example.mcpdemo.entity.McpMessage;
 import com.example.mcpdemo.entity.McpSession;
+import com.example.mcpdemo.exception.AdmissionRejectedException;
 import com.example.mcpdemo.mapper.McpMessageMapper;
 import com.example.mcpdemo.mapper.McpSessionMapper;
+import com.example.mcpdemo.provider.ModelProviderRegistry;
+import com.example.mcpdemo.provider.ModelRequest;
+import com.example.mcpdemo.provider.ModelStreamListener;
 import com.example.mcpdemo.service.McpService;
+import com.example.mcpdemo.service.support.AdmissionLimiter;
+import com.example.mcpdemo.service.support.ChatMetrics;
+import com.example.mcpdemo.service.support.ContextWindowAssembler;
+import com.example.mcpdemo.service.support.DbTimeTracker;
+import com.example.mcpdemo.service.support.ExpiredSessionPurger;
+import com.example.mcpdemo.service.support.IdGenerator;
+import com.example.mcpdemo.service.support.MessageIndex;
+import com.example.mcpdemo.service.support.MessageJournal;
+import com.example.mcpdemo.service.support.MessageSequenceAllocator;
+import com.example.mcpdemo.service.support.ReadRouter;
+import com.example.mcpdemo.service.support.SearchTokenizer;
+import com.example.mcpdemo.service.support.SessionArchiver;
+import com.example.mcpdemo.service.support.SessionCache;
+import com.example.mcpdemo.service.support.ShardRouter;
+import com.example.mcpdemo.service.support.StreamHub;
+import com.example.mcpdemo.service.support.StreamSubscriber;
+import com.example.mcpdemo.service.support.TokenCounter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -40,19 +70,83 @@ public class McpServiceImpl implements McpService {
     @Autowired
     private McpConfig mcpConfig;
 
-    // 缓存活跃的SSE连接
-    private final Map<String, SseEmitter> activeEmitters = new ConcurrentHashMap<>();
+    @Autowired
+    private MessageSequenceAllocator sequenceAllocator;
+
+    @Autowired
+    private MessageJournal messageJournal;
+
+    @Autowired
+    private SessionCache sessionCache;
+
+    @Autowired
+    private ModelProviderRegistry providerRegistry;
+
+    @Autowired
+    private StreamHub streamHub;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private TokenCounter tokenCounter;
+
+    @Autowired
+    private ContextWindowAssembler contextAssembler;
+
+    @Autowired
+    private ExpiredSessionPurger expiredSessionPurger;
+
+    @Autowired
+    private AdmissionLimiter admissionLimiter;
+
+    @Autowired
+    private SessionArchiver sessionArchiver;
+
+    @Autowired
+    private MessageIndex messageIndex;
+
+    @Autowired
+    private SearchTokenizer searchTokenizer;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ReadRouter readRouter;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ExecutorService persistenceExecutor;
+
+    // 流式模式参数名及增量模式取值，见 McpRequest.parameters
+    private static final String PARAM_STREAM_MODE = "streamMode";
+    private static final String STREAM_MODE_DELTA = "delta";
+
+    // 会话最后一条消息预览的最大长度，与 last_message_preview 列宽一致
+    private static final int PREVIEW_LENGTH = 100;
+
+    // 自动生成的会话标题最大长度
+    private static final int TITLE_LENGTH = 30;
 
     @Override
     @Transactional
     public McpSession createSession(String userId, String model, String systemPrompt) {
         log.debug("Creating new session for user: {}, model: {}", userId, model);
         
+        // 预留用户及全局会话名额，事务提交后计入活跃会话；超出时抛出准入拒绝异常
+        admissionLimiter.reserveSession(userId);
+        
         if (model == null || model.isEmpty()) {
             model = mcpConfig.getDefaultModel();
         }
         
-        String sessionId = UUID.randomUUID().toString();
+        String sessionId = idGenerator.nextId();
         Date now = new Date();
         
         McpSession session = McpSession.builder()
@@ -64,9 +158,13 @@ public class McpServiceImpl implements McpService {
                 .status("ACTIVE")
                 .systemPrompt(systemPrompt)
                 .title("新对话")
+                .messageCount(systemPrompt != null && !systemPrompt.isEmpty() ? 1 : 0)
                 .build();
         
         sessionMapper.insert(session);
+        sessionCache.put(session);
+        markWritten(session);
+        sequenceAllocator.register(sessionId);
         
         // 如果有系统提示词，保存为第一条消息
         if (systemPrompt != null && !systemPrompt.isEmpty()) {
@@ -75,11 +173,11 @@ public class McpServiceImpl implements McpService {
                     .role("system")
                     .content(systemPrompt)
                     .createTime(now)
-                    .sequence(0)
                     .model(model)
                     .build();
             
-            messageMapper.insert(systemMessage);
+            insertWithSequence(systemMessage);
+            messageIndex.add(userId, systemMessage);
         }
         
         log.info("Created new session: {}", sessionId);
@@ -89,23 +187,77 @@ public class McpServiceImpl implements McpService {
     @Override
     public McpSession getSession(String sessionId) {
         log.debug("Fetching session: {}", sessionId);
-        return sessionMapper.selectById(sessionId);
+        McpSession session = sessionCache.get(sessionId);
+        if (session != null) {
+            return session;
+        }
+        
+        // 启用只读副本时，缓存未命中且写后日志中没有快照的会话从副本读取；副本结果可能滞后，不放入缓存
+        if (readRouter.isEnabled() && messageJournal.pendingSession(sessionId) == null) {
+            session = readRouter.onReplica(sessionId, () -> sessionMapper.selectById(sessionId));
+            if (session != null) {
+                return session;
+            }
+        }
+        return loadSession(sessionId);
     }
 
     @Override
     public List<McpSession> listSessions(String userId) {
         log.debug("Listing sessions for user: {}", userId);
-        return sessionMapper.findByUserIdAndStatusOrderByUpdateTimeDesc(userId, "ACTIVE");
+        return readRouter.onReplica(ReadRouter.userKey(userId),
+                () -> shardRouter.gather(() -> sessionMapper.findByUserIdAndStatusOrderByUpdateTimeDesc(userId, "ACTIVE"),
+                        Comparator.comparing(McpSession::getUpdateTime).reversed(), Integer.MAX_VALUE));
+    }
+
+    @Override
+    public McpSessionPage listSessionSummaries(String userId, String status, Long before, String beforeId, Integer limit) {
+        log.debug("Listing session summaries for user: {}, status: {}, before: {}/{}, limit: {}",
+                userId, status, before, beforeId, limit);
+        
+        int pageSize = limit == null || limit <= 0 ? mcpConfig.getSessionPageSize()
+                : Math.min(limit, mcpConfig.getSessionMaxPageSize());
+        Date beforeTime = before != null ? new Date(before) : null;
+        
+        // 多取一条用于判断是否还有更多；分表时每张表各取一页后按同样的顺序归并
+        List<McpSessionSummary> rows = readRouter.onReplica(ReadRouter.userKey(userId),
+                () -> shardRouter.gather(() -> sessionMapper.findSummaries(userId, status != null ? status : "ACTIVE", beforeTime,
+                                beforeId != null ? beforeId : "", pageSize + 1),
+                        Comparator.comparing(McpSessionSummary::getUpdateTime).reversed()
+                                .thenComparing(McpSessionSummary::getId, Comparator.reverseOrder()),
+                        pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        List<McpSessionSummary> page = hasMore ? rows.subList(0, pageSize) : rows;
+        McpSessionSummary last = page.isEmpty() ? null : page.get(page.size() - 1);
+        
+        return McpSessionPage.builder()
+                .sessions(page)
+                .nextBefore(last != null && hasMore ? last.getUpdateTime().getTime() : null)
+                .nextBeforeId(last != null && hasMore ? last.getId() : null)
+                .hasMore(hasMore)
+                .build();
     }
 
     @Override
     @Transactional
     public void deleteSession(String sessionId) {
         log.debug("Deleting session: {}", sessionId);
+        McpSession session = loadSession(sessionId);
+        if (session != null) {
+            markWritten(session);
+        }
+        messageJournal.discard(sessionId);
         QueryWrapper<McpMessage> messageWrapper = new QueryWrapper<>();
         messageWrapper.eq("session_id", sessionId);
         messageMapper.delete(messageWrapper);
-        sessionMapper.deleteById(sessionId);
+        if (sessionMapper.deleteById(sessionId) > 0) {
+            admissionLimiter.onSessionRemoved(session != null ? session.getUserId() : null);
+        }
+        sessionCache.invalidate(sessionId);
+        sequenceAllocator.evict(sessionId);
+        contextAssembler.evict(sessionId);
+        streamHub.evict(sessionId);
+        messageIndex.removeSessions(Collections.singletonList(sessionId));
         log.info("Deleted session: {}", sessionId);
     }
 
@@ -113,139 +265,299 @@ public class McpServiceImpl implements McpService {
     public List<McpMessageDto> getMessages(String sessionId) {
         log.debug("Fetching messages for session: {}", sessionId);
         
+        // 归档会话直接从段文件读取，配置为读时恢复时先写回数据库
+        List<McpMessage> archived = readArchived(sessionId);
+        if (archived != null) {
+            return archived.stream()
+                    .map(McpMessageDto::from)
+                    .collect(Collectors.toList());
+        }
+        
         QueryWrapper<McpMessage> queryWrapper = new QueryWrapper<>();
         queryWrapper.eq("session_id", sessionId).orderByAsc("sequence");
-        List<McpMessage> messages = messageMapper.selectList(queryWrapper);
+        List<McpMessage> messages = readRouter.onReplica(sessionId, () -> messageMapper.selectList(queryWrapper));
+        
+        // 合并写后日志中尚未落库的消息，按序号去重
+        List<McpMessage> pending = messageJournal.pendingMessages(sessionId);
+        if (!pending.isEmpty()) {
+            Map<Integer, McpMessage> merged = new TreeMap<>();
+            messages.forEach(m -> merged.put(m.getSequence(), m));
+            pending.forEach(m -> merged.putIfAbsent(m.getSequence(), m));
+            messages = new ArrayList<>(merged.values());
+        }
         
         return messages.stream()
-                .map(this::convertToDto)
+                .map(McpMessageDto::from)
                 .collect(Collectors.toList());
     }
 
     @Override
-    @Transactional
-    public McpResponse chat(McpRequest request) {
-        log.debug("Processing chat request: {}", JSON.toJSONString(request));
+    public McpMessagePage getMessagePage(String sessionId, Integer before, Integer after, Integer limit) {
+        log.debug("Fetching message page for session: {}, before: {}, after: {}, limit: {}", sessionId, before, after, limit);
         
-        String sessionId = request.getSessionId();
-        McpSession session;
+        int pageSize = limit == null || limit <= 0 ? mcpConfig.getHistoryPageSize()
+                : Math.min(limit, mcpConfig.getHistoryMaxPageSize());
+        // 多取一条用于判断是否还有更多
+        int fetchSize = pageSize + 1;
+        boolean ascending = after != null && before == null;
         
-        // 创建或获取会话
-        if (sessionId == null || sessionId.isEmpty()) {
-            session = createSession(
-                    "anonymous", 
-                    request.getModel() != null ? request.getModel() : mcpConfig.getDefaultModel(),
-                    request.getSystemPrompt()
-            );
-            sessionId = session.getId();
+        List<McpMessage> archived = readArchived(sessionId);
+        List<McpMessage> rows;
+        if (archived != null) {
+            rows = archivedRows(archived, before, after, fetchSize, ascending);
         } else {
-            session = getSession(sessionId);
-            if (session == null) {
-                log.error("Session not found: {}", sessionId);
-                return McpResponse.builder()
-                        .error("Session not found")
-                        .build();
-            }
+            rows = readRouter.onReplica(sessionId, () -> pageRows(sessionId, before, after, fetchSize, ascending));
         }
         
-        // 保存用户消息
-        McpMessage userMessage = saveUserMessage(sessionId, request);
-        
-        // 模拟模型响应
-        String responseContent = generateMockResponse(request);
+        // 合并写后日志中尚未落库、且落在游标范围内的消息，按翻页方向排序去重
+        Comparator<Integer> order = ascending ? Comparator.naturalOrder() : Comparator.reverseOrder();
+        Map<Integer, McpMessage> merged = new TreeMap<>(order);
+        rows.forEach(m -> merged.put(m.getSequence(), m));
+        for (McpMessage m : messageJournal.pendingMessages(sessionId)) {
+            int sequence = m.getSequence();
+            if ((before == null || sequence < before) && (after == null || sequence > after)) {
+                merged.putIfAbsent(sequence, m);
+            }
+        }
         
-        // 保存助手消息
-        McpMessage assistantMessage = saveAssistantMessage(sessionId, responseContent, session.getModel());
+        List<McpMessage> page = new ArrayList<>(merged.values());
+        boolean hasMore = page.size() > pageSize;
+        if (hasMore) {
+            page = page.subList(0, pageSize);
+        }
+        if (!ascending) {
+            page = new ArrayList<>(page);
+            Collections.reverse(page);
+        }
         
-        // 更新会话
-        updateSession(session);
+        List<McpMessageDto> messages = page.stream()
+                .map(McpMessageDto::from)
+                .collect(Collectors.toList());
         
-        // 构建响应
-        return buildResponse(sessionId, assistantMessage, session.getModel());
+        return McpMessagePage.builder()
+                .messages(messages)
+                .oldestSequence(page.isEmpty() ? null : page.get(0).getSequence())
+                .newestSequence(page.isEmpty() ? null : page.get(page.size() - 1).getSequence())
+                .hasMore(hasMore)
+                .build();
     }
 
     @Override
-    public SseEmitter chatStream(McpRequest request) {
-        log.debug("Processing stream chat request: {}", JSON.toJSONString(request));
+    public List<McpSearchHit> search(String userId, String query, Integer limit) {
+        log.debug("Searching messages for user: {}, query: {}, limit: {}", userId, query, limit);
         
-        String sessionId = request.getSessionId();
-        McpSession session;
+        int pageSize = limit == null || limit <= 0 ? mcpConfig.getSearch().getPageSize()
+                : Math.min(limit, mcpConfig.getSearch().getMaxPageSize());
+        // 多取一倍，抵消会话已删除等原因造成的无效命中
+        List<MessageIndex.Hit> hits = messageIndex.search(userId, query, pageSize * 2);
         
-        // 创建或获取会话
-        if (sessionId == null || sessionId.isEmpty()) {
-            session = createSession(
-                    "anonymous", 
-                    request.getModel() != null ? request.getModel() : mcpConfig.getDefaultModel(),
-                    request.getSystemPrompt()
-            );
-            sessionId = session.getId();
-        } else {
-            session = getSession(sessionId);
-            if (session == null) {
-                log.error("Session not found: {}", sessionId);
-                return null;
+        // 按会话分组回表读取命中消息，同一会话只查询一次
+        Map<String, McpSession> sessions = new HashMap<>();
+        Map<String, McpMessage> messages = new HashMap<>();
+        Map<String, Set<Integer>> sequencesBySession = new LinkedHashMap<>();
+        hits.forEach(hit -> sequencesBySession.computeIfAbsent(hit.getSessionId(), k -> new HashSet<>()).add(hit.getSequence()));
+        sequencesBySession.forEach((sessionId, sequences) -> {
+            McpSession session = getSession(sessionId);
+            if (session == null || !userId.equals(session.getUserId())) {
+                return;
+            }
+            sessions.put(sessionId, session);
+            loadMessages(session, sequences).forEach(m -> messages.put(sessionId + "#" + m.getSequence(), m));
+        });
+        
+        Set<String> terms = searchTokenizer.queryTerms(query);
+        List<McpSearchHit> results = new ArrayList<>();
+        for (MessageIndex.Hit hit : hits) {
+            McpMessage message = messages.get(hit.getSessionId() + "#" + hit.getSequence());
+            if (message == null) {
+                continue;
+            }
+            results.add(McpSearchHit.builder()
+                    .sessionId(hit.getSessionId())
+                    .sessionTitle(sessions.get(hit.getSessionId()).getTitle())
+                    .sequence(message.getSequence())
+                    .role(message.getRole())
+                    .snippet(snippet(message.getContent(), terms))
+                    .timestamp(message.getCreateTime() != null ? message.getCreateTime().getTime() : null)
+                    .build());
+            if (results.size() >= pageSize) {
+                break;
             }
         }
+        return results;
+    }
+
+    @Override
+    public CompletableFuture<McpResponse> chat(McpRequest request) {
+        log.debug("Processing chat request: {}", JSON.toJSONString(request));
+        long startNanos = System.nanoTime();
+        // 写后日志积压时拒绝新一轮对话（429）
+        messageJournal.admit();
+        DbTimeTracker.begin();
         
-        final String finalSessionId = sessionId;
+        // 创建或获取会话（短事务）
+        McpSession session = transactionTemplate.execute(status -> resolveSession(request));
+        if (session == null) {
+            log.error("Session not found: {}", request.getSessionId());
+            DbTimeTracker.end();
+            return CompletableFuture.completedFuture(McpResponse.builder()
+                    .error("Session not found")
+                    .build());
+        }
+        final String sessionId = session.getId();
         
         // 保存用户消息
-        McpMessage userMessage = saveUserMessage(finalSessionId, request);
-        
-        // 创建SSE发送器
-        SseEmitter emitter = new SseEmitter(180000L); // 3分钟超时
+        McpMessage userMessage = saveUserMessage(session, request);
         
-        // 存储到活跃连接映射
-        activeEmitters.put(finalSessionId, emitter);
+        // 在令牌预算内组装模型上下文
+        ContextWindowAssembler.ContextWindow context = contextAssembler.assemble(session);
+        long requestDbNanos = DbTimeTracker.end();
         
-        // 设置SSE完成、超时和错误时的回调
-        emitter.onCompletion(() -> {
-            log.debug("SSE completed for session: {}", finalSessionId);
-            activeEmitters.remove(finalSessionId);
-        });
-        
-        emitter.onTimeout(() -> {
-            log.debug("SSE timeout for session: {}", finalSessionId);
-            activeEmitters.remove(finalSessionId);
-            emitter.complete();
-        });
-        
-        emitter.onError((ex) -> {
-            log.error("SSE error for session: {}", finalSessionId, ex);
-            activeEmitters.remove(finalSessionId);
-        });
-        
-        // 启动后台线程模拟流式响应
+        // 生成阶段不在事务中，不占用数据库连接；完成后切到回复保存线程池用短事务保存助手消息，失败时撤销用户消息
         final String model = session.getModel();
-        
-        new Thread(() -> {
-            try {
-                // 模拟流式返回
-                sendStreamResponse(emitter, finalSessionId, model);
-                
-                // 更新会话
-                updateSession(session);
-            } catch (Exception e) {
-                log.error("Error in stream response thread", e);
-                try {
-                    emitter.send(McpResponse.builder()
-                            .error("Internal server error")
-                            .sessionId(finalSessionId)
+        CompletableFuture<String> generation;
+        try {
+            generation = providerRegistry.resolve(model).complete(buildModelRequest(model, context, request));
+        } catch (RuntimeException e) {
+            generation = CompletableFuture.failedFuture(e);
+        }
+        return generation
+                .thenApplyAsync(responseContent -> {
+                    DbTimeTracker.begin();
+                    try {
+                        // 保存助手消息并更新会话
+                        McpMessage assistantMessage = completeTurn(session, userMessage, responseContent, model);
+                        
+                        // 构建响应
+                        return buildResponse(sessionId, assistantMessage, model, context.getTokens());
+                    } finally {
+                        chatMetrics.recordTurnDb(model, requestDbNanos + DbTimeTracker.end());
+                    }
+                }, persistenceExecutor)
+                .exceptionally(e -> {
+                    log.error("Model generation failed for session {}: {}", sessionId, e.getMessage(), e);
+                    compensateFailedTurn(userMessage);
+                    return McpResponse.builder()
+                            .sessionId(sessionId)
+                            .model(model)
+                            .error("Model generation failed: " + e.getMessage())
                             .done(true)
-                            .build());
-                    emitter.complete();
-                } catch (Exception ex) {
-                    log.error("Error sending error response", ex);
+                            .build();
+                })
+                .whenComplete((response, e) -> chatMetrics.recordChat(model,
+                        response != null && response.getError() == null, System.nanoTime() - startNanos));
+    }
+
+    @Override
+    public SseEmitter chatStream(McpRequest request) {
+        String sessionId = startStream(request);
+        if (sessionId == null) {
+            return null;
+        }
+        
+        // 订阅本轮的会话流，从本轮开头重放，不会错过启动期间已生成的帧
+        SseEmitter emitter = new SseEmitter(180000L); // 3分钟超时
+        streamHub.subscribe(sessionId, emitter, null);
+        return emitter;
+    }
+
+    @Override
+    public String startStream(McpRequest request) {
+        log.debug("Processing stream chat request: {}", JSON.toJSONString(request));
+        long startNanos = System.nanoTime();
+        
+        // 先获取流式许可，饱和时立即拒绝（429），不做任何数据库操作
+        admissionLimiter.acquireStream();
+        DbTimeTracker.begin();
+        boolean handedOff = false;
+        String turnSessionId = null;
+        McpMessage userMessage = null;
+        try {
+            messageJournal.admit();
+            
+            // 创建或获取会话（短事务）
+            McpSession session = transactionTemplate.execute(status -> resolveSession(request));
+            if (session == null) {
+                log.error("Session not found: {}", request.getSessionId());
+                return null;
+            }
+            
+            final String finalSessionId = session.getId();
+            // 回写会话ID，新建会话时由控制器通过响应头告知客户端
+            request.setSessionId(finalSessionId);
+            
+            // 同一会话同时只进行一轮生成，其他标签页通过订阅加入
+            final String model = session.getModel();
+            if (!streamHub.beginTurn(finalSessionId, model)) {
+                throw new AdmissionRejectedException("A response is already being generated for this session",
+                        mcpConfig.getAdmission().getRetryAfterSeconds());
+            }
+            turnSessionId = finalSessionId;
+            
+            // 保存用户消息
+            userMessage = saveUserMessage(session, request);
+            
+            // 在令牌预算内组装模型上下文
+            ContextWindowAssembler.ContextWindow context = contextAssembler.assemble(session);
+            
+            ProviderStreamListener listener = new ProviderStreamListener(finalSessionId, model, session, userMessage,
+                    context, isDeltaStream(request), startNanos, DbTimeTracker.end());
+            
+            // 交给会话模型对应的提供方流式生成，请求线程立即返回
+            // 许可随生成结束（完成、失败或取消）归还
+            handedOff = true;
+            providerRegistry.resolve(model).stream(buildModelRequest(model, context, request), listener);
+            
+            return finalSessionId;
+        } finally {
+            if (!handedOff) {
+                DbTimeTracker.end();
+                admissionLimiter.releaseStream();
+                if (userMessage != null) {
+                    compensateFailedTurn(userMessage);
+                }
+                if (turnSessionId != null) {
+                    // 生成开始前失败，结束本轮以免会话一直处于生成中
+                    streamHub.endTurn(turnSessionId, null, errorResponse(turnSessionId, "Internal server error"));
                 }
             }
-        }).start();
+        }
+    }
+
+    @Override
+    public SseEmitter subscribeStream(String sessionId, Long lastEventId) {
+        log.debug("Subscribing to stream of session: {}, lastEventId: {}", sessionId, lastEventId);
         
+        if (getSession(sessionId) == null) {
+            log.error("Session not found: {}", sessionId);
+            return null;
+        }
+        
+        SseEmitter emitter = new SseEmitter(180000L); // 3分钟超时
+        streamHub.subscribe(sessionId, emitter, lastEventId);
         return emitter;
     }
 
     @Override
-    @Scheduled(fixedRate = 3600000) // 每小时执行一次
-    @Transactional
+    public boolean subscribeStream(String sessionId, StreamSubscriber subscriber, Long lastEventId) {
+        log.debug("Subscribing to stream of session: {}, lastEventId: {}", sessionId, lastEventId);
+        
+        if (getSession(sessionId) == null) {
+            log.error("Session not found: {}", sessionId);
+            return false;
+        }
+        
+        streamHub.subscribe(sessionId, subscriber, lastEventId);
+        return true;
+    }
+
+    @Override
+    public void unsubscribeStream(String sessionId, StreamSubscriber subscriber) {
+        streamHub.unsubscribe(sessionId, subscriber);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${mcp.server.purge.interval:3600000}")
     public void cleanupExpiredSessions() {
         log.info("Running expired sessions cleanup task");
         
@@ -254,69 +566,269 @@ public class McpServiceImpl implements McpService {
         calendar.add(Calendar.MILLISECOND, -(int)mcpConfig.getSessionTimeout());
         Date expiryTime = calendar.getTime();
         
-        // 查找过期会话
-        List<McpSession> expiredSessions = sessionMapper.findExpiredSessions(expiryTime);
+        // 先把写后日志中的会话更新落库，避免仍在使用的会话因数据库中的更新时间过旧被误删；
+        // 刷盘处于退避期时，仍有未落库数据的会话本次跳过
+        messageJournal.flush();
+        
+        // 分批删除过期会话及其消息，每批提交后只清理实际删除的会话的内存状态
+        expiredSessionPurger.purge(expiryTime, messageJournal::hasPending, ids -> {
+            ids.forEach(sessionId -> {
+                messageJournal.discard(sessionId);
+                sessionCache.invalidate(sessionId);
+                sequenceAllocator.evict(sessionId);
+                contextAssembler.evict(sessionId);
+                streamHub.evict(sessionId);
+            });
+            admissionLimiter.onSessionsRemoved(ids.size());
+            messageIndex.removeSessions(ids);
+        });
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${mcp.server.archive.interval:3600000}")
+    public void archiveIdleSessions() {
+        if (!mcpConfig.getArchive().isEnabled()) {
+            return;
+        }
+        log.info("Running idle sessions archive task");
+        
+        Date idleBefore = new Date(System.currentTimeMillis() - mcpConfig.getArchive().getIdleTime());
         
-        log.info("Found {} expired sessions", expiredSessions.size());
+        // 先把写后日志落库，保证归档的消息完整且更新时间为最新
+        messageJournal.flush();
+        
+        // 归档后会话不再计入活跃会话，清理其内存状态
+        sessionArchiver.archive(idleBefore, sessionId -> {
+            sessionCache.invalidate(sessionId);
+            sequenceAllocator.evict(sessionId);
+            contextAssembler.evict(sessionId);
+            streamHub.evict(sessionId);
+            admissionLimiter.onSessionsRemoved(1);
+        });
+    }
+
+    // 辅助方法 - 创建或获取会话，归档会话先恢复到数据库；会话不存在时返回null
+    private McpSession resolveSession(McpRequest request) {
+        String sessionId = request.getSessionId();
+        if (sessionId == null || sessionId.isEmpty()) {
+            return createSession(
+                    "anonymous", 
+                    request.getModel() != null ? request.getModel() : mcpConfig.getDefaultModel(),
+                    request.getSystemPrompt()
+            );
+        }
+        McpSession session = loadSession(sessionId);
+        if (session != null) {
+            reopenIfArchived(session);
+        }
+        return session;
+    }
+
+    // 辅助方法 - 从缓存、写后日志或主库读取会话并放入缓存，写入链路使用
+    private McpSession loadSession(String sessionId) {
+        McpSession session = sessionCache.get(sessionId);
+        if (session != null) {
+            return session;
+        }
         
-        // 删除过期会话及其消息
-        for (McpSession session : expiredSessions) {
-            QueryWrapper<McpMessage> messageWrapper = new QueryWrapper<>();
-            messageWrapper.eq("session_id", session.getId());
-            messageMapper.delete(messageWrapper);
-            sessionMapper.deleteById(session.getId());
+        // 缓存未命中时，优先使用写后日志中尚未落库的最新快照
+        session = messageJournal.pendingSession(sessionId);
+        if (session == null) {
+            session = sessionMapper.selectById(sessionId);
+        }
+        sessionCache.put(session);
+        return session;
+    }
+
+    // 辅助方法 - 记录会话写入，粘滞时间内该会话及其用户的会话列表从主库读取
+    private void markWritten(McpSession session) {
+        readRouter.markWritten(session.getId());
+        readRouter.markWritten(ReadRouter.userKey(session.getUserId()));
+    }
+
+    // 辅助方法 - 一轮生成成功后的持久化（短事务）：保存助手消息并更新会话，提交后本轮两条消息才进入全文索引
+    private McpMessage completeTurn(McpSession session, McpMessage userMessage, String content, String model) {
+        McpMessage assistantMessage = transactionTemplate.execute(status -> {
+            McpMessage saved = saveAssistantMessage(session, content, model);
+            updateSession(session, saved);
+            return saved;
+        });
+        messageIndex.add(session.getUserId(), userMessage);
+        messageIndex.add(session.getUserId(), assistantMessage);
+        return assistantMessage;
+    }
+
+    // 辅助方法 - 生成失败的补偿：撤销本轮用户消息，使历史保持一问一答；序号仍是最后分配的则一并归还，上下文缓冲重新加载
+    private void compensateFailedTurn(McpMessage userMessage) {
+        String sessionId = userMessage.getSessionId();
+        try {
+            messageJournal.removeMessage(userMessage);
+            sequenceAllocator.release(sessionId, userMessage.getSequence());
+            contextAssembler.evict(sessionId);
+            readRouter.markWritten(sessionId);
+            log.info("Rolled back user message {} of session {} after failed generation", userMessage.getSequence(), sessionId);
+        } catch (Exception e) {
+            log.error("Failed to roll back user message of session {}: {}", sessionId, e.getMessage(), e);
+        }
+    }
+
+    // 辅助方法 - 继续对话前把归档会话恢复到数据库，序号与上下文缓冲从数据库重新加载
+    private void reopenIfArchived(McpSession session) {
+        if (!SessionArchiver.isArchived(session)) {
+            return;
+        }
+        sessionArchiver.rehydrate(session);
+        sequenceAllocator.evict(session.getId());
+        contextAssembler.evict(session.getId());
+        admissionLimiter.onSessionRestored(session.getUserId());
+        sessionCache.put(session);
+        markWritten(session);
+    }
+
+    // 辅助方法 - 读取归档会话的消息；会话未归档或已按配置恢复到数据库时返回null
+    private List<McpMessage> readArchived(String sessionId) {
+        McpSession session = getSession(sessionId);
+        if (!SessionArchiver.isArchived(session)) {
+            return null;
+        }
+        if (mcpConfig.getArchive().isRehydrateOnRead()) {
+            reopenIfArchived(loadSession(sessionId));
+            return null;
+        }
+        return sessionArchiver.read(session);
+    }
+
+    // 辅助方法 - 在数据库中按游标取一页
+    private List<McpMessage> pageRows(String sessionId, Integer before, Integer after, int fetchSize, boolean ascending) {
+        if (ascending) {
+            return messageMapper.findAfterSequence(sessionId, after, fetchSize);
+        }
+        if (before != null) {
+            return messageMapper.findBeforeSequence(sessionId, before, fetchSize);
+        }
+        return messageMapper.findTail(sessionId, fetchSize);
+    }
+
+    // 辅助方法 - 在归档消息上按游标取一页，顺序与对应的数据库查询一致
+    private List<McpMessage> archivedRows(List<McpMessage> messages, Integer before, Integer after,
+                                          int fetchSize, boolean ascending) {
+        if (ascending) {
+            return messages.stream()
+                    .filter(m -> m.getSequence() > after)
+                    .limit(fetchSize)
+                    .collect(Collectors.toList());
+        }
+        List<McpMessage> rows = new ArrayList<>();
+        for (int i = messages.size() - 1; i >= 0 && rows.size() < fetchSize; i--) {
+            McpMessage m = messages.get(i);
+            if (before == null || m.getSequence() < before) {
+                rows.add(m);
+            }
+        }
+        return rows;
+    }
+
+    // 辅助方法 - 读取会话中指定序号的消息：归档会话读段文件，否则查数据库并合并写后日志中尚未落库的消息
+    private List<McpMessage> loadMessages(McpSession session, Set<Integer> sequences) {
+        if (SessionArchiver.isArchived(session)) {
+            return sessionArchiver.read(session).stream()
+                    .filter(m -> sequences.contains(m.getSequence()))
+                    .collect(Collectors.toList());
+        }
+        QueryWrapper<McpMessage> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("session_id", session.getId()).in("sequence", sequences);
+        List<McpMessage> result = new ArrayList<>(readRouter.onReplica(session.getId(), () -> messageMapper.selectList(queryWrapper)));
+        messageJournal.pendingMessages(session.getId()).stream()
+                .filter(m -> sequences.contains(m.getSequence()))
+                .forEach(result::add);
+        return result;
+    }
+
+    // 辅助方法 - 截取第一个命中词项附近的内容作为摘要
+    private String snippet(String content, Set<String> terms) {
+        int length = mcpConfig.getSearch().getSnippetLength();
+        if (content == null || content.length() <= length) {
+            return content;
+        }
+        String lower = content.toLowerCase(Locale.ROOT);
+        int position = -1;
+        for (String term : terms) {
+            int index = lower.indexOf(term);
+            if (index >= 0 && (position < 0 || index < position)) {
+                position = index;
+            }
         }
+        int start = Math.max(0, Math.min(position - length / 3, content.length() - length));
+        int end = Math.min(content.length(), start + length);
+        // 不从代理对中间截断
+        if (start > 0 && Character.isLowSurrogate(content.charAt(start))) {
+            start--;
+        }
+        if (end < content.length() && Character.isLowSurrogate(content.charAt(end))) {
+            end++;
+        }
+        return (start > 0 ? "..." : "") + content.substring(start, end) + (end < content.length() ? "..." : "");
     }
 
     // 辅助方法 - 保存用户消息
-    private McpMessage saveUserMessage(String sessionId, McpRequest request) {
-        log.debug("Saving user message for session: {}", sessionId);
+    private McpMessage saveUserMessage(McpSession session, McpRequest request) {
+        log.debug("Saving user message for session: {}", session.getId());
         
         McpMessageDto userMessageDto = request.getMessages().get(request.getMessages().size() - 1);
         
-        QueryWrapper<McpMessage> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("session_id", sessionId);
-        long messageCount = messageMapper.selectCount(queryWrapper);
-        
         McpMessage userMessage = McpMessage.builder()
-                .sessionId(sessionId)
+                .sessionId(session.getId())
                 .role("user")
                 .content(userMessageDto.getContent())
                 .createTime(new Date())
-                .sequence((int) messageCount)
                 .model(request.getModel())
                 .build();
         
-        messageMapper.insert(userMessage);
+        insertWithSequence(userMessage);
         return userMessage;
     }
 
     // 辅助方法 - 保存助手消息
-    private McpMessage saveAssistantMessage(String sessionId, String content, String model) {
-        log.debug("Saving assistant message for session: {}", sessionId);
-        
-        QueryWrapper<McpMessage> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("session_id", sessionId);
-        long messageCount = messageMapper.selectCount(queryWrapper);
+    private McpMessage saveAssistantMessage(McpSession session, String content, String model) {
+        log.debug("Saving assistant message for session: {}", session.getId());
         
         McpMessage assistantMessage = McpMessage.builder()
-                .sessionId(sessionId)
+                .sessionId(session.getId())
                 .role("assistant")
                 .content(content)
                 .createTime(new Date())
-                .sequence((int) messageCount)
                 .model(model)
                 .build();
         
-        messageMapper.insert(assistantMessage);
+        insertWithSequence(assistantMessage);
         return assistantMessage;
     }
 
-    // 辅助方法 - 更新会话
-    private void updateSession(McpSession session) {
+    // 辅助方法 - 计算令牌数、分配序号并插入消息，唯一索引冲突（如其他实例写入）时重新对齐计数器后重试一次
+    private void insertWithSequence(McpMessage message) {
+        String sessionId = message.getSessionId();
+        message.setTokenCount(tokenCounter.count(message.getContent()));
+        message.setSequence(sequenceAllocator.next(sessionId));
+        try {
+            messageJournal.appendMessage(message);
+        } catch (DuplicateKeyException e) {
+            // 仅同步写入时在这里发生；启用写后日志时冲突在刷盘时由日志重新分配序号
+            log.warn("Sequence {} already taken in session: {}, reseeding", message.getSequence(), sessionId);
+            message.setSequence(sequenceAllocator.reallocate(sessionId, message.getSequence() + 1, 1));
+            messageJournal.appendMessage(message);
+        }
+        readRouter.markWritten(sessionId);
+        contextAssembler.append(message);
+    }
+
+    // 辅助方法 - 更新会话，同时写入冗余的消息数与最后一条消息预览（序号从0连续分配，消息数为最后一条消息的序号加1）
+    private void updateSession(McpSession session, McpMessage lastMessage) {
         log.debug("Updating session: {}", session.getId());
         
         session.setUpdateTime(new Date());
+        int count = session.getMessageCount() != null ? session.getMessageCount() : 0;
+        session.setMessageCount(Math.max(count, lastMessage.getSequence() + 1));
+        session.setLastMessagePreview(abbreviate(lastMessage.getContent(), PREVIEW_LENGTH));
         
         // 尝试设置会话标题
         if (session.getTitle().equals("新对话")) {
@@ -326,151 +838,210 @@ public class McpServiceImpl implements McpService {
                    .orderByAsc("sequence")
                    .last("LIMIT 1");
             McpMessage lastUserMessage = messageMapper.selectOne(queryWrapper);
+            if (lastUserMessage == null) {
+                // 首条用户消息可能还在写后日志中
+                lastUserMessage = messageJournal.pendingMessages(session.getId()).stream()
+                        .filter(m -> "user".equals(m.getRole()))
+                        .findFirst()
+                        .orElse(null);
+            }
             
             if (lastUserMessage != null) {
-                String content = lastUserMessage.getContent();
-                if (content.length() > 30) {
-                    content = content.substring(0, 27) + "...";
-                }
-                session.setTitle(content);
+                session.setTitle(abbreviate(lastUserMessage.getContent(), TITLE_LENGTH));
             }
         }
         
-        sessionMapper.updateById(session);
+        messageJournal.appendSessionUpdate(session);
+        sessionCache.put(session);
+        markWritten(session);
+    }
+
+    // 辅助方法 - 按码点截断到不超过最大长度（与列宽的字符数一致），超出时以省略号结尾，不拆开代理对
+    private static String abbreviate(String text, int maxLength) {
+        if (text == null || text.length() <= maxLength || text.codePointCount(0, text.length()) <= maxLength) {
+            return text;
+        }
+        return text.substring(0, text.offsetByCodePoints(0, maxLength - 3)) + "...";
     }
 
     // 辅助方法 - 构建响应
-    private McpResponse buildResponse(String sessionId, McpMessage message, String model) {
+    private McpResponse buildResponse(String sessionId, McpMessage message, String model, int promptTokens) {
         log.debug("Building response for session: {}", sessionId);
         
-        McpMessageDto messageDto = convertToDto(message);
+        McpMessageDto messageDto = McpMessageDto.from(message);
         
         return McpResponse.builder()
                 .sessionId(sessionId)
                 .message(messageDto)
                 .model(model)
                 .done(true)
-                .requestId(UUID.randomUUID().toString())
-                .usageTokens(calculateTokens(message.getContent()))
+                .requestId(idGenerator.nextId())
+                // 用量 = 上下文令牌 + 回复令牌
+                .usageTokens(promptTokens + message.getTokenCount())
                 .build();
     }
 
-    // 辅助方法 - 转换消息实体到DTO
-    private McpMessageDto convertToDto(McpMessage message) {
-        return McpMessageDto.builder()
-                .role(message.getRole())
-                .content(message.getContent())
-                .id(message.getId().toString())
-                .timestamp(message.getCreateTime().getTime())
+    // 辅助方法 - 构建模型生成请求
+    private ModelRequest buildModelRequest(String model, ContextWindowAssembler.ContextWindow context, McpRequest request) {
+        List<McpMessageDto> messages = context.getMessages().stream()
+                .map(m -> McpMessageDto.builder()
+                        .role(m.getRole())
+                        .content(m.getContent())
+                        .build())
+                .collect(Collectors.toList());
+        
+        return ModelRequest.builder()
+                .model(model)
+                .messages(messages)
+                .temperature(request.getTemperature())
+                .maxTokens(request.getMaxTokens())
                 .build();
     }
 
-    // 辅助方法 - 模拟计算令牌数
-    private int calculateTokens(String text) {
-        return text.length() / 4;  // 简单估算
+    // 辅助方法 - 客户端是否协商了增量流式模式
+    private boolean isDeltaStream(McpRequest request) {
+        Map<String, Object> parameters = request.getParameters();
+        return parameters != null && STREAM_MODE_DELTA.equalsIgnoreCase(String.valueOf(parameters.get(PARAM_STREAM_MODE)));
     }
 
-    // 辅助方法 - 模拟生成响应内容
-    private String generateMockResponse(McpRequest request) {
-        log.debug("Generating mock response");
-        
-        String userMessage = request.getMessages().get(request.getMessages().size() - 1).getContent();
-        
-        if (userMessage.contains("你好") || userMessage.contains("Hello") || userMessage.contains("hello")) {
-            return "你好！我是 MCP (Model Context Protocol) 服务，很高兴为您服务。有什么可以帮助您的吗？";
-        } else if (userMessage.contains("什么是MCP") || userMessage.contains("介绍MCP")) {
-            return "MCP (Model Context Protocol) 是一种开放的通信协议，旨在标准化大模型应用开发。它提供了一套统一的接口，使应用开发者可以更轻松地接入不同的大语言模型服务。MCP的核心功能包括上下文管理、会话控制、多模态输入输出支持等。";
-        } else if (userMessage.contains("特点") || userMessage.contains("优势")) {
-            return "MCP协议的主要特点和优势包括：\n\n1. 统一接口：提供标准化的API接口，降低对接不同模型的成本\n2. 上下文管理：自动处理对话上下文，支持长对话\n3. 多模型兼容：支持同时接入多种大语言模型\n4. 扩展性强：可以通过插件机制扩展功能\n5. 安全可控：提供身份验证和访问控制机制\n6. 开放生态：开源协议，鼓励社区共建";
-        } else if (userMessage.contains("使用场景") || userMessage.contains("应用")) {
-            return "MCP协议的应用场景非常广泛，包括但不限于：\n\n1. 聊天机器人和智能客服系统\n2. 知识库问答系统\n3. 内容生成和创作辅助工具\n4. 代码辅助和智能编程工具\n5. 多模态应用，如图像理解和生成\n6. 专业领域的决策支持系统\n7. 教育和培训系统";
-        } else {
-            return "感谢您的提问。作为MCP示例服务，我可以帮助您了解MCP协议的各种功能和应用。您可以询问关于MCP的定义、特点、使用场景、技术实现等方面的问题。如果您想体验更丰富的功能，可以尝试流式响应、多模态输入、工具调用等高级特性。";
-        }
+    // 辅助方法 - 流式错误帧
+    private McpResponse errorResponse(String sessionId, String error) {
+        return McpResponse.builder()
+                .error(error)
+                .sessionId(sessionId)
+                .done(true)
+                .build();
     }
 
-    // 辅助方法 - 发送流式响应
-    private void sendStreamResponse(SseEmitter emitter, String sessionId, String model) throws Exception {
-        log.debug("Sending stream response for session: {}", sessionId);
-        
-        try {
-            String fullResponse = "感谢您使用MCP流式响应功能。Model Context Protocol (MCP) 是一种标准化的大模型应用开发协议，它可以帮助开发者更容易地构建基于大语言模型的应用程序。流式响应是MCP的一个重要特性，它可以提供更好的用户体验，特别是在生成长文本时。";
-            
-            // 将完整响应分成多个小片段
-            List<String> chunks = new ArrayList<>();
-            StringBuilder sb = new StringBuilder();
-            
-            // 将全文本按词分割
-            String[] words = fullResponse.split("(?<=\\s)");
-            for (String word : words) {
-                sb.append(word);
-                
-                // 每积累5-10个字就发送一次
-                if (sb.length() >= 5 && Math.random() > 0.7) {
-                    chunks.add(sb.toString());
-                    sb = new StringBuilder();
-                }
-            }
-            
-            // 添加剩余部分
-            if (sb.length() > 0) {
-                chunks.add(sb.toString());
+    /**
+     * 流式生成回调，把提供方产出的文本作为帧发布到会话流
+     * <p>
+     * 累计模式每片发送到目前为止的全文（兼容老客户端），生成结束后保存助手消息并发送一条 done=true 的完整帧；
+     * 增量模式每片只发送新增文本（delta事件），结束后发送携带全文和用量的汇总帧（done事件）。
+     * 订阅者断开不会中断生成，只有全部断开超过宽限期后才停止，此时不保存不完整的回复。
+     */
+    private class ProviderStreamListener implements ModelStreamListener {
+
+        private final String sessionId;
+        private final String model;
+        private final McpSession session;
+        private final McpMessage userMessage;
+        private final ContextWindowAssembler.ContextWindow context;
+        private final boolean deltaMode;
+
+        // 请求开始时间与请求线程上的数据库耗时，用于首片耗时和每轮数据库耗时指标
+        private final long startNanos;
+        private final long requestDbNanos;
+
+        private final StringBuilder fullResponse = new StringBuilder();
+        private int index;
+        private long lastTokenNanos;
+
+        private ProviderStreamListener(String sessionId, String model, McpSession session, McpMessage userMessage,
+                                       ContextWindowAssembler.ContextWindow context, boolean deltaMode,
+                                       long startNanos, long requestDbNanos) {
+            this.sessionId = sessionId;
+            this.model = model;
+            this.session = session;
+            this.userMessage = userMessage;
+            this.context = context;
+            this.deltaMode = deltaMode;
+            this.startNanos = startNanos;
+            this.requestDbNanos = requestDbNanos;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return streamHub.isAbandoned(sessionId);
+        }
+
+        @Override
+        public void onToken(String text) {
+            long now = System.nanoTime();
+            if (index == 0) {
+                chatMetrics.recordTtfb(model, now - startNanos);
+            } else {
+                chatMetrics.recordChunkInterval(model, now - lastTokenNanos);
             }
-            
-            // 保存完整的助手消息
-            McpMessage assistantMessage = saveAssistantMessage(sessionId, fullResponse, model);
-            
-            // 流式发送小片段
-            StringBuilder cumulativeResponse = new StringBuilder();
-            
-            for (int i = 0; i < chunks.size(); i++) {
-                boolean isLast = (i == chunks.size() - 1);
-                cumulativeResponse.append(chunks.get(i));
-                
-                McpMessageDto messageDto = McpMessageDto.builder()
-                        .role("assistant")
-                        .content(cumulativeResponse.toString())
-                        .id(assistantMessage.getId().toString())
-                        .timestamp(System.currentTimeMillis())
-                        .build();
-                
-                McpResponse response = McpResponse.builder()
+            lastTokenNanos = now;
+            fullResponse.append(text);
+            if (deltaMode) {
+                streamHub.publish(sessionId, "delta", new McpStreamDelta(index, text));
+            } else {
+                streamHub.publish(sessionId, null, McpResponse.builder()
                         .sessionId(sessionId)
-                        .message(messageDto)
+                        .message(McpMessageDto.builder()
+                                .role("assistant")
+                                .content(fullResponse.toString())
+                                .timestamp(System.currentTimeMillis())
+                                .build())
                         .model(model)
-                        .done(isLast)
-                        .requestId(UUID.randomUUID().toString())
-                        .usageTokens(isLast ? calculateTokens(fullResponse) : null)
-                        .build();
-                
-                try {
-                    emitter.send(response);
-                    log.debug("Sent chunk {} of {} for session: {}", i+1, chunks.size(), sessionId);
-                } catch (IOException e) {
-                    log.error("Error sending SSE chunk: {} for session: {}", e.getMessage(), sessionId, e);
-                    throw e;
-                }
-                
-                // 模拟延迟
-                Thread.sleep(100 + (int)(Math.random() * 150));
+                        .done(false)
+                        .requestId(idGenerator.nextId())
+                        .build());
             }
-            
+            log.debug("Sent chunk {} for session: {}", index + 1, sessionId);
+            index++;
+        }
+
+        @Override
+        public void onComplete() {
+            admissionLimiter.releaseStream();
+            // 回调可能在流式定时器、HTTP客户端线程或缓存命中时的请求线程上，保存回复切到回复保存线程池
+            persist(this::saveReply);
+        }
+
+        private void saveReply() {
+            McpResponse response;
+            DbTimeTracker.begin();
+            try {
+                // 保存完整的助手消息并更新会话
+                McpMessage assistantMessage = completeTurn(session, userMessage, fullResponse.toString(), model);
+                response = buildResponse(sessionId, assistantMessage, model, context.getTokens());
+            } catch (Exception e) {
+                log.error("Error completing stream response for session {}: {}", sessionId, e.getMessage(), e);
+                compensateFailedTurn(userMessage);
+                streamHub.endTurn(sessionId, null, errorResponse(sessionId, "Internal server error: " + e.getMessage()));
+                return;
+            } finally {
+                chatMetrics.recordTurnDb(model, requestDbNanos + DbTimeTracker.end());
+            }
+            streamHub.endTurn(sessionId, deltaMode ? "done" : null, response);
             log.debug("Successfully completed stream response for session: {}", sessionId);
-            emitter.complete();
-        } catch (Exception e) {
-            log.error("Error in sendStreamResponse for session {}: {}", sessionId, e.getMessage(), e);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            admissionLimiter.releaseStream();
+            String message;
+            if (error instanceof CancellationException) {
+                // 订阅者全部离开，保留用户消息，只是不保存不完整的回复
+                log.debug("Stream abandoned for session: {}", sessionId);
+                messageIndex.add(session.getUserId(), userMessage);
+                streamHub.endTurn(sessionId, null, errorResponse(sessionId, "Stream cancelled"));
+                return;
+            }
+            if (error instanceof RejectedExecutionException) {
+                log.warn("Stream rejected for session: {}, stream executor saturated", sessionId);
+                message = "Server busy, please retry later";
+            } else {
+                log.error("Error in stream response for session {}: {}", sessionId, error.getMessage(), error);
+                message = "Internal server error: " + error.getMessage();
+            }
+            persist(() -> {
+                compensateFailedTurn(userMessage);
+                streamHub.endTurn(sessionId, null, errorResponse(sessionId, message));
+            });
+        }
+
+        // 辅助方法 - 在回复保存线程池上执行；线程池饱和时退回当前线程，保证本轮一定结束
+        private void persist(Runnable task) {
             try {
-                McpResponse errorResponse = McpResponse.builder()
-                        .error("Internal server error: " + e.getMessage())
-                        .sessionId(sessionId)
-                        .done(true)
-                        .build();
-                emitter.send(errorResponse);
-                emitter.complete();
-            } catch (Exception ex) {
-                log.error("Error sending error response for session {}: {}", sessionId, ex.getMessage(), ex);
+                persistenceExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                log.warn("Persistence executor saturated, finishing stream turn on caller thread for session: {}", sessionId);
+                task.run();
             }
-            throw e;
         }
     }
-} 
\ No newline at end of file
+}
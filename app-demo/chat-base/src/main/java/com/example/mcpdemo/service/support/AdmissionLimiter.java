@@ -0,0 +1,264 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.exception.AdmissionRejectedException;
+import com.example.mcpdemo.mapper.McpSessionMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 准入控制
+ * <p>
+ * 会话配额：创建会话前按用户和全局（mcp.server.max-sessions）预留名额，检查与占用是同一个原子操作，
+ * 并发创建不会同时通过检查而超出配额；预留在创建事务提交后转为活跃会话，回滚时归还。
+ * 计数定期从数据库重新统计，期间按本地创建/删除增减估算，避免每次创建都计数；
+ * 用户计数只在没有未完成的预留时重新统计，避免把尚未提交的会话漏算。
+ * 流式并发：全局信号量限制同时进行中的流，获取不到许可时立即拒绝，不排队等待。
+ * 拒绝以 {@link AdmissionRejectedException} 抛出，由控制器返回 429 和 Retry-After。
+ * 可用流许可、活跃会话数和拒绝次数同时注册为 Micrometer 指标。
+ * 启动时即统计活跃会话，嵌入式数据库（压测）须先完成建表。
+ */
+@Component
+@DependsOnDatabaseInitialization
+@Slf4j
+public class AdmissionLimiter {
+
+    private static final String STATUS_ACTIVE = "ACTIVE";
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private McpSessionMapper sessionMapper;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Semaphore streamPermits;
+
+    // 全局活跃会话数估算值（含未完成的预留）及其上次从数据库统计的时间
+    private final AtomicLong activeSessions = new AtomicLong();
+    private final AtomicInteger pendingSessions = new AtomicInteger();
+    private final AtomicLong activeSessionsRefreshedAt = new AtomicLong();
+
+    // 按用户的会话计数，值不可变，只在 compute 中整体替换
+    private final ConcurrentMap<String, UserQuota> userQuotas = new ConcurrentHashMap<>();
+
+    private final LongAdder rejectedSessions = new LongAdder();
+    private final LongAdder rejectedStreams = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        streamPermits = new Semaphore(mcpConfig.getAdmission().getMaxConcurrentStreams());
+        refreshActiveSessions();
+
+        Gauge.builder("mcp.admission.stream.permits.available", streamPermits, Semaphore::availablePermits)
+                .description("Stream permits currently available")
+                .register(meterRegistry);
+        Gauge.builder("mcp.admission.sessions.active", activeSessions, AtomicLong::get)
+                .description("Estimated active sessions, including reservations not yet committed")
+                .register(meterRegistry);
+        FunctionCounter.builder("mcp.admission.rejected", rejectedSessions, LongAdder::sum)
+                .description("Requests rejected by admission control")
+                .tag("type", "session")
+                .register(meterRegistry);
+        FunctionCounter.builder("mcp.admission.rejected", rejectedStreams, LongAdder::sum)
+                .description("Requests rejected by admission control")
+                .tag("type", "stream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 创建会话前预留用户和全局会话名额
+     * <p>
+     * 在事务中调用时，事务提交后预留转为活跃会话，回滚时归还；不在事务中时立即计为活跃会话。
+     *
+     * @param userId 用户ID
+     * @throws AdmissionRejectedException 超出用户或全局会话配额
+     */
+    public void reserveSession(String userId) {
+        McpConfig.Admission config = mcpConfig.getAdmission();
+        refreshActiveSessions();
+        long maxSessions = mcpConfig.getMaxSessions();
+        if (activeSessions.getAndUpdate(current -> current < maxSessions ? current + 1 : current) >= maxSessions) {
+            rejectedSessions.increment();
+            throw new AdmissionRejectedException("Too many active sessions", config.getRetryAfterSeconds());
+        }
+        pendingSessions.incrementAndGet();
+
+        boolean[] reserved = new boolean[1];
+        userQuotas.compute(userId, (key, quota) -> {
+            UserQuota current = quota;
+            if (current == null || current.pending == 0 && isStale(current.countedAt)) {
+                current = new UserQuota(countUserSessions(key), 0, System.currentTimeMillis());
+            }
+            if (current.active + current.pending >= config.getMaxSessionsPerUser()) {
+                return current;
+            }
+            reserved[0] = true;
+            return new UserQuota(current.active, current.pending + 1, current.countedAt);
+        });
+        if (!reserved[0]) {
+            pendingSessions.decrementAndGet();
+            activeSessions.decrementAndGet();
+            rejectedSessions.increment();
+            throw new AdmissionRejectedException("Too many active sessions for user", config.getRetryAfterSeconds());
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    completeReservation(userId, status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            completeReservation(userId, true);
+        }
+    }
+
+    /**
+     * 归档会话已恢复为活跃会话
+     *
+     * @param userId 用户ID
+     */
+    public void onSessionRestored(String userId) {
+        activeSessions.incrementAndGet();
+        adjustUser(userId, 1);
+    }
+
+    /**
+     * 用户的一个会话已删除
+     *
+     * @param userId 用户ID
+     */
+    public void onSessionRemoved(String userId) {
+        onSessionsRemoved(1);
+        adjustUser(userId, -1);
+    }
+
+    /**
+     * 会话已删除（所属用户未知，用户计数到期后从数据库重新统计），顺带移除过期且空闲的用户计数
+     *
+     * @param count 删除的会话数
+     */
+    public void onSessionsRemoved(int count) {
+        activeSessions.updateAndGet(current -> Math.max(0, current - count));
+        for (String userId : userQuotas.keySet()) {
+            userQuotas.computeIfPresent(userId, (key, quota) -> quota.pending == 0 && isStale(quota.countedAt) ? null : quota);
+        }
+    }
+
+    /**
+     * 获取一个流式许可，获取不到时立即拒绝
+     *
+     * @throws AdmissionRejectedException 进行中的流已达上限
+     */
+    public void acquireStream() {
+        if (!streamPermits.tryAcquire()) {
+            rejectedStreams.increment();
+            throw new AdmissionRejectedException("Too many concurrent streams",
+                    mcpConfig.getAdmission().getRetryAfterSeconds());
+        }
+    }
+
+    /**
+     * 归还流式许可，每次成功获取后必须且只能调用一次
+     */
+    public void releaseStream() {
+        streamPermits.release();
+    }
+
+    /**
+     * 获取准入控制指标
+     *
+     * @return 指标
+     */
+    public Map<String, Object> stats() {
+        int maxStreams = mcpConfig.getAdmission().getMaxConcurrentStreams();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeSessions", activeSessions.get());
+        stats.put("pendingSessions", pendingSessions.get());
+        stats.put("trackedUsers", userQuotas.size());
+        stats.put("maxSessions", mcpConfig.getMaxSessions());
+        stats.put("activeStreams", maxStreams - streamPermits.availablePermits());
+        stats.put("maxConcurrentStreams", maxStreams);
+        stats.put("rejectedSessions", rejectedSessions.sum());
+        stats.put("rejectedStreams", rejectedStreams.sum());
+        return stats;
+    }
+
+    // 辅助方法 - 超过刷新间隔时从数据库重新统计全局活跃会话数，未提交的预留数据库中还看不到，需加回；
+    // 同一间隔内只有抢到时间戳的一个线程统计，其余线程不会用各自的统计结果互相覆盖
+    private void refreshActiveSessions() {
+        long now = System.currentTimeMillis();
+        long refreshedAt = activeSessionsRefreshedAt.get();
+        if (now - refreshedAt > mcpConfig.getAdmission().getSessionCountRefreshInterval()
+                && activeSessionsRefreshedAt.compareAndSet(refreshedAt, now)) {
+            long counted = shardRouter.sum(() -> sessionMapper.countByStatus(STATUS_ACTIVE));
+            activeSessions.set(counted + pendingSessions.get());
+            log.debug("Refreshed active session count: {}", counted);
+        }
+    }
+
+    // 辅助方法 - 预留结束：提交时转为活跃会话，回滚时归还全局和用户名额
+    private void completeReservation(String userId, boolean committed) {
+        pendingSessions.decrementAndGet();
+        if (!committed) {
+            activeSessions.decrementAndGet();
+        }
+        userQuotas.computeIfPresent(userId, (key, quota) ->
+                new UserQuota(committed ? quota.active + 1 : quota.active, Math.max(0, quota.pending - 1), quota.countedAt));
+    }
+
+    private void adjustUser(String userId, int delta) {
+        if (userId == null) {
+            return;
+        }
+        userQuotas.computeIfPresent(userId, (key, quota) ->
+                new UserQuota(Math.max(0, quota.active + delta), quota.pending, quota.countedAt));
+    }
+
+    private long countUserSessions(String userId) {
+        return shardRouter.sum(() -> sessionMapper.countByUserIdAndStatus(userId, STATUS_ACTIVE));
+    }
+
+    private boolean isStale(long countedAt) {
+        return System.currentTimeMillis() - countedAt > mcpConfig.getAdmission().getSessionCountRefreshInterval();
+    }
+
+    /**
+     * 用户会话计数：已提交的活跃会话数与未完成的预留数
+     */
+    private static final class UserQuota {
+        private final long active;
+        private final int pending;
+        private final long countedAt;
+
+        private UserQuota(long active, int pending, long countedAt) {
+            this.active = active;
+            this.pending = pending;
+            this.countedAt = countedAt;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 归档段文件存储
+ * <p>
+ * 记录只追加写入段文件，每条记录分配全局递增的记录号，段文件以首条记录号命名，超过大小上限后滚动。
+ * 每个段配一个稀疏索引文件，每隔 index-interval 条记录保存一条（记录号, 文件位置）。
+ * 读取时按记录号找到所在段，在索引中二分到不大于它的最近一条，再从该位置在内存映射的段文件中顺序扫描。
+ * <p>
+ * 记录格式：[int 长度][int CRC32][long 记录号][int 会话ID字节数][会话ID][int 消息数][载荷]，长度与CRC覆盖其后全部字节。
+ * 启动时校验最后一个段的尾部，截掉未写完整的记录。
+ */
+@Component
+@Slf4j
+public class ArchiveStore {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int HEADER_BYTES = 8;
+    private static final int INDEX_ENTRY_BYTES = 16;
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    // 首条记录号 -> 段
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    private final Object writeLock = new Object();
+
+    private Path directory;
+    private Segment active;
+    private long nextRecordNo;
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder appendedBytes = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!mcpConfig.getArchive().isEnabled()) {
+            return;
+        }
+        directory = Paths.get(mcpConfig.getArchive().getDirectory());
+        Files.createDirectories(directory);
+
+        List<Long> bases;
+        try (Stream<Path> files = Files.list(directory)) {
+            bases = files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (long base : bases) {
+            segments.put(base, new Segment(base));
+        }
+
+        if (segments.isEmpty()) {
+            active = new Segment(0);
+            segments.put(0L, active);
+            nextRecordNo = 0;
+        } else {
+            active = segments.lastEntry().getValue();
+            nextRecordNo = active.recover();
+        }
+        active.openForAppend();
+        log.info("Archive store opened at {}, {} segments, next record: {}",
+                directory.toAbsolutePath(), segments.size(), nextRecordNo);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (writeLock) {
+            if (active != null) {
+                try {
+                    active.seal();
+                } catch (IOException e) {
+                    log.warn("Failed to close archive segment {}", active.base, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 追加一条记录，调用 {@link #flush()} 后才保证落盘
+     *
+     * @param sessionId 会话ID
+     * @param messageCount 消息数
+     * @param payload 载荷
+     * @return 记录号
+     */
+    public long append(String sessionId, int messageCount, byte[] payload) throws IOException {
+        byte[] id = sessionId.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 8 + 4 + id.length + 4 + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        record.putInt(bodyLength);
+        record.putInt(0);
+        synchronized (writeLock) {
+            if (active.size >= mcpConfig.getArchive().getSegmentMaxBytes()) {
+                roll();
+            }
+            long recordNo = nextRecordNo;
+            record.putLong(recordNo).putInt(id.length).put(id).putInt(messageCount).put(payload);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), HEADER_BYTES, bodyLength);
+            record.putInt(4, (int) crc.getValue());
+            record.flip();
+
+            active.append(recordNo, record);
+            nextRecordNo++;
+            appends.increment();
+            appendedBytes.add(record.limit());
+            return recordNo;
+        }
+    }
+
+    /**
+     * 把当前段及其索引强制写入磁盘
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            active.force();
+        }
+    }
+
+    /**
+     * 读取记录
+     *
+     * @param recordNo 记录号
+     * @return 记录，不存在时为null
+     */
+    public Record read(long recordNo) throws IOException {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(recordNo);
+        if (entry == null) {
+            return null;
+        }
+        reads.increment();
+        return entry.getValue().read(recordNo);
+    }
+
+    /**
+     * 获取存储统计
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("segments", segments.size());
+        stats.put("records", nextRecordNo);
+        stats.put("bytes", segments.values().stream().mapToLong(s -> s.size).sum());
+        stats.put("appends", appends.sum());
+        stats.put("appendedBytes", appendedBytes.sum());
+        stats.put("reads", reads.sum());
+        return stats;
+    }
+
+    // 辅助方法 - 封存当前段，以下一个记录号开始新段
+    private void roll() throws IOException {
+        active.seal();
+        Segment next = new Segment(nextRecordNo);
+        next.openForAppend();
+        segments.put(next.base, next);
+        active = next;
+        log.info("Rolled archive to segment {}", next.base);
+    }
+
+    /**
+     * 归档记录
+     */
+    @Getter
+    public static class Record {
+        private final long recordNo;
+        private final String sessionId;
+        private final int messageCount;
+        private final byte[] payload;
+
+        private Record(long recordNo, String sessionId, int messageCount, byte[] payload) {
+            this.recordNo = recordNo;
+            this.sessionId = sessionId;
+            this.messageCount = messageCount;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 段文件及其稀疏索引
+     */
+    private class Segment {
+        private final long base;
+        private final Path segmentPath;
+        private final Path indexPath;
+
+        // 稀疏索引：记录号与文件位置，按记录号递增
+        private long[] indexRecordNos = new long[16];
+        private long[] indexPositions = new long[16];
+        private int indexSize;
+        private int sinceLastIndex;
+
+        private volatile long size;
+        private FileChannel segmentChannel;
+        private FileChannel indexChannel;
+
+        private MappedByteBuffer mapped;
+        private long mappedSize;
+
+        private Segment(long base) throws IOException {
+            this.base = base;
+            this.segmentPath = directory.resolve(String.format("%020d", base) + SEGMENT_SUFFIX);
+            this.indexPath = directory.resolve(String.format("%020d", base) + INDEX_SUFFIX);
+            this.size = Files.exists(segmentPath) ? Files.size(segmentPath) : 0;
+            loadIndex();
+        }
+
+        private void loadIndex() throws IOException {
+            if (!Files.exists(indexPath)) {
+                return;
+            }
+            byte[] bytes = Files.readAllBytes(indexPath);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.remaining() >= INDEX_ENTRY_BYTES) {
+                addIndexEntry(buffer.getLong(), buffer.getLong());
+            }
+        }
+
+        // 校验尾部并截掉不完整的记录，返回下一个记录号
+        private long recover() throws IOException {
+            // 丢弃指向文件末尾之外的索引项（索引先于段文件落盘的情况）
+            while (indexSize > 0 && indexPositions[indexSize - 1] >= size) {
+                indexSize--;
+            }
+            long position = indexSize > 0 ? indexPositions[indexSize - 1] : 0;
+            long recordNo = indexSize > 0 ? indexRecordNos[indexSize - 1] : base;
+            sinceLastIndex = 0;
+
+            try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                while (position + HEADER_BYTES <= size) {
+                    header.clear();
+                    channel.read(header, position);
+                    header.flip();
+                    int length = header.getInt();
+                    int crc = header.getInt();
+                    if (length <= 0 || position + HEADER_BYTES + length > size) {
+                        break;
+                    }
+                    ByteBuffer body = ByteBuffer.allocate(length);
+                    channel.read(body, position + HEADER_BYTES);
+                    CRC32 actual = new CRC32();
+                    actual.update(body.array());
+                    if ((int) actual.getValue() != crc) {
+                        break;
+                    }
+                    recordNo = body.getLong(0) + 1;
+                    position += HEADER_BYTES + length;
+                    sinceLastIndex++;
+                }
+            }
+            if (position < size) {
+                log.warn("Truncating archive segment {} from {} to {} bytes", base, size, position);
+                try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.WRITE)) {
+                    channel.truncate(position);
+                }
+                size = position;
+            }
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate((long) indexSize * INDEX_ENTRY_BYTES);
+            }
+            return recordNo;
+        }
+
+        private void openForAppend() throws IOException {
+            segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            segmentChannel.position(size);
+            indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+
+        private void append(long recordNo, ByteBuffer record) throws IOException {
+            long position = size;
+            while (record.hasRemaining()) {
+                segmentChannel.write(record);
+            }
+            size = segmentChannel.position();
+            if (indexSize == 0 || sinceLastIndex >= mcpConfig.getArchive().getIndexInterval()) {
+                ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES).putLong(recordNo).putLong(position);
+                entry.flip();
+                indexChannel.write(entry);
+                synchronized (this) {
+                    addIndexEntry(recordNo, position);
+                }
+                sinceLastIndex = 0;
+            }
+            sinceLastIndex++;
+        }
+
+        private void force() throws IOException {
+            segmentChannel.force(false);
+            indexChannel.force(false);
+        }
+
+        private void seal() throws IOException {
+            force();
+            segmentChannel.close();
+            indexChannel.close();
+        }
+
+        private synchronized Record read(long recordNo) throws IOException {
+            int slot = floorIndex(recordNo);
+            if (slot < 0) {
+                return null;
+            }
+            ByteBuffer buffer = map();
+            long position = indexPositions[slot];
+            while (position + HEADER_BYTES <= buffer.limit()) {
+                int length = buffer.getInt((int) position);
+                long current = buffer.getLong((int) position + HEADER_BYTES);
+                if (current == recordNo) {
+                    ByteBuffer body = buffer.duplicate();
+                    body.position((int) position + HEADER_BYTES + 8);
+                    byte[] id = new byte[body.getInt()];
+                    body.get(id);
+                    int messageCount = body.getInt();
+                    byte[] payload = new byte[length - 8 - 4 - id.length - 4];
+                    body.get(payload);
+                    return new Record(recordNo, new String(id, StandardCharsets.UTF_8), messageCount, payload);
+                }
+                if (current > recordNo) {
+                    return null;
+                }
+                position += HEADER_BYTES + length;
+            }
+            return null;
+        }
+
+        // 辅助方法 - 内存映射段文件，活动段变长后重新映射
+        private ByteBuffer map() throws IOException {
+            long current = size;
+            if (mapped == null || mappedSize < current) {
+                try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, current);
+                    mappedSize = current;
+                }
+            }
+            return mapped;
+        }
+
+        // 二分查找不大于记录号的最近索引项
+        private int floorIndex(long recordNo) {
+            int slot = Arrays.binarySearch(indexRecordNos, 0, indexSize, recordNo);
+            return slot >= 0 ? slot : -slot - 2;
+        }
+
+        private void addIndexEntry(long recordNo, long position) {
+            if (indexSize == indexRecordNos.length) {
+                indexRecordNos = Arrays.copyOf(indexRecordNos, indexSize * 2);
+                indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+            }
+            indexRecordNos[indexSize] = recordNo;
+            indexPositions[indexSize] = position;
+            indexSize++;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.mcpdemo.service.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话指标，均按模型打标签，通过 /actuator/prometheus 导出
+ * <ul>
+ *     <li>mcp.chat：普通请求从进入到回复生成并保存完成的耗时</li>
+ *     <li>mcp.stream.ttfb：流式请求从进入到第一片生成的耗时</li>
+ *     <li>mcp.stream.chunk.interval：相邻两片之间的间隔</li>
+ *     <li>mcp.stream.chunk.send：单片推送给单个订阅者的耗时</li>
+ *     <li>mcp.stream.send.failures：推送失败次数</li>
+ *     <li>mcp.stream.outbound.wait：帧在订阅者出站队列中的等待时间（即订阅者滞后）</li>
+ *     <li>mcp.stream.outbound.shed：出站队列满时按策略合并或丢弃的帧数</li>
+ *     <li>mcp.stream.outbound.disconnects：因出站队列溢出、滞后或写出失败断开的订阅者数</li>
+ *     <li>mcp.turn.db：每轮对话在请求链路上的数据库耗时</li>
+ * </ul>
+ */
+@Component
+public class ChatMetrics {
+
+    private static final String TAG_MODEL = "model";
+    private static final String TAG_OUTCOME = "outcome";
+    private static final String TAG_POLICY = "policy";
+    private static final String TAG_REASON = "reason";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 记录普通请求耗时
+     *
+     * @param model 模型
+     * @param success 是否成功
+     * @param nanos 耗时（纳秒）
+     */
+    public void recordChat(String model, boolean success, long nanos) {
+        timer("mcp.chat", "Chat request latency", true,
+                TAG_MODEL, tagValue(model), TAG_OUTCOME, success ? "success" : "error")
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录流式首片耗时
+     *
+     * @param model 模型
+     * @param nanos 耗时（纳秒）
+     */
+    public void recordTtfb(String model, long nanos) {
+        timer("mcp.stream.ttfb", "Time from stream request to first generated chunk", true, TAG_MODEL, tagValue(model))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录相邻两片的间隔
+     *
+     * @param model 模型
+     * @param nanos 间隔（纳秒）
+     */
+    public void recordChunkInterval(String model, long nanos) {
+        timer("mcp.stream.chunk.interval", "Gap between consecutive generated chunks", true, TAG_MODEL, tagValue(model))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录单片推送耗时
+     *
+     * @param model 模型
+     * @param nanos 耗时（纳秒）
+     */
+    public void recordChunkSend(String model, long nanos) {
+        timer("mcp.stream.chunk.send", "Time to write one frame to one subscriber", true, TAG_MODEL, tagValue(model))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录推送失败
+     *
+     * @param model 模型
+     */
+    public void sendFailure(String model) {
+        counter("mcp.stream.send.failures", "Frames that could not be written to a subscriber", TAG_MODEL, tagValue(model))
+                .increment();
+    }
+
+    /**
+     * 记录帧在出站队列中的等待时间
+     *
+     * @param model 模型
+     * @param nanos 等待时间（纳秒）
+     */
+    public void recordOutboundWait(String model, long nanos) {
+        timer("mcp.stream.outbound.wait", "Time a frame waits in a subscriber's outbound queue", true, TAG_MODEL, tagValue(model))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录出站队列满时合并或丢弃的帧数
+     *
+     * @param model 模型
+     * @param policy 策略
+     * @param frames 帧数
+     */
+    public void outboundShed(String model, String policy, int frames) {
+        counter("mcp.stream.outbound.shed", "Frames coalesced or dropped from full outbound queues",
+                TAG_MODEL, tagValue(model), TAG_POLICY, policy)
+                .increment(frames);
+    }
+
+    /**
+     * 记录出站队列断开订阅者
+     *
+     * @param model 模型
+     * @param reason 原因：overflow、lag、error
+     */
+    public void outboundDisconnect(String model, String reason) {
+        counter("mcp.stream.outbound.disconnects", "Subscribers disconnected by their outbound queue",
+                TAG_MODEL, tagValue(model), TAG_REASON, reason)
+                .increment();
+    }
+
+    /**
+     * 记录每轮对话的数据库耗时
+     *
+     * @param model 模型
+     * @param nanos 耗时（纳秒）
+     */
+    public void recordTurnDb(String model, long nanos) {
+        timer("mcp.turn.db", "Database time spent on the request path of one chat turn", false, TAG_MODEL, tagValue(model))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // 辅助方法 - 按名称和标签缓存计时器，避免热路径上重复构建
+    private Timer timer(String name, String description, boolean histogram, String... tags) {
+        String key = name + '|' + String.join("|", tags);
+        return timers.computeIfAbsent(key, k -> {
+            Timer.Builder builder = Timer.builder(name).description(description).tags(tags);
+            if (histogram) {
+                builder.publishPercentileHistogram();
+            }
+            return builder.register(meterRegistry);
+        });
+    }
+
+    private Counter counter(String name, String description, String... tags) {
+        String key = name + '|' + String.join("|", tags);
+        return counters.computeIfAbsent(key, k -> Counter.builder(name).description(description).tags(tags).register(meterRegistry));
+    }
+
+    private String tagValue(String model) {
+        return model != null ? model : "unknown";
+    }
+}
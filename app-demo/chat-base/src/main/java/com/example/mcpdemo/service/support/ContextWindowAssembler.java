@@ -0,0 +1,242 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.entity.McpMessage;
+import com.example.mcpdemo.entity.McpSession;
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 模型上下文组装器
+ * <p>
+ * 每个会话在内存中保留一个有界环形缓冲，存放最近的消息及其令牌数。组装上下文时从最新消息往前取，
+ * 直到用完 mcp.server.max-context-size 的令牌预算，系统提示词始终放在最前并计入预算。
+ * 最新一条消息（本轮的用户消息）总是放入上下文：它至少可占预算的一半，系统提示词超出其余部分时截断，
+ * 最新消息仍超出剩余预算时截断；截断只作用于发给模型的副本，保存的消息不变。
+ * 缓冲只在首次使用时从数据库加载最近一个窗口，之后随消息写入增量追加，不会重读整个会话历史。
+ */
+@Component
+@Slf4j
+public class ContextWindowAssembler {
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private McpMessageMapper messageMapper;
+
+    @Autowired
+    private MessageJournal messageJournal;
+
+    @Autowired
+    private TokenCounter tokenCounter;
+
+    // 会话ID -> 最近消息环形缓冲，按访问顺序淘汰
+    private final LinkedHashMap<String, RingBuffer> windows = new LinkedHashMap<String, RingBuffer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RingBuffer> eldest) {
+            return size() > mcpConfig.getContextWindowSessions();
+        }
+    };
+
+    /**
+     * 消息写入后追加到会话缓冲；缓冲尚未加载时忽略，首次组装时会从数据库加载
+     *
+     * @param message 已分配序号的消息
+     */
+    public void append(McpMessage message) {
+        if ("system".equals(message.getRole())) {
+            return;
+        }
+        synchronized (windows) {
+            RingBuffer window = windows.get(message.getSessionId());
+            if (window != null) {
+                window.add(message);
+            }
+        }
+    }
+
+    /**
+     * 组装会话的模型上下文
+     *
+     * @param session 会话
+     * @return 上下文窗口，消息按时间顺序排列，系统提示词在最前
+     */
+    public ContextWindow assemble(McpSession session) {
+        RingBuffer window = windowOf(session.getId());
+        int budget = mcpConfig.getMaxContextSize();
+        List<McpMessage> recent = new ArrayList<>();
+        synchronized (window) {
+            for (int i = window.size() - 1; i >= 0; i--) {
+                recent.add(window.get(i));
+            }
+        }
+
+        // 为最新消息预留不超过一半的预算，系统提示词最多用其余部分
+        McpMessage latest = recent.isEmpty() ? null : recent.get(0);
+        int reserved = latest == null ? 0 : Math.min(tokensOf(latest), budget / 2);
+        int remaining = budget;
+
+        McpMessage systemMessage = null;
+        if (session.getSystemPrompt() != null && !session.getSystemPrompt().isEmpty()) {
+            systemMessage = fit(McpMessage.builder()
+                    .sessionId(session.getId())
+                    .role("system")
+                    .content(session.getSystemPrompt())
+                    .sequence(0)
+                    .build(), budget - reserved);
+            remaining -= tokensOf(systemMessage);
+        }
+
+        // 最新消息必选，再从新到旧往前取，直到预算用完
+        List<McpMessage> selected = new ArrayList<>();
+        if (latest != null) {
+            latest = fit(latest, remaining);
+            selected.add(latest);
+            remaining -= tokensOf(latest);
+        }
+        for (int i = 1; i < recent.size(); i++) {
+            McpMessage message = recent.get(i);
+            int tokens = tokensOf(message);
+            if (tokens > remaining) {
+                break;
+            }
+            selected.add(message);
+            remaining -= tokens;
+        }
+        Collections.reverse(selected);
+        if (systemMessage != null) {
+            selected.add(0, systemMessage);
+        }
+
+        int used = Math.min(budget, budget - remaining);
+        log.debug("Assembled context for session: {}, {} messages, {} tokens", session.getId(), selected.size(), used);
+        return new ContextWindow(selected, used);
+    }
+
+    /**
+     * 会话删除时释放缓冲
+     *
+     * @param sessionId 会话ID
+     */
+    public void evict(String sessionId) {
+        synchronized (windows) {
+            windows.remove(sessionId);
+        }
+    }
+
+    // 辅助方法 - 获取会话缓冲，不存在时从数据库最近窗口及写后日志加载
+    private RingBuffer windowOf(String sessionId) {
+        synchronized (windows) {
+            RingBuffer window = windows.get(sessionId);
+            if (window != null) {
+                return window;
+            }
+        }
+
+        int capacity = mcpConfig.getContextWindowCapacity();
+        TreeMap<Integer, McpMessage> recent = new TreeMap<>();
+        messageMapper.findTail(sessionId, capacity).forEach(m -> recent.put(m.getSequence(), m));
+        messageJournal.pendingMessages(sessionId).forEach(m -> recent.putIfAbsent(m.getSequence(), m));
+
+        RingBuffer loaded = new RingBuffer(capacity);
+        recent.values().stream()
+                .filter(m -> !"system".equals(m.getRole()))
+                .forEach(loaded::add);
+
+        synchronized (windows) {
+            // 并发加载时以先放入的为准
+            RingBuffer existing = windows.putIfAbsent(sessionId, loaded);
+            return existing != null ? existing : loaded;
+        }
+    }
+
+    // 辅助方法 - 超出令牌上限时返回截断了内容的副本
+    private McpMessage fit(McpMessage message, int maxTokens) {
+        int tokens = tokensOf(message);
+        if (tokens <= maxTokens) {
+            return message;
+        }
+        String content = tokenCounter.truncate(message.getContent(), maxTokens - TokenCounter.MESSAGE_OVERHEAD);
+        log.warn("Truncated {} message of session {} from {} to {} tokens to fit the context budget",
+                message.getRole(), message.getSessionId(), tokens, maxTokens);
+        return McpMessage.builder()
+                .id(message.getId())
+                .sessionId(message.getSessionId())
+                .role(message.getRole())
+                .content(content)
+                .createTime(message.getCreateTime())
+                .sequence(message.getSequence())
+                .model(message.getModel())
+                .tokenCount(tokenCounter.count(content))
+                .build();
+    }
+
+    private int tokensOf(McpMessage message) {
+        int tokens = message.getTokenCount() != null ? message.getTokenCount() : tokenCounter.count(message.getContent());
+        return tokens + TokenCounter.MESSAGE_OVERHEAD;
+    }
+
+    /**
+     * 组装结果
+     */
+    @Getter
+    public static class ContextWindow {
+        /**
+         * 上下文消息，按时间顺序
+         */
+        private final List<McpMessage> messages;
+
+        /**
+         * 占用的令牌数
+         */
+        private final int tokens;
+
+        public ContextWindow(List<McpMessage> messages, int tokens) {
+            this.messages = messages;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * 定长环形缓冲，写满后覆盖最旧的消息
+     */
+    private static class RingBuffer {
+        private final McpMessage[] items;
+        private int start;
+        private int size;
+
+        private RingBuffer(int capacity) {
+            this.items = new McpMessage[capacity];
+        }
+
+        private synchronized void add(McpMessage message) {
+            if (size < items.length) {
+                items[(start + size) % items.length] = message;
+                size++;
+            } else {
+                items[start] = message;
+                start = (start + 1) % items.length;
+            }
+        }
+
+        // 按时间顺序的第i条，0为最旧
+        private McpMessage get(int i) {
+            return items[(start + i) % items.length];
+        }
+
+        private int size() {
+            return size;
+        }
+    }
+}
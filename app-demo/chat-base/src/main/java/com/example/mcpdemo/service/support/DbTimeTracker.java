@@ -0,0 +1,45 @@
+package com.example.mcpdemo.service.support;
+
+/**
+ * 线程内数据库耗时累加器
+ * <p>
+ * {@link #begin()} 与 {@link #end()} 之间当前线程上执行的Mapper语句耗时会被累加，
+ * 用于统计每轮对话的数据库时间。未开始时 {@link #add(long)} 为空操作。
+ */
+public final class DbTimeTracker {
+
+    private static final ThreadLocal<long[]> ELAPSED = new ThreadLocal<>();
+
+    private DbTimeTracker() {
+    }
+
+    /**
+     * 开始累加
+     */
+    public static void begin() {
+        ELAPSED.set(new long[1]);
+    }
+
+    /**
+     * 累加一条语句的耗时
+     *
+     * @param nanos 耗时（纳秒）
+     */
+    public static void add(long nanos) {
+        long[] elapsed = ELAPSED.get();
+        if (elapsed != null) {
+            elapsed[0] += nanos;
+        }
+    }
+
+    /**
+     * 结束累加
+     *
+     * @return 累加的耗时（纳秒）
+     */
+    public static long end() {
+        long[] elapsed = ELAPSED.get();
+        ELAPSED.remove();
+        return elapsed != null ? elapsed[0] : 0;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import com.example.mcpdemo.mapper.McpSessionMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 过期会话分批清理
+ * <p>
+ * 按 update_time 索引分批取出过期会话ID，每批一个短事务：SELECT ... FOR UPDATE 重新校验更新时间与状态并加行锁，
+ * 跳过仍有未落库数据的会话，再删除剩余会话的消息与会话本身，锁只持有一批的时间。
+ * 提交后只对实际删除的会话回调清理内存状态，取出后又被重新使用的会话不受影响。
+ * 批与批之间按配置暂停以限制删除速率，并记录进度与吞吐。
+ * 启用分表时逐张物理表执行（会话与消息同表序号，JOIN不跨表），批数上限按整次清理计算。
+ */
+@Component
+@Slf4j
+public class ExpiredSessionPurger {
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private McpSessionMapper sessionMapper;
+
+    @Autowired
+    private McpMessageMapper messageMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final LongAdder totalSessions = new LongAdder();
+    private final LongAdder totalRows = new LongAdder();
+    private final LongAdder totalSkipped = new LongAdder();
+
+    // 当前或最近一次执行的进度
+    private volatile long runStartTime;
+    private volatile long runEndTime;
+    private volatile int runChunks;
+    private volatile long runSessions;
+    private volatile long runRows;
+
+    /**
+     * 清理过期会话
+     *
+     * @param expiryTime 过期时间，更新时间早于该时间的会话会被删除
+     * @param inUse 加锁后判断会话是否仍在使用（如有未落库的数据），仍在使用的会话本次不删除
+     * @param afterDelete 每批提交后的回调，参数为本批实际删除的会话ID（用于清理内存中的状态）
+     */
+    public void purge(Date expiryTime, Predicate<String> inUse, Consumer<List<String>> afterDelete) {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Expired session purge already running, skipping");
+            return;
+        }
+        runStartTime = System.currentTimeMillis();
+        runEndTime = 0;
+        runChunks = 0;
+        runSessions = 0;
+        runRows = 0;
+        try {
+            for (int shard : shardRouter.shards()) {
+                purgeShard(shard, expiryTime, inUse, afterDelete);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Expired session purge interrupted");
+        } finally {
+            runEndTime = System.currentTimeMillis();
+            running.set(false);
+        }
+        log.info("Expired session purge finished: {} chunks, {} sessions, {} rows in {}ms ({} rows/s)",
+                runChunks, runSessions, runRows, runEndTime - runStartTime, rowsPerSecond());
+    }
+
+    // 辅助方法 - 在一张物理表上分批清理
+    private void purgeShard(int shard, Date expiryTime, Predicate<String> inUse,
+                            Consumer<List<String>> afterDelete) throws InterruptedException {
+        McpConfig.Purge config = mcpConfig.getPurge();
+        while (runChunks < config.getMaxChunks()) {
+            List<String> ids = shardRouter.onShard(shard, () -> sessionMapper.findExpiredSessionIds(expiryTime, config.getChunkSize()));
+            if (ids.isEmpty()) {
+                break;
+            }
+            int[] rows = new int[1];
+            List<String> deleted = transactionTemplate.execute(status -> shardRouter.onShard(shard, () -> {
+                List<String> locked = sessionMapper.lockExpiredSessionIds(ids, expiryTime);
+                locked.removeIf(inUse);
+                if (locked.isEmpty()) {
+                    return Collections.<String>emptyList();
+                }
+                rows[0] = messageMapper.deleteBySessionIds(locked) + sessionMapper.deleteByIds(locked);
+                return locked;
+            }));
+            if (!deleted.isEmpty()) {
+                afterDelete.accept(deleted);
+            }
+
+            runChunks++;
+            runSessions += deleted.size();
+            runRows += rows[0];
+            totalSessions.add(deleted.size());
+            totalRows.add(rows[0]);
+            totalSkipped.add(ids.size() - deleted.size());
+            log.debug("Purged chunk {}: {} of {} sessions, {} rows, {} rows/s",
+                    runChunks, deleted.size(), ids.size(), rows[0], rowsPerSecond());
+
+            // 整批都被跳过时，剩下的候选仍是这些会话，留到下次清理
+            if (ids.size() < config.getChunkSize() || deleted.isEmpty()) {
+                break;
+            }
+            Thread.sleep(config.getPauseMillis());
+        }
+    }
+
+    /**
+     * 获取清理进度与吞吐统计
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("lastRunStartTime", runStartTime);
+        stats.put("lastRunEndTime", runEndTime);
+        stats.put("lastRunChunks", runChunks);
+        stats.put("lastRunSessions", runSessions);
+        stats.put("lastRunRows", runRows);
+        stats.put("lastRunRowsPerSecond", rowsPerSecond());
+        stats.put("totalSessions", totalSessions.sum());
+        stats.put("totalRows", totalRows.sum());
+        stats.put("totalSkipped", totalSkipped.sum());
+        return stats;
+    }
+
+    private long rowsPerSecond() {
+        long end = runEndTime > 0 ? runEndTime : System.currentTimeMillis();
+        long elapsed = Math.max(1, end - runStartTime);
+        return runRows * 1000 / elapsed;
+    }
+}
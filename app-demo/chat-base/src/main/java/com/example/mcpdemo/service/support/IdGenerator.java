@@ -0,0 +1,146 @@
+package com.example.mcpdemo.service.support;
+
+import com.baomidou.mybatisplus.core.incrementer.IdentifierGenerator;
+import com.example.mcpdemo.config.McpConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按时间递增的ID生成器（会话ID、请求ID与消息ID）
+ * <p>
+ * 128位，以 ULID 相同的 Crockford Base32 编码为26个字符，字符串顺序即生成顺序：
+ * [48位 毫秒时间戳][16位 同毫秒计数][16位 节点ID][48位 随机数]。
+ * 时间戳与计数合在一个 long 里用 CAS 单调递增，同一毫秒超过65536个或时钟回拨时借用后续毫秒，保证本节点内严格递增；
+ * 节点ID区分多实例，随机位避免节点ID配置重复时冲突。相比 UUID.randomUUID()，不经过共享的 SecureRandom，
+ * 作为主键时新行总是追加在B+树的右端。
+ * <p>
+ * 消息ID用64位数字：[41位 自2024-01-01起的毫秒][10位 节点ID低位][12位 同毫秒计数]，作为 MyBatis-Plus 的
+ * {@link IdentifierGenerator} 为 ASSIGN_ID 主键赋值。ID在所有分表间唯一，重新分片时原样复制，不依赖各表的自增计数。
+ */
+@Component
+@Slf4j
+public class IdGenerator implements IdentifierGenerator {
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int LENGTH = 26;
+    private static final long RANDOM_MASK = (1L << 48) - 1;
+    private static final long NUMERIC_EPOCH = 1704067200000L;
+    private static final int NUMERIC_NODE_BITS = 10;
+    private static final int NUMERIC_COUNTER_BITS = 12;
+
+    private final AtomicLong state = new AtomicLong();
+    private final AtomicLong numericState = new AtomicLong();
+    private final long node;
+
+    @Autowired
+    public IdGenerator(McpConfig mcpConfig) {
+        this(mcpConfig.getNodeId() >= 0 ? mcpConfig.getNodeId() : deriveNodeId());
+        log.info("ID generator node: {}", node);
+    }
+
+    public IdGenerator(int nodeId) {
+        this.node = nodeId & 0xFFFF;
+    }
+
+    /**
+     * 生成下一个ID
+     *
+     * @return 26位字符串ID
+     */
+    public String nextId() {
+        long now = System.currentTimeMillis() << 16;
+        long previous;
+        long high;
+        do {
+            previous = state.get();
+            high = Math.max(now, previous + 1);
+        } while (!state.compareAndSet(previous, high));
+        long low = node << 48 | ThreadLocalRandom.current().nextLong() & RANDOM_MASK;
+        return encode(high, low);
+    }
+
+    /**
+     * 生成下一个数字ID（消息主键）
+     *
+     * @return 64位ID，本节点内严格递增
+     */
+    public long nextLong() {
+        long now = System.currentTimeMillis() - NUMERIC_EPOCH << NUMERIC_COUNTER_BITS;
+        long previous;
+        long next;
+        do {
+            previous = numericState.get();
+            next = Math.max(now, previous + 1);
+        } while (!numericState.compareAndSet(previous, next));
+        long millis = next >>> NUMERIC_COUNTER_BITS;
+        long counter = next & (1L << NUMERIC_COUNTER_BITS) - 1;
+        long nodeBits = node & (1L << NUMERIC_NODE_BITS) - 1;
+        return millis << NUMERIC_NODE_BITS + NUMERIC_COUNTER_BITS | nodeBits << NUMERIC_COUNTER_BITS | counter;
+    }
+
+    @Override
+    public Number nextId(Object entity) {
+        return nextLong();
+    }
+
+    /**
+     * 解析ID中的毫秒时间戳，用于排查；非本生成器格式的ID（如历史UUID）返回-1
+     *
+     * @param id ID
+     * @return 毫秒时间戳
+     */
+    public static long timestampOf(String id) {
+        if (id == null || id.length() != LENGTH) {
+            return -1;
+        }
+        long time = 0;
+        // 前10个字符是最高的50位：2位补零 + 48位时间戳
+        for (int i = 0; i < 10; i++) {
+            int value = indexOf(id.charAt(i));
+            if (value < 0) {
+                return -1;
+            }
+            time = time << 5 | value;
+        }
+        return time;
+    }
+
+    // 从最低位起每5位一个字符：低64位占12个字符，第13个字符跨两个long，高64位占剩下13个（最高2位补零）
+    private static String encode(long high, long low) {
+        char[] chars = new char[LENGTH];
+        for (int i = 0; i < 12; i++) {
+            chars[LENGTH - 1 - i] = ALPHABET[(int) (low >>> (i * 5)) & 31];
+        }
+        chars[13] = ALPHABET[(int) (low >>> 60 | high << 4) & 31];
+        for (int i = 0; i < 13; i++) {
+            chars[12 - i] = ALPHABET[(int) (high >>> (1 + i * 5)) & 31];
+        }
+        return new String(chars);
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 未配置节点ID时由主机名与进程号散列得到，同一主机上的多个实例通常也不相同
+    private static int deriveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return (host + "/" + ManagementFactory.getRuntimeMXBean().getName()).hashCode() & 0xFFFF;
+    }
+}
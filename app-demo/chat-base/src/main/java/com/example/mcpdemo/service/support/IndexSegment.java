@@ -0,0 +1,516 @@
+package com.example.mcpdemo.service.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 全文索引段
+ * <p>
+ * 段一经生成不再修改：文档表按段内文档号保存（会话ID、序号、创建时间），倒排表为 词项 -> 升序文档号数组。
+ * 删除只在内存位图中标记（写时复制，查询无锁读取），由索引线程写入同名 .del 文件，合并时才真正丢弃。
+ * <p>
+ * 段文件格式：[int 魔数][int 版本][long 代号][long 排序键][int 被替换段数][long...][int 文档数][文档...]
+ * [int 词项数][词项 + 变长整数编码的文档号差值...][long CRC32]，先写临时文件再原子改名。
+ */
+class IndexSegment {
+
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String DELETES_SUFFIX = ".del";
+
+    private static final int MAGIC = 0x4D435349;
+    private static final int VERSION = 1;
+
+    /**
+     * 代号，即文件名，单调递增
+     */
+    final long generation;
+
+    /**
+     * 排序键：段按排序键从旧到新排列，合并生成的段沿用被合并段中最新的排序键
+     */
+    final long order;
+
+    /**
+     * 合并生成的段所替换的段代号，启动时据此清理合并后未来得及删除的旧段
+     */
+    final long[] replaces;
+
+    final String[] sessionIds;
+    final int[] sequences;
+    final long[] createTimes;
+    final Map<String, int[]> postings;
+
+    private volatile BitSet deleted = new BitSet();
+    private volatile boolean persisted;
+    private volatile boolean deletesDirty;
+
+    private IndexSegment(long generation, long order, long[] replaces, String[] sessionIds, int[] sequences,
+                         long[] createTimes, Map<String, int[]> postings) {
+        this.generation = generation;
+        this.order = order;
+        this.replaces = replaces;
+        this.sessionIds = sessionIds;
+        this.sequences = sequences;
+        this.createTimes = createTimes;
+        this.postings = postings;
+    }
+
+    int docCount() {
+        return sessionIds.length;
+    }
+
+    int liveDocs() {
+        return sessionIds.length - deleted.cardinality();
+    }
+
+    boolean isDeleted(int doc) {
+        return deleted.get(doc);
+    }
+
+    boolean isPersisted() {
+        return persisted;
+    }
+
+    long maxCreateTime() {
+        long max = 0;
+        for (long createTime : createTimes) {
+            max = Math.max(max, createTime);
+        }
+        return max;
+    }
+
+    /**
+     * 标记属于给定会话的文档为已删除，只由索引线程调用
+     *
+     * @param sessions 会话ID
+     * @return 新标记的文档数
+     */
+    int markDeleted(Set<String> sessions) {
+        BitSet next = null;
+        int marked = 0;
+        for (int doc = 0; doc < sessionIds.length; doc++) {
+            if (sessions.contains(sessionIds[doc]) && !deleted.get(doc)) {
+                if (next == null) {
+                    next = (BitSet) deleted.clone();
+                }
+                next.set(doc);
+                marked++;
+            }
+        }
+        if (next != null) {
+            deleted = next;
+            deletesDirty = true;
+        }
+        return marked;
+    }
+
+    /**
+     * 按文档号从大到小收集同时包含全部词项的文档
+     *
+     * @param keys 词项（已带用户前缀）
+     * @param collector 收集器，返回false时停止
+     */
+    void search(List<String> keys, DocCollector collector) {
+        int[][] lists = new int[keys.size()][];
+        int[] lengths = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            int[] docs = postings.get(keys.get(i));
+            if (docs == null) {
+                return;
+            }
+            lists[i] = docs;
+            lengths[i] = docs.length;
+        }
+        intersectDescending(lists, lengths, doc -> deleted.get(doc) || collector.collect(this, doc));
+    }
+
+    /**
+     * 求多个升序文档号数组的交集，从最短的数组倒序遍历，其余数组二分查找
+     *
+     * @param lists 文档号数组
+     * @param lengths 各数组的有效长度
+     * @param consumer 消费者，返回false时停止
+     */
+    static void intersectDescending(int[][] lists, int[] lengths, DocConsumer consumer) {
+        int shortest = 0;
+        for (int i = 1; i < lists.length; i++) {
+            if (lengths[i] < lengths[shortest]) {
+                shortest = i;
+            }
+        }
+        // 其他数组的查找上界随遍历单调左移
+        int[] bounds = lengths.clone();
+        outer:
+        for (int i = lengths[shortest] - 1; i >= 0; i--) {
+            int doc = lists[shortest][i];
+            for (int j = 0; j < lists.length; j++) {
+                if (j == shortest) {
+                    continue;
+                }
+                int found = Arrays.binarySearch(lists[j], 0, bounds[j], doc);
+                if (found < 0) {
+                    bounds[j] = -found - 1;
+                    continue outer;
+                }
+                bounds[j] = found;
+            }
+            if (!consumer.accept(doc)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 合并多个段，丢弃已删除的文档；来源段需按排序键从旧到新传入
+     *
+     * @param generation 新段代号
+     * @param sources 来源段
+     * @return 合并后的段
+     */
+    static IndexSegment merge(long generation, List<IndexSegment> sources) {
+        int total = 0;
+        for (IndexSegment source : sources) {
+            total += source.liveDocs();
+        }
+        String[] sessionIds = new String[total];
+        int[] sequences = new int[total];
+        long[] createTimes = new long[total];
+        Map<String, Postings> merged = new HashMap<>();
+        long[] replaces = new long[sources.size()];
+
+        int next = 0;
+        for (int s = 0; s < sources.size(); s++) {
+            IndexSegment source = sources.get(s);
+            replaces[s] = source.generation;
+            BitSet deleted = source.deleted;
+            int[] remap = new int[source.docCount()];
+            for (int doc = 0; doc < source.docCount(); doc++) {
+                if (deleted.get(doc)) {
+                    remap[doc] = -1;
+                    continue;
+                }
+                sessionIds[next] = source.sessionIds[doc];
+                sequences[next] = source.sequences[doc];
+                createTimes[next] = source.createTimes[doc];
+                remap[doc] = next++;
+            }
+            for (Map.Entry<String, int[]> entry : source.postings.entrySet()) {
+                Postings target = null;
+                for (int doc : entry.getValue()) {
+                    if (remap[doc] < 0) {
+                        continue;
+                    }
+                    if (target == null) {
+                        target = merged.computeIfAbsent(entry.getKey(), k -> new Postings());
+                    }
+                    target.add(remap[doc]);
+                }
+            }
+        }
+
+        Map<String, int[]> postings = new HashMap<>(merged.size() * 4 / 3 + 1);
+        merged.forEach((key, docs) -> postings.put(key, docs.toArray()));
+        long order = sources.get(sources.size() - 1).order;
+        return new IndexSegment(generation, order, replaces, sessionIds, sequences, createTimes, postings);
+    }
+
+    /**
+     * 写入段文件
+     *
+     * @param directory 索引目录
+     */
+    void write(Path directory) throws IOException {
+        Path file = directory.resolve(fileName(generation, SEGMENT_SUFFIX));
+        Path tmp = directory.resolve(fileName(generation, SEGMENT_SUFFIX) + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fos, crc), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeLong(order);
+            out.writeInt(replaces.length);
+            for (long replaced : replaces) {
+                out.writeLong(replaced);
+            }
+            out.writeInt(sessionIds.length);
+            for (int doc = 0; doc < sessionIds.length; doc++) {
+                out.writeUTF(sessionIds[doc]);
+                out.writeInt(sequences[doc]);
+                out.writeLong(createTimes[doc]);
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                int[] docs = entry.getValue();
+                writeVarInt(out, docs.length);
+                int previous = 0;
+                for (int doc : docs) {
+                    writeVarInt(out, doc - previous);
+                    previous = doc;
+                }
+            }
+            out.flush();
+            new DataOutputStream(fos).writeLong(crc.getValue());
+            fos.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        persisted = true;
+    }
+
+    /**
+     * 把删除标记写入 .del 文件（没有新删除时跳过）
+     *
+     * @param directory 索引目录
+     */
+    void writeDeletes(Path directory) throws IOException {
+        if (!deletesDirty || !persisted) {
+            return;
+        }
+        deletesDirty = false;
+        Path file = directory.resolve(fileName(generation, DELETES_SUFFIX));
+        Path tmp = directory.resolve(fileName(generation, DELETES_SUFFIX) + ".tmp");
+        Files.write(tmp, deleted.toByteArray());
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 删除段文件及其删除标记文件
+     *
+     * @param directory 索引目录
+     */
+    void deleteFiles(Path directory) throws IOException {
+        Files.deleteIfExists(directory.resolve(fileName(generation, SEGMENT_SUFFIX)));
+        Files.deleteIfExists(directory.resolve(fileName(generation, DELETES_SUFFIX)));
+    }
+
+    /**
+     * 读取段文件，校验失败时抛出异常
+     *
+     * @param file 段文件
+     * @return 段
+     */
+    static IndexSegment read(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        IndexSegment segment;
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an index segment: " + file);
+            }
+            long generation = in.readLong();
+            long order = in.readLong();
+            long[] replaces = new long[in.readInt()];
+            for (int i = 0; i < replaces.length; i++) {
+                replaces[i] = in.readLong();
+            }
+            int docCount = in.readInt();
+            String[] sessionIds = new String[docCount];
+            int[] sequences = new int[docCount];
+            long[] createTimes = new long[docCount];
+            // 同一会话的多条消息共用一个ID字符串
+            Map<String, String> interned = new HashMap<>();
+            for (int doc = 0; doc < docCount; doc++) {
+                String sessionId = in.readUTF();
+                sessionIds[doc] = interned.computeIfAbsent(sessionId, k -> k);
+                sequences[doc] = in.readInt();
+                createTimes[doc] = in.readLong();
+            }
+            int termCount = in.readInt();
+            Map<String, int[]> postings = new HashMap<>(termCount * 4 / 3 + 1);
+            for (int t = 0; t < termCount; t++) {
+                String key = in.readUTF();
+                int[] docs = new int[readVarInt(in)];
+                int previous = 0;
+                for (int i = 0; i < docs.length; i++) {
+                    previous += readVarInt(in);
+                    docs[i] = previous;
+                }
+                postings.put(key, docs);
+            }
+            long expected = crc.getValue();
+            if (new DataInputStream(raw).readLong() != expected) {
+                throw new IOException("Checksum mismatch in index segment: " + file);
+            }
+            segment = new IndexSegment(generation, order, replaces, sessionIds, sequences, createTimes, postings);
+        }
+
+        Path deletes = file.resolveSibling(fileName(segment.generation, DELETES_SUFFIX));
+        if (Files.exists(deletes)) {
+            segment.deleted = BitSet.valueOf(Files.readAllBytes(deletes));
+        }
+        segment.persisted = true;
+        return segment;
+    }
+
+    static String fileName(long generation, String suffix) {
+        return String.format("%020d%s", generation, suffix);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * 文档号消费者
+     */
+    interface DocConsumer {
+        /**
+         * @return 是否继续
+         */
+        boolean accept(int doc);
+    }
+
+    /**
+     * 命中文档收集器
+     */
+    interface DocCollector {
+        /**
+         * @return 是否继续
+         */
+        boolean collect(IndexSegment segment, int doc);
+    }
+
+    /**
+     * 可增长的升序文档号数组
+     */
+    static class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(docs, size);
+        }
+    }
+
+    /**
+     * 内存中的写缓冲，新消息追加到这里，达到条数或定时冻结成不可变段；调用方负责加锁
+     */
+    static class Builder {
+        private final List<String> sessionIds = new ArrayList<>();
+        private final List<Integer> sequences = new ArrayList<>();
+        private final List<Long> createTimes = new ArrayList<>();
+        private final Map<String, Postings> postings = new HashMap<>();
+        private final Set<String> deletedSessions = new HashSet<>();
+
+        /**
+         * 添加一个文档
+         *
+         * @param keys 文档包含的词项（已带用户前缀，不重复）
+         */
+        void add(String sessionId, int sequence, long createTime, Collection<String> keys) {
+            int doc = sessionIds.size();
+            sessionIds.add(sessionId);
+            sequences.add(sequence);
+            createTimes.add(createTime);
+            for (String key : keys) {
+                postings.computeIfAbsent(key, k -> new Postings()).add(doc);
+            }
+        }
+
+        void delete(Collection<String> sessions) {
+            deletedSessions.addAll(sessions);
+        }
+
+        int docCount() {
+            return sessionIds.size();
+        }
+
+        /**
+         * 在缓冲中查找，语义同 {@link IndexSegment#search}
+         */
+        void search(List<String> keys, BufferCollector collector) {
+            int[][] lists = new int[keys.size()][];
+            int[] lengths = new int[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                Postings docs = postings.get(keys.get(i));
+                if (docs == null) {
+                    return;
+                }
+                lists[i] = docs.docs;
+                lengths[i] = docs.size;
+            }
+            intersectDescending(lists, lengths, doc -> {
+                String sessionId = sessionIds.get(doc);
+                return deletedSessions.contains(sessionId)
+                        || collector.collect(sessionId, sequences.get(doc), createTimes.get(doc));
+            });
+        }
+
+        /**
+         * 冻结为不可变段，缓冲中已删除会话的文档直接标记删除
+         */
+        IndexSegment freeze(long generation) {
+            int count = sessionIds.size();
+            int[] seqs = new int[count];
+            long[] times = new long[count];
+            for (int doc = 0; doc < count; doc++) {
+                seqs[doc] = sequences.get(doc);
+                times[doc] = createTimes.get(doc);
+            }
+            Map<String, int[]> frozen = new HashMap<>(postings.size() * 4 / 3 + 1);
+            postings.forEach((key, docs) -> frozen.put(key, docs.toArray()));
+            IndexSegment segment = new IndexSegment(generation, generation, new long[0],
+                    sessionIds.toArray(new String[0]), seqs, times, frozen);
+            if (!deletedSessions.isEmpty()) {
+                segment.markDeleted(deletedSessions);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * 缓冲命中收集器
+     */
+    interface BufferCollector {
+        /**
+         * @return 是否继续
+         */
+        boolean collect(String sessionId, int sequence, long createTime);
+    }
+}
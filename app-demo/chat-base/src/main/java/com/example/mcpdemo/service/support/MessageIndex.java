@@ -0,0 +1,538 @@
+package com.example.mcpdemo.service.support;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.entity.McpMessage;
+import com.example.mcpdemo.entity.McpSession;
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import com.example.mcpdemo.mapper.McpSessionMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 消息全文索引
+ * <p>
+ * 进程内倒排索引，词项带用户ID前缀，查询只访问该用户自己的倒排表。新消息写入内存缓冲后立即可查，
+ * 缓冲达到 flush-docs 条或定时冻结成不可变段并写入段文件；同一层级的相邻段凑满 merge-factor 个时在后台合并，
+ * 段数随文档总数按对数增长。落盘、删除标记、合并和启动补建都在单个索引线程上串行执行。
+ * <p>
+ * 重启后加载段文件，再从数据库补建最新段之后创建的消息；与已有文档重复的命中在查询时去重。
+ */
+@Component
+@Slf4j
+public class MessageIndex {
+
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    // 启动补建的时间回退，覆盖并发写入时创建时间与入索引顺序的错位
+    private static final long CATCH_UP_SLACK = 60_000;
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private SearchTokenizer tokenizer;
+
+    @Autowired
+    private McpMessageMapper messageMapper;
+
+    @Autowired
+    private McpSessionMapper sessionMapper;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    // 缓冲锁，保护写缓冲以及段列表的替换
+    private final Object bufferLock = new Object();
+
+    // 维护锁，落盘、删除标记与合并互斥
+    private final Object maintenanceLock = new Object();
+
+    private IndexSegment.Builder buffer = new IndexSegment.Builder();
+
+    // 按排序键从旧到新，只整体替换
+    private volatile List<IndexSegment> segments = Collections.emptyList();
+
+    // 已删除、尚未标记到各段的会话，查询时直接过滤
+    private final Set<String> pendingDeletes = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicLong nextGeneration = new AtomicLong();
+
+    private ScheduledExecutorService indexer;
+    private Path directory;
+    private long catchUpSince;
+
+    private final LongAdder indexedDocs = new LongAdder();
+    private final LongAdder deletedDocs = new LongAdder();
+    private final LongAdder catchUpDocs = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        McpConfig.Search config = mcpConfig.getSearch();
+        if (!config.isEnabled()) {
+            log.info("Message search disabled");
+            return;
+        }
+        directory = Paths.get(config.getDirectory());
+        Files.createDirectories(directory);
+        load();
+
+        indexer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mcp-search-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        indexer.scheduleWithFixedDelay(this::maintainQuietly,
+                config.getFlushInterval(), config.getFlushInterval(), TimeUnit.MILLISECONDS);
+        log.info("Message index opened at {}, {} segments, {} docs",
+                directory.toAbsolutePath(), segments.size(), docCount());
+    }
+
+    /**
+     * 应用启动完成后在索引线程上补建索引，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startCatchUp() {
+        if (isEnabled()) {
+            indexer.execute(this::catchUp);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (indexer == null) {
+            return;
+        }
+        indexer.shutdown();
+        try {
+            indexer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭前把缓冲落盘
+        maintainQuietly();
+    }
+
+    /**
+     * 把一条消息加入索引，调用后立即可查
+     *
+     * @param userId 会话所属用户
+     * @param message 消息，序号需已分配
+     */
+    public void add(String userId, McpMessage message) {
+        if (!isEnabled() || userId == null) {
+            return;
+        }
+        Set<String> terms = tokenizer.indexTerms(message.getContent());
+        if (terms.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            keys.add(key(userId, term));
+        }
+        long createTime = message.getCreateTime() != null ? message.getCreateTime().getTime() : System.currentTimeMillis();
+        int buffered;
+        synchronized (bufferLock) {
+            buffer.add(message.getSessionId(), message.getSequence(), createTime, keys);
+            buffered = buffer.docCount();
+        }
+        indexedDocs.increment();
+        if (buffered >= mcpConfig.getSearch().getFlushDocs() && !indexer.isShutdown()
+                && flushScheduled.compareAndSet(false, true)) {
+            indexer.execute(() -> {
+                flushScheduled.set(false);
+                maintainQuietly();
+            });
+        }
+    }
+
+    /**
+     * 从索引中移除会话的全部消息，查询立即不再返回，段内标记由索引线程异步完成
+     *
+     * @param sessionIds 会话ID
+     */
+    public void removeSessions(Collection<String> sessionIds) {
+        if (!isEnabled() || sessionIds.isEmpty()) {
+            return;
+        }
+        pendingDeletes.addAll(sessionIds);
+        synchronized (bufferLock) {
+            buffer.delete(sessionIds);
+        }
+    }
+
+    /**
+     * 查询同时包含全部查询词项的消息，大致按创建时间倒序
+     *
+     * @param userId 用户ID
+     * @param query 查询串
+     * @param limit 最多返回条数
+     * @return 命中列表
+     */
+    public List<Hit> search(String userId, String query, int limit) {
+        if (!isEnabled()) {
+            return Collections.emptyList();
+        }
+        long start = System.nanoTime();
+        Set<String> terms = tokenizer.queryTerms(query);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> keys = terms.stream().map(term -> key(userId, term)).collect(Collectors.toList());
+
+        HitCollector collector = new HitCollector(limit);
+        List<IndexSegment> snapshot;
+        synchronized (bufferLock) {
+            snapshot = segments;
+            buffer.search(keys, collector::offer);
+        }
+        // 段按从旧到新排列，从最新的段开始查
+        for (int i = snapshot.size() - 1; i >= 0 && !collector.isFull(); i--) {
+            snapshot.get(i).search(keys, (segment, doc) ->
+                    collector.offer(segment.sessionIds[doc], segment.sequences[doc], segment.createTimes[doc]));
+        }
+        collector.hits.sort(Comparator.comparingLong(Hit::getCreateTime).reversed());
+
+        queries.increment();
+        queryNanos.add(System.nanoTime() - start);
+        return collector.hits;
+    }
+
+    /**
+     * 获取索引统计
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        if (!isEnabled()) {
+            return stats;
+        }
+        List<IndexSegment> snapshot = segments;
+        int buffered;
+        synchronized (bufferLock) {
+            buffered = buffer.docCount();
+        }
+        long count = queries.sum();
+        stats.put("segments", snapshot.size());
+        stats.put("docs", docCount());
+        stats.put("liveDocs", snapshot.stream().mapToLong(IndexSegment::liveDocs).sum() + buffered);
+        stats.put("bufferedDocs", buffered);
+        stats.put("terms", snapshot.stream().mapToLong(s -> s.postings.size()).sum());
+        stats.put("indexedDocs", indexedDocs.sum());
+        stats.put("deletedDocs", deletedDocs.sum());
+        stats.put("catchUpDocs", catchUpDocs.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("merges", merges.sum());
+        stats.put("queries", count);
+        stats.put("avgQueryMicros", count > 0 ? queryNanos.sum() / count / 1000 : 0);
+        return stats;
+    }
+
+    private boolean isEnabled() {
+        return indexer != null;
+    }
+
+    private long docCount() {
+        long docs = segments.stream().mapToLong(IndexSegment::docCount).sum();
+        synchronized (bufferLock) {
+            return docs + buffer.docCount();
+        }
+    }
+
+    private static String key(String userId, String term) {
+        return userId + KEY_SEPARATOR + term;
+    }
+
+    // 辅助方法 - 加载段文件：跳过无法读取的段，清理已被合并段替换的旧段，确定补建起点
+    private void load() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.collect(Collectors.toList());
+        }
+        List<IndexSegment> loaded = new ArrayList<>();
+        long maxGeneration = -1;
+        boolean damaged = false;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".tmp")) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            if (!name.endsWith(IndexSegment.SEGMENT_SUFFIX)) {
+                continue;
+            }
+            maxGeneration = Math.max(maxGeneration,
+                    Long.parseLong(name.substring(0, name.length() - IndexSegment.SEGMENT_SUFFIX.length())));
+            try {
+                loaded.add(IndexSegment.read(file));
+            } catch (IOException e) {
+                log.warn("Dropping unreadable index segment {}: {}", file, e.getMessage());
+                Files.deleteIfExists(file);
+                damaged = true;
+            }
+        }
+
+        Set<Long> replaced = new HashSet<>();
+        loaded.forEach(segment -> {
+            for (long generation : segment.replaces) {
+                replaced.add(generation);
+            }
+        });
+        List<IndexSegment> live = new ArrayList<>();
+        for (IndexSegment segment : loaded) {
+            if (replaced.contains(segment.generation)) {
+                segment.deleteFiles(directory);
+            } else {
+                live.add(segment);
+            }
+        }
+        live.sort(Comparator.comparingLong((IndexSegment s) -> s.order).thenComparingLong(s -> s.generation));
+
+        segments = Collections.unmodifiableList(live);
+        nextGeneration.set(maxGeneration + 1);
+        // 有段损坏时无法确定缺了哪段时间的消息，从头补建
+        long newest = live.stream().mapToLong(IndexSegment::maxCreateTime).max().orElse(0);
+        catchUpSince = damaged || newest == 0 ? 0 : newest - CATCH_UP_SLACK;
+    }
+
+    // 辅助方法 - 从数据库补建段文件之后创建的消息（重启期间缓冲中未落盘的消息也在其中）
+    private void catchUp() {
+        int batchSize = mcpConfig.getSearch().getCatchUpBatchSize();
+        Date since = new Date(catchUpSince);
+        long start = System.currentTimeMillis();
+        try {
+            // 消息ID全局分配且重新分片时保留，但各表的ID区间交错，分表时每张表单独用主键游标
+            for (int shard : shardRouter.shards()) {
+                catchUpShard(shard, since, batchSize);
+            }
+            log.info("Message index catch-up finished: {} messages since {} in {}ms",
+                    catchUpDocs.sum(), since, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Message index catch-up failed after {} messages: {}", catchUpDocs.sum(), e.getMessage(), e);
+        }
+    }
+
+    private void catchUpShard(int shard, Date since, int batchSize) throws IOException {
+        long afterId = 0;
+        while (!indexer.isShutdown()) {
+            long cursor = afterId;
+            List<McpMessage> rows = shardRouter.onShard(shard, () -> messageMapper.findCreatedSince(since, cursor, batchSize));
+            if (rows.isEmpty()) {
+                break;
+            }
+            Set<String> sessionIds = rows.stream().map(McpMessage::getSessionId).collect(Collectors.toSet());
+            Map<String, String> owners = shardRouter.onShard(shard, () -> sessionMapper.selectList(new QueryWrapper<McpSession>()
+                            .select("id", "user_id")
+                            .in("id", sessionIds)))
+                    .stream()
+                    .collect(Collectors.toMap(McpSession::getId, McpSession::getUserId));
+            for (McpMessage message : rows) {
+                add(owners.get(message.getSessionId()), message);
+            }
+            catchUpDocs.add(rows.size());
+            afterId = rows.get(rows.size() - 1).getId();
+
+            // 补建期间定时任务排在后面，这里按条数主动落盘
+            synchronized (maintenanceLock) {
+                if (bufferedDocs() >= mcpConfig.getSearch().getFlushDocs()) {
+                    flush();
+                }
+            }
+            if (rows.size() < batchSize) {
+                break;
+            }
+        }
+    }
+
+    private void maintainQuietly() {
+        try {
+            synchronized (maintenanceLock) {
+                flush();
+                applyDeletes();
+                persist();
+                merge();
+            }
+        } catch (Exception e) {
+            log.error("Message index maintenance failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private int bufferedDocs() {
+        synchronized (bufferLock) {
+            return buffer.docCount();
+        }
+    }
+
+    // 辅助方法 - 把写缓冲冻结成段，先对查询可见再写文件，写失败的段在下次维护时重试
+    private void flush() throws IOException {
+        IndexSegment frozen;
+        synchronized (bufferLock) {
+            if (buffer.docCount() == 0) {
+                buffer = new IndexSegment.Builder();
+                return;
+            }
+            frozen = buffer.freeze(nextGeneration.getAndIncrement());
+            buffer = new IndexSegment.Builder();
+            List<IndexSegment> next = new ArrayList<>(segments);
+            next.add(frozen);
+            segments = Collections.unmodifiableList(next);
+        }
+        frozen.write(directory);
+        flushes.increment();
+        log.debug("Flushed index segment {}: {} docs", frozen.generation, frozen.docCount());
+    }
+
+    // 辅助方法 - 把待删除会话标记到各段
+    private void applyDeletes() {
+        if (pendingDeletes.isEmpty()) {
+            return;
+        }
+        Set<String> batch = new HashSet<>(pendingDeletes);
+        for (IndexSegment segment : segments) {
+            deletedDocs.add(segment.markDeleted(batch));
+        }
+        pendingDeletes.removeAll(batch);
+    }
+
+    // 辅助方法 - 重试未写成功的段，写入新的删除标记
+    private void persist() throws IOException {
+        for (IndexSegment segment : segments) {
+            if (!segment.isPersisted()) {
+                segment.write(directory);
+            }
+            segment.writeDeletes(directory);
+        }
+    }
+
+    // 辅助方法 - 分层合并：找到同一层级、已落盘的 merge-factor 个相邻段合并成一个，直到没有可合并的段
+    private void merge() throws IOException {
+        int factor = mcpConfig.getSearch().getMergeFactor();
+        while (true) {
+            List<IndexSegment> current = segments;
+            int start = findMergeRun(current, factor);
+            if (start < 0) {
+                return;
+            }
+            List<IndexSegment> sources = current.subList(start, start + factor);
+            long begin = System.nanoTime();
+            IndexSegment merged = IndexSegment.merge(nextGeneration.getAndIncrement(), sources);
+            merged.write(directory);
+            synchronized (bufferLock) {
+                // 段列表只有持有维护锁时才会变化，此时仍等于 current
+                List<IndexSegment> next = new ArrayList<>(current.subList(0, start));
+                next.add(merged);
+                next.addAll(current.subList(start + factor, current.size()));
+                segments = Collections.unmodifiableList(next);
+            }
+            for (IndexSegment source : sources) {
+                source.deleteFiles(directory);
+            }
+            merges.increment();
+            log.debug("Merged {} index segments into {}: {} docs in {}ms", factor, merged.generation,
+                    merged.docCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        }
+    }
+
+    private int findMergeRun(List<IndexSegment> current, int factor) {
+        int runStart = 0;
+        for (int i = 0; i < current.size(); i++) {
+            IndexSegment segment = current.get(i);
+            if (!segment.isPersisted()) {
+                runStart = i + 1;
+                continue;
+            }
+            if (i > runStart && level(current.get(i - 1)) != level(segment)) {
+                runStart = i;
+            }
+            if (i - runStart + 1 == factor) {
+                return runStart;
+            }
+        }
+        return -1;
+    }
+
+    private int level(IndexSegment segment) {
+        long bound = (long) mcpConfig.getSearch().getFlushDocs() * mcpConfig.getSearch().getMergeFactor();
+        int level = 0;
+        for (long docs = segment.docCount(); docs >= bound; docs /= mcpConfig.getSearch().getMergeFactor()) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 命中的消息
+     */
+    @Getter
+    public static class Hit {
+        private final String sessionId;
+        private final int sequence;
+        private final long createTime;
+
+        public Hit(String sessionId, int sequence, long createTime) {
+            this.sessionId = sessionId;
+            this.sequence = sequence;
+            this.createTime = createTime;
+        }
+    }
+
+    // 收集命中：跳过已删除会话，按（会话, 序号）去重，收满即停
+    private class HitCollector {
+        private final int limit;
+        private final List<Hit> hits = new ArrayList<>();
+        private final Set<String> seen = new HashSet<>();
+
+        private HitCollector(int limit) {
+            this.limit = limit;
+        }
+
+        private boolean offer(String sessionId, int sequence, long createTime) {
+            if (!pendingDeletes.contains(sessionId) && seen.add(sessionId + '#' + sequence)) {
+                hits.add(new Hit(sessionId, sequence, createTime));
+            }
+            return !isFull();
+        }
+
+        private boolean isFull() {
+            return hits.size() >= limit;
+        }
+    }
+}
@@ -0,0 +1,599 @@
+package com.example.mcpdemo.service.support;
+
+import com.alibaba.fastjson.JSON;
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.entity.McpMessage;
+import com.example.mcpdemo.entity.McpSession;
+import com.example.mcpdemo.exception.AdmissionRejectedException;
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import com.example.mcpdemo.mapper.McpSessionMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 消息写后日志（write-behind journal）
+ * <p>
+ * 启用后，消息插入与会话更新先进入内存缓冲，按条数或时间触发，通过 MyBatis BATCH 执行器分组提交，
+ * 聊天请求不再为每条消息等待一次数据库往返。缓冲中的数据对同一会话的读取可见（read-your-writes）。
+ * 未启用时直接同步落库，调用方无需区分两种模式。
+ * <p>
+ * 记录在写入成功后才离开缓冲：批量失败时逐条重试，遇到暂时性错误（连接失败、超时等）就停下，保留剩余记录并按指数退避再刷；
+ * 序号唯一索引冲突（其他实例写入了同一序号）时，该会话尚未写入的消息经 {@link MessageSequenceAllocator#reallocate}
+ * 整体换到一段新的连续序号，保持原有顺序（本轮的用户消息仍在回复之前），留待下次写入；
+ * 只有数据本身无法写入（约束、数据超长等）的记录，以及关闭时仍未落库的记录写入死信文件，不会静默丢弃。
+ * <p>
+ * 缓冲有上限：记录数达到 max-pending 时 {@link #admit()} 拒绝新一轮对话（429），已开始的轮次照常追加；
+ * 超过 max-pending 的两倍时新记录直接写入死信文件，数据库长时间不可用时内存不会无限增长。
+ */
+@Component
+@Slf4j
+public class MessageJournal {
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private McpMessageMapper messageMapper;
+
+    @Autowired
+    private McpSessionMapper sessionMapper;
+
+    @Autowired
+    private MessageSequenceAllocator sequenceAllocator;
+
+    // 缓冲锁，保护下面两个缓冲区
+    private final Object bufferLock = new Object();
+
+    // 刷盘锁，同一时刻只允许一次刷盘
+    private final Object flushLock = new Object();
+
+    // 会话ID -> 待写入消息（按追加顺序）
+    private final Map<String, List<McpMessage>> pendingMessages = new LinkedHashMap<>();
+
+    // 会话ID -> 待写入的会话最新快照
+    private final Map<String, McpSession> pendingSessions = new LinkedHashMap<>();
+
+    private int pendingCount;
+
+    // 会话ID -> 最近一次整体换序号后的起始序号，此前分配、之后才追加的消息排到这段之后
+    private final Map<String, Integer> resequencedFrom = new HashMap<>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    // 连续因暂时性错误失败的刷盘次数，以及下次允许刷盘的时间（退避）
+    private volatile int consecutiveFailures;
+    private volatile long retryAt;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder resequenced = new LongAdder();
+    private final LongAdder deadLetters = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        McpConfig.Journal config = mcpConfig.getJournal();
+        if (!config.isEnabled()) {
+            log.info("Message journal disabled, writes go straight to the database");
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mcp-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly,
+                config.getFlushInterval(), config.getFlushInterval(), TimeUnit.MILLISECONDS);
+        log.info("Message journal enabled, batchSize: {}, flushInterval: {}ms",
+                config.getBatchSize(), config.getFlushInterval());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭前把剩余缓冲全部落库，仍写不进去的转存死信文件
+        flush(true);
+        deadLetterRemaining();
+    }
+
+    /**
+     * 新一轮对话开始前的准入检查：缓冲中的记录达到 max-pending（数据库写入跟不上或暂时不可用）时拒绝
+     *
+     * @throws AdmissionRejectedException 缓冲已满
+     */
+    public void admit() {
+        if (!isEnabled()) {
+            return;
+        }
+        int size;
+        synchronized (bufferLock) {
+            size = pendingCount;
+        }
+        if (size >= mcpConfig.getJournal().getMaxPending()) {
+            rejected.increment();
+            throw new AdmissionRejectedException("Message journal is full", mcpConfig.getAdmission().getRetryAfterSeconds());
+        }
+    }
+
+    /**
+     * 追加一条消息；会话的待写入消息刚被整体换过序号时，此前分配序号的消息换到它们之后
+     *
+     * @param message 消息实体，序号需已分配
+     */
+    public void appendMessage(McpMessage message) {
+        if (!isEnabled()) {
+            messageMapper.insert(message);
+            return;
+        }
+        boolean accepted = false;
+        synchronized (bufferLock) {
+            if (pendingCount < overflowLimit()) {
+                String sessionId = message.getSessionId();
+                Integer from = resequencedFrom.get(sessionId);
+                if (from != null && message.getSequence() < from) {
+                    message.setSequence(sequenceAllocator.next(sessionId));
+                }
+                pendingMessages.computeIfAbsent(sessionId, k -> new ArrayList<>()).add(message);
+                pendingCount++;
+                accepted = true;
+            }
+        }
+        if (!accepted) {
+            overflow("message", message);
+        }
+        triggerIfFull();
+    }
+
+    /**
+     * 追加一次会话更新，同一会话只保留最新快照
+     *
+     * @param session 会话实体
+     */
+    public void appendSessionUpdate(McpSession session) {
+        if (!isEnabled()) {
+            sessionMapper.updateById(session);
+            return;
+        }
+        McpSession snapshot = session.toBuilder().build();
+        boolean accepted = true;
+        synchronized (bufferLock) {
+            // 替换已有快照不增加记录数，不受上限限制
+            if (pendingSessions.containsKey(snapshot.getId())) {
+                pendingSessions.put(snapshot.getId(), snapshot);
+            } else if (pendingCount < overflowLimit()) {
+                pendingSessions.put(snapshot.getId(), snapshot);
+                pendingCount++;
+            } else {
+                accepted = false;
+            }
+        }
+        if (!accepted) {
+            overflow("session", snapshot);
+        }
+        triggerIfFull();
+    }
+
+    /**
+     * 获取会话尚未落库的消息
+     *
+     * @param sessionId 会话ID
+     * @return 待写入消息，没有时为空列表
+     */
+    public List<McpMessage> pendingMessages(String sessionId) {
+        synchronized (bufferLock) {
+            List<McpMessage> messages = pendingMessages.get(sessionId);
+            return messages == null ? Collections.emptyList() : new ArrayList<>(messages);
+        }
+    }
+
+    /**
+     * 获取会话尚未落库的最新快照
+     *
+     * @param sessionId 会话ID
+     * @return 会话快照，没有时为null
+     */
+    public McpSession pendingSession(String sessionId) {
+        synchronized (bufferLock) {
+            McpSession session = pendingSessions.get(sessionId);
+            return session == null ? null : session.toBuilder().build();
+        }
+    }
+
+    /**
+     * 会话是否还有尚未落库的消息或会话更新
+     *
+     * @param sessionId 会话ID
+     * @return 是否有待写入数据
+     */
+    public boolean hasPending(String sessionId) {
+        synchronized (bufferLock) {
+            return pendingMessages.containsKey(sessionId) || pendingSessions.containsKey(sessionId);
+        }
+    }
+
+    /**
+     * 丢弃会话的所有待写入数据（会话删除时调用），会等待进行中的刷盘结束，避免删除后又被写回
+     *
+     * @param sessionId 会话ID
+     */
+    public void discard(String sessionId) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (flushLock) {
+            synchronized (bufferLock) {
+                List<McpMessage> messages = pendingMessages.remove(sessionId);
+                if (messages != null) {
+                    pendingCount -= messages.size();
+                }
+                if (pendingSessions.remove(sessionId) != null) {
+                    pendingCount--;
+                }
+                resequencedFrom.remove(sessionId);
+            }
+        }
+    }
+
+    /**
+     * 撤销一条已追加的消息（生成失败时的补偿）：仍在缓冲中时直接移除，否则从数据库删除。
+     * 持有刷盘锁，避免消息正在刷盘时两边都找不到
+     *
+     * @param message 消息
+     */
+    public void removeMessage(McpMessage message) {
+        synchronized (flushLock) {
+            if (isEnabled()) {
+                synchronized (bufferLock) {
+                    List<McpMessage> messages = pendingMessages.get(message.getSessionId());
+                    if (messages != null && messages.removeIf(m -> m == message)) {
+                        pendingCount--;
+                        if (messages.isEmpty()) {
+                            pendingMessages.remove(message.getSessionId());
+                        }
+                        return;
+                    }
+                }
+            }
+            messageMapper.deleteBySequence(message.getSessionId(), message.getSequence());
+        }
+    }
+
+    /**
+     * 将当前缓冲分组提交到数据库；处于退避期时跳过
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    /**
+     * 获取写后日志统计
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        synchronized (bufferLock) {
+            stats.put("pending", pendingCount);
+        }
+        stats.put("maxPending", mcpConfig.getJournal().getMaxPending());
+        stats.put("rejected", rejected.sum());
+        stats.put("overflowed", overflowed.sum());
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("retryAt", retryAt);
+        stats.put("retries", retries.sum());
+        stats.put("resequenced", resequenced.sum());
+        stats.put("deadLetters", deadLetters.sum());
+        return stats;
+    }
+
+    // 辅助方法 - force 为true时忽略退避（关闭时）
+    private void flush(boolean force) {
+        synchronized (flushLock) {
+            if (!force && System.currentTimeMillis() < retryAt) {
+                return;
+            }
+            List<McpMessage> messages = new ArrayList<>();
+            List<McpSession> sessions;
+            synchronized (bufferLock) {
+                if (pendingCount == 0) {
+                    return;
+                }
+                pendingMessages.values().forEach(messages::addAll);
+                sessions = new ArrayList<>(pendingSessions.values());
+            }
+
+            long start = System.currentTimeMillis();
+            // 已写入或已转存死信的记录（按引用）
+            Set<Object> done = Collections.newSetFromMap(new IdentityHashMap<>());
+            boolean interrupted = false;
+            if (writeBatch(messages, sessions)) {
+                done.addAll(messages);
+                done.addAll(sessions);
+            } else {
+                interrupted = !writeOneByOne(messages, sessions, done);
+            }
+
+            // 写入完成后才从缓冲移除，保证刷盘过程中读取仍然可见；未完成的留待下次刷盘
+            synchronized (bufferLock) {
+                for (McpMessage message : messages) {
+                    List<McpMessage> sessionMessages = pendingMessages.get(message.getSessionId());
+                    if (done.contains(message) && sessionMessages != null && sessionMessages.removeIf(m -> m == message)) {
+                        pendingCount--;
+                        if (sessionMessages.isEmpty()) {
+                            pendingMessages.remove(message.getSessionId());
+                        }
+                    }
+                }
+                for (McpSession session : sessions) {
+                    if (done.contains(session) && pendingSessions.get(session.getId()) == session) {
+                        pendingSessions.remove(session.getId());
+                        pendingCount--;
+                    }
+                }
+            }
+
+            if (interrupted) {
+                backOff();
+            } else {
+                consecutiveFailures = 0;
+                retryAt = 0;
+            }
+            log.debug("Journal flushed {} of {} records in {}ms",
+                    done.size(), messages.size() + sessions.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    // 辅助方法 - 通过BATCH执行器一次提交
+    private boolean writeBatch(List<McpMessage> messages, List<McpSession> sessions) {
+        try (SqlSession batchSession = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+            try {
+                McpMessageMapper batchMessageMapper = batchSession.getMapper(McpMessageMapper.class);
+                McpSessionMapper batchSessionMapper = batchSession.getMapper(McpSessionMapper.class);
+                messages.forEach(batchMessageMapper::insert);
+                sessions.forEach(batchSessionMapper::updateById);
+                batchSession.commit();
+                return true;
+            } catch (Exception e) {
+                log.warn("Journal batch flush failed, falling back to single writes: {}", e.getMessage());
+                batchSession.rollback();
+                return false;
+            }
+        }
+    }
+
+    // 辅助方法 - 批量失败时逐条写入，隔离出错的记录；遇到暂时性错误时停止并返回false，剩余记录留在缓冲
+    private boolean writeOneByOne(List<McpMessage> messages, List<McpSession> sessions, Set<Object> done) {
+        // 换过序号的会话本次不再写入其余消息，下次按新序号一起写
+        Set<String> resequencedSessions = new HashSet<>();
+        for (McpMessage message : messages) {
+            if (resequencedSessions.contains(message.getSessionId())) {
+                continue;
+            }
+            try {
+                messageMapper.insert(message);
+                done.add(message);
+            } catch (DuplicateKeyException e) {
+                resequence(message.getSessionId(), message.getSequence(), done);
+                resequencedSessions.add(message.getSessionId());
+            } catch (Exception e) {
+                if (isTransient(e)) {
+                    log.warn("Journal flush interrupted at session: {}, sequence: {}: {}",
+                            message.getSessionId(), message.getSequence(), e.getMessage());
+                    return false;
+                }
+                if (deadLetter("message", message, e.getMessage())) {
+                    done.add(message);
+                }
+            }
+        }
+        for (McpSession session : sessions) {
+            try {
+                sessionMapper.updateById(session);
+                done.add(session);
+            } catch (Exception e) {
+                if (isTransient(e)) {
+                    log.warn("Journal flush interrupted at session update: {}: {}", session.getId(), e.getMessage());
+                    return false;
+                }
+                if (deadLetter("session", session, e.getMessage())) {
+                    done.add(session);
+                }
+            }
+        }
+        return true;
+    }
+
+    // 辅助方法 - 序号已被占用：会话中尚未写入的消息按原顺序整体换到一段新的连续序号，留在缓冲中下次刷盘写入（持有刷盘锁调用）。
+    // 只换冲突的那条会让本轮用户消息排到回复之后
+    private void resequence(String sessionId, int conflict, Set<Object> done) {
+        List<McpMessage> remaining;
+        synchronized (bufferLock) {
+            remaining = pendingMessages.getOrDefault(sessionId, Collections.emptyList()).stream()
+                    .filter(m -> !done.contains(m))
+                    .sorted(Comparator.comparingInt(McpMessage::getSequence))
+                    .collect(Collectors.toList());
+        }
+        if (remaining.isEmpty()) {
+            return;
+        }
+        int floor = remaining.get(remaining.size() - 1).getSequence() + 1;
+        int first = sequenceAllocator.reallocate(sessionId, floor, remaining.size());
+        synchronized (bufferLock) {
+            for (int i = 0; i < remaining.size(); i++) {
+                remaining.get(i).setSequence(first + i);
+            }
+            resequencedFrom.put(sessionId, first);
+            List<McpMessage> sessionMessages = pendingMessages.get(sessionId);
+            if (sessionMessages != null) {
+                // 换序号期间追加、序号在这段之前分配的消息，按追加顺序排到这段之后
+                for (McpMessage message : sessionMessages) {
+                    if (!done.contains(message) && message.getSequence() < first) {
+                        message.setSequence(sequenceAllocator.next(sessionId));
+                    }
+                }
+                sessionMessages.sort(Comparator.comparingInt(McpMessage::getSequence));
+            }
+        }
+        resequenced.increment();
+        log.warn("Sequence {} already taken in session: {}, {} journaled messages moved to {}..{}",
+                conflict, sessionId, remaining.size(), first, first + remaining.size() - 1);
+    }
+
+    // 辅助方法 - 数据本身无法写入（约束、数据超长等，SQLState 22/23）为非暂时性错误，其余（连接、超时、锁等待等）都保留重试
+    private static boolean isTransient(Exception e) {
+        if (e instanceof DataIntegrityViolationException) {
+            return false;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                return state == null || !(state.startsWith("22") || state.startsWith("23"));
+            }
+        }
+        return true;
+    }
+
+    private void backOff() {
+        McpConfig.Journal config = mcpConfig.getJournal();
+        int failures = ++consecutiveFailures;
+        long backoff = Math.min(config.getMaxRetryBackoff(), config.getFlushInterval() << Math.min(failures, 20));
+        retryAt = System.currentTimeMillis() + backoff;
+        retries.increment();
+        log.warn("Journal flush failed {} times in a row, {} records kept, retrying in {}ms",
+                failures, pendingCount, backoff);
+    }
+
+    // 辅助方法 - 以JSON行追加到死信文件，写文件失败时返回false，记录留在缓冲
+    private boolean deadLetter(String type, Object record, String reason) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("time", System.currentTimeMillis());
+        line.put("type", type);
+        line.put("error", reason);
+        line.put("record", record);
+        Path path = Paths.get(mcpConfig.getJournal().getDeadLetterFile());
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, (JSON.toJSONString(line) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("Failed to write journal dead letter to {}, keeping {} in memory", path, type, e);
+            return false;
+        }
+        deadLetters.increment();
+        log.error("Dead-lettered journaled {} to {}: {}", type, path, line.get("error"));
+        return true;
+    }
+
+    // 辅助方法 - 关闭时仍未落库的记录全部转存死信文件
+    private void deadLetterRemaining() {
+        synchronized (flushLock) {
+            synchronized (bufferLock) {
+                pendingMessages.values().forEach(list -> list.forEach(m -> deadLetter("message", m, "shutdown")));
+                pendingSessions.values().forEach(session -> deadLetter("session", session, "shutdown"));
+                pendingMessages.clear();
+                pendingSessions.clear();
+                resequencedFrom.clear();
+                pendingCount = 0;
+            }
+        }
+    }
+
+    // 辅助方法 - 超过缓冲硬上限的记录直接转存死信文件；连死信文件也写不进去时只能留在缓冲
+    private void overflow(String type, Object record) {
+        overflowed.increment();
+        if (!deadLetter(type, record, "journal buffer full")) {
+            synchronized (bufferLock) {
+                if ("message".equals(type)) {
+                    McpMessage message = (McpMessage) record;
+                    pendingMessages.computeIfAbsent(message.getSessionId(), k -> new ArrayList<>()).add(message);
+                } else {
+                    McpSession session = (McpSession) record;
+                    if (pendingSessions.put(session.getId(), session) != null) {
+                        return;
+                    }
+                }
+                pendingCount++;
+            }
+        }
+    }
+
+    // 已准入的轮次在 max-pending 之后还会追加回复与会话更新，硬上限留出同样多的余量
+    private int overflowLimit() {
+        return mcpConfig.getJournal().getMaxPending() * 2;
+    }
+
+    // 辅助方法 - 缓冲已满时异步触发一次刷盘
+    private void triggerIfFull() {
+        int size;
+        synchronized (bufferLock) {
+            size = pendingCount;
+        }
+        if (size >= mcpConfig.getJournal().getBatchSize() && !flusher.isShutdown()
+                && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Journal flush failed", e);
+        }
+    }
+
+    private boolean isEnabled() {
+        return flusher != null;
+    }
+}
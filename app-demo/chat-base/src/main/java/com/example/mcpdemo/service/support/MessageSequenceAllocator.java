@@ -0,0 +1,96 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 会话消息序号分配器
+ * <p>
+ * 每个会话维护一个内存原子计数器，首次使用时通过 MAX(sequence) 懒加载初始值，
+ * 之后分配序号为 O(1) 操作，不再对 mcp_message 做 COUNT(*)。
+ * 数据库侧由 (session_id, sequence) 唯一索引兜底，多实例部署时冲突可通过 {@link #reallocate(String, int, int)} 重新对齐。
+ */
+@Component
+@Slf4j
+public class MessageSequenceAllocator {
+
+    @Autowired
+    private McpMessageMapper messageMapper;
+
+    // 会话ID -> 下一个可用序号
+    private final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 为新建会话注册计数器，新会话没有历史消息，无需查询数据库
+     *
+     * @param sessionId 会话ID
+     */
+    public void register(String sessionId) {
+        counters.putIfAbsent(sessionId, new AtomicInteger(0));
+    }
+
+    /**
+     * 分配下一个消息序号
+     *
+     * @param sessionId 会话ID
+     * @return 消息序号
+     */
+    public int next(String sessionId) {
+        return counters.computeIfAbsent(sessionId, this::seed).getAndIncrement();
+    }
+
+    /**
+     * 归还刚分配的序号：仅当它仍是最后分配的序号时回退计数器，之后已有新分配则保留空洞
+     *
+     * @param sessionId 会话ID
+     * @param sequence 要归还的序号
+     */
+    public void release(String sessionId, int sequence) {
+        AtomicInteger counter = counters.get(sessionId);
+        if (counter != null) {
+            counter.compareAndSet(sequence + 1, sequence);
+        }
+    }
+
+    /**
+     * 序号与数据库冲突（如其他实例写入）后重新对齐计数器并分配一段连续的新序号：计数器只前移到
+     * 数据库最大序号之后、且不小于 floor（尚未落库的已分配序号之后），已分配出去的序号不会被再次分配
+     *
+     * @param sessionId 会话ID
+     * @param floor 新序号的下界
+     * @param count 需要的序号个数
+     * @return 这段序号的第一个
+     */
+    public int reallocate(String sessionId, int floor, int count) {
+        Integer maxSequence = messageMapper.findMaxSequence(sessionId);
+        int target = Math.max(floor, maxSequence == null ? 0 : maxSequence + 1);
+        AtomicInteger counter = counters.computeIfAbsent(sessionId, k -> new AtomicInteger(target));
+        counter.accumulateAndGet(target, Math::max);
+        int sequence = counter.getAndAdd(count);
+        log.debug("Reallocated sequences {}..{} for session: {}", sequence, sequence + count - 1, sessionId);
+        return sequence;
+    }
+
+    /**
+     * 会话删除时释放计数器
+     *
+     * @param sessionId 会话ID
+     */
+    public void evict(String sessionId) {
+        counters.remove(sessionId);
+    }
+
+    // 辅助方法 - 从数据库加载当前最大序号
+    private AtomicInteger seed(String sessionId) {
+        Integer maxSequence = messageMapper.findMaxSequence(sessionId);
+        int nextSequence = maxSequence == null ? 0 : maxSequence + 1;
+        log.debug("Seeded sequence counter for session: {} at {}", sessionId, nextSequence);
+        return new AtomicInteger(nextSequence);
+    }
+}
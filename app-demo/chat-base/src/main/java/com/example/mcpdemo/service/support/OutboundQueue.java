@@ -0,0 +1,442 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.dto.McpResponse;
+import com.example.mcpdemo.dto.McpStreamDelta;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 单个订阅者的有界出站队列
+ * <p>
+ * 会话流发布帧时只入队，由写出线程池按订阅者顺序写出，慢客户端不再阻塞生成线程和同一会话的其他订阅者。
+ * 有积压帧时占用一个写出线程，每写出 {@value #FRAMES_PER_DRAIN} 帧让出线程、排到其他订阅者之后，积压多的订阅者不会独占线程；
+ * 写出阻塞时只占住这一个线程，单帧写出超过 writeTimeout 时由巡检断开，不等阻塞的写出返回。
+ * 队列满时按策略处理：
+ * <ul>
+ *     <li>COALESCE：相邻的增量帧合并为一帧，完整内容帧只保留最新一帧</li>
+ *     <li>DROP_TO_LATEST：丢弃积压的中间帧，补发gap事件后只保留最新一帧，增量模式的客户端可按 Last-Event-ID 重连补齐</li>
+ *     <li>DISCONNECT：直接断开</li>
+ * </ul>
+ * 合并或丢弃后仍然放不下（积压的都是控制帧）时断开；任何策略下最旧积压帧的等待时间超过 maxLag 也会断开，
+ * 客户端按 Last-Event-ID 重连后从会话流缓冲续传。
+ */
+class OutboundQueue {
+
+    static final String POLICY_COALESCE = "COALESCE";
+    static final String POLICY_DROP_TO_LATEST = "DROP_TO_LATEST";
+    static final String POLICY_DISCONNECT = "DISCONNECT";
+
+    static final String REASON_OVERFLOW = "overflow";
+    static final String REASON_LAG = "lag";
+    static final String REASON_TIMEOUT = "timeout";
+    static final String REASON_ERROR = "error";
+
+    private static final String EVENT_DELTA = "delta";
+
+    // 一次写出任务最多写出的帧数，之后重新排队
+    static final int FRAMES_PER_DRAIN = 16;
+
+    /**
+     * 队列事件回调，在不持有队列锁时调用
+     */
+    interface Listener {
+
+        /**
+         * 一帧写出成功
+         *
+         * @param queue 队列
+         * @param sendNanos 写出耗时
+         * @param waitNanos 在队列中等待的时间
+         */
+        void onSent(OutboundQueue queue, long sendNanos, long waitNanos);
+
+        /**
+         * 队列满时合并或丢弃了积压帧
+         *
+         * @param queue 队列
+         * @param policy 生效的策略
+         * @param frames 减少的帧数
+         */
+        void onShed(OutboundQueue queue, String policy, int frames);
+
+        /**
+         * 队列因溢出、滞后、写出超时或写出失败关闭
+         *
+         * @param queue 队列
+         * @param reason 原因
+         * @param error 写出失败时的异常
+         */
+        void onClosed(OutboundQueue queue, String reason, Exception error);
+    }
+
+    private final String sessionId;
+    private final StreamSubscriber target;
+    private final Executor writers;
+    private final Listener listener;
+    private final String policy;
+    private final int capacity;
+    private final long maxLagNanos;
+    private final long writeTimeoutNanos;
+
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    // 已有写出任务在排队或执行
+    private boolean draining;
+    // 写完积压帧后结束订阅者
+    private boolean completing;
+    private boolean closed;
+    private boolean targetCompleted;
+    // 正在写出的帧开始写出的时间，未在写出时为0
+    private long sendingSince;
+
+    private long sent;
+    private long shed;
+    private long maxWaitNanos;
+
+    OutboundQueue(String sessionId, StreamSubscriber target, Executor writers, Listener listener,
+                  String policy, int capacity, long maxLagMillis, long writeTimeoutMillis) {
+        this.sessionId = sessionId;
+        this.target = target;
+        this.writers = writers;
+        this.listener = listener;
+        this.policy = policy == null ? POLICY_COALESCE : policy.toUpperCase();
+        this.capacity = Math.max(1, capacity);
+        this.maxLagNanos = maxLagMillis * 1_000_000L;
+        this.writeTimeoutNanos = writeTimeoutMillis * 1_000_000L;
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+
+    StreamSubscriber getTarget() {
+        return target;
+    }
+
+    /**
+     * 入队一帧
+     *
+     * @param id 事件ID，控制帧为null
+     * @param name 事件名
+     * @param data 数据
+     * @param replay 是否为订阅时的重放帧：重放帧数受会话流缓冲大小限制，不受队列容量约束
+     */
+    void offer(Long id, String name, Object data, boolean replay) {
+        long now = System.nanoTime();
+        String closeReason = null;
+        int shedFrames = 0;
+        boolean rejected = false;
+        synchronized (this) {
+            if (closed || completing) {
+                return;
+            }
+            if (isLaggingLocked(now)) {
+                closeReason = REASON_LAG;
+            } else if (!replay && pending.size() >= capacity) {
+                shedFrames = shedLocked();
+                if (pending.size() >= capacity) {
+                    closeReason = REASON_OVERFLOW;
+                }
+            }
+            if (closeReason != null) {
+                closeLocked();
+            } else {
+                pending.addLast(new Pending(id, name, data, now));
+                if (!scheduleLocked()) {
+                    closeReason = REASON_OVERFLOW;
+                    rejected = true;
+                }
+            }
+        }
+        if (shedFrames > 0) {
+            listener.onShed(this, policy, shedFrames);
+        }
+        if (closeReason != null) {
+            listener.onClosed(this, closeReason, null);
+        }
+        if (rejected) {
+            // 没有写出线程接手，在调用方线程上结束订阅者（此时没有进行中的写出）
+            completeTarget();
+        }
+    }
+
+    /**
+     * 写完积压帧后结束订阅者（本轮结束）
+     */
+    void complete() {
+        synchronized (this) {
+            if (closed || completing) {
+                return;
+            }
+            completing = true;
+            scheduleLocked();
+        }
+    }
+
+    /**
+     * 订阅者已自行断开，丢弃积压帧，不再写出
+     */
+    void discard() {
+        synchronized (this) {
+            closed = true;
+            targetCompleted = true;
+            pending.clear();
+        }
+    }
+
+    /**
+     * 检查正在写出的帧是否超过 writeTimeout、最旧积压帧的等待时间是否超过 maxLag，超过时断开
+     * （供定时巡检调用，生成已停止发帧时也能发现卡住的客户端）。写出线程仍阻塞在连接上，返回后直接结束订阅者
+     *
+     * @return 是否因写出超时或滞后断开
+     */
+    boolean checkLag() {
+        long now = System.nanoTime();
+        String reason;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (sendingSince != 0 && now - sendingSince > writeTimeoutNanos) {
+                reason = REASON_TIMEOUT;
+            } else if (isLaggingLocked(now)) {
+                reason = REASON_LAG;
+            } else {
+                return false;
+            }
+            closeLocked();
+        }
+        listener.onClosed(this, reason, null);
+        return true;
+    }
+
+    /**
+     * 当前滞后：最旧积压帧已等待的毫秒数，无积压时为0
+     *
+     * @return 滞后毫秒数
+     */
+    synchronized long lagMillis() {
+        Pending oldest = pending.peekFirst();
+        return oldest == null ? 0 : (System.nanoTime() - oldest.enqueuedNanos) / 1_000_000L;
+    }
+
+    /**
+     * 单个订阅者的出站统计
+     *
+     * @return 统计信息
+     */
+    synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("sessionId", sessionId);
+        snapshot.put("queued", pending.size());
+        Pending oldest = pending.peekFirst();
+        snapshot.put("lagMillis", oldest == null ? 0 : (System.nanoTime() - oldest.enqueuedNanos) / 1_000_000L);
+        snapshot.put("maxWaitMillis", maxWaitNanos / 1_000_000L);
+        snapshot.put("sent", sent);
+        snapshot.put("shed", shed);
+        return snapshot;
+    }
+
+    // 辅助方法 - 写出线程：按顺序写出积压帧，队列空或写满一批时结束本次任务；结束或关闭时最后完成订阅者
+    private void drain() {
+        int written = 0;
+        while (true) {
+            if (written == FRAMES_PER_DRAIN) {
+                boolean yielded;
+                boolean rejected = false;
+                synchronized (this) {
+                    yielded = !pending.isEmpty() && !closed;
+                    if (yielded) {
+                        draining = false;
+                        rejected = !scheduleLocked();
+                    }
+                }
+                if (rejected) {
+                    completeTarget();
+                }
+                if (yielded) {
+                    return;
+                }
+            }
+            Pending next;
+            long start = System.nanoTime();
+            synchronized (this) {
+                next = pending.pollFirst();
+                sendingSince = next == null ? 0 : start;
+                if (next == null) {
+                    draining = false;
+                    if ((!completing && !closed) || targetCompleted) {
+                        return;
+                    }
+                    targetCompleted = true;
+                }
+            }
+            if (next == null) {
+                completeTarget();
+                return;
+            }
+            try {
+                target.send(next.id, next.name, next.data);
+            } catch (IOException | IllegalStateException e) {
+                boolean alreadyClosed;
+                synchronized (this) {
+                    sendingSince = 0;
+                    alreadyClosed = closed;
+                    closed = true;
+                    targetCompleted = true;
+                    pending.clear();
+                    draining = false;
+                }
+                if (!alreadyClosed) {
+                    listener.onClosed(this, REASON_ERROR, e);
+                }
+                return;
+            }
+            written++;
+            long end = System.nanoTime();
+            long waitNanos = start - next.enqueuedNanos;
+            synchronized (this) {
+                sendingSince = 0;
+                sent++;
+                maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            }
+            listener.onSent(this, end - start, waitNanos);
+        }
+    }
+
+    private void completeTarget() {
+        try {
+            target.complete();
+        } catch (Exception e) {
+            // 连接可能已由容器关闭
+        }
+    }
+
+    private boolean isLaggingLocked(long now) {
+        Pending oldest = pending.peekFirst();
+        return oldest != null && now - oldest.enqueuedNanos > maxLagNanos;
+    }
+
+    // 辅助方法 - 关闭队列并丢弃积压帧，由写出线程结束订阅者：写出线程可能正阻塞在慢连接上，不在调用方线程上结束
+    private void closeLocked() {
+        closed = true;
+        pending.clear();
+        scheduleLocked();
+    }
+
+    // 辅助方法 - 线程池已关闭（应用停止中）时关闭队列，返回false
+    private boolean scheduleLocked() {
+        if (draining) {
+            return true;
+        }
+        draining = true;
+        try {
+            writers.execute(this::drain);
+            return true;
+        } catch (RejectedExecutionException e) {
+            draining = false;
+            closed = true;
+            targetCompleted = true;
+            pending.clear();
+            return false;
+        }
+    }
+
+    // 辅助方法 - 按策略腾出空间，返回减少的帧数
+    private int shedLocked() {
+        int before = pending.size();
+        if (POLICY_COALESCE.equals(policy)) {
+            coalesceLocked();
+        } else if (POLICY_DROP_TO_LATEST.equals(policy)) {
+            dropLocked();
+        }
+        int removed = before - pending.size();
+        shed += removed;
+        return removed;
+    }
+
+    // 辅助方法 - 相邻的增量帧拼接文本，相邻的完整内容帧只保留后一帧；合并帧取最后一帧的事件ID、最早的入队时间
+    private void coalesceLocked() {
+        ArrayDeque<Pending> merged = new ArrayDeque<>(pending.size());
+        for (Pending frame : pending) {
+            Pending last = merged.peekLast();
+            if (last != null && isDelta(last) && isDelta(frame)) {
+                McpStreamDelta first = (McpStreamDelta) last.data;
+                McpStreamDelta second = (McpStreamDelta) frame.data;
+                merged.pollLast();
+                merged.addLast(new Pending(frame.id, frame.name,
+                        new McpStreamDelta(first.getIndex(), first.getDelta() + second.getDelta()), last.enqueuedNanos));
+            } else if (last != null && isPartial(last) && isPartial(frame)) {
+                merged.pollLast();
+                merged.addLast(new Pending(frame.id, frame.name, frame.data, last.enqueuedNanos));
+            } else {
+                merged.addLast(frame);
+            }
+        }
+        pending.clear();
+        pending.addAll(merged);
+    }
+
+    // 辅助方法 - 丢弃所有可替代的中间帧，连同积压的gap事件合并为队尾的一个gap事件，说明缺失的事件ID范围
+    @SuppressWarnings("unchecked")
+    private void dropLocked() {
+        long lastEventId = Long.MAX_VALUE;
+        long oldestEventId = -1;
+        long enqueuedNanos = Long.MAX_VALUE;
+        Iterator<Pending> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Pending frame = iterator.next();
+            if (isDelta(frame) || isPartial(frame)) {
+                lastEventId = Math.min(lastEventId, frame.id - 1);
+                oldestEventId = Math.max(oldestEventId, frame.id + 1);
+            } else if (isGap(frame)) {
+                Map<String, Object> gap = (Map<String, Object>) frame.data;
+                lastEventId = Math.min(lastEventId, ((Number) gap.get("lastEventId")).longValue());
+                oldestEventId = Math.max(oldestEventId, ((Number) gap.get("oldestEventId")).longValue());
+            } else {
+                continue;
+            }
+            enqueuedNanos = Math.min(enqueuedNanos, frame.enqueuedNanos);
+            iterator.remove();
+        }
+        if (oldestEventId >= 0) {
+            Map<String, Object> gap = new LinkedHashMap<>();
+            gap.put("lastEventId", lastEventId);
+            gap.put("oldestEventId", oldestEventId);
+            pending.addLast(new Pending(null, StreamHub.EVENT_GAP, gap, enqueuedNanos));
+        }
+    }
+
+    private static boolean isDelta(Pending frame) {
+        return frame.id != null && EVENT_DELTA.equals(frame.name) && frame.data instanceof McpStreamDelta;
+    }
+
+    private static boolean isGap(Pending frame) {
+        return frame.id == null && StreamHub.EVENT_GAP.equals(frame.name) && frame.data instanceof Map;
+    }
+
+    // 非增量模式的中间帧携带截至当前的完整内容，新帧可以完全替代旧帧
+    private static boolean isPartial(Pending frame) {
+        return frame.id != null && frame.name == null && frame.data instanceof McpResponse
+                && !Boolean.TRUE.equals(((McpResponse) frame.data).getDone());
+    }
+
+    private static class Pending {
+        private final Long id;
+        private final String name;
+        private final Object data;
+        private final long enqueuedNanos;
+
+        private Pending(Long id, String name, Object data, long enqueuedNanos) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 读写分离路由
+ * <p>
+ * 只读接口把查询放在 {@link #onReplica(String, Supplier)} 中执行，由路由数据源发往延迟在阈值内的副本（轮询）；
+ * 其余查询、所有写入以及事务内的语句都走主库。只有事务外的SELECT会路由到副本（由Mapper插件标记），
+ * 读取范围内发生的写入（如读时恢复归档会话）不受影响。
+ * <p>
+ * 延迟通过心跳测量：主库定时写入 mcp_heartbeat 的当前时间，读取各副本上的值，差值即复制延迟；
+ * 读不到心跳或超过 maxLag 的副本暂不使用。会话或用户写入后的粘滞时间内，对应的读取走主库，保证读到自己的写入。
+ */
+@Component
+@Slf4j
+public class ReadRouter {
+
+    /**
+     * 主库的路由键
+     */
+    public static final String PRIMARY = "primary";
+
+    // 当前线程所在读取范围选定的目标：PRIMARY或副本名
+    private static final ThreadLocal<String> SCOPE = new ThreadLocal<>();
+    // 当前线程正在执行Mapper查询语句
+    private static final ThreadLocal<Boolean> QUERY = new ThreadLocal<>();
+
+    private static final String USER_KEY_PREFIX = "user:";
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    private volatile List<Replica> replicas = Collections.emptyList();
+    private JdbcTemplate primary;
+
+    // 粘滞键（会话ID或用户键） -> 粘滞截止时间
+    private final Map<String, Long> stickyUntil = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder stickyReads = new LongAdder();
+    private final LongAdder lagFallbacks = new LongAdder();
+
+    /**
+     * 注册主库与副本（启用只读副本时由数据源配置调用）
+     *
+     * @param primaryDataSource 主库
+     * @param replicaDataSources 副本名 -> 副本
+     */
+    public void configure(DataSource primaryDataSource, Map<String, DataSource> replicaDataSources) {
+        this.primary = new JdbcTemplate(primaryDataSource);
+        List<Replica> list = new ArrayList<>();
+        replicaDataSources.forEach((name, dataSource) -> list.add(new Replica(name, new JdbcTemplate(dataSource))));
+        this.replicas = Collections.unmodifiableList(list);
+        log.info("Read routing enabled with {} replicas", list.size());
+    }
+
+    /**
+     * 是否配置了副本
+     *
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * 在只读范围内执行查询：键处于写后粘滞期、没有可用副本或已在事务中时读主库，否则读一个延迟在阈值内的副本。
+     * 嵌套调用沿用外层的选择
+     *
+     * @param key 粘滞键：会话ID，或 {@link #userKey(String)}
+     * @param reads 查询
+     * @return 查询结果
+     */
+    public <T> T onReplica(String key, Supplier<T> reads) {
+        if (replicas.isEmpty() || SCOPE.get() != null) {
+            return reads.get();
+        }
+        String target = PRIMARY;
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            primaryReads.increment();
+        } else if (key != null && isSticky(key)) {
+            stickyReads.increment();
+        } else {
+            Replica replica = pick();
+            if (replica == null) {
+                lagFallbacks.increment();
+            } else {
+                replica.reads.increment();
+                target = replica.name;
+            }
+        }
+        SCOPE.set(target);
+        try {
+            return reads.get();
+        } finally {
+            SCOPE.remove();
+        }
+    }
+
+    /**
+     * 记录写入，粘滞时间内该键的读取走主库
+     *
+     * @param key 会话ID，或 {@link #userKey(String)}
+     */
+    public void markWritten(String key) {
+        if (!replicas.isEmpty() && key != null) {
+            stickyUntil.put(key, System.currentTimeMillis() + mcpConfig.getReadReplica().getStickyWindow());
+        }
+    }
+
+    /**
+     * 用户维度的粘滞键（会话列表按用户查询）
+     *
+     * @param userId 用户ID
+     * @return 粘滞键
+     */
+    public static String userKey(String userId) {
+        return USER_KEY_PREFIX + userId;
+    }
+
+    /**
+     * 当前语句的路由目标，供路由数据源获取连接时调用：只有只读范围内的查询语句返回副本名
+     *
+     * @return 副本名，走主库时为null
+     */
+    public static String currentTarget() {
+        String target = SCOPE.get();
+        return target != null && !PRIMARY.equals(target) && QUERY.get() != null ? target : null;
+    }
+
+    /**
+     * 标记当前线程开始执行查询语句（Mapper插件调用）
+     */
+    public static void beginQuery() {
+        QUERY.set(Boolean.TRUE);
+    }
+
+    /**
+     * 查询语句结束
+     */
+    public static void endQuery() {
+        QUERY.remove();
+    }
+
+    /**
+     * 写心跳并测量各副本延迟，同时清理过期的粘滞键
+     */
+    @Scheduled(fixedDelayString = "${mcp.server.read-replica.heartbeat-interval:500}")
+    public void heartbeat() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            if (primary.update("UPDATE mcp_heartbeat SET beat_time = ? WHERE id = 1", now) == 0) {
+                primary.update("INSERT INTO mcp_heartbeat (id, beat_time) VALUES (1, ?)", now);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to write replication heartbeat: {}", e.getMessage());
+        }
+        for (Replica replica : replicas) {
+            try {
+                List<Long> beats = replica.jdbc.queryForList("SELECT beat_time FROM mcp_heartbeat WHERE id = 1", Long.class);
+                replica.lag = beats.isEmpty() || beats.get(0) == null ? -1 : Math.max(0, System.currentTimeMillis() - beats.get(0));
+            } catch (Exception e) {
+                log.debug("Failed to read heartbeat from {}: {}", replica.name, e.getMessage());
+                replica.lag = -1;
+            }
+        }
+        stickyUntil.values().removeIf(until -> until < now);
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("primaryReads", primaryReads.sum());
+        stats.put("stickyReads", stickyReads.sum());
+        stats.put("lagFallbacks", lagFallbacks.sum());
+        stats.put("stickyKeys", stickyUntil.size());
+        List<Map<String, Object>> replicaStats = new ArrayList<>();
+        for (Replica replica : replicas) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", replica.name);
+            entry.put("lagMillis", replica.lag);
+            entry.put("healthy", isHealthy(replica));
+            entry.put("reads", replica.reads.sum());
+            replicaStats.add(entry);
+        }
+        stats.put("replicas", replicaStats);
+        return stats;
+    }
+
+    private boolean isSticky(String key) {
+        Long until = stickyUntil.get(key);
+        return until != null && until >= System.currentTimeMillis();
+    }
+
+    // 辅助方法 - 在延迟达标的副本间轮询，没有时返回null
+    private Replica pick() {
+        List<Replica> current = replicas;
+        int start = Math.floorMod(nextReplica.getAndIncrement(), current.size());
+        for (int i = 0; i < current.size(); i++) {
+            Replica replica = current.get((start + i) % current.size());
+            if (isHealthy(replica)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private boolean isHealthy(Replica replica) {
+        long lag = replica.lag;
+        return lag >= 0 && lag <= mcpConfig.getReadReplica().getMaxLag();
+    }
+
+    private static class Replica {
+        private final String name;
+        private final JdbcTemplate jdbc;
+        private final LongAdder reads = new LongAdder();
+        // 最近一次测得的延迟（毫秒），-1表示未知
+        private volatile long lag = -1;
+
+        private Replica(String name, JdbcTemplate jdbc) {
+            this.name = name;
+            this.jdbc = jdbc;
+        }
+    }
+}
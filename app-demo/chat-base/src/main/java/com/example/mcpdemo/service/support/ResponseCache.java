@@ -0,0 +1,200 @@
+package com.example.mcpdemo.service.support;
+
+import cn.hutool.crypto.SecureUtil;
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.dto.McpMessageDto;
+import com.example.mcpdemo.provider.ModelRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模型回复缓存
+ * <p>
+ * 键由模型、系统提示词哈希、最近N条消息的哈希以及采样参数组成，相同上下文的确定性请求直接复用上次的回复。
+ * 按字节数限制容量（键和值按UTF-16估算），超出时按LRU淘汰，条目超过TTL后失效。
+ * 默认关闭，开启后默认只缓存 temperature 为 0 的请求。
+ */
+@Component
+public class ResponseCache {
+
+    // 每个条目除键值字符外的估算开销（对象头、引用、过期时间）
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    // 访问顺序的LinkedHashMap，最久未访问的在最前
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * 是否启用
+     *
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return mcpConfig.getResponseCache().isEnabled();
+    }
+
+    /**
+     * 请求是否可以走缓存
+     *
+     * @param request 生成请求
+     * @return 是否可缓存
+     */
+    public boolean isCacheable(ModelRequest request) {
+        if (!isEnabled()) {
+            return false;
+        }
+        if (!mcpConfig.getResponseCache().isDeterministicOnly()) {
+            return true;
+        }
+        return request.getTemperature() != null && request.getTemperature() == 0f;
+    }
+
+    /**
+     * 计算缓存键
+     *
+     * @param request 生成请求
+     * @return 缓存键
+     */
+    public String keyOf(ModelRequest request) {
+        String systemPrompt = "";
+        List<McpMessageDto> messages = request.getMessages();
+        int start = 0;
+        if (!messages.isEmpty() && "system".equals(messages.get(0).getRole())) {
+            systemPrompt = messages.get(0).getContent();
+            start = 1;
+        }
+        
+        // 只取最近N条对话消息
+        StringBuilder recent = new StringBuilder();
+        int from = Math.max(start, messages.size() - mcpConfig.getResponseCache().getKeyMessages());
+        for (int i = from; i < messages.size(); i++) {
+            McpMessageDto message = messages.get(i);
+            recent.append(message.getRole()).append('\u0000').append(message.getContent()).append('\u0001');
+        }
+        
+        return request.getModel()
+                + '|' + SecureUtil.sha256(systemPrompt)
+                + '|' + SecureUtil.sha256(recent.toString())
+                + '|' + request.getTemperature()
+                + '|' + request.getMaxTokens();
+    }
+
+    /**
+     * 读取缓存的回复
+     *
+     * @param key 缓存键
+     * @return 回复内容，未命中或已过期时为null
+     */
+    public String get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expireAt < System.currentTimeMillis()) {
+                remove(key, entry);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.content;
+        }
+    }
+
+    /**
+     * 写入回复，超过单条大小上限的回复不缓存
+     *
+     * @param key 缓存键
+     * @param content 回复内容
+     */
+    public void put(String key, String content) {
+        McpConfig.ResponseCache config = mcpConfig.getResponseCache();
+        long size = sizeOf(key, content);
+        if (content == null || size > config.getMaxEntryBytes()) {
+            return;
+        }
+        Entry entry = new Entry(content, System.currentTimeMillis() + config.getTtl(), size);
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.size;
+            }
+            bytes += size;
+            puts.increment();
+            evictOverflow(config.getMaxBytes());
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        synchronized (entries) {
+            stats.put("size", entries.size());
+            stats.put("bytes", bytes);
+        }
+        stats.put("maxBytes", mcpConfig.getResponseCache().getMaxBytes());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("puts", puts.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        return stats;
+    }
+
+    // 辅助方法 - 超出字节上限时按LRU淘汰
+    private void evictOverflow(long maxBytes) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().size;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.size;
+    }
+
+    private long sizeOf(String key, String content) {
+        return ENTRY_OVERHEAD_BYTES + 2L * key.length() + (content == null ? 0 : 2L * content.length());
+    }
+
+    private static class Entry {
+        private final String content;
+        private final long expireAt;
+        private final long size;
+
+        private Entry(String content, long expireAt, long size) {
+            this.content = content;
+            this.expireAt = expireAt;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.mcpdemo.service.support;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 全文检索分词器
+ * <p>
+ * 拉丁字母与数字按连续串切词并转小写；中日韩文字没有空格分隔，连续串按相邻二元组（bigram）切分，
+ * 建索引时额外保留单字，使单字查询也能命中。查询时长度不小于2的中日韩串只用二元组，
+ * 全部二元组都命中即视为包含该串（不校验相邻位置）。
+ */
+@Component
+public class SearchTokenizer {
+
+    /**
+     * 超过该长度的拉丁词（如编码后的长串）不进索引
+     */
+    static final int MAX_WORD_LENGTH = 32;
+
+    /**
+     * 建索引用的词项
+     *
+     * @param text 文本
+     * @return 去重后的词项
+     */
+    public Set<String> indexTerms(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * 查询用的词项
+     *
+     * @param query 查询串
+     * @return 去重后的词项，按出现顺序
+     */
+    public Set<String> queryTerms(String query) {
+        return tokenize(query, false);
+    }
+
+    private Set<String> tokenize(String text, boolean indexing) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        StringBuilder word = new StringBuilder();
+        StringBuilder cjk = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (isCjk(cp)) {
+                emitWord(word, terms);
+                cjk.appendCodePoint(cp);
+            } else if (Character.isLetterOrDigit(cp)) {
+                emitCjk(cjk, terms, indexing);
+                word.appendCodePoint(cp);
+            } else {
+                emitWord(word, terms);
+                emitCjk(cjk, terms, indexing);
+            }
+        }
+        emitWord(word, terms);
+        emitCjk(cjk, terms, indexing);
+        return terms;
+    }
+
+    private static void emitWord(StringBuilder word, Set<String> terms) {
+        if (word.length() > 0 && word.length() <= MAX_WORD_LENGTH) {
+            terms.add(word.toString().toLowerCase(Locale.ROOT));
+        }
+        word.setLength(0);
+    }
+
+    private static void emitCjk(StringBuilder run, Set<String> terms, boolean indexing) {
+        if (run.length() == 0) {
+            return;
+        }
+        int[] cps = run.codePoints().toArray();
+        run.setLength(0);
+        if (cps.length == 1 || indexing) {
+            for (int cp : cps) {
+                terms.add(new String(Character.toChars(cp)));
+            }
+        }
+        for (int j = 0; j + 1 < cps.length; j++) {
+            terms.add(new StringBuilder(4).appendCodePoint(cps[j]).appendCodePoint(cps[j + 1]).toString());
+        }
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.mapper.handler.CompressedTextCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 汇总各组件的运行统计，供Servlet与响应式模式的统计接口共用
+ */
+@Component
+public class ServiceStats {
+
+    @Autowired
+    private SessionCache sessionCache;
+
+    @Autowired
+    private StreamExecutor streamExecutor;
+
+    @Autowired
+    private ExpiredSessionPurger expiredSessionPurger;
+
+    @Autowired
+    private AdmissionLimiter admissionLimiter;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private StreamHub streamHub;
+
+    @Autowired
+    private SessionArchiver sessionArchiver;
+
+    @Autowired
+    private MessageIndex messageIndex;
+
+    @Autowired
+    private ReadRouter readRouter;
+
+    @Autowired
+    private MessageJournal messageJournal;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+
+    @Autowired
+    private CompressedTextCodec textCodec;
+
+    /**
+     * 获取运行统计信息
+     *
+     * @return 按组件分组的统计
+     */
+    public Map<String, Object> collect() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessionCache", sessionCache.stats());
+        stats.put("stream", streamExecutor.stats());
+        stats.put("purge", expiredSessionPurger.stats());
+        stats.put("admission", admissionLimiter.stats());
+        stats.put("responseCache", responseCache.stats());
+        stats.put("streamHub", streamHub.stats());
+        stats.put("compression", textCodec.stats());
+        stats.put("archive", sessionArchiver.stats());
+        stats.put("search", messageIndex.stats());
+        stats.put("readRouting", readRouter.stats());
+        stats.put("journal", messageJournal.stats());
+        stats.put("sharding", shardStats());
+        return stats;
+    }
+
+    // 辅助方法 - 分表映射与重新分片进度
+    private Map<String, Object> shardStats() {
+        Map<String, Object> stats = shardRouter.stats();
+        if (shardRouter.isEnabled()) {
+            stats.put("rebalance", shardRebalancer.stats());
+        }
+        return stats;
+    }
+}
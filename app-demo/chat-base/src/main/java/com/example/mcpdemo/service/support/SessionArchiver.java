@@ -0,0 +1,215 @@
+package com.example.mcpdemo.service.support;
+
+import com.alibaba.fastjson.JSON;
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.entity.McpMessage;
+import com.example.mcpdemo.entity.McpSession;
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import com.example.mcpdemo.mapper.McpSessionMapper;
+import com.example.mcpdemo.mapper.handler.CompressedTextCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 冷会话归档
+ * <p>
+ * 分批取出空闲超过 idle-time 的活跃会话，把消息序列化压缩后追加到 {@link ArchiveStore}，段文件落盘后
+ * 再在一个事务中把会话标记为 ARCHIVED（记录归档记录号）并删除其消息，热表只保留会话行。
+ * 归档会话被重新打开时从段文件读回消息，继续对话前恢复到数据库。
+ */
+@Component
+@Slf4j
+public class SessionArchiver {
+
+    public static final String STATUS_ARCHIVED = "ARCHIVED";
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private McpSessionMapper sessionMapper;
+
+    @Autowired
+    private McpMessageMapper messageMapper;
+
+    @Autowired
+    private ArchiveStore archiveStore;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private CompressedTextCodec textCodec;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final LongAdder archivedSessions = new LongAdder();
+    private final LongAdder archivedMessages = new LongAdder();
+    private final LongAdder skippedSessions = new LongAdder();
+    private final LongAdder archiveReads = new LongAdder();
+    private final LongAdder rehydrations = new LongAdder();
+
+    /**
+     * 会话是否已归档
+     *
+     * @param session 会话
+     * @return 是否已归档
+     */
+    public static boolean isArchived(McpSession session) {
+        return session != null && STATUS_ARCHIVED.equals(session.getStatus());
+    }
+
+    /**
+     * 归档空闲会话
+     *
+     * @param idleBefore 更新时间早于该时间的活跃会话会被归档
+     * @param afterArchive 每个会话归档后的回调（用于清理内存中的状态）
+     */
+    public void archive(Date idleBefore, Consumer<String> afterArchive) {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Session archive already running, skipping");
+            return;
+        }
+        McpConfig.Archive config = mcpConfig.getArchive();
+        long start = System.currentTimeMillis();
+        int chunks = 0;
+        long sessions = 0;
+        try {
+            while (chunks < config.getMaxChunks()) {
+                List<String> ids = shardRouter.gather(() -> sessionMapper.findArchivableSessionIds(idleBefore, config.getChunkSize()));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                chunks++;
+
+                // 先追加到段文件并落盘
+                List<McpSession> appended = new ArrayList<>();
+                List<Long> recordNos = new ArrayList<>();
+                List<Integer> counts = new ArrayList<>();
+                for (String id : ids) {
+                    McpSession session = sessionMapper.selectById(id);
+                    if (session == null) {
+                        continue;
+                    }
+                    List<McpMessage> messages = messageMapper.findBySessionIdOrderBySequenceAsc(id);
+                    byte[] payload = textCodec.encode(JSON.toJSONString(messages));
+                    recordNos.add(archiveStore.append(id, messages.size(), payload));
+                    appended.add(session);
+                    counts.add(messages.size());
+                }
+                archiveStore.flush();
+
+                // 再逐个会话在事务中标记归档并删除消息，期间被使用过的会话跳过（段文件中的记录作废）
+                for (int i = 0; i < appended.size(); i++) {
+                    McpSession session = appended.get(i);
+                    long recordNo = recordNos.get(i);
+                    Boolean archived = transactionTemplate.execute(status -> {
+                        if (sessionMapper.markArchived(session.getId(), session.getUpdateTime(), recordNo) == 0) {
+                            return false;
+                        }
+                        messageMapper.deleteBySessionId(session.getId());
+                        return true;
+                    });
+                    if (Boolean.TRUE.equals(archived)) {
+                        archivedSessions.increment();
+                        archivedMessages.add(counts.get(i));
+                        sessions++;
+                        afterArchive.accept(session.getId());
+                    } else {
+                        skippedSessions.increment();
+                    }
+                }
+
+                if (ids.size() < config.getChunkSize()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Session archive failed", e);
+        } finally {
+            running.set(false);
+        }
+        log.info("Session archive finished: {} chunks, {} sessions in {}ms",
+                chunks, sessions, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 从段文件读取归档会话的消息
+     *
+     * @param session 已归档的会话
+     * @return 消息列表，按序号升序
+     */
+    public List<McpMessage> read(McpSession session) {
+        try {
+            ArchiveStore.Record record = archiveStore.read(session.getArchiveOffset());
+            if (record == null || !session.getId().equals(record.getSessionId())) {
+                throw new IllegalStateException("Archive record " + session.getArchiveOffset()
+                        + " not found for session " + session.getId());
+            }
+            archiveReads.increment();
+            return JSON.parseArray(textCodec.decode(record.getPayload()), McpMessage.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把归档会话恢复到数据库，会话对象的状态同步更新
+     *
+     * @param session 已归档的会话
+     */
+    public void rehydrate(McpSession session) {
+        List<McpMessage> messages = read(session);
+        Boolean restored = transactionTemplate.execute(status -> {
+            // 行锁保证只有一个线程写回消息，其他线程等待提交后直接返回
+            if (sessionMapper.markRehydrated(session.getId()) == 0) {
+                return false;
+            }
+            for (McpMessage message : messages) {
+                message.setId(null);
+                messageMapper.insert(message);
+            }
+            return true;
+        });
+        session.setStatus("ACTIVE");
+        session.setArchiveOffset(null);
+        if (Boolean.TRUE.equals(restored)) {
+            rehydrations.increment();
+            log.info("Rehydrated archived session: {}, {} messages", session.getId(), messages.size());
+        }
+    }
+
+    /**
+     * 获取归档统计
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", mcpConfig.getArchive().isEnabled());
+        stats.put("running", running.get());
+        stats.put("archivedSessions", archivedSessions.sum());
+        stats.put("archivedMessages", archivedMessages.sum());
+        stats.put("skippedSessions", skippedSessions.sum());
+        stats.put("reads", archiveReads.sum());
+        stats.put("rehydrations", rehydrations.sum());
+        stats.put("store", archiveStore.stats());
+        return stats;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.entity.McpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内会话缓存
+ * <p>
+ * 有界 LRU，条目过期时间与 mcp.server.session-timeout 一致；会话更新和删除时同步写穿。
+ * 缓存中保存的是副本，调用方修改返回对象不会影响缓存内容。
+ */
+@Component
+public class SessionCache {
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    // 访问顺序的LinkedHashMap，最久未访问的在最前
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 读取会话
+     *
+     * @param sessionId 会话ID
+     * @return 会话副本，未命中或已过期时为null
+     */
+    public McpSession get(String sessionId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(sessionId);
+            if (entry != null && entry.expireAt < System.currentTimeMillis()) {
+                entries.remove(sessionId);
+                evictions.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.session.toBuilder().build();
+        }
+    }
+
+    /**
+     * 写入或刷新会话
+     *
+     * @param session 会话
+     */
+    public void put(McpSession session) {
+        if (!isEnabled() || session == null) {
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + mcpConfig.getSessionTimeout();
+        synchronized (entries) {
+            entries.put(session.getId(), new Entry(session.toBuilder().build(), expireAt));
+            evictOverflow();
+        }
+    }
+
+    /**
+     * 移除会话（会话删除时调用）
+     *
+     * @param sessionId 会话ID
+     */
+    public void invalidate(String sessionId) {
+        synchronized (entries) {
+            entries.remove(sessionId);
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxSize", mcpConfig.getSessionCache().getMaxSize());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.sum());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        return stats;
+    }
+
+    // 辅助方法 - 超出容量时按LRU淘汰（过期条目久未访问，自然排在最前）
+    private void evictOverflow() {
+        int maxSize = mcpConfig.getSessionCache().getMaxSize();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private boolean isEnabled() {
+        return mcpConfig.getSessionCache().isEnabled();
+    }
+
+    private static class Entry {
+        private final McpSession session;
+        private final long expireAt;
+
+        private Entry(McpSession session, long expireAt) {
+            this.session = session;
+            this.expireAt = expireAt;
+        }
+    }
+}
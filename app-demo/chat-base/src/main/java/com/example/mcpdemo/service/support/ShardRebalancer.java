@@ -0,0 +1,275 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 在线重新分片
+ * <p>
+ * 把槽位映射调整为 slot % tables，逐个槽位迁移：先在不加锁的情况下扫描源表中该槽位的会话ID，
+ * 再开启事务、持有槽位写锁（等待进行中的语句与事务结束），补上扫描后新建或更新的会话，
+ * 在同一事务中复制会话与消息到目标表、删除源表数据并更新 mcp_shard_slot，提交后切换内存中的映射再释放锁。
+ * 迁移期间只有被迁移槽位的会话短暂等待，其他槽位照常读写。
+ * <p>
+ * 消息ID由 {@link IdGenerator} 全局分配，复制时原样保留，不与目标表中已有或并发写入的消息冲突。
+ * 槽位锁只在本进程内有效，多实例部署时需先停掉其他实例的写入。
+ */
+@Component
+@Slf4j
+public class ShardRebalancer {
+
+    // 扫描与加锁之间更新的会话按更新时间补上，留出时钟误差
+    private static final long RESCAN_SLACK_MILLIS = 2000;
+    private static final long LOCK_TIMEOUT_SECONDS = 10;
+    private static final String MESSAGE_COLUMNS = "id, session_id, role, content, create_time, sequence, model, token_count";
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ReadRouter readRouter;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JdbcTemplate jdbcTemplate;
+    private ExecutorService worker;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // 当前或最近一次执行的进度
+    private volatile int targetTables;
+    private volatile long runStartTime;
+    private volatile long runEndTime;
+    private volatile int slotsTotal;
+    private volatile int slotsMoved;
+    private volatile long sessionsMoved;
+    private volatile long messagesMoved;
+    private volatile long maxLockMillis;
+    private volatile long misplacedSessions = -1;
+    private volatile String lastError;
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "mcp-shard-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * 异步开始重新分片
+     *
+     * @param tables 目标物理表数
+     * @return 已有重新分片在执行时返回false
+     */
+    public boolean start(int tables) {
+        if (!shardRouter.isEnabled()) {
+            throw new IllegalStateException("Sharding is not enabled");
+        }
+        if (tables < 1) {
+            throw new IllegalArgumentException("tables must be positive");
+        }
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        targetTables = tables;
+        runStartTime = System.currentTimeMillis();
+        runEndTime = 0;
+        slotsTotal = 0;
+        slotsMoved = 0;
+        sessionsMoved = 0;
+        messagesMoved = 0;
+        maxLockMillis = 0;
+        misplacedSessions = -1;
+        lastError = null;
+        worker.execute(() -> {
+            try {
+                rebalance(tables);
+                misplacedSessions = countMisplaced();
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                log.error("Shard rebalance to {} tables failed after {} slots", tables, slotsMoved, e);
+            } finally {
+                runEndTime = System.currentTimeMillis();
+                running.set(false);
+            }
+            log.info("Shard rebalance to {} tables finished: {} slots, {} sessions, {} messages in {}ms, max lock {}ms",
+                    tables, slotsMoved, sessionsMoved, messagesMoved, runEndTime - runStartTime, maxLockMillis);
+        });
+        return true;
+    }
+
+    /**
+     * 获取重新分片进度
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("targetTables", targetTables);
+        stats.put("lastRunStartTime", runStartTime);
+        stats.put("lastRunEndTime", runEndTime);
+        stats.put("slotsTotal", slotsTotal);
+        stats.put("slotsMoved", slotsMoved);
+        stats.put("sessionsMoved", sessionsMoved);
+        stats.put("messagesMoved", messagesMoved);
+        stats.put("maxLockMillis", maxLockMillis);
+        stats.put("misplacedSessions", misplacedSessions);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+
+    private void rebalance(int tables) throws InterruptedException {
+        for (int shard = 0; shard < tables; shard++) {
+            shardRouter.ensureTable(shard);
+        }
+        // 源表 -> 需要迁出的槽位
+        Map<Integer, List<Integer>> moves = new TreeMap<>();
+        int slots = mcpConfig.getSharding().getSlots();
+        for (int slot = 0; slot < slots; slot++) {
+            int source = shardRouter.shardOfSlot(slot);
+            if (source != slot % tables) {
+                moves.computeIfAbsent(source, k -> new ArrayList<>()).add(slot);
+            }
+        }
+        slotsTotal = moves.values().stream().mapToInt(List::size).sum();
+        log.info("Shard rebalance to {} tables: {} of {} slots to move", tables, slotsTotal, slots);
+
+        for (Map.Entry<Integer, List<Integer>> entry : moves.entrySet()) {
+            int source = entry.getKey();
+            long scanTime = System.currentTimeMillis();
+            Map<Integer, List<String>> idsBySlot = scan(source, entry.getValue());
+            for (int slot : entry.getValue()) {
+                moveSlot(slot, source, slot % tables, idsBySlot.getOrDefault(slot, Collections.emptyList()), scanTime);
+                slotsMoved++;
+            }
+        }
+    }
+
+    // 辅助方法 - 不加锁扫描源表，按槽位分组
+    private Map<Integer, List<String>> scan(int source, List<Integer> slots) {
+        Set<Integer> wanted = new LinkedHashSet<>(slots);
+        Map<Integer, List<String>> idsBySlot = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT id FROM " + ShardRouter.physical("mcp_session", source), rs -> {
+            String id = rs.getString(1);
+            int slot = shardRouter.slotOf(id);
+            if (wanted.contains(slot)) {
+                idsBySlot.computeIfAbsent(slot, k -> new ArrayList<>()).add(id);
+            }
+        });
+        return idsBySlot;
+    }
+
+    // 辅助方法 - 先取连接开启事务再加写锁，避免持锁等待连接池
+    private void moveSlot(int slot, int source, int target, List<String> scanned, long scanTime) throws InterruptedException {
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        Lock lock = shardRouter.moveLock(slot);
+        if (!lock.tryLock(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            transactionManager.rollback(status);
+            throw new IllegalStateException("Timed out waiting for in-flight writes on slot " + slot);
+        }
+        long lockedAt = System.currentTimeMillis();
+        Set<String> ids = new LinkedHashSet<>(scanned);
+        try {
+            String sourceSessions = ShardRouter.physical("mcp_session", source);
+            jdbcTemplate.queryForList("SELECT id FROM " + sourceSessions + " WHERE update_time >= ?", String.class,
+                            new Timestamp(scanTime - RESCAN_SLACK_MILLIS))
+                    .stream()
+                    .filter(id -> shardRouter.slotOf(id) == slot)
+                    .forEach(ids::add);
+
+            long messages = 0;
+            List<String> all = new ArrayList<>(ids);
+            int batchSize = mcpConfig.getSharding().getMoveBatchSize();
+            for (int from = 0; from < all.size(); from += batchSize) {
+                messages += copyAndDelete(all.subList(from, Math.min(all.size(), from + batchSize)), source, target);
+            }
+            jdbcTemplate.update("UPDATE mcp_shard_slot SET shard = ? WHERE slot = ?", target, slot);
+            transactionManager.commit(status);
+            shardRouter.assign(slot, target);
+
+            sessionsMoved += ids.size();
+            messagesMoved += messages;
+        } catch (RuntimeException e) {
+            if (!status.isCompleted()) {
+                transactionManager.rollback(status);
+            }
+            throw e;
+        } finally {
+            lock.unlock();
+            maxLockMillis = Math.max(maxLockMillis, System.currentTimeMillis() - lockedAt);
+        }
+        // 迁移后的读取不走可能尚未同步的副本
+        ids.forEach(readRouter::markWritten);
+    }
+
+    private long copyAndDelete(List<String> ids, int source, int target) {
+        String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Object[] args = ids.toArray();
+        String sourceSessions = ShardRouter.physical("mcp_session", source);
+        String sourceMessages = ShardRouter.physical("mcp_message", source);
+        jdbcTemplate.update("INSERT INTO " + ShardRouter.physical("mcp_session", target)
+                + " SELECT * FROM " + sourceSessions + " WHERE id IN (" + in + ")", args);
+        int messages = jdbcTemplate.update("INSERT INTO " + ShardRouter.physical("mcp_message", target)
+                + " (" + MESSAGE_COLUMNS + ") SELECT " + MESSAGE_COLUMNS + " FROM " + sourceMessages
+                + " WHERE session_id IN (" + in + ") ORDER BY session_id, sequence", args);
+        jdbcTemplate.update("DELETE FROM " + sourceMessages + " WHERE session_id IN (" + in + ")", args);
+        jdbcTemplate.update("DELETE FROM " + sourceSessions + " WHERE id IN (" + in + ")", args);
+        return messages;
+    }
+
+    // 辅助方法 - 校验每张表中的会话都在其槽位当前映射的表里
+    private long countMisplaced() {
+        Set<Integer> tables = new LinkedHashSet<>(shardRouter.shards());
+        tables.add(ShardRouter.LEGACY);
+        for (int shard = 0; shard < targetTables; shard++) {
+            tables.add(shard);
+        }
+        long misplaced = 0;
+        for (int shard : tables) {
+            misplaced += jdbcTemplate.queryForList("SELECT id FROM " + ShardRouter.physical("mcp_session", shard), String.class)
+                    .stream()
+                    .filter(id -> shardRouter.shardOfSlot(shardRouter.slotOf(id)) != shard)
+                    .count();
+        }
+        return misplaced;
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * 会话与消息分表路由
+ * <p>
+ * 会话ID的CRC32对槽位数取模得到槽位，槽位映射到物理表序号（mcp_shard_slot 持久化），会话行与其消息落在同一序号的
+ * mcp_session_N / mcp_message_N 中。带会话ID条件的Mapper语句由 ShardingInterceptor 按映射改写表名，对Mapper透明；
+ * 没有会话ID条件的语句（按用户列表、计数、清理、补建索引）需通过 {@link #onShard(int, Supplier)} 指定物理表，
+ * 或用 {@link #gather} 在每张表上执行后合并。
+ * <p>
+ * 每个槽位一把读写锁：按会话ID路由的语句持有读锁直到所在事务（或批量会话）结束，重新分片迁移一个槽位时持有写锁。
+ * 映射值为 -1 表示槽位仍在未分表的原表中，用于在已有数据上在线启用分表。
+ */
+@Component
+@DependsOnDatabaseInitialization
+@Slf4j
+public class ShardRouter {
+
+    /**
+     * 未分表的原表
+     */
+    public static final int LEGACY = -1;
+
+    private static final Pattern LOGICAL_TABLE = Pattern.compile("(?<![\\w`])(mcp_session|mcp_message)(?![\\w`])");
+    private static final String TEMPLATE = "sharding/shard-tables.sql";
+
+    // 当前线程指定的物理表（分片执行）
+    private static final ThreadLocal<Integer> HINT = new ThreadLocal<>();
+    // 当前线程持有读锁的槽位
+    private static final ThreadLocal<Set<Integer>> HELD = ThreadLocal.withInitial(HashSet::new);
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+    private volatile int[] slotMap = new int[0];
+    private ReentrantReadWriteLock[] slotLocks = new ReentrantReadWriteLock[0];
+    private final Set<Integer> createdTables = Collections.synchronizedSet(new HashSet<>());
+    private String template;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        McpConfig.Sharding config = mcpConfig.getSharding();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        template = StreamUtils.copyToString(new ClassPathResource(TEMPLATE).getInputStream(), StandardCharsets.UTF_8);
+
+        int slots = config.getSlots();
+        int[] map = new int[slots];
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT slot, shard FROM mcp_shard_slot");
+        if (rows.isEmpty()) {
+            // 原表已有数据时先全部指向原表，由重新分片在线迁移
+            boolean legacyData = jdbcTemplate.queryForList("SELECT id FROM mcp_session LIMIT 1", String.class).size() > 0;
+            List<Object[]> inserts = new ArrayList<>();
+            for (int slot = 0; slot < slots; slot++) {
+                map[slot] = legacyData ? LEGACY : slot % config.getTables();
+                inserts.add(new Object[]{slot, map[slot]});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO mcp_shard_slot (slot, shard) VALUES (?, ?)", inserts);
+            log.info("Initialized {} shard slots on {}", slots, legacyData ? "legacy tables" : config.getTables() + " tables");
+        } else {
+            if (rows.size() != slots) {
+                throw new IllegalStateException("mcp_shard_slot has " + rows.size() + " slots but mcp.server.sharding.slots is " + slots);
+            }
+            for (Map<String, Object> row : rows) {
+                map[((Number) row.get("slot")).intValue()] = ((Number) row.get("shard")).intValue();
+            }
+        }
+        slotLocks = new ReentrantReadWriteLock[slots];
+        for (int i = 0; i < slots; i++) {
+            slotLocks[i] = new ReentrantReadWriteLock();
+        }
+        slotMap = map;
+        shards().forEach(this::ensureTable);
+        log.info("Sharding enabled: {} slots over tables {}", slots, shards());
+    }
+
+    /**
+     * 是否启用分表
+     *
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return mcpConfig.getSharding().isEnabled();
+    }
+
+    /**
+     * 会话ID所在槽位
+     *
+     * @param sessionId 会话ID
+     * @return 槽位
+     */
+    public int slotOf(String sessionId) {
+        CRC32 crc = new CRC32();
+        crc.update(sessionId.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % slotMap.length);
+    }
+
+    /**
+     * 槽位当前映射的物理表序号
+     *
+     * @param slot 槽位
+     * @return 物理表序号，{@link #LEGACY} 表示原表
+     */
+    public int shardOfSlot(int slot) {
+        return slotMap[slot];
+    }
+
+    /**
+     * 当前有槽位映射到的物理表序号（升序），未启用时只有原表
+     *
+     * @return 物理表序号
+     */
+    public List<Integer> shards() {
+        if (!isEnabled()) {
+            return Collections.singletonList(LEGACY);
+        }
+        Set<Integer> shards = new TreeSet<>();
+        for (int shard : slotMap) {
+            shards.add(shard);
+        }
+        return new ArrayList<>(shards);
+    }
+
+    /**
+     * 物理表名
+     *
+     * @param logical 逻辑表名
+     * @param shard 物理表序号
+     * @return 物理表名
+     */
+    public static String physical(String logical, int shard) {
+        return shard == LEGACY ? logical : logical + "_" + shard;
+    }
+
+    /**
+     * 把SQL中的逻辑表名改写为物理表名
+     *
+     * @param sql SQL
+     * @param shard 物理表序号
+     * @return 改写后的SQL
+     */
+    public static String rewrite(String sql, int shard) {
+        if (shard == LEGACY) {
+            return sql;
+        }
+        return LOGICAL_TABLE.matcher(sql).replaceAll("$1_" + shard);
+    }
+
+    /**
+     * SQL引用的逻辑表
+     *
+     * @param sql SQL
+     * @return 逻辑表名，没有时为空
+     */
+    public static Set<String> logicalTables(String sql) {
+        Set<String> tables = new HashSet<>(2);
+        Matcher matcher = LOGICAL_TABLE.matcher(sql);
+        while (matcher.find()) {
+            tables.add(matcher.group(1));
+        }
+        return tables;
+    }
+
+    /**
+     * 在指定物理表上执行没有会话ID条件的语句
+     *
+     * @param shard 物理表序号
+     * @param work 语句
+     * @return 结果
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        Integer previous = HINT.get();
+        HINT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                HINT.remove();
+            } else {
+                HINT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 在每张物理表上执行查询并拼接结果
+     *
+     * @param query 查询
+     * @return 各表结果
+     */
+    public <T> List<T> gather(Supplier<List<T>> query) {
+        List<Integer> shards = shards();
+        if (shards.size() == 1) {
+            return onShard(shards.get(0), query);
+        }
+        List<T> result = new ArrayList<>();
+        for (int shard : shards) {
+            result.addAll(onShard(shard, query));
+        }
+        return result;
+    }
+
+    /**
+     * 在每张物理表上执行有序查询，按相同顺序归并后截取前 limit 条（各表查询自身需带同样的排序与 limit）
+     *
+     * @param query 查询
+     * @param order 排序
+     * @param limit 条数
+     * @return 合并结果
+     */
+    public <T> List<T> gather(Supplier<List<T>> query, Comparator<? super T> order, int limit) {
+        List<T> result = gather(query);
+        if (shards().size() > 1) {
+            result.sort(order);
+            if (result.size() > limit) {
+                result = new ArrayList<>(result.subList(0, limit));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在每张物理表上执行计数并求和
+     *
+     * @param count 计数
+     * @return 合计
+     */
+    public long sum(LongSupplier count) {
+        long total = 0;
+        for (int shard : shards()) {
+            total += onShard(shard, count::getAsLong);
+        }
+        return total;
+    }
+
+    /**
+     * 当前线程指定的物理表
+     *
+     * @return 物理表序号，没有指定时为null
+     */
+    public static Integer hint() {
+        return HINT.get();
+    }
+
+    /**
+     * 持有槽位读锁，直到当前事务结束，或（不在事务中时）执行器提交、回滚或关闭时由 {@link #releaseAll()} 释放
+     *
+     * @param slot 槽位
+     */
+    public void acquire(int slot) {
+        Set<Integer> held = HELD.get();
+        if (held.contains(slot)) {
+            return;
+        }
+        slotLocks[slot].readLock().lock();
+        if (held.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    releaseAll();
+                }
+            });
+        }
+        held.add(slot);
+    }
+
+    /**
+     * 释放当前线程持有的槽位读锁；在事务中时留给事务结束
+     */
+    public void releaseIfOutsideTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            releaseAll();
+        }
+    }
+
+    /**
+     * 释放当前线程持有的全部槽位读锁
+     */
+    public void releaseAll() {
+        Set<Integer> held = HELD.get();
+        if (held.isEmpty()) {
+            return;
+        }
+        for (int slot : held) {
+            slotLocks[slot].readLock().unlock();
+        }
+        held.clear();
+    }
+
+    /**
+     * 迁移槽位时使用的写锁，等待该槽位上进行中的语句与事务结束
+     *
+     * @param slot 槽位
+     * @return 写锁
+     */
+    public Lock moveLock(int slot) {
+        return slotLocks[slot].writeLock();
+    }
+
+    /**
+     * 更新槽位映射（持有写锁、映射表已在迁移事务中更新后调用）
+     *
+     * @param slot 槽位
+     * @param shard 新的物理表序号
+     */
+    public void assign(int slot, int shard) {
+        int[] map = slotMap.clone();
+        map[slot] = shard;
+        slotMap = map;
+    }
+
+    /**
+     * 确保物理表存在
+     *
+     * @param shard 物理表序号
+     */
+    public void ensureTable(int shard) {
+        if (shard == LEGACY || createdTables.contains(shard)) {
+            return;
+        }
+        String sql = template.replace("{shard}", String.valueOf(shard));
+        new ResourceDatabasePopulator(new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8))).execute(dataSource);
+        createdTables.add(shard);
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        if (!isEnabled()) {
+            return stats;
+        }
+        stats.put("slots", slotMap.length);
+        Map<Integer, Long> slotsPerShard = new TreeMap<>();
+        for (int shard : slotMap) {
+            slotsPerShard.merge(shard, 1L, Long::sum);
+        }
+        stats.put("slotsPerShard", slotsPerShard.entrySet().stream()
+                .collect(Collectors.toMap(e -> physical("mcp_message", e.getKey()), Map.Entry::getValue,
+                        (a, b) -> a, LinkedHashMap::new)));
+        return stats;
+    }
+}
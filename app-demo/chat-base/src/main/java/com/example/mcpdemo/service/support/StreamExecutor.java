@@ -0,0 +1,243 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流式响应执行引擎
+ * <p>
+ * 替代每个流式请求 new Thread 的做法，支持三种模式：
+ * <ul>
+ *     <li>POOL：有界平台线程池 + 有界等待队列，分片间隔在工作线程上等待</li>
+ *     <li>VIRTUAL：每个流一个虚拟线程（运行时为JDK 21+时可用，否则退回POOL）</li>
+ *     <li>SCHEDULED：定时器驱动，每个分片作为一次定时任务执行，分片之间不占用线程</li>
+ * </ul>
+ * 超出容量的请求会被拒绝并计数，应用关闭时等待进行中的流结束。
+ */
+@Component
+@Slf4j
+public class StreamExecutor {
+
+    public static final String MODE_POOL = "POOL";
+    public static final String MODE_VIRTUAL = "VIRTUAL";
+    public static final String MODE_SCHEDULED = "SCHEDULED";
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    private String mode;
+
+    // POOL、VIRTUAL模式下执行整个流的线程池
+    private ExecutorService workers;
+
+    // SCHEDULED模式下驱动分片的定时器
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        McpConfig.Stream config = mcpConfig.getStream();
+        mode = config.getMode() == null ? MODE_POOL : config.getMode().toUpperCase();
+
+        if (MODE_VIRTUAL.equals(mode)) {
+            workers = newVirtualThreadExecutor();
+            if (workers == null) {
+                log.warn("Virtual threads are not available on this JVM, falling back to POOL mode");
+                mode = MODE_POOL;
+            }
+        }
+        if (MODE_SCHEDULED.equals(mode)) {
+            scheduler = Executors.newScheduledThreadPool(config.getPoolSize(), namedThreads("mcp-stream-timer-"));
+        } else if (MODE_POOL.equals(mode)) {
+            workers = new ThreadPoolExecutor(config.getPoolSize(), config.getPoolSize(),
+                    60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                    namedThreads("mcp-stream-"),
+                    new ThreadPoolExecutor.AbortPolicy());
+        } else if (workers == null) {
+            throw new IllegalStateException("Unknown stream mode: " + config.getMode());
+        }
+        log.info("Stream executor started in {} mode", mode);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        long timeout = mcpConfig.getStream().getShutdownTimeout();
+        ExecutorService executor = scheduler != null ? scheduler : workers;
+        log.info("Shutting down stream executor, {} streams in flight", inFlight.get());
+        // SCHEDULED模式下后续分片还要继续调度，不能立即shutdown，先等待进行中的流结束
+        long deadline = System.currentTimeMillis() + timeout;
+        if (scheduler != null) {
+            while (inFlight.get() > 0 && System.currentTimeMillis() < deadline
+                    && !Thread.currentThread().isInterrupted()) {
+                sleepQuietly(50);
+            }
+        }
+        executor.shutdown();
+        try {
+            long remaining = Math.max(0, deadline - System.currentTimeMillis());
+            if (!executor.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+                log.warn("Stream executor did not terminate in {}ms, {} streams aborted", timeout, inFlight.get());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 提交流式任务
+     *
+     * @param task 流式任务
+     * @throws RejectedExecutionException 执行引擎已满或已关闭
+     */
+    public void submit(StreamTask task) {
+        // POOL模式由线程池队列限流；其他模式检查与占用在同一次CAS中完成，并发提交不会超出上限，名额在 finish 中归还
+        int limit = MODE_POOL.equals(mode) ? Integer.MAX_VALUE : mcpConfig.getStream().getMaxInFlight();
+        if (inFlight.getAndUpdate(current -> current < limit ? current + 1 : current) >= limit) {
+            rejected.increment();
+            throw new RejectedExecutionException("Too many in-flight streams");
+        }
+        try {
+            if (scheduler != null) {
+                scheduler.execute(() -> startScheduled(task));
+            } else {
+                workers.execute(() -> runBlocking(task));
+            }
+            submitted.increment();
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * 获取执行统计信息
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        stats.put("inFlight", inFlight.get());
+        if (workers instanceof ThreadPoolExecutor) {
+            stats.put("queued", ((ThreadPoolExecutor) workers).getQueue().size());
+        }
+        stats.put("submitted", submitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("completed", completed.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    // 辅助方法 - 在工作线程上顺序发送所有分片；结束回调放在try之外，回调抛出的异常不会再触发一次结束
+    private void runBlocking(StreamTask task) {
+        Exception error = null;
+        try {
+            task.prepare();
+            while (task.emitNext()) {
+                Thread.sleep(task.nextDelayMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
+        } catch (Exception e) {
+            error = e;
+        }
+        finish(task, error);
+    }
+
+    // 辅助方法 - 定时器模式：准备后调度第一片
+    private void startScheduled(StreamTask task) {
+        try {
+            task.prepare();
+        } catch (Exception e) {
+            finish(task, e);
+            return;
+        }
+        emitScheduled(task);
+    }
+
+    // 辅助方法 - 定时器模式：发送一片后把下一片重新挂到定时器上，最后一片之后结束
+    private void emitScheduled(StreamTask task) {
+        Exception error = null;
+        try {
+            if (task.emitNext()) {
+                scheduler.schedule(() -> emitScheduled(task), task.nextDelayMillis(), TimeUnit.MILLISECONDS);
+                return;
+            }
+        } catch (Exception e) {
+            error = e;
+        }
+        finish(task, error);
+    }
+
+    // 辅助方法 - 每个任务只调用一次；回调抛出的异常只记录，不影响计数
+    private void finish(StreamTask task, Exception error) {
+        inFlight.decrementAndGet();
+        if (error == null) {
+            completed.increment();
+        } else {
+            failed.increment();
+        }
+        try {
+            if (error == null) {
+                task.onComplete();
+            } else {
+                task.onError(error);
+            }
+        } catch (RuntimeException e) {
+            log.error("Stream task {} callback failed: {}", error == null ? "completion" : "error", e.getMessage(), e);
+        }
+    }
+
+    // 辅助方法 - 通过反射创建虚拟线程执行器，编译目标仍为Java 11
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 可续传的会话流
+ * <p>
+ * 每个会话一个流，帧的事件ID在会话内单调递增（流被清理后重建时从当前时间起算，不会回退到客户端已见过的ID），
+ * 最近的帧保存在有界环形缓冲中。同一会话可以有多个订阅者
+ * （多个标签页），断线重连时按 Last-Event-ID 从缓冲重放缺失的帧后继续接收，无需重新生成。
+ * 订阅者全部断开后生成继续进行，超过宽限期仍无人订阅才视为放弃；结束的流在保留期后清理。
+ * <p>
+ * 发布帧时只放入每个订阅者的有界出站队列（{@link OutboundQueue}），由写出线程池写到连接上，
+ * 生成速度与客户端网速解耦；慢客户端按配置的策略合并、丢弃积压帧或被断开。
+ * 写出线程数有固定上限，有积压的订阅者轮流写出一批帧；阻塞在慢连接上的写出占住一个线程，直到写出超时断开、容器释放连接，
+ * 线程都被占住时其他订阅者排队（排队时间计入滞后），不会无限增加线程。
+ */
+@Component
+@Slf4j
+public class StreamHub {
+
+    /**
+     * 缓冲已覆盖客户端请求的位置时发送的事件名
+     */
+    public static final String EVENT_GAP = "gap";
+
+    // 统计中列出的滞后最大的订阅者数
+    private static final int LAGGING_SUBSCRIBERS_IN_STATS = 10;
+
+    // 新建流的首个事件ID为当前毫秒数乘以该值，只要每毫秒发布的帧数不超过它，重建的流ID总大于旧流
+    private static final long EVENT_IDS_PER_MILLI = 1000;
+
+    @Autowired
+    private McpConfig mcpConfig;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, SessionStream> streams = new ConcurrentHashMap<>();
+
+    private final AtomicInteger activeTurns = new AtomicInteger();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder gaps = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder shedFrames = new LongAdder();
+    private final LongAdder lagDisconnects = new LongAdder();
+    private final LongAdder overflowDisconnects = new LongAdder();
+    private final LongAdder writeTimeouts = new LongAdder();
+
+    // 向订阅者写出帧的线程池，每个出站队列同时最多占用一个线程；不排队，没有空闲线程时新建，直到上限
+    private ThreadPoolExecutor writers;
+
+    @PostConstruct
+    public void init() {
+        McpConfig.Stream config = mcpConfig.getStream();
+        int threads = Math.max(1, config.getWriterThreads());
+        AtomicInteger threadCounter = new AtomicInteger();
+        // 排队的写出任务每个订阅者至多一个，队列长度不超过订阅者数
+        writers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "mcp-sse-writer-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        writers.allowCoreThreadTimeOut(true);
+
+        Gauge.builder("mcp.stream.active", activeTurns, AtomicInteger::get)
+                .description("Streams currently generating")
+                .register(meterRegistry);
+        Gauge.builder("mcp.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Connected stream subscribers (SSE emitters and reactive streams)")
+                .register(meterRegistry);
+        Gauge.builder("mcp.stream.outbound.max.lag", this, StreamHub::maxLagMillis)
+                .description("Largest outbound queue lag across subscribers, in milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("mcp.stream.writers.active", writers, ThreadPoolExecutor::getActiveCount)
+                .description("Writer threads currently sending frames to subscribers")
+                .register(meterRegistry);
+        Gauge.builder("mcp.stream.writers.queued", writers, executor -> executor.getQueue().size())
+                .description("Subscribers with frames waiting for a writer thread")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdown();
+        try {
+            if (!writers.awaitTermination(1, TimeUnit.SECONDS)) {
+                writers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 开始新一轮生成
+     *
+     * @param sessionId 会话ID
+     * @param model 本轮使用的模型，用于指标标签
+     * @return 会话已有进行中的生成时返回false
+     */
+    public boolean beginTurn(String sessionId, String model) {
+        while (true) {
+            SessionStream stream = streams.computeIfAbsent(sessionId, this::newStream);
+            synchronized (stream) {
+                if (stream.retired) {
+                    // 取得后被清理，重新取得
+                    continue;
+                }
+                if (stream.active) {
+                    return false;
+                }
+                stream.active = true;
+                stream.model = model;
+                stream.turnStartId = stream.nextId;
+                activeTurns.incrementAndGet();
+                stream.detachedAt = System.currentTimeMillis();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 以SseEmitter订阅会话流，连接完成、超时或出错时自动退订
+     *
+     * @param sessionId 会话ID
+     * @param emitter SSE发送器
+     * @param lastEventId 客户端已收到的最后事件ID，为null时从本轮开头重放
+     */
+    public void subscribe(String sessionId, SseEmitter emitter, Long lastEventId) {
+        StreamSubscriber subscriber = new EmitterSubscriber(emitter);
+        emitter.onCompletion(() -> unsubscribe(sessionId, subscriber));
+        emitter.onTimeout(() -> {
+            log.debug("SSE timeout for session: {}", sessionId);
+            unsubscribe(sessionId, subscriber);
+            emitter.complete();
+        });
+        emitter.onError(ex -> {
+            log.debug("SSE error for session {}: {}", sessionId, ex.getMessage());
+            unsubscribe(sessionId, subscriber);
+        });
+        subscribe(sessionId, subscriber, lastEventId);
+    }
+
+    /**
+     * 订阅会话流：先重放缓冲中的帧，生成进行中时继续接收后续帧，否则重放后结束；帧经由订阅者的出站队列异步写出
+     *
+     * @param sessionId 会话ID
+     * @param subscriber 订阅者，断开时由调用方调用 {@link #unsubscribe(String, StreamSubscriber)}
+     * @param lastEventId 客户端已收到的最后事件ID，为null时从本轮开头重放
+     */
+    public void subscribe(String sessionId, StreamSubscriber subscriber, Long lastEventId) {
+        McpConfig.Stream config = mcpConfig.getStream();
+        while (true) {
+            SessionStream stream = streams.computeIfAbsent(sessionId, this::newStream);
+            OutboundQueue queue = new OutboundQueue(sessionId, subscriber, writers, new QueueListener(stream),
+                    config.getOutboundPolicy(), config.getOutboundCapacity(), config.getOutboundMaxLag(), config.getWriteTimeout());
+            if (attach(stream, queue, lastEventId)) {
+                return;
+            }
+        }
+    }
+
+    // 辅助方法 - 重放缓冲中的帧，生成进行中时加入订阅者；流已被清理时返回false，由调用方重新取得
+    private boolean attach(SessionStream stream, OutboundQueue queue, Long lastEventId) {
+        synchronized (stream) {
+            if (stream.retired) {
+                return false;
+            }
+            long oldestId = stream.nextId - stream.size;
+            long from = lastEventId != null ? lastEventId + 1 : stream.turnStartId;
+            if (lastEventId != null && from < oldestId) {
+                // 缺失的帧已被覆盖，告知客户端后从最旧的帧开始重放
+                Map<String, Object> gap = new LinkedHashMap<>();
+                gap.put("lastEventId", lastEventId);
+                gap.put("oldestEventId", oldestId);
+                queue.offer(null, EVENT_GAP, gap, true);
+                gaps.increment();
+            }
+            for (long id = Math.max(from, oldestId); id < stream.nextId; id++) {
+                Frame frame = stream.frame(id);
+                queue.offer(frame.id, frame.name, frame.data, true);
+                replayed.increment();
+            }
+            if (stream.active) {
+                stream.subscribers.add(queue);
+                subscriberCount.incrementAndGet();
+            } else {
+                queue.complete();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 向会话的所有订阅者发布一帧，只入队不等待写出
+     *
+     * @param sessionId 会话ID
+     * @param name 事件名，为null时为默认message事件
+     * @param data 数据
+     */
+    public void publish(String sessionId, String name, Object data) {
+        SessionStream stream = streams.get(sessionId);
+        if (stream == null) {
+            return;
+        }
+        synchronized (stream) {
+            Frame frame = stream.append(name, data);
+            published.increment();
+            // 队列关闭时会回调退订，遍历副本
+            for (OutboundQueue queue : new ArrayList<>(stream.subscribers)) {
+                queue.offer(frame.id, frame.name, frame.data, false);
+            }
+        }
+    }
+
+    /**
+     * 发布本轮最后一帧并结束所有订阅者
+     *
+     * @param sessionId 会话ID
+     * @param name 事件名，为null时为默认message事件
+     * @param data 数据
+     */
+    public void endTurn(String sessionId, String name, Object data) {
+        publish(sessionId, name, data);
+        SessionStream stream = streams.get(sessionId);
+        if (stream == null) {
+            return;
+        }
+        List<OutboundQueue> subscribers;
+        synchronized (stream) {
+            if (stream.active) {
+                activeTurns.decrementAndGet();
+            }
+            stream.active = false;
+            stream.idleSince = System.currentTimeMillis();
+            subscribers = new ArrayList<>(stream.subscribers);
+            subscriberCount.addAndGet(-subscribers.size());
+            stream.subscribers.clear();
+        }
+        subscribers.forEach(OutboundQueue::complete);
+    }
+
+    /**
+     * 生成是否已被放弃：订阅者全部断开且超过宽限期
+     *
+     * @param sessionId 会话ID
+     * @return 是否已放弃
+     */
+    public boolean isAbandoned(String sessionId) {
+        SessionStream stream = streams.get(sessionId);
+        if (stream == null) {
+            return true;
+        }
+        synchronized (stream) {
+            return stream.subscribers.isEmpty()
+                    && System.currentTimeMillis() - stream.detachedAt > mcpConfig.getStream().getAbandonGrace();
+        }
+    }
+
+    /**
+     * 会话删除时释放流
+     *
+     * @param sessionId 会话ID
+     */
+    public void evict(String sessionId) {
+        SessionStream stream = streams.remove(sessionId);
+        if (stream != null) {
+            synchronized (stream) {
+                stream.retired = true;
+                if (stream.active) {
+                    activeTurns.decrementAndGet();
+                }
+                subscriberCount.addAndGet(-stream.subscribers.size());
+                stream.subscribers.forEach(OutboundQueue::discard);
+            }
+        }
+    }
+
+    /**
+     * 清理保留期已过且无人订阅的流
+     * <p>
+     * 判断与移除在同一个 computeIfPresent 中完成，移除的流标记为已清理；
+     * 开始生成或订阅的一方若取得的恰是刚被清理的流，会重新取得新建的流，不会落在已移出映射的流上。
+     */
+    @Scheduled(fixedDelayString = "${mcp.server.stream.replay-retention:60000}")
+    public void sweep() {
+        long deadline = System.currentTimeMillis() - mcpConfig.getStream().getReplayRetention();
+        for (String sessionId : streams.keySet()) {
+            streams.computeIfPresent(sessionId, (id, stream) -> {
+                synchronized (stream) {
+                    if (!stream.idle(deadline)) {
+                        return stream;
+                    }
+                    stream.retired = true;
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * 断开写出超时或出站队列滞后超过上限的订阅者（生成已不再发帧时，发布路径上的检查不会触发）
+     */
+    @Scheduled(fixedDelayString = "${mcp.server.stream.lag-check-interval:1000}")
+    public void checkLag() {
+        allQueues().forEach(OutboundQueue::checkLag);
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("streams", streams.size());
+        stats.put("activeStreams", activeTurns.get());
+        stats.put("subscribers", subscriberCount.get());
+        stats.put("published", published.sum());
+        stats.put("replayed", replayed.sum());
+        stats.put("gaps", gaps.sum());
+        stats.put("sendFailures", sendFailures.sum());
+        
+        McpConfig.Stream config = mcpConfig.getStream();
+        Map<String, Object> outbound = new LinkedHashMap<>();
+        outbound.put("policy", config.getOutboundPolicy());
+        outbound.put("capacity", config.getOutboundCapacity());
+        outbound.put("maxLagMillis", config.getOutboundMaxLag());
+        outbound.put("shedFrames", shedFrames.sum());
+        outbound.put("lagDisconnects", lagDisconnects.sum());
+        outbound.put("overflowDisconnects", overflowDisconnects.sum());
+        outbound.put("writeTimeoutMillis", config.getWriteTimeout());
+        outbound.put("writeTimeouts", writeTimeouts.sum());
+        outbound.put("writerThreads", writers.getPoolSize());
+        outbound.put("activeWriters", writers.getActiveCount());
+        outbound.put("queuedWriters", writers.getQueue().size());
+        // 滞后最大的若干订阅者
+        outbound.put("lagging", allQueues().stream()
+                .map(OutboundQueue::snapshot)
+                .filter(snapshot -> (long) snapshot.get("lagMillis") > 0)
+                .sorted(Comparator.comparingLong((Map<String, Object> snapshot) -> (long) snapshot.get("lagMillis")).reversed())
+                .limit(LAGGING_SUBSCRIBERS_IN_STATS)
+                .collect(Collectors.toList()));
+        stats.put("outbound", outbound);
+        return stats;
+    }
+
+    /**
+     * 退订会话流
+     *
+     * @param sessionId 会话ID
+     * @param subscriber 订阅者
+     */
+    public void unsubscribe(String sessionId, StreamSubscriber subscriber) {
+        SessionStream stream = streams.get(sessionId);
+        if (stream == null) {
+            return;
+        }
+        OutboundQueue queue = null;
+        synchronized (stream) {
+            for (OutboundQueue candidate : stream.subscribers) {
+                if (candidate.getTarget() == subscriber) {
+                    queue = candidate;
+                    break;
+                }
+            }
+        }
+        if (queue != null) {
+            queue.discard();
+            unsubscribe(stream, queue);
+        }
+    }
+
+    private void unsubscribe(SessionStream stream, OutboundQueue queue) {
+        synchronized (stream) {
+            if (stream.subscribers.remove(queue)) {
+                subscriberCount.decrementAndGet();
+                if (stream.subscribers.isEmpty()) {
+                    stream.detachedAt = System.currentTimeMillis();
+                }
+            }
+        }
+    }
+
+    private SessionStream newStream(String sessionId) {
+        return new SessionStream(mcpConfig.getStream().getReplayBufferSize(), System.currentTimeMillis() * EVENT_IDS_PER_MILLI);
+    }
+
+    private List<OutboundQueue> allQueues() {
+        List<OutboundQueue> queues = new ArrayList<>();
+        for (SessionStream stream : streams.values()) {
+            synchronized (stream) {
+                queues.addAll(stream.subscribers);
+            }
+        }
+        return queues;
+    }
+
+    private double maxLagMillis() {
+        return allQueues().stream().mapToLong(OutboundQueue::lagMillis).max().orElse(0);
+    }
+
+    /**
+     * 出站队列回调：记录写出耗时与滞后，队列关闭时退订
+     */
+    private class QueueListener implements OutboundQueue.Listener {
+        private final SessionStream stream;
+
+        private QueueListener(SessionStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void onSent(OutboundQueue queue, long sendNanos, long waitNanos) {
+            chatMetrics.recordChunkSend(stream.model, sendNanos);
+            chatMetrics.recordOutboundWait(stream.model, waitNanos);
+        }
+
+        @Override
+        public void onShed(OutboundQueue queue, String policy, int frames) {
+            shedFrames.add(frames);
+            chatMetrics.outboundShed(stream.model, policy, frames);
+        }
+
+        @Override
+        public void onClosed(OutboundQueue queue, String reason, Exception error) {
+            if (OutboundQueue.REASON_ERROR.equals(reason)) {
+                // 订阅者断开不影响生成，重连后可从缓冲续传
+                log.debug("Dropping subscriber of session {}: {}", queue.getSessionId(), error.getMessage());
+                sendFailures.increment();
+                chatMetrics.sendFailure(stream.model);
+            } else {
+                log.info("Disconnecting slow subscriber of session {}: outbound queue {}", queue.getSessionId(), reason);
+                if (OutboundQueue.REASON_LAG.equals(reason)) {
+                    lagDisconnects.increment();
+                } else if (OutboundQueue.REASON_TIMEOUT.equals(reason)) {
+                    writeTimeouts.increment();
+                } else {
+                    overflowDisconnects.increment();
+                }
+            }
+            chatMetrics.outboundDisconnect(stream.model, reason);
+            unsubscribe(stream, queue);
+        }
+    }
+
+    /**
+     * 单个会话的流：帧环形缓冲与订阅者
+     */
+    private static class SessionStream {
+        private final Frame[] frames;
+        private int start;
+        private int size;
+        private long nextId;
+        private long turnStartId;
+        private boolean active;
+        // 已从映射中移除，持有旧引用的一方需重新取得
+        private boolean retired;
+        private String model;
+        private long detachedAt;
+        private long idleSince = System.currentTimeMillis();
+        private final List<OutboundQueue> subscribers = new ArrayList<>();
+
+        private SessionStream(int capacity, long firstId) {
+            this.frames = new Frame[Math.max(1, capacity)];
+            this.nextId = firstId;
+            this.turnStartId = firstId;
+        }
+
+        // 无生成、无订阅者且空闲超过保留期，调用方持有锁
+        private boolean idle(long deadline) {
+            return !active && subscribers.isEmpty() && idleSince < deadline;
+        }
+
+        private Frame append(String name, Object data) {
+            Frame frame = new Frame(nextId++, name, data);
+            if (size < frames.length) {
+                frames[(start + size) % frames.length] = frame;
+                size++;
+            } else {
+                frames[start] = frame;
+                start = (start + 1) % frames.length;
+            }
+            return frame;
+        }
+
+        // 按事件ID取帧，调用方保证ID在缓冲范围内
+        private Frame frame(long id) {
+            long oldestId = nextId - size;
+            return frames[(int) ((start + (id - oldestId)) % frames.length)];
+        }
+    }
+
+    /**
+     * SseEmitter订阅者
+     */
+    private static class EmitterSubscriber implements StreamSubscriber {
+        private final SseEmitter emitter;
+
+        private EmitterSubscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void send(Long id, String name, Object data) throws IOException {
+            SseEmitter.SseEventBuilder event = SseEmitter.event();
+            if (id != null) {
+                event.id(String.valueOf(id));
+            }
+            if (name != null) {
+                event.name(name);
+            }
+            emitter.send(event.data(data));
+        }
+
+        @Override
+        public void complete() {
+            emitter.complete();
+        }
+    }
+
+    private static class Frame {
+        private final long id;
+        private final String name;
+        private final Object data;
+
+        private Frame(long id, String name, Object data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+    }
+}
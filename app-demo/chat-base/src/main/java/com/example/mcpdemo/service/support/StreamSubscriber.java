@@ -0,0 +1,24 @@
+package com.example.mcpdemo.service.support;
+
+import java.io.IOException;
+
+/**
+ * 会话流订阅者，屏蔽具体的推送方式（Servlet的SseEmitter或响应式的Flux）
+ */
+public interface StreamSubscriber {
+
+    /**
+     * 推送一帧
+     *
+     * @param id 事件ID，控制帧（如gap）为null
+     * @param name 事件名，为null时为默认message事件
+     * @param data 数据
+     * @throws IOException 推送失败（如连接已断开）
+     */
+    void send(Long id, String name, Object data) throws IOException;
+
+    /**
+     * 本轮结束，关闭推送
+     */
+    void complete();
+}
@@ -0,0 +1,41 @@
+package com.example.mcpdemo.service.support;
+
+/**
+ * 流式生成任务，由 {@link StreamExecutor} 逐片驱动
+ */
+public interface StreamTask {
+
+    /**
+     * 开始发送前的准备工作（如保存助手消息）
+     *
+     * @throws Exception 准备失败
+     */
+    void prepare() throws Exception;
+
+    /**
+     * 发送下一片
+     *
+     * @return 是否还有后续分片
+     * @throws Exception 发送失败
+     */
+    boolean emitNext() throws Exception;
+
+    /**
+     * 距离下一片的等待时间（毫秒）
+     *
+     * @return 等待时间
+     */
+    long nextDelayMillis();
+
+    /**
+     * 全部分片发送完成
+     */
+    void onComplete();
+
+    /**
+     * 执行失败或被拒绝
+     *
+     * @param e 异常
+     */
+    void onError(Exception e);
+}
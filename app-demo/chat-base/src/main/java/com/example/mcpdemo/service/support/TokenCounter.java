@@ -0,0 +1,64 @@
+package com.example.mcpdemo.service.support;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.stereotype.Component;
+
+/**
+ * 令牌计数器
+ * <p>
+ * 使用 cl100k_base 编码（gpt-3.5-turbo / gpt-4 所用的BPE词表）计算真实令牌数，
+ * 其他模型以此作为近似值。每条消息只在写入时计算一次并随消息保存。
+ */
+@Component
+public class TokenCounter {
+
+    /**
+     * 每条消息在对话格式中的固定开销（角色标记、分隔符）
+     */
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private final Encoding encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    /**
+     * 计算文本的令牌数
+     *
+     * @param text 文本
+     * @return 令牌数
+     */
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return encoding.countTokens(text);
+    }
+
+    /**
+     * 把文本截断到不超过指定令牌数，保留开头部分
+     *
+     * @param text 文本
+     * @param maxTokens 最大令牌数
+     * @return 截断后的文本，未超出时原样返回
+     */
+    public String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        if (maxTokens <= 0) {
+            return "";
+        }
+        EncodingResult result = encoding.encode(text, maxTokens);
+        if (!result.isTruncated()) {
+            return text;
+        }
+        String truncated = encoding.decode(result.getTokens());
+        // 多字节字符可能被令牌边界切开，去掉解码出的替换字符
+        int end = truncated.length();
+        while (end > 0 && truncated.charAt(end - 1) == '\uFFFD') {
+            end--;
+        }
+        return truncated.substring(0, end);
+    }
+}
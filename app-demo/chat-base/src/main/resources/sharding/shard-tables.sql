@@ -0,0 +1,33 @@
+-- 分表的物理表结构，{shard} 为表序号；与 README 中 mcp_session / mcp_message 的结构保持一致
+-- 索引名带表序号（H2中索引名在库内唯一）
+
+CREATE TABLE IF NOT EXISTS `mcp_session_{shard}` (
+  `id` varchar(255) NOT NULL COMMENT '会话ID',
+  `title` varchar(255) DEFAULT '新对话' COMMENT '会话标题',
+  `create_time` datetime NOT NULL COMMENT '创建时间',
+  `update_time` datetime NOT NULL COMMENT '最后更新时间',
+  `user_id` varchar(255) NOT NULL COMMENT '用户ID',
+  `model` varchar(50) DEFAULT NULL COMMENT '使用的模型',
+  `status` varchar(20) NOT NULL DEFAULT 'ACTIVE' COMMENT '状态：ACTIVE, ARCHIVED',
+  `system_prompt` blob DEFAULT NULL COMMENT '系统提示词（超过阈值时压缩存储）',
+  `message_count` int(11) NOT NULL DEFAULT 0 COMMENT '消息数（冗余，随会话更新写入）',
+  `last_message_preview` varchar(100) DEFAULT NULL COMMENT '最后一条消息预览（冗余，随会话更新写入）',
+  `archive_offset` bigint(20) DEFAULT NULL COMMENT '归档记录号（status为ARCHIVED时有效）',
+  PRIMARY KEY (`id`),
+  KEY `idx_user_status_update_{shard}` (`user_id`, `status`, `update_time`, `title`, `model`, `message_count`, `last_message_preview`),
+  KEY `idx_update_time_{shard}` (`update_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='MCP会话表（分表）';
+
+CREATE TABLE IF NOT EXISTS `mcp_message_{shard}` (
+  `id` bigint(20) NOT NULL COMMENT '消息ID（应用全局分配，迁移时保留）',
+  `session_id` varchar(255) NOT NULL COMMENT '会话ID',
+  `role` varchar(20) NOT NULL COMMENT '角色：system, user, assistant',
+  `content` blob NOT NULL COMMENT '消息内容（超过阈值时压缩存储）',
+  `create_time` datetime NOT NULL COMMENT '创建时间',
+  `sequence` int(11) NOT NULL COMMENT '序号（消息顺序）',
+  `model` varchar(50) DEFAULT NULL COMMENT '使用的模型',
+  `token_count` int(11) DEFAULT NULL COMMENT '令牌数（写入时计算）',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_session_sequence_{shard}` (`session_id`, `sequence`),
+  KEY `idx_session_role_{shard}` (`session_id`, `role`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='MCP消息表（分表）';
@@ -0,0 +1,143 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.exception.AdmissionRejectedException;
+import com.example.mcpdemo.mapper.McpSessionMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 准入控制：并发创建会话时检查与占用名额是原子的，回滚的创建归还名额
+ */
+class AdmissionLimiterTest {
+
+    private static final int MAX_PER_USER = 5;
+
+    private McpSessionMapper sessionMapper;
+    private SimpleMeterRegistry meterRegistry;
+    private AdmissionLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        McpConfig config = new McpConfig();
+        config.setMaxSessions(1000);
+        config.getAdmission().setMaxSessionsPerUser(MAX_PER_USER);
+        config.getAdmission().setMaxConcurrentStreams(2);
+
+        sessionMapper = mock(McpSessionMapper.class);
+        when(sessionMapper.countByStatus(any())).thenReturn(0L);
+        when(sessionMapper.countByUserIdAndStatus(anyString(), any())).thenReturn(0L);
+        ShardRouter shardRouter = mock(ShardRouter.class);
+        when(shardRouter.sum(any())).thenAnswer(invocation -> invocation.<LongSupplier>getArgument(0).getAsLong());
+        meterRegistry = new SimpleMeterRegistry();
+
+        limiter = new AdmissionLimiter();
+        ReflectionTestUtils.setField(limiter, "mcpConfig", config);
+        ReflectionTestUtils.setField(limiter, "sessionMapper", sessionMapper);
+        ReflectionTestUtils.setField(limiter, "shardRouter", shardRouter);
+        ReflectionTestUtils.setField(limiter, "meterRegistry", meterRegistry);
+        limiter.init();
+    }
+
+    @Test
+    void concurrentCreatesNeverExceedUserQuota() throws Exception {
+        // 数据库中还没有该用户的会话，50个请求同时创建，只有配额内的5个能通过
+        int attempts = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < attempts; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        limiter.reserveSession("alice");
+                        return true;
+                    } catch (AdmissionRejectedException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int admitted = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(10, TimeUnit.SECONDS)) {
+                    admitted++;
+                }
+            }
+
+            assertEquals(MAX_PER_USER, admitted);
+            Map<String, Object> stats = limiter.stats();
+            assertEquals((long) MAX_PER_USER, stats.get("activeSessions"));
+            assertEquals((long) attempts - MAX_PER_USER, stats.get("rejectedSessions"));
+            assertEquals((double) attempts - MAX_PER_USER,
+                    meterRegistry.get("mcp.admission.rejected").tag("type", "session").functionCounter().count());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rolledBackCreateReleasesReservation() {
+        when(sessionMapper.countByUserIdAndStatus(eq("bob"), any())).thenReturn((long) MAX_PER_USER - 1);
+
+        // 事务中预留最后一个名额，提交前同一用户的下一次创建被拒绝
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            limiter.reserveSession("bob");
+            assertEquals(1, limiter.stats().get("pendingSessions"));
+            assertThrows(AdmissionRejectedException.class, () -> limiter.reserveSession("bob"));
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // 回滚后名额归还，可以再次创建；不在事务中时立即计为活跃会话
+        assertEquals(0, limiter.stats().get("pendingSessions"));
+        assertEquals(0L, limiter.stats().get("activeSessions"));
+        limiter.reserveSession("bob");
+        assertEquals(1L, limiter.stats().get("activeSessions"));
+        assertThrows(AdmissionRejectedException.class, () -> limiter.reserveSession("bob"));
+
+        // 删除一个会话后用户名额随之释放
+        limiter.onSessionRemoved("bob");
+        limiter.reserveSession("bob");
+    }
+
+    @Test
+    void streamPermitsAreExportedAsGauge() {
+        limiter.acquireStream();
+        assertEquals(1.0, meterRegistry.get("mcp.admission.stream.permits.available").gauge().value());
+        limiter.acquireStream();
+        assertThrows(AdmissionRejectedException.class, limiter::acquireStream);
+        assertEquals(0.0, meterRegistry.get("mcp.admission.stream.permits.available").gauge().value());
+        assertEquals(1.0, meterRegistry.get("mcp.admission.rejected").tag("type", "stream").functionCounter().count());
+        limiter.releaseStream();
+        limiter.releaseStream();
+        assertEquals(2.0, meterRegistry.get("mcp.admission.stream.permits.available").gauge().value());
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.entity.McpMessage;
+import com.example.mcpdemo.entity.McpSession;
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 上下文组装：本轮用户消息总是放入，系统提示词与用户消息超出预算时截断，占用令牌数不超过预算
+ */
+class ContextWindowAssemblerTest {
+
+    private static final String SESSION_ID = "s1";
+    private static final int BUDGET = 100;
+
+    private final TokenCounter tokenCounter = new TokenCounter();
+    private final List<McpMessage> stored = new ArrayList<>();
+    private ContextWindowAssembler assembler;
+
+    @BeforeEach
+    void setUp() {
+        McpConfig config = new McpConfig();
+        config.setMaxContextSize(BUDGET);
+
+        McpMessageMapper messageMapper = mock(McpMessageMapper.class);
+        // findTail 按序号降序返回
+        when(messageMapper.findTail(anyString(), anyInt())).thenAnswer(invocation -> {
+            List<McpMessage> tail = new ArrayList<>(stored);
+            Collections.reverse(tail);
+            return tail;
+        });
+        MessageJournal messageJournal = mock(MessageJournal.class);
+        when(messageJournal.pendingMessages(anyString())).thenReturn(Collections.emptyList());
+
+        assembler = new ContextWindowAssembler();
+        ReflectionTestUtils.setField(assembler, "mcpConfig", config);
+        ReflectionTestUtils.setField(assembler, "messageMapper", messageMapper);
+        ReflectionTestUtils.setField(assembler, "messageJournal", messageJournal);
+        ReflectionTestUtils.setField(assembler, "tokenCounter", tokenCounter);
+    }
+
+    @Test
+    void olderMessagesFillRemainingBudget() {
+        store("user", "hello");
+        store("assistant", "hi there");
+        store("user", "how are you");
+
+        ContextWindowAssembler.ContextWindow context = assembler.assemble(session(null));
+
+        assertEquals(3, context.getMessages().size());
+        assertEquals("how are you", last(context).getContent());
+        assertTrue(context.getTokens() <= BUDGET);
+    }
+
+    @Test
+    void oversizedUserMessageIsTruncatedNotDropped() {
+        store("user", "earlier question");
+        store("assistant", "earlier answer");
+        String huge = repeat("甲乙丙丁 lorem ipsum ", 200);
+        McpMessage current = store("user", huge);
+
+        ContextWindowAssembler.ContextWindow context = assembler.assemble(session("You are helpful."));
+
+        assertEquals("system", context.getMessages().get(0).getRole());
+        McpMessage sent = last(context);
+        assertEquals(current.getSequence(), sent.getSequence());
+        assertTrue(huge.startsWith(sent.getContent()));
+        assertTrue(sent.getContent().length() > 0);
+        assertTrue(context.getTokens() <= BUDGET);
+        // 截断的是发给模型的副本
+        assertEquals(huge, current.getContent());
+    }
+
+    @Test
+    void oversizedSystemPromptIsCappedAndUsedStaysWithinBudget() {
+        store("user", "earlier question");
+        store("assistant", "earlier answer");
+        store("user", "what is the answer?");
+
+        ContextWindowAssembler.ContextWindow context = assembler.assemble(session(repeat("Always answer politely. ", 100)));
+
+        McpMessage system = context.getMessages().get(0);
+        assertEquals("system", system.getRole());
+        assertTrue(tokenCounter.count(system.getContent()) + TokenCounter.MESSAGE_OVERHEAD <= BUDGET);
+        assertEquals("what is the answer?", last(context).getContent());
+        assertTrue(context.getTokens() >= 0 && context.getTokens() <= BUDGET);
+    }
+
+    private McpMessage store(String role, String content) {
+        McpMessage message = McpMessage.builder()
+                .sessionId(SESSION_ID)
+                .role(role)
+                .content(content)
+                .sequence(stored.size() + 1)
+                .tokenCount(tokenCounter.count(content))
+                .build();
+        stored.add(message);
+        return message;
+    }
+
+    private static McpSession session(String systemPrompt) {
+        McpSession session = new McpSession();
+        session.setId(SESSION_ID);
+        session.setSystemPrompt(systemPrompt);
+        return session;
+    }
+
+    private static McpMessage last(ContextWindowAssembler.ContextWindow context) {
+        return context.getMessages().get(context.getMessages().size() - 1);
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
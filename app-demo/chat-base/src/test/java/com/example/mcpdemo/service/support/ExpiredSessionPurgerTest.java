@@ -0,0 +1,105 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import com.example.mcpdemo.mapper.McpSessionMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 过期会话清理：加锁重新校验后才删除，只对实际删除的会话清理内存状态
+ */
+class ExpiredSessionPurgerTest {
+
+    private McpSessionMapper sessionMapper;
+    private McpMessageMapper messageMapper;
+    private ExpiredSessionPurger purger;
+    private final Date expiryTime = new Date();
+
+    @BeforeEach
+    void setUp() {
+        McpConfig config = new McpConfig();
+        config.getPurge().setChunkSize(3);
+        config.getPurge().setPauseMillis(0);
+
+        sessionMapper = mock(McpSessionMapper.class);
+        messageMapper = mock(McpMessageMapper.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        ShardRouter shardRouter = mock(ShardRouter.class);
+        when(shardRouter.shards()).thenReturn(Collections.singletonList(ShardRouter.LEGACY));
+        when(shardRouter.onShard(anyInt(), any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+
+        purger = new ExpiredSessionPurger();
+        ReflectionTestUtils.setField(purger, "mcpConfig", config);
+        ReflectionTestUtils.setField(purger, "sessionMapper", sessionMapper);
+        ReflectionTestUtils.setField(purger, "messageMapper", messageMapper);
+        ReflectionTestUtils.setField(purger, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(purger, "shardRouter", shardRouter);
+    }
+
+    @Test
+    void onlyReCheckedSessionsAreDeletedAndCleanedUp() {
+        // a、b、c 被取出为过期候选；加锁重新校验时 b 已被重新使用，c 还有未落库的数据
+        // 下一批候选中只剩仍过期的 c，整批跳过后结束
+        when(sessionMapper.findExpiredSessionIds(eq(expiryTime), anyInt()))
+                .thenReturn(Arrays.asList("a", "b", "c"))
+                .thenReturn(List.of("c"));
+        when(sessionMapper.lockExpiredSessionIds(anyList(), eq(expiryTime)))
+                .thenReturn(new ArrayList<>(Arrays.asList("a", "c")))
+                .thenReturn(new ArrayList<>(List.of("c")));
+        when(messageMapper.deleteBySessionIds(anyList())).thenReturn(4);
+        when(sessionMapper.deleteByIds(anyList())).thenReturn(1);
+        List<List<String>> cleaned = new ArrayList<>();
+
+        purger.purge(expiryTime, Set.of("c")::contains, cleaned::add);
+
+        InOrder order = inOrder(sessionMapper, messageMapper);
+        order.verify(sessionMapper).lockExpiredSessionIds(Arrays.asList("a", "b", "c"), expiryTime);
+        order.verify(messageMapper).deleteBySessionIds(List.of("a"));
+        order.verify(sessionMapper).deleteByIds(List.of("a"));
+        assertEquals(List.of(List.of("a")), cleaned);
+        assertEquals(1L, purger.stats().get("lastRunSessions"));
+        assertEquals(5L, purger.stats().get("lastRunRows"));
+        assertEquals(3L, purger.stats().get("totalSkipped"));
+        verify(sessionMapper, times(2)).findExpiredSessionIds(eq(expiryTime), anyInt());
+    }
+
+    @Test
+    void chunkWithNothingLeftAfterReCheckDeletesNothing() {
+        when(sessionMapper.findExpiredSessionIds(eq(expiryTime), anyInt())).thenReturn(List.of("a"));
+        when(sessionMapper.lockExpiredSessionIds(anyList(), eq(expiryTime))).thenReturn(new ArrayList<>());
+        List<List<String>> cleaned = new ArrayList<>();
+
+        purger.purge(expiryTime, id -> false, cleaned::add);
+
+        verify(messageMapper, never()).deleteBySessionIds(anyList());
+        verify(sessionMapper, never()).deleteByIds(anyList());
+        assertEquals(0, cleaned.size());
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import com.example.mcpdemo.entity.McpMessage;
+import com.example.mcpdemo.exception.AdmissionRejectedException;
+import com.example.mcpdemo.mapper.McpMessageMapper;
+import com.example.mcpdemo.mapper.McpSessionMapper;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 写后日志刷盘失败的处理：暂时性错误保留重试、序号冲突时整轮重新分配、数据错误与关闭时未落库的记录转存死信文件，
+ * 缓冲达到上限时拒绝新一轮对话、超过硬上限的记录转存死信文件
+ */
+class MessageJournalTest {
+
+    private static final String SESSION_ID = "s1";
+
+    @TempDir
+    Path tempDir;
+
+    private McpConfig config;
+    private McpMessageMapper messageMapper;
+    private MessageSequenceAllocator allocator;
+    private MessageJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        config = new McpConfig();
+        config.getJournal().setEnabled(true);
+        config.getJournal().setFlushInterval(3_600_000);
+        config.getJournal().setBatchSize(10_000);
+        config.getJournal().setMaxRetryBackoff(0);
+        config.getJournal().setDeadLetterFile(tempDir.resolve("dead-letter.jsonl").toString());
+
+        messageMapper = mock(McpMessageMapper.class);
+        // 批量写入总是失败，走逐条写入
+        SqlSession batchSession = mock(SqlSession.class);
+        when(batchSession.getMapper(McpMessageMapper.class)).thenReturn(mock(McpMessageMapper.class));
+        when(batchSession.getMapper(McpSessionMapper.class)).thenReturn(mock(McpSessionMapper.class));
+        doThrow(new IllegalStateException("batch failed")).when(batchSession).commit();
+        SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+        when(sqlSessionFactory.openSession(ExecutorType.BATCH, false)).thenReturn(batchSession);
+
+        allocator = new MessageSequenceAllocator();
+        ReflectionTestUtils.setField(allocator, "messageMapper", messageMapper);
+
+        journal = new MessageJournal();
+        ReflectionTestUtils.setField(journal, "mcpConfig", config);
+        ReflectionTestUtils.setField(journal, "sqlSessionFactory", sqlSessionFactory);
+        ReflectionTestUtils.setField(journal, "messageMapper", messageMapper);
+        ReflectionTestUtils.setField(journal, "sessionMapper", mock(McpSessionMapper.class));
+        ReflectionTestUtils.setField(journal, "sequenceAllocator", allocator);
+        journal.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.shutdown();
+    }
+
+    @Test
+    void transientFailureKeepsMessagesForRetry() throws Exception {
+        McpMessage message = message(0);
+        when(messageMapper.insert(any(McpMessage.class)))
+                .thenThrow(new CannotGetJdbcConnectionException("database down"))
+                .thenReturn(1);
+        journal.appendMessage(message);
+
+        journal.flush();
+        assertEquals(1, journal.pendingMessages(SESSION_ID).size());
+        assertEquals(1, journal.stats().get("consecutiveFailures"));
+
+        journal.flush();
+        assertTrue(journal.pendingMessages(SESSION_ID).isEmpty());
+        assertEquals(0, journal.stats().get("consecutiveFailures"));
+        verify(messageMapper, times(2)).insert(message);
+        assertFalse(Files.exists(deadLetterFile()));
+    }
+
+    @Test
+    void backoffDelaysNextFlush() {
+        config.getJournal().setMaxRetryBackoff(60_000);
+        McpMessage message = message(0);
+        when(messageMapper.insert(any(McpMessage.class))).thenThrow(new CannotGetJdbcConnectionException("database down"));
+        journal.appendMessage(message);
+
+        journal.flush();
+        journal.flush();
+        verify(messageMapper, times(1)).insert(message);
+        assertEquals(1, journal.pendingMessages(SESSION_ID).size());
+    }
+
+    @Test
+    void sequenceConflictMovesWholeTurn() {
+        // 本轮用户消息的序号已被其他实例占用，回复的序号没有冲突
+        McpMessage user = message(3, "user");
+        McpMessage assistant = message(4, "assistant");
+        AtomicBoolean first = new AtomicBoolean(true);
+        when(messageMapper.insert(any(McpMessage.class))).thenAnswer(invocation -> {
+            McpMessage m = invocation.getArgument(0);
+            if (m == user && first.getAndSet(false)) {
+                throw new DuplicateKeyException("Duplicate entry for uk_session_sequence");
+            }
+            return 1;
+        });
+        when(messageMapper.findMaxSequence(SESSION_ID)).thenReturn(3);
+        journal.appendMessage(user);
+        journal.appendMessage(assistant);
+
+        journal.flush();
+        // 整轮换到缓冲中已分配序号之后，用户消息仍在回复之前，留待下次刷盘一起写入
+        assertEquals(5, user.getSequence());
+        assertEquals(6, assistant.getSequence());
+        List<McpMessage> pending = journal.pendingMessages(SESSION_ID);
+        assertEquals(2, pending.size());
+        assertEquals("user", pending.get(0).getRole());
+        assertEquals(7, allocator.next(SESSION_ID));
+        verify(messageMapper, times(0)).insert(assistant);
+
+        journal.flush();
+        assertTrue(journal.pendingMessages(SESSION_ID).isEmpty());
+        assertEquals(1L, journal.stats().get("resequenced"));
+        verify(messageMapper, times(2)).insert(user);
+        verify(messageMapper, times(1)).insert(assistant);
+    }
+
+    @Test
+    void messageAllocatedBeforeResequenceIsAppendedAfterIt() {
+        // 分配时数据库最大序号为2，刷盘前其他实例写入了3
+        when(messageMapper.findMaxSequence(SESSION_ID)).thenReturn(2, 3);
+        McpMessage user = message(allocator.next(SESSION_ID), "user");
+        AtomicBoolean first = new AtomicBoolean(true);
+        when(messageMapper.insert(any(McpMessage.class))).thenAnswer(invocation -> {
+            if (invocation.getArgument(0) == user && first.getAndSet(false)) {
+                throw new DuplicateKeyException("Duplicate entry for uk_session_sequence");
+            }
+            return 1;
+        });
+        journal.appendMessage(user);
+        // 回复的序号在换序号之前已经分配，换序号之后才追加
+        McpMessage assistant = message(allocator.next(SESSION_ID), "assistant");
+        assertEquals(4, assistant.getSequence());
+
+        journal.flush();
+        assertEquals(5, user.getSequence());
+        journal.appendMessage(assistant);
+        assertEquals(6, assistant.getSequence());
+
+        journal.flush();
+        assertTrue(journal.pendingMessages(SESSION_ID).isEmpty());
+    }
+
+    @Test
+    void fullBufferRejectsNewTurnsAndDeadLettersPastHardLimit() throws Exception {
+        config.getJournal().setMaxPending(2);
+        when(messageMapper.insert(any(McpMessage.class))).thenThrow(new CannotGetJdbcConnectionException("database down"));
+        journal.admit();
+        journal.appendMessage(message(0));
+        journal.appendMessage(message(1));
+
+        // 达到上限后拒绝新一轮对话，已开始的轮次仍可追加到硬上限（两倍）
+        assertThrows(AdmissionRejectedException.class, journal::admit);
+        assertEquals(1L, journal.stats().get("rejected"));
+        journal.appendMessage(message(2));
+        journal.appendMessage(message(3));
+        assertEquals(4, journal.pendingMessages(SESSION_ID).size());
+
+        // 超过硬上限的记录不进缓冲，直接写入死信文件
+        journal.appendMessage(message(4));
+        assertEquals(4, journal.pendingMessages(SESSION_ID).size());
+        assertEquals(1L, journal.stats().get("overflowed"));
+        List<String> lines = Files.readAllLines(deadLetterFile());
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("journal buffer full"));
+    }
+
+    @Test
+    void dataErrorIsDeadLettered() throws Exception {
+        when(messageMapper.insert(any(McpMessage.class))).thenThrow(new DataIntegrityViolationException("Data too long for column"));
+        journal.appendMessage(message(0));
+
+        journal.flush();
+        assertTrue(journal.pendingMessages(SESSION_ID).isEmpty());
+        assertEquals(1L, journal.stats().get("deadLetters"));
+        List<String> lines = Files.readAllLines(deadLetterFile());
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains(SESSION_ID));
+        assertTrue(lines.get(0).contains("hello"));
+    }
+
+    @Test
+    void shutdownDeadLettersUnflushedRecords() throws Exception {
+        when(messageMapper.insert(any(McpMessage.class))).thenThrow(new CannotGetJdbcConnectionException("database down"));
+        journal.appendMessage(message(0));
+        journal.appendMessage(message(1));
+
+        journal.shutdown();
+        assertTrue(journal.pendingMessages(SESSION_ID).isEmpty());
+        assertEquals(2, Files.readAllLines(deadLetterFile()).size());
+    }
+
+    private McpMessage message(int sequence) {
+        return message(sequence, "user");
+    }
+
+    private McpMessage message(int sequence, String role) {
+        return McpMessage.builder()
+                .sessionId(SESSION_ID)
+                .role(role)
+                .content("hello")
+                .createTime(new Date())
+                .sequence(sequence)
+                .build();
+    }
+
+    private Path deadLetterFile() {
+        return Path.of(config.getJournal().getDeadLetterFile());
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 在线重新分片：迁移期间持续写入（新建会话、追加消息），迁移后每个会话及其全部消息都在槽位映射的表中，没有丢失或重复
+ */
+class ShardRebalancerTest {
+
+    private static final int SLOTS = 16;
+    private static final int INITIAL_SESSIONS = 40;
+    private static final int WRITERS = 4;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private ShardRouter shardRouter;
+    private ShardRebalancer rebalancer;
+    private final IdGenerator idGenerator = new IdGenerator(1);
+
+    private final List<String> sessions = new CopyOnWriteArrayList<>();
+    private final Map<String, AtomicInteger> sequences = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:rebalance;MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema-h2.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        McpConfig config = new McpConfig();
+        config.getSharding().setEnabled(true);
+        config.getSharding().setTables(2);
+        config.getSharding().setSlots(SLOTS);
+        config.getSharding().setMoveBatchSize(7);
+
+        shardRouter = new ShardRouter();
+        ReflectionTestUtils.setField(shardRouter, "mcpConfig", config);
+        ReflectionTestUtils.setField(shardRouter, "dataSource", dataSource);
+        shardRouter.init();
+
+        rebalancer = new ShardRebalancer();
+        ReflectionTestUtils.setField(rebalancer, "mcpConfig", config);
+        ReflectionTestUtils.setField(rebalancer, "shardRouter", shardRouter);
+        ReflectionTestUtils.setField(rebalancer, "readRouter", mock(ReadRouter.class));
+        ReflectionTestUtils.setField(rebalancer, "dataSource", dataSource);
+        ReflectionTestUtils.setField(rebalancer, "transactionManager", transactionManager);
+        rebalancer.init();
+
+        for (int i = 0; i < INITIAL_SESSIONS; i++) {
+            createSession();
+            for (int j = 0; j < 5; j++) {
+                appendMessage(sessions.get(i));
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        rebalancer.shutdown();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void writesDuringRebalanceEndUpInMappedTables() throws Exception {
+        // 记下一个需要迁移的会话的首条消息ID
+        String movedSession = sessions.stream()
+                .filter(id -> shardRouter.slotOf(id) % 4 != shardRouter.shardOfSlot(shardRouter.slotOf(id)))
+                .findFirst()
+                .orElseThrow();
+        Long movedId = jdbcTemplate.queryForObject("SELECT id FROM " + ShardRouter.physical("mcp_message",
+                shardRouter.shardOfSlot(shardRouter.slotOf(movedSession))) + " WHERE session_id = ? AND sequence = 0",
+                Long.class, movedSession);
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        List<Future<?>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < WRITERS; i++) {
+                results.add(writers.submit(() -> {
+                    while (writing.get()) {
+                        if (ThreadLocalRandom.current().nextInt(10) == 0) {
+                            createSession();
+                        } else {
+                            appendMessage(sessions.get(ThreadLocalRandom.current().nextInt(sessions.size())));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            Thread.sleep(100);
+
+            assertTrue(rebalancer.start(4));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (Boolean.TRUE.equals(rebalancer.stats().get("running")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            // 迁移结束后继续写一会儿，新映射下的写入同样落在正确的表
+            Thread.sleep(100);
+        } finally {
+            writing.set(false);
+            writers.shutdown();
+        }
+        for (Future<?> result : results) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+
+        Map<String, Object> stats = rebalancer.stats();
+        assertEquals(false, stats.get("running"));
+        assertNull(stats.get("lastError"));
+        assertEquals(0L, stats.get("misplacedSessions"));
+        assertTrue((long) stats.get("sessionsMoved") > 0);
+        assertEquals(List.of(0, 1, 2, 3), shardRouter.shards());
+
+        // 每个会话恰好一行，消息序号连续且与写入次数一致；迁移保留消息ID
+        assertEquals(List.of(movedId), jdbcTemplate.queryForList("SELECT id FROM " + ShardRouter.physical("mcp_message",
+                shardRouter.shardOfSlot(shardRouter.slotOf(movedSession))) + " WHERE session_id = ? AND sequence = 0",
+                Long.class, movedSession));
+        long totalSessions = 0;
+        for (int shard = 0; shard < 4; shard++) {
+            totalSessions += jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM " + ShardRouter.physical("mcp_session", shard), Long.class);
+        }
+        assertEquals(sessions.size(), totalSessions);
+        for (String sessionId : sessions) {
+            String messages = ShardRouter.physical("mcp_message", shardRouter.shardOfSlot(shardRouter.slotOf(sessionId)));
+            List<Integer> stored = jdbcTemplate.queryForList(
+                    "SELECT sequence FROM " + messages + " WHERE session_id = ? ORDER BY sequence", Integer.class, sessionId);
+            int written = sequences.get(sessionId).get();
+            assertEquals(written, stored.size(), sessionId);
+            for (int i = 0; i < written; i++) {
+                assertEquals(i, stored.get(i), sessionId);
+            }
+        }
+    }
+
+    // 辅助方法 - 与分表插件相同：事务中先持有槽位读锁，再按当前映射选择物理表
+    private int lockShard(String sessionId) {
+        int slot = shardRouter.slotOf(sessionId);
+        shardRouter.acquire(slot);
+        return shardRouter.shardOfSlot(slot);
+    }
+
+    private void createSession() {
+        String sessionId = "session-" + sequences.size() + "-" + System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            int shard = lockShard(sessionId);
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            jdbcTemplate.update("INSERT INTO " + ShardRouter.physical("mcp_session", shard)
+                    + " (id, title, create_time, update_time, user_id, status, message_count) VALUES (?, ?, ?, ?, ?, 'ACTIVE', 0)",
+                    sessionId, "新对话", now, now, "anonymous");
+        });
+        sequences.put(sessionId, new AtomicInteger());
+        sessions.add(sessionId);
+    }
+
+    private void appendMessage(String sessionId) {
+        // 同一会话的写入串行，序号在锁内分配，失败时回退
+        synchronized (sequences.get(sessionId)) {
+            AtomicInteger sequence = sequences.get(sessionId);
+            transactionTemplate.executeWithoutResult(status -> {
+                int shard = lockShard(sessionId);
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                // 与 McpMessage 的 ASSIGN_ID 相同，消息ID由应用分配
+                jdbcTemplate.update("INSERT INTO " + ShardRouter.physical("mcp_message", shard)
+                        + " (id, session_id, role, content, create_time, sequence) VALUES (?, ?, 'user', ?, ?, ?)",
+                        idGenerator.nextLong(), sessionId, "message".getBytes(), now, sequence.get());
+                jdbcTemplate.update("UPDATE " + ShardRouter.physical("mcp_session", shard)
+                        + " SET update_time = ?, message_count = ? WHERE id = ?", now, sequence.get() + 1, sessionId);
+            });
+            sequence.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 流式执行引擎：完成回调抛出异常时任务也只结束一次，并发提交不超出进行中上限
+ */
+class StreamExecutorTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {StreamExecutor.MODE_POOL, StreamExecutor.MODE_SCHEDULED})
+    void throwingCompletionCallbackFinishesOnce(String mode) throws Exception {
+        McpConfig config = new McpConfig();
+        config.getStream().setMode(mode);
+        config.getStream().setPoolSize(1);
+        StreamExecutor executor = new StreamExecutor();
+        ReflectionTestUtils.setField(executor, "mcpConfig", config);
+        executor.init();
+        try {
+            AtomicInteger completions = new AtomicInteger();
+            AtomicInteger errors = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(1);
+            executor.submit(new StreamTask() {
+                private int remaining = 3;
+
+                @Override
+                public void prepare() {
+                }
+
+                @Override
+                public boolean emitNext() {
+                    return --remaining > 0;
+                }
+
+                @Override
+                public long nextDelayMillis() {
+                    return 1;
+                }
+
+                @Override
+                public void onComplete() {
+                    completions.incrementAndGet();
+                    done.countDown();
+                    throw new IllegalStateException("listener failed");
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    errors.incrementAndGet();
+                }
+            });
+
+            assertTrue(done.await(2, TimeUnit.SECONDS));
+            // 等待可能的第二次结束回调
+            Thread.sleep(100);
+            Map<String, Object> stats = executor.stats();
+            assertEquals(1, completions.get());
+            assertEquals(0, errors.get());
+            assertEquals(0, stats.get("inFlight"));
+            assertEquals(1L, stats.get("completed"));
+            assertEquals(0L, stats.get("failed"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void concurrentSubmitsNeverExceedMaxInFlight() throws Exception {
+        int maxInFlight = 5;
+        McpConfig config = new McpConfig();
+        // 读取上限时让出CPU，放大检查与占用之间的窗口
+        config.setStream(new McpConfig.Stream() {
+            @Override
+            public int getMaxInFlight() {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getMaxInFlight();
+            }
+        });
+        config.getStream().setMode(StreamExecutor.MODE_SCHEDULED);
+        config.getStream().setPoolSize(2);
+        config.getStream().setMaxInFlight(maxInFlight);
+        config.getStream().setShutdownTimeout(0);
+        StreamExecutor executor = new StreamExecutor();
+        ReflectionTestUtils.setField(executor, "mcpConfig", config);
+        executor.init();
+        ExecutorService submitters = Executors.newFixedThreadPool(16);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // 任务一直挂在定时器上不结束，50个并发提交只有上限内的能进入
+            int attempts = 50;
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < attempts; i++) {
+                results.add(submitters.submit(() -> {
+                    start.await();
+                    try {
+                        executor.submit(waitingTask(release));
+                        return true;
+                    } catch (RejectedExecutionException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int accepted = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(10, TimeUnit.SECONDS)) {
+                    accepted++;
+                }
+            }
+
+            assertEquals(maxInFlight, accepted);
+            Map<String, Object> stats = executor.stats();
+            assertEquals(maxInFlight, stats.get("inFlight"));
+            assertEquals((long) attempts - maxInFlight, stats.get("rejected"));
+
+            // 结束后名额归还
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 2000;
+            while ((int) executor.stats().get("inFlight") > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, executor.stats().get("inFlight"));
+            executor.submit(waitingTask(release));
+        } finally {
+            release.countDown();
+            submitters.shutdownNow();
+            executor.shutdown();
+        }
+    }
+
+    // 辅助方法 - 每10毫秒发送一片，直到放行后结束
+    private static StreamTask waitingTask(CountDownLatch release) {
+        return new StreamTask() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public boolean emitNext() {
+                return release.getCount() > 0;
+            }
+
+            @Override
+            public long nextDelayMillis() {
+                return 10;
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        };
+    }
+}
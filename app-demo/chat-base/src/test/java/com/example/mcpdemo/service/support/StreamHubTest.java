@@ -0,0 +1,229 @@
+package com.example.mcpdemo.service.support;
+
+import com.example.mcpdemo.config.McpConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 会话流：慢订阅者只拖住自己，积压多的订阅者轮流让出写出线程；清理与开始生成并发时不丢流，重建的流事件ID不回退
+ */
+class StreamHubTest {
+
+    private static final String SESSION_ID = "s1";
+
+    private McpConfig config;
+    private StreamHub hub;
+
+    @BeforeEach
+    void setUp() {
+        config = new McpConfig();
+        config.getStream().setWriterThreads(2);
+        config.getStream().setWriteTimeout(200);
+        config.getStream().setOutboundMaxLag(60_000);
+
+        hub = new StreamHub();
+        ReflectionTestUtils.setField(hub, "mcpConfig", config);
+        ReflectionTestUtils.setField(hub, "chatMetrics", mock(ChatMetrics.class));
+        ReflectionTestUtils.setField(hub, "meterRegistry", new SimpleMeterRegistry());
+        hub.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    void slowSubscriberOnlyStallsItself() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch slowBlocked = new CountDownLatch(1);
+        Recorder slow = new Recorder() {
+            @Override
+            public void send(Long id, String name, Object data) {
+                slowBlocked.countDown();
+                try {
+                    // 模拟写缓冲已满的连接
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(id, name, data);
+            }
+        };
+        Recorder fast = new Recorder();
+
+        assertTrue(hub.beginTurn(SESSION_ID, "stub"));
+        hub.subscribe(SESSION_ID, slow, null);
+        hub.subscribe(SESSION_ID, fast, null);
+        for (int i = 0; i < 5; i++) {
+            hub.publish(SESSION_ID, null, "frame-" + i);
+        }
+
+        // 慢订阅者阻塞在写出上时，快订阅者照常收到所有帧
+        assertTrue(slowBlocked.await(2, TimeUnit.SECONDS));
+        assertTrue(fast.received(5, 2000));
+        long first = fast.ids.get(0);
+        assertEquals(List.of(first, first + 1, first + 2, first + 3, first + 4), fast.ids);
+
+        // 写出超时后巡检断开慢订阅者，不等阻塞的写出返回
+        Thread.sleep(300);
+        hub.checkLag();
+        assertEquals(1L, outbound().get("writeTimeouts"));
+        assertEquals(1, hub.stats().get("subscribers"));
+
+        hub.publish(SESSION_ID, null, "frame-5");
+        assertTrue(fast.received(6, 2000));
+
+        // 阻塞的写出返回后结束慢订阅者，之后的帧不再写给它
+        release.countDown();
+        assertTrue(slow.completed.await(2, TimeUnit.SECONDS));
+        assertEquals(1, slow.ids.size());
+
+        hub.endTurn(SESSION_ID, null, "done");
+        assertTrue(fast.completed.await(2, TimeUnit.SECONDS));
+        assertEquals(7, fast.ids.size());
+    }
+
+    @Test
+    void backloggedSubscriberYieldsWriterThread() throws Exception {
+        config.getStream().setWriterThreads(1);
+        hub.shutdown();
+        hub.init();
+        int frames = OutboundQueue.FRAMES_PER_DRAIN * 3;
+        Recorder backlogged = new Recorder() {
+            @Override
+            public void send(Long id, String name, Object data) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(id, name, data);
+            }
+        };
+        List<Integer> backloggedSentBefore = new CopyOnWriteArrayList<>();
+        Recorder other = new Recorder() {
+            @Override
+            public void send(Long id, String name, Object data) {
+                backloggedSentBefore.add(backlogged.ids.size());
+                super.send(id, name, data);
+            }
+        };
+
+        assertTrue(hub.beginTurn(SESSION_ID, "stub"));
+        hub.subscribe(SESSION_ID, backlogged, null);
+        hub.subscribe(SESSION_ID, other, null);
+        for (int i = 0; i < frames; i++) {
+            hub.publish(SESSION_ID, null, "frame-" + i);
+        }
+
+        // 唯一的写出线程每写出一批就让给另一个订阅者，不会等积压的订阅者全部写完
+        assertTrue(other.received(frames, 5000));
+        assertTrue(backlogged.received(frames, 5000));
+        assertTrue(backloggedSentBefore.get(0) <= OutboundQueue.FRAMES_PER_DRAIN);
+        assertEquals(1, outbound().get("writerThreads"));
+    }
+
+    @Test
+    void sweepNeverRemovesStreamBeingStarted() throws Exception {
+        config.getStream().setReplayRetention(0);
+        assertTrue(hub.beginTurn(SESSION_ID, "stub"));
+        hub.endTurn(SESSION_ID, null, "done");
+        Thread.sleep(5);
+
+        // 持有空闲流的锁，让开始生成的线程停在取得流之后、加锁之前，此时清理掉这个流
+        Object idleStream = ((Map<?, ?>) ReflectionTestUtils.getField(hub, "streams")).get(SESSION_ID);
+        AtomicBoolean started = new AtomicBoolean();
+        Thread starter = new Thread(() -> started.set(hub.beginTurn(SESSION_ID, "stub")));
+        synchronized (idleStream) {
+            starter.start();
+            while (starter.getState() != Thread.State.BLOCKED) {
+                Thread.sleep(1);
+            }
+            hub.sweep();
+        }
+        starter.join(2000);
+
+        // 开始生成的一方重新取得新建的流，订阅者能收到本轮的帧
+        assertTrue(started.get());
+        assertEquals(1, hub.stats().get("streams"));
+        assertEquals(1, hub.stats().get("activeStreams"));
+        Recorder recorder = new Recorder();
+        hub.subscribe(SESSION_ID, recorder, null);
+        hub.publish(SESSION_ID, null, "frame-0");
+        hub.endTurn(SESSION_ID, null, "done");
+        assertTrue(recorder.completed.await(2, TimeUnit.SECONDS));
+        assertEquals(2, recorder.ids.size());
+    }
+
+    @Test
+    void eventIdsKeepIncreasingAfterStreamIsSwept() throws Exception {
+        config.getStream().setReplayRetention(0);
+        Recorder before = new Recorder();
+        assertTrue(hub.beginTurn(SESSION_ID, "stub"));
+        hub.subscribe(SESSION_ID, before, null);
+        hub.publish(SESSION_ID, null, "frame-0");
+        hub.endTurn(SESSION_ID, null, "done");
+        assertTrue(before.completed.await(2, TimeUnit.SECONDS));
+        long lastSeen = before.ids.get(before.ids.size() - 1);
+
+        Thread.sleep(5);
+        hub.sweep();
+        assertEquals(0, hub.stats().get("streams"));
+
+        // 重建的流ID大于旧流已发出的ID；带旧ID重连的客户端先收到gap事件，不会把新帧当成已收到的旧帧
+        assertTrue(hub.beginTurn(SESSION_ID, "stub"));
+        hub.publish(SESSION_ID, null, "frame-1");
+        Recorder reconnected = new Recorder();
+        hub.subscribe(SESSION_ID, reconnected, lastSeen);
+        hub.endTurn(SESSION_ID, null, "done");
+        assertTrue(reconnected.completed.await(2, TimeUnit.SECONDS));
+        assertEquals(StreamHub.EVENT_GAP, reconnected.names.get(0));
+        assertTrue(reconnected.ids.get(1) > lastSeen);
+        assertEquals(3, reconnected.ids.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> outbound() {
+        return (Map<String, Object>) hub.stats().get("outbound");
+    }
+
+    private static class Recorder implements StreamSubscriber {
+        final List<Long> ids = new CopyOnWriteArrayList<>();
+        final List<String> names = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void send(Long id, String name, Object data) {
+            ids.add(id);
+            names.add(String.valueOf(name));
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        boolean received(int count, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (ids.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            return ids.size() >= count;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+-- 嵌入式数据库表结构（单元测试与压测共用），与 README 中的 MySQL 表结构一致（H2 MySQL 兼容模式）
+
+CREATE TABLE IF NOT EXISTS `mcp_session` (
+  `id` varchar(255) NOT NULL COMMENT '会话ID',
+  `title` varchar(255) DEFAULT '新对话' COMMENT '会话标题',
+  `create_time` datetime NOT NULL COMMENT '创建时间',
+  `update_time` datetime NOT NULL COMMENT '最后更新时间',
+  `user_id` varchar(255) NOT NULL COMMENT '用户ID',
+  `model` varchar(50) DEFAULT NULL COMMENT '使用的模型',
+  `status` varchar(20) NOT NULL DEFAULT 'ACTIVE' COMMENT '状态：ACTIVE, ARCHIVED',
+  `system_prompt` blob DEFAULT NULL COMMENT '系统提示词（超过阈值时压缩存储）',
+  `message_count` int(11) NOT NULL DEFAULT 0 COMMENT '消息数（冗余，随会话更新写入）',
+  `last_message_preview` varchar(100) DEFAULT NULL COMMENT '最后一条消息预览（冗余，随会话更新写入）',
+  `archive_offset` bigint(20) DEFAULT NULL COMMENT '归档记录号（status为ARCHIVED时有效）',
+  PRIMARY KEY (`id`),
+  KEY `idx_user_status_update` (`user_id`, `status`, `update_time`, `title`, `model`, `message_count`, `last_message_preview`),
+  KEY `idx_update_time` (`update_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='MCP会话表';
+
+CREATE TABLE IF NOT EXISTS `mcp_message` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '消息ID',
+  `session_id` varchar(255) NOT NULL COMMENT '会话ID',
+  `role` varchar(20) NOT NULL COMMENT '角色：system, user, assistant',
+  `content` blob NOT NULL COMMENT '消息内容（超过阈值时压缩存储）',
+  `create_time` datetime NOT NULL COMMENT '创建时间',
+  `sequence` int(11) NOT NULL COMMENT '序号（消息顺序）',
+  `model` varchar(50) DEFAULT NULL COMMENT '使用的模型',
+  `token_count` int(11) DEFAULT NULL COMMENT '令牌数（写入时计算）',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_session_sequence` (`session_id`, `sequence`),
+  KEY `idx_session_role` (`session_id`, `role`)
+) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4 COMMENT='MCP消息表';
+
+CREATE TABLE IF NOT EXISTS `test_entity` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT 'ID',
+  `name` varchar(255) DEFAULT NULL COMMENT '名称',
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4 COMMENT='测试实体表';
+
+CREATE TABLE IF NOT EXISTS `mcp_heartbeat` (
+  `id` int(11) NOT NULL COMMENT '固定为1',
+  `beat_time` bigint(20) NOT NULL COMMENT '主库写入时的毫秒时间戳',
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='复制心跳表';
+
+CREATE TABLE IF NOT EXISTS `mcp_shard_slot` (
+  `slot` int(11) NOT NULL COMMENT '槽位',
+  `shard` int(11) NOT NULL COMMENT '物理表序号，-1表示未分表的原表',
+  PRIMARY KEY (`slot`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='分表槽位映射';